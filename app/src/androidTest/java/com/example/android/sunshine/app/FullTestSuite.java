@@ -17,13 +17,18 @@ package com.example.android.sunshine.app;
 
 import android.test.suitebuilder.TestSuiteBuilder;
 
+import com.example.android.sunshine.app.benchmark.BenchmarkSuite;
+
 import junit.framework.Test;
 import junit.framework.TestSuite;
 
+// The correctness tests. The benchmarks run on their own, in BenchmarkSuite.
 public class FullTestSuite extends TestSuite {
     public static Test suite() {
         return new TestSuiteBuilder(FullTestSuite.class)
-                .includeAllPackagesUnderHere().build();
+                .includeAllPackagesUnderHere()
+                .excludePackages(BenchmarkSuite.class.getPackage().getName())
+                .build();
     }
 
     public FullTestSuite() {
@@ -0,0 +1,61 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.test.AndroidTestCase;
+
+import com.example.android.sunshine.app.data.WeatherContract;
+import com.example.android.sunshine.core.Forecast;
+
+/*
+    Saves the first rows of a forecast and checks they read back formatted, and only for the
+    location they were saved for.
+ */
+public class TestLastForecastRows extends AndroidTestCase {
+
+    private static final String LOCATION = "94043";
+    private static final int DAYS = 14;
+
+    public void testRoundTrip() {
+        long today = WeatherContract.normalizeDate(System.currentTimeMillis());
+        long[] dates = new long[DAYS];
+        int[] weatherIds = new int[DAYS];
+        String[] descriptions = new String[DAYS];
+        double[] values = new double[DAYS];
+        double[] maxTemps = new double[DAYS];
+        for (int i = 0; i < DAYS; i++) {
+            // Starting yesterday, which mustn't be saved
+            dates[i] = WeatherContract.addDays(today, i - 1);
+            weatherIds[i] = 800;
+            descriptions[i] = "Clear";
+            maxTemps[i] = 20 + i;
+        }
+        Forecast forecast = new Forecast("Mountain View", 37.4, -122.1, dates, weatherIds,
+                descriptions, values, maxTemps, values, values, values, values);
+        LastForecastRows.write(mContext, LOCATION, forecast);
+
+        LastForecastRows rows = LastForecastRows.read(mContext, LOCATION);
+        assertNotNull("Error: Saved rows weren't read back", rows);
+        assertTrue("Error: Too many rows saved", rows.size() < DAYS - 1);
+        assertEquals("Error: Rows don't start today", today, rows.dates[0]);
+        assertEquals(Utility.getFriendlyDayString(mContext, today, true), rows.todayDateText);
+        assertEquals(Utility.formatTemperature(mContext, maxTemps[1]), rows.highTexts[0]);
+        assertEquals(Utility.getStringForWeatherCondition(mContext, 800), rows.descriptions[0]);
+
+        assertNull("Error: Rows were read for another location",
+                LastForecastRows.read(mContext, LOCATION + "1"));
+    }
+}
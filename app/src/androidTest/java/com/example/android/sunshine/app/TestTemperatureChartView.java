@@ -0,0 +1,72 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.test.AndroidTestCase;
+import android.view.View;
+
+import com.example.android.sunshine.app.data.WeatherContract;
+import com.example.android.sunshine.app.utils.PollingCheck;
+
+/*
+    Selects days of a chart. How long its frames take to draw is measured by the
+    TestChartScroll benchmark.
+ */
+public class TestTemperatureChartView extends AndroidTestCase {
+
+    private static final int DAYS = 15;
+
+    private static final int WIDTH = 1080;
+    private static final int HEIGHT = 360;
+
+    private TemperatureChartView mChartView;
+    private long[] mDates;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        long today = WeatherContract.normalizeDate(System.currentTimeMillis());
+        mDates = new long[DAYS];
+        double[] highs = new double[DAYS];
+        double[] lows = new double[DAYS];
+        for (int i = 0; i < DAYS; i++) {
+            mDates[i] = WeatherContract.addDays(today, i - DAYS / 2);
+            highs[i] = 20 + 5 * Math.sin(i);
+            lows[i] = highs[i] - 8 - (i % 3);
+        }
+
+        mChartView = new TemperatureChartView(mContext);
+        mChartView.measure(View.MeasureSpec.makeMeasureSpec(WIDTH, View.MeasureSpec.EXACTLY),
+                View.MeasureSpec.makeMeasureSpec(HEIGHT, View.MeasureSpec.EXACTLY));
+        mChartView.layout(0, 0, WIDTH, HEIGHT);
+        mChartView.setTemperatures(new TemperatureChartView.Temperatures(mDates, highs, lows));
+
+        // The geometry is computed in the background and swapped in on the main thread
+        new PollingCheck(5000) {
+            @Override
+            protected boolean check() {
+                return mChartView.hasGeometry();
+            }
+        }.run();
+    }
+
+    public void testSelectedDate() {
+        assertTrue("Error: Charted day couldn't be selected",
+                mChartView.setSelectedDate(mDates[DAYS / 2]));
+        assertFalse("Error: Day outside the chart was selected",
+                mChartView.setSelectedDate(WeatherContract.addDays(mDates[DAYS - 1], 1)));
+    }
+}
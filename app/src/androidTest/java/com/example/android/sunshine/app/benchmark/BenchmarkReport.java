@@ -0,0 +1,180 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.benchmark;
+
+import android.content.Context;
+import android.os.Build;
+import android.util.Log;
+
+import junit.framework.Assert;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Collects the measurements of one benchmark, each with the threshold past which it counts as
+ * a regression, and writes them out as JSON once the benchmark is done.
+ *
+ * The JSON goes to the log, on one line starting with {@link #LOG_PREFIX}, and to
+ * benchmarks/&lt;name&gt;.json in the app's external files directory, where a CI job can pull
+ * it from. The benchmark only fails after everything was written, so a regression still
+ * leaves its numbers behind.
+ */
+public final class BenchmarkReport {
+
+    private static final String LOG_TAG = BenchmarkReport.class.getSimpleName();
+    public static final String LOG_PREFIX = "BENCHMARK ";
+
+    private static final class Metric {
+        final String name;
+        final double value;
+        final String unit;
+        final double threshold;
+
+        Metric(String name, double value, String unit, double threshold) {
+            this.name = name;
+            this.value = value;
+            this.unit = unit;
+            this.threshold = threshold;
+        }
+
+        boolean passed() {
+            // NaN when there's no threshold
+            return !(value > threshold);
+        }
+    }
+
+    private final String mName;
+    private final List<Metric> mMetrics = new ArrayList<>();
+
+    public BenchmarkReport(String name) {
+        mName = name;
+    }
+
+    /**
+     * @param threshold the largest value that isn't a regression
+     */
+    public void add(String name, double value, String unit, double threshold) {
+        mMetrics.add(new Metric(name, value, unit, threshold));
+    }
+
+    /**
+     * Records a measurement without a threshold, such as one only compared across devices or
+     * input sizes.
+     */
+    public void add(String name, double value, String unit) {
+        add(name, value, unit, Double.NaN);
+    }
+
+    /**
+     * Writes the report, then fails if any measurement is past its threshold.
+     */
+    public void finish(Context context) {
+        String json;
+        try {
+            json = toJson().toString();
+        } catch (JSONException e) {
+            throw new AssertionError(e);
+        }
+        Log.i(LOG_TAG, LOG_PREFIX + json);
+        write(context, json);
+
+        StringBuilder regressions = new StringBuilder();
+        for (Metric metric : mMetrics) {
+            if (!metric.passed()) {
+                regressions.append(' ').append(metric.name).append('=').append(metric.value)
+                        .append(metric.unit).append(" (max ").append(metric.threshold)
+                        .append(metric.unit).append(')');
+            }
+        }
+        if (regressions.length() > 0) {
+            Assert.fail("Error: " + mName + " regressed:" + regressions);
+        }
+    }
+
+    /**
+     * @return the value below which the given percent of the values fall
+     */
+    public static long percentile(long[] values, int percent) {
+        long[] sorted = Arrays.copyOf(values, values.length);
+        Arrays.sort(sorted);
+        int index = (int) Math.ceil(percent / 100.0 * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(sorted.length - 1, index))];
+    }
+
+    public static long median(long[] values) {
+        return percentile(values, 50);
+    }
+
+    private JSONObject toJson() throws JSONException {
+        JSONArray metrics = new JSONArray();
+        for (Metric metric : mMetrics) {
+            JSONObject json = new JSONObject()
+                    .put("name", metric.name)
+                    .put("value", metric.value)
+                    .put("unit", metric.unit)
+                    .put("passed", metric.passed());
+            if (!Double.isNaN(metric.threshold)) {
+                json.put("threshold", metric.threshold);
+            }
+            metrics.put(json);
+        }
+        return new JSONObject()
+                .put("benchmark", mName)
+                .put("device", Build.MANUFACTURER + " " + Build.MODEL)
+                .put("sdk", Build.VERSION.SDK_INT)
+                .put("timestamp", System.currentTimeMillis())
+                .put("metrics", metrics);
+    }
+
+    private void write(Context context, String json) {
+        File directory = context.getExternalFilesDir("benchmarks");
+        if (directory == null) {
+            // No external storage; the log still has the report
+            directory = new File(context.getFilesDir(), "benchmarks");
+        }
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            Log.w(LOG_TAG, "Could not create " + directory);
+            return;
+        }
+        File file = new File(directory, mName + ".json");
+        Writer writer = null;
+        try {
+            writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+            writer.write(json);
+        } catch (IOException e) {
+            Log.w(LOG_TAG, "Could not write " + file, e);
+        } finally {
+            if (writer != null) {
+                try {
+                    writer.close();
+                } catch (IOException e) {
+                    Log.w(LOG_TAG, "Could not close " + file, e);
+                }
+            }
+        }
+    }
+}
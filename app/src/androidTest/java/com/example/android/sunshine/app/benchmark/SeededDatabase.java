@@ -0,0 +1,95 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.benchmark;
+
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.content.Context;
+
+import com.example.android.sunshine.app.data.WeatherContract;
+import com.example.android.sunshine.app.data.WeatherContract.HourlyEntry;
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+/**
+ * Fills the provider with a made up forecast for a location, through the same inserts a sync
+ * makes, so benchmarks start from a known amount of data.
+ */
+public final class SeededDatabase {
+
+    private SeededDatabase() {
+    }
+
+    /**
+     * Deletes every stored day, hour and location.
+     */
+    public static void clear(Context context) {
+        ContentResolver resolver = context.getContentResolver();
+        resolver.delete(HourlyEntry.CONTENT_URI, null, null);
+        resolver.delete(WeatherEntry.CONTENT_URI, null, null);
+        resolver.delete(LocationEntry.CONTENT_URI, null, null);
+    }
+
+    /**
+     * Replaces everything stored with a forecast of the given number of days, starting today.
+     *
+     * @return the location's id
+     */
+    public static long seed(Context context, String locationSetting, int days) {
+        clear(context);
+        long locationId = insertLocation(context, locationSetting);
+
+        long today = WeatherContract.normalizeDate(System.currentTimeMillis());
+        ContentValues[] rows = new ContentValues[days];
+        for (int i = 0; i < days; i++) {
+            rows[i] = createDay(locationId, WeatherContract.addDays(today, i), i);
+        }
+        resolver.bulkInsert(WeatherEntry.CONTENT_URI, rows);
+        return locationId;
+    }
+
+    /**
+     * @return the new location's id
+     */
+    public static long insertLocation(Context context, String locationSetting) {
+        ContentValues location = new ContentValues();
+        location.put(LocationEntry.COLUMN_LOCATION_SETTING, locationSetting);
+        location.put(LocationEntry.COLUMN_CITY_NAME, "Mountain View");
+        location.put(LocationEntry.COLUMN_COORD_LAT, 37.4056);
+        location.put(LocationEntry.COLUMN_COORD_LONG, -122.0775);
+        return ContentUris.parseId(
+                context.getContentResolver().insert(LocationEntry.CONTENT_URI, location));
+    }
+
+    /**
+     * @param seed varies the values from day to day
+     */
+    public static ContentValues createDay(long locationId, long date, int seed) {
+        ContentValues day = new ContentValues();
+        day.put(WeatherEntry.COLUMN_LOC_KEY, locationId);
+        day.put(WeatherEntry.COLUMN_DATE, date);
+        day.put(WeatherEntry.COLUMN_DEGREES, seed * 20 % 360);
+        day.put(WeatherEntry.COLUMN_HUMIDITY, 60 + seed % 30);
+        day.put(WeatherEntry.COLUMN_PRESSURE, 1013.2 + seed % 10);
+        day.put(WeatherEntry.COLUMN_MAX_TEMP, 20 + seed % 5);
+        day.put(WeatherEntry.COLUMN_MIN_TEMP, 10 + seed % 3);
+        day.put(WeatherEntry.COLUMN_SHORT_DESC, seed % 2 == 0 ? "Clear" : "Rain");
+        day.put(WeatherEntry.COLUMN_WIND_SPEED, 3.5);
+        day.put(WeatherEntry.COLUMN_WEATHER_ID, seed % 2 == 0 ? 800 : 500);
+        return day;
+    }
+}
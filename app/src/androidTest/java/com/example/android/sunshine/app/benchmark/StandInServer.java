@@ -0,0 +1,201 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.benchmark;
+
+import android.content.Context;
+import android.content.SyncResult;
+import android.os.Bundle;
+import android.util.Log;
+
+import com.example.android.sunshine.app.R;
+import com.example.android.sunshine.app.sync.SunshineSyncAdapter;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Answers the OpenWeatherMap daily and hourly forecast requests on localhost with the same
+ * made up forecast every time, so syncs measured against it don't depend on the network.
+ *
+ * {@link #runSync(Context)} syncs from it directly. Syncs the system schedules use it too, as
+ * long as it runs.
+ */
+public final class StandInServer {
+
+    private static final String LOG_TAG = StandInServer.class.getSimpleName();
+
+    private static final int DAYS = 14;
+    private static final int HOURS_STEP = 3;
+    private static final long HOUR_IN_SECONDS = 60 * 60;
+
+    private final ServerSocket mSocket;
+    private final Thread mThread;
+    private final String mDailyJson;
+    private final String mHourlyJson;
+    private final AtomicInteger mRequestCount = new AtomicInteger();
+
+    private StandInServer(ServerSocket socket) {
+        mSocket = socket;
+        long nowSeconds = System.currentTimeMillis() / 1000;
+        mDailyJson = createDailyJson(nowSeconds);
+        mHourlyJson = createHourlyJson(nowSeconds);
+        mThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                serve();
+            }
+        }, LOG_TAG);
+    }
+
+    public static StandInServer start() throws IOException {
+        StandInServer server = new StandInServer(
+                new ServerSocket(0, 0, InetAddress.getByName("127.0.0.1")));
+        server.mThread.start();
+        return server;
+    }
+
+    /**
+     * @return the base of the API, ending with a slash
+     */
+    public String getUrl() {
+        return "http://127.0.0.1:" + mSocket.getLocalPort() + "/";
+    }
+
+    /**
+     * Runs a sync against this server on the calling thread, which mustn't be the main thread.
+     */
+    public void runSync(Context context) {
+        SunshineSyncAdapter.setServerUrl(getUrl());
+        new SunshineSyncAdapter(context, false).onPerformSync(null, new Bundle(),
+                context.getString(R.string.content_authority), null, new SyncResult());
+    }
+
+    public int getRequestCount() {
+        return mRequestCount.get();
+    }
+
+    /**
+     * Stops answering, and points syncs back at OpenWeatherMap.
+     */
+    public void stop() throws IOException {
+        SunshineSyncAdapter.setServerUrl(null);
+        mSocket.close();
+    }
+
+    private void serve() {
+        while (!mSocket.isClosed()) {
+            Socket client;
+            try {
+                client = mSocket.accept();
+            } catch (IOException e) {
+                // Closed by stop
+                return;
+            }
+            try {
+                respond(client);
+            } catch (IOException e) {
+                Log.w(LOG_TAG, "Could not answer a request", e);
+            } finally {
+                try {
+                    client.close();
+                } catch (IOException e) {
+                    Log.w(LOG_TAG, "Could not close a connection", e);
+                }
+            }
+        }
+    }
+
+    private void respond(Socket client) throws IOException {
+        BufferedReader reader = new BufferedReader(
+                new InputStreamReader(client.getInputStream(), "UTF-8"));
+        String requestLine = reader.readLine();
+        // Skip the headers; requests have no body
+        String header;
+        while ((header = reader.readLine()) != null && header.length() > 0) {
+            // Nothing needed from them
+        }
+        mRequestCount.incrementAndGet();
+
+        String[] request = requestLine == null ? new String[0] : requestLine.split(" ");
+        String path = request.length > 1 ? request[1] : "";
+        String status = "200 OK";
+        String body;
+        if (path.contains("/forecast/daily")) {
+            body = mDailyJson;
+        } else if (path.contains("/forecast")) {
+            body = mHourlyJson;
+        } else {
+            status = "404 Not Found";
+            body = "{\"cod\":\"404\"}";
+        }
+        byte[] bytes = body.getBytes("UTF-8");
+        OutputStream out = client.getOutputStream();
+        out.write(("HTTP/1.1 " + status + "\r\n"
+                + "Content-Type: application/json; charset=utf-8\r\n"
+                + "Content-Length: " + bytes.length + "\r\n"
+                + "Connection: close\r\n\r\n").getBytes("UTF-8"));
+        out.write(bytes);
+        out.flush();
+    }
+
+    private static String createDailyJson(long nowSeconds) {
+        StringBuilder json = new StringBuilder()
+                .append("{\"cod\":\"200\",\"city\":{\"name\":\"Mountain View\",")
+                .append("\"coord\":{\"lat\":37.4056,\"lon\":-122.0775}},")
+                .append("\"cnt\":").append(DAYS).append(",\"list\":[");
+        for (int i = 0; i < DAYS; i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append("{\"dt\":").append(nowSeconds + i * 24 * HOUR_IN_SECONDS)
+                    .append(",\"temp\":{\"min\":").append(10 + i % 3)
+                    .append(",\"max\":").append(20 + i % 5).append('}')
+                    .append(",\"pressure\":").append(1013.2 + i)
+                    .append(",\"humidity\":").append(60 + i)
+                    .append(",\"weather\":[{\"id\":").append(i % 2 == 0 ? 800 : 500)
+                    .append(",\"main\":\"").append(i % 2 == 0 ? "Clear" : "Rain").append("\"}]")
+                    .append(",\"speed\":").append(3.5)
+                    .append(",\"deg\":").append(i * 20)
+                    .append('}');
+        }
+        return json.append("]}").toString();
+    }
+
+    private static String createHourlyJson(long nowSeconds) {
+        StringBuilder json = new StringBuilder().append("{\"cod\":\"200\",\"list\":[");
+        int hours = 5 * 24 / HOURS_STEP;
+        for (int i = 0; i < hours; i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append("{\"dt\":").append(nowSeconds + i * HOURS_STEP * HOUR_IN_SECONDS)
+                    .append(",\"main\":{\"temp\":").append(15 + i % 8)
+                    .append(",\"humidity\":").append(60)
+                    .append(",\"pressure\":").append(1013.2).append('}')
+                    .append(",\"wind\":{\"speed\":").append(3.5)
+                    .append(",\"deg\":").append(180).append('}')
+                    .append(",\"weather\":[{\"id\":").append(800).append("}]")
+                    .append('}');
+        }
+        return json.append("]}").toString();
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.benchmark;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.test.AndroidTestCase;
+import android.view.View;
+
+import com.example.android.sunshine.app.TemperatureChartView;
+import com.example.android.sunshine.app.data.WeatherContract;
+import com.example.android.sunshine.app.utils.PollingCheck;
+
+/*
+    Scrolls the selection of a chart back and forth across its days, drawing a frame for each
+    step, and measures how long the frames take to draw.
+ */
+public class TestChartScroll extends AndroidTestCase {
+
+    private static final int DAYS = 15;
+    private static final int FRAMES = 600;
+    // A 60 fps frame is 16ms, and drawing the chart should only be a small part of it
+    private static final double MAX_P95_MILLIS = 4;
+
+    private static final int WIDTH = 1080;
+    private static final int HEIGHT = 360;
+
+    private TemperatureChartView mChartView;
+    private long[] mDates;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        long today = WeatherContract.normalizeDate(System.currentTimeMillis());
+        mDates = new long[DAYS];
+        double[] highs = new double[DAYS];
+        double[] lows = new double[DAYS];
+        for (int i = 0; i < DAYS; i++) {
+            mDates[i] = WeatherContract.addDays(today, i - DAYS / 2);
+            highs[i] = 20 + 5 * Math.sin(i);
+            lows[i] = highs[i] - 8 - (i % 3);
+        }
+
+        mChartView = new TemperatureChartView(mContext);
+        mChartView.measure(View.MeasureSpec.makeMeasureSpec(WIDTH, View.MeasureSpec.EXACTLY),
+                View.MeasureSpec.makeMeasureSpec(HEIGHT, View.MeasureSpec.EXACTLY));
+        mChartView.layout(0, 0, WIDTH, HEIGHT);
+        mChartView.setTemperatures(new TemperatureChartView.Temperatures(mDates, highs, lows));
+
+        // The geometry is computed in the background and swapped in on the main thread
+        new PollingCheck(5000) {
+            @Override
+            protected boolean check() {
+                return mChartView.hasGeometry();
+            }
+        }.run();
+    }
+
+    public void testFrameTime() {
+        Bitmap bitmap = Bitmap.createBitmap(WIDTH, HEIGHT, Bitmap.Config.ARGB_8888);
+        Canvas canvas = new Canvas(bitmap);
+
+        // Warm up, so the first frames don't pay for class loading and glyph caching
+        for (int i = 0; i < DAYS; i++) {
+            mChartView.setSelectedDate(mDates[i]);
+            mChartView.draw(canvas);
+        }
+
+        long[] frameNanos = new long[FRAMES];
+        for (int frame = 0; frame < FRAMES; frame++) {
+            // Back and forth across the days, the way a finger scrolls the selection
+            int day = frame % (2 * DAYS - 2);
+            if (day >= DAYS) {
+                day = 2 * DAYS - 2 - day;
+            }
+            long start = System.nanoTime();
+            mChartView.setSelectedDate(mDates[day]);
+            mChartView.draw(canvas);
+            frameNanos[frame] = System.nanoTime() - start;
+        }
+        bitmap.recycle();
+
+        // A stray GC or scheduler hiccup shouldn't fail the benchmark, but regular slow frames do
+        BenchmarkReport report = new BenchmarkReport("chart_scroll");
+        report.add("frame_p50", toMillis(BenchmarkReport.percentile(frameNanos, 50)), "ms");
+        report.add("frame_p95", toMillis(BenchmarkReport.percentile(frameNanos, 95)), "ms",
+                MAX_P95_MILLIS);
+        report.finish(mContext);
+    }
+
+    private static double toMillis(long nanos) {
+        return nanos / 1e6;
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.benchmark;
+
+import android.app.Activity;
+import android.content.Context;
+import android.content.Intent;
+import android.os.SystemClock;
+import android.test.InstrumentationTestCase;
+import android.text.TextUtils;
+import android.widget.TextView;
+
+import com.example.android.sunshine.app.DetailActivity;
+import com.example.android.sunshine.app.R;
+import com.example.android.sunshine.app.Utility;
+import com.example.android.sunshine.app.data.WeatherContract;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+/*
+    Opens a day of a stored forecast in DetailActivity, and measures the time from starting the
+    activity to the day being shown: first right after the forecast changed, then while the
+    forecast is still in memory.
+ */
+public class TestDetailLoad extends InstrumentationTestCase {
+
+    private static final int FORECAST_DAYS = 14;
+    private static final int WARM_LOADS = 5;
+    // Shown days are polled more finely than PollingCheck does
+    private static final long POLL_MILLIS = 5;
+    private static final long TIMEOUT_MILLIS = 5000;
+    private static final double MAX_FIRST_LOAD_MILLIS = 1000;
+    private static final double MAX_WARM_LOAD_MEDIAN_MILLIS = 500;
+
+    private Context mContext;
+    private Intent mIntent;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mContext = getInstrumentation().getTargetContext();
+        String location = Utility.getPreferredLocation(mContext);
+        // Also makes the forecast held in memory stale, so the first load reads it again
+        SeededDatabase.seed(mContext, location, FORECAST_DAYS);
+        long tomorrow = WeatherContract.addDays(
+                WeatherContract.normalizeDate(System.currentTimeMillis()), 1);
+        mIntent = new Intent(mContext, DetailActivity.class)
+                .setData(WeatherEntry.buildWeatherLocationWithDate(location, tomorrow))
+                .addFlags(Intent.FLAG_ACTIVITY_NEW_TASK);
+    }
+
+    public void testLoadTime() {
+        long firstLoad = load();
+        long[] warmLoads = new long[WARM_LOADS];
+        for (int i = 0; i < WARM_LOADS; i++) {
+            warmLoads[i] = load();
+        }
+
+        BenchmarkReport report = new BenchmarkReport("detail_load");
+        report.add("first_load", firstLoad, "ms", MAX_FIRST_LOAD_MILLIS);
+        report.add("warm_load_median", BenchmarkReport.median(warmLoads), "ms",
+                MAX_WARM_LOAD_MEDIAN_MILLIS);
+        report.finish(mContext);
+    }
+
+    private long load() {
+        long start = SystemClock.uptimeMillis();
+        Activity activity = getInstrumentation().startActivitySync(mIntent);
+        final TextView dateView = (TextView) activity.findViewById(R.id.detail_date_textview);
+        final boolean[] shown = new boolean[1];
+        while (true) {
+            getInstrumentation().runOnMainSync(new Runnable() {
+                @Override
+                public void run() {
+                    shown[0] = !TextUtils.isEmpty(dateView.getText());
+                }
+            });
+            if (shown[0]) {
+                break;
+            }
+            assertTrue("Error: The day was never shown",
+                    SystemClock.uptimeMillis() - start < TIMEOUT_MILLIS);
+            SystemClock.sleep(POLL_MILLIS);
+        }
+        long millis = SystemClock.uptimeMillis() - start;
+        activity.finish();
+        getInstrumentation().waitForIdleSync();
+        return millis;
+    }
+}
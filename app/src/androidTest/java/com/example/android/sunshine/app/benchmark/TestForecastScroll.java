@@ -0,0 +1,184 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.benchmark;
+
+import android.annotation.TargetApi;
+import android.app.Activity;
+import android.content.Context;
+import android.content.Intent;
+import android.os.Build;
+import android.support.v7.widget.RecyclerView;
+import android.test.InstrumentationTestCase;
+import android.util.Log;
+import android.view.Choreographer;
+
+import com.example.android.sunshine.app.MainActivity;
+import com.example.android.sunshine.app.R;
+import com.example.android.sunshine.app.Utility;
+import com.example.android.sunshine.app.utils.PollingCheck;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+    Flings the forecast list of a year of stored days down and back up, and measures the time
+    between the frames drawn meanwhile.
+ */
+public class TestForecastScroll extends InstrumentationTestCase {
+
+    private static final String LOG_TAG = TestForecastScroll.class.getSimpleName();
+
+    private static final int FORECAST_DAYS = 365;
+    private static final int FLINGS = 4;
+    private static final int FLING_VELOCITY = 8000;
+    // A frame later than this missed at least one 60Hz vsync
+    private static final long JANK_NANOS = 25 * 1000 * 1000;
+    // Most frames should make the next 60Hz vsync, and few should miss more than two
+    private static final double MAX_P50_MILLIS = 17;
+    private static final double MAX_P90_MILLIS = 25;
+    private static final double MAX_P99_MILLIS = 50;
+    private static final double MAX_JANK_PERCENT = 10;
+    private static final long TIMEOUT_MILLIS = 10000;
+
+    private Context mContext;
+    private Activity mActivity;
+    private RecyclerView mRecyclerView;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mContext = getInstrumentation().getTargetContext();
+        SeededDatabase.seed(mContext, Utility.getPreferredLocation(mContext), FORECAST_DAYS);
+        mActivity = getInstrumentation().startActivitySync(new Intent(mContext, MainActivity.class)
+                .addFlags(Intent.FLAG_ACTIVITY_NEW_TASK));
+        mRecyclerView = (RecyclerView) mActivity.findViewById(R.id.recyclerview_forecast);
+        new PollingCheck(TIMEOUT_MILLIS) {
+            @Override
+            protected boolean check() {
+                return mRecyclerView.getChildCount() > 0;
+            }
+        }.run();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mActivity.finish();
+        getInstrumentation().waitForIdleSync();
+        super.tearDown();
+    }
+
+    public void testFlingFrameTimes() {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN) {
+            Log.w(LOG_TAG, "Frame times need Choreographer, skipping");
+            return;
+        }
+        final FrameRecorder recorder = new FrameRecorder();
+        getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                recorder.start();
+            }
+        });
+        for (int i = 0; i < FLINGS; i++) {
+            // Down, then back up
+            fling(i % 2 == 0 ? FLING_VELOCITY : -FLING_VELOCITY);
+        }
+        getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                recorder.stop();
+            }
+        });
+
+        long[] frameNanos = recorder.getFrameNanos();
+        assertTrue("Error: No frames were drawn while flinging", frameNanos.length > 0);
+        int janky = 0;
+        for (long nanos : frameNanos) {
+            if (nanos > JANK_NANOS) {
+                janky++;
+            }
+        }
+        BenchmarkReport report = new BenchmarkReport("forecast_scroll");
+        report.add("frame_p50", toMillis(BenchmarkReport.percentile(frameNanos, 50)), "ms",
+                MAX_P50_MILLIS);
+        report.add("frame_p90", toMillis(BenchmarkReport.percentile(frameNanos, 90)), "ms",
+                MAX_P90_MILLIS);
+        report.add("frame_p99", toMillis(BenchmarkReport.percentile(frameNanos, 99)), "ms",
+                MAX_P99_MILLIS);
+        report.add("janky_frames", 100.0 * janky / frameNanos.length, "%", MAX_JANK_PERCENT);
+        report.finish(mContext);
+    }
+
+    private void fling(final int velocity) {
+        getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                mRecyclerView.fling(0, velocity);
+            }
+        });
+        new PollingCheck(TIMEOUT_MILLIS) {
+            @Override
+            protected boolean check() {
+                return mRecyclerView.getScrollState() == RecyclerView.SCROLL_STATE_IDLE;
+            }
+        }.run();
+    }
+
+    private static double toMillis(long nanos) {
+        return nanos / 1e6;
+    }
+
+    /**
+     * Asks for every frame while it runs, and keeps the time between each and the one before.
+     * Only used on the main thread.
+     */
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+    private static final class FrameRecorder implements Choreographer.FrameCallback {
+        private final List<Long> mFrameNanos = new ArrayList<>();
+        private long mLastFrameTimeNanos;
+        private boolean mRunning;
+
+        void start() {
+            mRunning = true;
+            Choreographer.getInstance().postFrameCallback(this);
+        }
+
+        void stop() {
+            mRunning = false;
+            Choreographer.getInstance().removeFrameCallback(this);
+        }
+
+        @Override
+        public void doFrame(long frameTimeNanos) {
+            if (!mRunning) {
+                return;
+            }
+            if (mLastFrameTimeNanos != 0) {
+                mFrameNanos.add(frameTimeNanos - mLastFrameTimeNanos);
+            }
+            mLastFrameTimeNanos = frameTimeNanos;
+            Choreographer.getInstance().postFrameCallback(this);
+        }
+
+        long[] getFrameNanos() {
+            long[] frameNanos = new long[mFrameNanos.size()];
+            for (int i = 0; i < frameNanos.length; i++) {
+                frameNanos[i] = mFrameNanos.get(i);
+            }
+            return frameNanos;
+        }
+    }
+}
@@ -0,0 +1,316 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.benchmark;
+
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.content.Context;
+import android.content.UriMatcher;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Build;
+import android.os.Bundle;
+import android.os.Debug;
+import android.test.InstrumentationTestCase;
+import android.test.InstrumentationTestRunner;
+
+import com.example.android.sunshine.app.data.HourlyForecast;
+import com.example.android.sunshine.app.data.WeatherContract;
+import com.example.android.sunshine.app.data.WeatherContract.HourlyEntry;
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+import com.example.android.sunshine.app.data.WeatherProvider;
+
+/*
+    Measures the provider's queries per Uri type, bulk inserts, the archiving of expired days
+    and its UriMatcher, over the rows SeededDatabase creates, and reports operations per second
+    and allocations per operation for each number of stored days.
+
+    The provider runs in the test's process, so its allocations are counted on the calling
+    thread. The stored days default to DEFAULT_DAYS, and can be set with the comma separated
+    instrumentation argument "providerDays" on API 18 and up:
+    adb shell am instrument -w -e providerDays 365,3650,36500 ...
+ */
+public class TestProviderBenchmark extends InstrumentationTestCase {
+
+    private static final String ARG_DAYS = "providerDays";
+    private static final int[] DEFAULT_DAYS = {14, 365, 3650};
+    private static final int[] BULK_INSERT_ROWS = {14, 365, 10000};
+    // The days a sync stores, and the hours stored for them
+    private static final int FORECAST_DAYS = 14;
+    private static final int HOURS_STEP = 3;
+    private static final int SUMMARY_WINDOW_DAYS = 7;
+    // Each measurement repeats its operation for at least this long
+    private static final long MIN_NANOS = 500 * 1000 * 1000L;
+    private static final int MIN_OPS = 5;
+    private static final int MATCHES_PER_OP = 1000;
+
+    private static final String LOCATION = "99705";
+    // December 20th, 2014
+    private static final long FIRST_DATE = WeatherContract.normalizeDate(1419033600L);
+
+    private Context mContext;
+    private ContentResolver mResolver;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mContext = getInstrumentation().getTargetContext();
+        mResolver = mContext.getContentResolver();
+        deleteAll();
+        Debug.startAllocCounting();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        Debug.stopAllocCounting();
+        deleteAll();
+        super.tearDown();
+    }
+
+    public void testQueries() {
+        BenchmarkReport report = new BenchmarkReport("provider_query");
+        for (int days : getDays()) {
+            long locationId = insertDays(days);
+            // Older days live in the archive and its summary, the sync's last two weeks in the
+            // weather table
+            long today = WeatherContract.addDays(FIRST_DATE, Math.max(0, days - FORECAST_DAYS));
+            mResolver.delete(WeatherEntry.buildWeatherLocationBeforeDate(
+                    LOCATION, today), null, null);
+            long lastDate = WeatherContract.addDays(FIRST_DATE, days - 1);
+            long yesterday = WeatherContract.addDays(today, -1);
+            boolean hourly = Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB;
+            if (hourly) {
+                insertHours(locationId, today);
+            }
+
+            String suffix = "_" + days + "_days";
+            measureQuery(report, "weather" + suffix, WeatherEntry.CONTENT_URI);
+            measureQuery(report, "weather_with_location" + suffix,
+                    WeatherEntry.buildWeatherLocationWithStartDate(
+                            LOCATION, today));
+            measureQuery(report, "weather_with_location_and_date" + suffix,
+                    WeatherEntry.buildWeatherLocationWithDate(LOCATION, today));
+            measureQuery(report, "weather_batch" + suffix, WeatherEntry.buildWeatherBatchUri(
+                    new String[]{LOCATION}, new long[]{today}, new long[]{lastDate}));
+            if (today > FIRST_DATE) {
+                measureQuery(report, "weather_history" + suffix,
+                        WeatherEntry.buildWeatherHistoryUri(
+                                LOCATION, FIRST_DATE, yesterday));
+                measureQuery(report, "weather_summary" + suffix,
+                        WeatherContract.SummaryEntry.buildRollingMeanUri(
+                                LOCATION, FIRST_DATE, yesterday,
+                                SUMMARY_WINDOW_DAYS));
+            }
+            if (hourly) {
+                measureQuery(report, "hourly" + suffix, HourlyEntry.CONTENT_URI);
+                measureQuery(report, "hourly_with_location_and_date" + suffix,
+                        HourlyEntry.buildHourlyLocationWithDate(
+                                LOCATION, today));
+            }
+            measureQuery(report, "location" + suffix, LocationEntry.CONTENT_URI);
+            deleteAll();
+        }
+        report.finish(mContext);
+    }
+
+    public void testBulkInsert() {
+        BenchmarkReport report = new BenchmarkReport("provider_bulk_insert");
+        for (int rows : BULK_INSERT_ROWS) {
+            long locationId = insertLocation();
+            ContentValues[] values = createDays(locationId, 0, rows);
+            Meter meter = new Meter();
+            while (!meter.isDone()) {
+                mResolver.delete(WeatherEntry.CONTENT_URI, null, null);
+                meter.start();
+                int inserted = mResolver.bulkInsert(WeatherEntry.CONTENT_URI, values);
+                meter.stop(1);
+                assertEquals("Error: Not every row was inserted", rows, inserted);
+            }
+            meter.report(report, rows + "_rows");
+            deleteAll();
+        }
+        report.finish(mContext);
+    }
+
+    public void testDeleteExpired() {
+        BenchmarkReport report = new BenchmarkReport("provider_delete_expired");
+        for (int days : getDays()) {
+            // Everything but the last two weeks has expired, as after a sync
+            int expired = Math.max(0, days - FORECAST_DAYS);
+            Uri uri = WeatherEntry.buildWeatherLocationBeforeDate(LOCATION,
+                    WeatherContract.addDays(FIRST_DATE, expired));
+            Meter meter = new Meter();
+            while (!meter.isDone()) {
+                deleteAll();
+                insertDays(days);
+                meter.start();
+                int deleted = mResolver.delete(uri, null, null);
+                meter.stop(1);
+                assertEquals("Error: Not every expired day was deleted", expired, deleted);
+            }
+            meter.report(report, days + "_days");
+        }
+        report.finish(mContext);
+    }
+
+    public void testUriMatcher() {
+        UriMatcher matcher = WeatherProvider.buildUriMatcher();
+        Uri[] uris = {
+                WeatherEntry.CONTENT_URI,
+                WeatherEntry.buildWeatherLocation(LOCATION),
+                WeatherEntry.buildWeatherLocationWithDate(LOCATION, FIRST_DATE),
+                WeatherEntry.buildWeatherBatchUri(new String[]{LOCATION},
+                        new long[]{FIRST_DATE}, new long[]{FIRST_DATE}),
+                WeatherEntry.buildWeatherHistoryUri(
+                        LOCATION, FIRST_DATE, FIRST_DATE),
+                WeatherContract.SummaryEntry.buildRollingMeanUri(LOCATION,
+                        FIRST_DATE, FIRST_DATE, SUMMARY_WINDOW_DAYS),
+                HourlyEntry.CONTENT_URI,
+                HourlyEntry.buildHourlyLocationWithDate(LOCATION, FIRST_DATE),
+                LocationEntry.CONTENT_URI
+        };
+        // Uri caches its path segments, so the matches below measure the matcher alone
+        for (Uri uri : uris) {
+            assertTrue("Error: " + uri + " wasn't matched", matcher.match(uri) != -1);
+        }
+
+        BenchmarkReport report = new BenchmarkReport("provider_uri_matcher");
+        Meter meter = new Meter();
+        while (!meter.isDone()) {
+            meter.start();
+            for (int i = 0; i < MATCHES_PER_OP; i++) {
+                matcher.match(uris[i % uris.length]);
+            }
+            meter.stop(MATCHES_PER_OP);
+        }
+        meter.report(report, "match");
+        report.finish(mContext);
+    }
+
+    private void measureQuery(BenchmarkReport report, String name, Uri uri) {
+        Meter meter = new Meter();
+        while (!meter.isDone()) {
+            meter.start();
+            Cursor cursor = mResolver.query(uri, null, null, null, null);
+            assertNotNull("Error: " + uri + " returned no cursor", cursor);
+            // Filling the window is most of the work, and a caller always does it
+            while (cursor.moveToNext()) {
+                cursor.getLong(0);
+            }
+            cursor.close();
+            meter.stop(1);
+        }
+        meter.report(report, name);
+    }
+
+    /*
+        The numbers of days to store, from the instrumentation's arguments if given
+     */
+    private int[] getDays() {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2
+                && getInstrumentation() instanceof InstrumentationTestRunner) {
+            Bundle arguments = ((InstrumentationTestRunner) getInstrumentation()).getArguments();
+            String days = arguments != null ? arguments.getString(ARG_DAYS) : null;
+            if (days != null) {
+                String[] values = days.split(",");
+                int[] result = new int[values.length];
+                for (int i = 0; i < values.length; i++) {
+                    result[i] = Integer.parseInt(values[i].trim());
+                }
+                return result;
+            }
+        }
+        return DEFAULT_DAYS;
+    }
+
+    private long insertLocation() {
+        return SeededDatabase.insertLocation(mContext, LOCATION);
+    }
+
+    // Stores the location and the given number of days from FIRST_DATE on
+    private long insertDays(int days) {
+        long locationId = insertLocation();
+        mResolver.bulkInsert(WeatherEntry.CONTENT_URI, createDays(locationId, 0, days));
+        return locationId;
+    }
+
+    private static ContentValues[] createDays(long locationId, int firstDay, int days) {
+        ContentValues[] values = new ContentValues[days];
+        for (int i = 0; i < days; i++) {
+            values[i] = SeededDatabase.createDay(locationId,
+                    WeatherContract.addDays(FIRST_DATE, firstDay + i), firstDay + i);
+        }
+        return values;
+    }
+
+    private void insertHours(long locationId, long firstDate) {
+        ContentValues[] hours = new ContentValues[FORECAST_DAYS];
+        for (int day = 0; day < FORECAST_DAYS; day++) {
+            HourlyForecast.Builder builder = new HourlyForecast.Builder(
+                    WeatherContract.addDays(firstDate, day));
+            for (int hour = 0; hour < 24; hour += HOURS_STEP) {
+                builder.add(hour, 800, 10.5 + hour, 80, 1013.25, 3.5, hour * 15);
+            }
+            hours[day] = builder.build().toContentValues();
+            hours[day].put(HourlyEntry.COLUMN_LOC_KEY, locationId);
+        }
+        mResolver.bulkInsert(HourlyEntry.CONTENT_URI, hours);
+    }
+
+    private void deleteAll() {
+        mResolver.delete(HourlyEntry.CONTENT_URI, null, null);
+        mResolver.delete(WeatherEntry.CONTENT_URI, null, null);
+        // Also deletes the locations' summaries. Their archive files stay, and archiving the
+        // same days again replaces them.
+        mResolver.delete(LocationEntry.CONTENT_URI, null, null);
+    }
+
+    /*
+        Adds up the time and allocations of an operation repeated until enough of it was
+        measured. Only counts what happens between start() and stop().
+     */
+    private static final class Meter {
+        private long mNanos;
+        private long mAllocations;
+        private long mAllocatedBytes;
+        private int mOps;
+        private long mStartNanos;
+
+        boolean isDone() {
+            return mOps >= MIN_OPS && mNanos >= MIN_NANOS;
+        }
+
+        void start() {
+            Debug.resetThreadAllocCount();
+            Debug.resetThreadAllocSize();
+            mStartNanos = System.nanoTime();
+        }
+
+        void stop(int ops) {
+            mNanos += System.nanoTime() - mStartNanos;
+            mAllocations += Debug.getThreadAllocCount();
+            mAllocatedBytes += Debug.getThreadAllocSize();
+            mOps += ops;
+        }
+
+        void report(BenchmarkReport report, String name) {
+            report.add(name + "_ops", mOps * 1e9 / mNanos, "ops/s");
+            report.add(name + "_allocations", (double) mAllocations / mOps, "objects/op");
+            report.add(name + "_allocated", (double) mAllocatedBytes / mOps, "bytes/op");
+        }
+    }
+}
@@ -0,0 +1,138 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.benchmark;
+
+import android.app.Activity;
+import android.content.Context;
+import android.content.Intent;
+import android.test.InstrumentationTestCase;
+
+import com.example.android.sunshine.app.LastForecastRows;
+import com.example.android.sunshine.app.MainActivity;
+import com.example.android.sunshine.app.StartupTasks;
+import com.example.android.sunshine.app.Utility;
+import com.example.android.sunshine.app.data.ForecastRepository;
+import com.example.android.sunshine.app.utils.PollingCheck;
+
+/*
+    Launches MainActivity and measures the time from its onCreate to the first forecast row
+    being drawn: from an empty database synced against the stand-in server, from a stored two
+    week forecast, and from the rows saved after the last sync.
+
+    The activity is started in the test's process, so the times don't include starting the
+    process. `adb shell am start -W` measures that part.
+ */
+public class TestStartup extends InstrumentationTestCase {
+
+    private static final int LAUNCHES = 5;
+    private static final int FORECAST_DAYS = 14;
+    // Generous, so only a regression like a blocking call before the first frame fails it
+    private static final long MAX_MEDIAN_MILLIS = 1500;
+    // The saved rows are bound without waiting for the database
+    private static final long MAX_SAVED_ROWS_MEDIAN_MILLIS = 1000;
+    // Includes a sync against the stand-in server
+    private static final long MAX_EMPTY_MEDIAN_MILLIS = 3000;
+    private static final long TIMEOUT_MILLIS = 10000;
+
+    private Context mContext;
+    private String mLocation;
+    private StandInServer mServer;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mContext = getInstrumentation().getTargetContext();
+        mLocation = Utility.getPreferredLocation(mContext);
+        mServer = StandInServer.start();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mServer.stop();
+        LastForecastRows.delete(mContext);
+        super.tearDown();
+    }
+
+    public void testTimeToFirstForecastRow() {
+        SeededDatabase.seed(mContext, mLocation, FORECAST_DAYS);
+        long[] millis = new long[LAUNCHES];
+        for (int i = 0; i < LAUNCHES; i++) {
+            // Rows saved by an earlier sync would be drawn before the loader's
+            LastForecastRows.delete(mContext);
+            Activity activity = launch();
+            millis[i] = awaitFirstForecastRow();
+            finish(activity);
+        }
+        report("startup_loader", millis, MAX_MEDIAN_MILLIS);
+    }
+
+    public void testTimeToFirstSavedForecastRow() {
+        SeededDatabase.seed(mContext, mLocation, FORECAST_DAYS);
+        LastForecastRows.write(mContext, mLocation,
+                ForecastRepository.get(mContext).getForecast(mLocation));
+        long[] millis = new long[LAUNCHES];
+        for (int i = 0; i < LAUNCHES; i++) {
+            Activity activity = launch();
+            millis[i] = awaitFirstForecastRow();
+            finish(activity);
+        }
+        report("startup_saved_rows", millis, MAX_SAVED_ROWS_MEDIAN_MILLIS);
+    }
+
+    public void testTimeToFirstForecastRowFromEmptyDatabase() {
+        long[] millis = new long[LAUNCHES];
+        for (int i = 0; i < LAUNCHES; i++) {
+            SeededDatabase.clear(mContext);
+            LastForecastRows.delete(mContext);
+            Activity activity = launch();
+            // What the first launch's sync request ends up doing, without waiting for the
+            // system to schedule it
+            mServer.runSync(mContext);
+            millis[i] = awaitFirstForecastRow();
+            finish(activity);
+        }
+        assertTrue("Error: The stand-in server was never asked",
+                mServer.getRequestCount() >= LAUNCHES);
+        report("startup_empty_database", millis, MAX_EMPTY_MEDIAN_MILLIS);
+    }
+
+    private Activity launch() {
+        Intent intent = new Intent(mContext, MainActivity.class)
+                .addFlags(Intent.FLAG_ACTIVITY_NEW_TASK);
+        return getInstrumentation().startActivitySync(intent);
+    }
+
+    private static long awaitFirstForecastRow() {
+        new PollingCheck(TIMEOUT_MILLIS) {
+            @Override
+            protected boolean check() {
+                return StartupTasks.getTimeToFirstForecastRow() >= 0;
+            }
+        }.run();
+        return StartupTasks.getTimeToFirstForecastRow();
+    }
+
+    private void finish(Activity activity) {
+        activity.finish();
+        getInstrumentation().waitForIdleSync();
+    }
+
+    private void report(String name, long[] millis, long maxMedianMillis) {
+        BenchmarkReport report = new BenchmarkReport(name);
+        report.add("first_row_median", BenchmarkReport.median(millis), "ms", maxMedianMillis);
+        report.finish(mContext);
+    }
+}
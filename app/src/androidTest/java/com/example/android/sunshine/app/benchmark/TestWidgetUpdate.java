@@ -0,0 +1,75 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.benchmark;
+
+import android.content.ContentValues;
+import android.os.SystemClock;
+import android.test.AndroidTestCase;
+
+import com.example.android.sunshine.app.Utility;
+import com.example.android.sunshine.app.data.WeatherContract;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+import com.example.android.sunshine.app.widget.WidgetUpdateService;
+
+/*
+    Changes today's high in the provider, asks for a widget update, and measures the time until
+    the widgets' forecast has the new high.
+ */
+public class TestWidgetUpdate extends AndroidTestCase {
+
+    private static final int FORECAST_DAYS = 14;
+    private static final int UPDATES = 5;
+    private static final long POLL_MILLIS = 5;
+    private static final long TIMEOUT_MILLIS = 5000;
+    // The update service's coalescing window, plus the update itself
+    private static final double MAX_MEDIAN_MILLIS = 550;
+
+    private long mLocationId;
+    private long mToday;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mLocationId = SeededDatabase.seed(mContext, Utility.getPreferredLocation(mContext),
+                FORECAST_DAYS);
+        mToday = WeatherContract.normalizeDate(System.currentTimeMillis());
+    }
+
+    public void testUpdateLatency() {
+        long[] millis = new long[UPDATES];
+        for (int i = 0; i < UPDATES; i++) {
+            double high = 30 + i;
+            long start = SystemClock.uptimeMillis();
+            ContentValues values = new ContentValues();
+            values.put(WeatherEntry.COLUMN_MAX_TEMP, high);
+            mContext.getContentResolver().update(WeatherEntry.CONTENT_URI, values,
+                    WeatherEntry.COLUMN_LOC_KEY + " = ? AND " + WeatherEntry.COLUMN_DATE + " = ?",
+                    new String[]{Long.toString(mLocationId), Long.toString(mToday)});
+            WidgetUpdateService.requestUpdate(mContext);
+
+            while (WidgetUpdateService.getLatestMaxTemp(mToday) != high) {
+                assertTrue("Error: The widgets never got the new high",
+                        SystemClock.uptimeMillis() - start < TIMEOUT_MILLIS);
+                SystemClock.sleep(POLL_MILLIS);
+            }
+            millis[i] = SystemClock.uptimeMillis() - start;
+        }
+
+        BenchmarkReport report = new BenchmarkReport("widget_update");
+        report.add("update_median", BenchmarkReport.median(millis), "ms", MAX_MEDIAN_MILLIS);
+        report.finish(mContext);
+    }
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.os.Build;
+import android.test.AndroidTestCase;
+
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+import com.example.android.sunshine.core.Forecast;
+
+/*
+    Generates patches between two recorded forecast windows, the way the server does, and checks
+    that applying them through the provider brings the stored window to the newer one.
+ */
+public class TestForecastPatch extends AndroidTestCase {
+
+    private static final int WINDOW_DAYS = 14;
+
+    private long mLocationId;
+    private long mToday;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mContext.getContentResolver().delete(WeatherEntry.CONTENT_URI, null, null);
+        mContext.getContentResolver().delete(LocationEntry.CONTENT_URI, null, null);
+        mLocationId = TestUtilities.insertNorthPoleLocationValues(mContext);
+        mToday = WeatherContract.normalizeDate(System.currentTimeMillis());
+    }
+
+    public void testDiffOnlyContainsChangedDays() throws Exception {
+        ContentValues[] before = createWindow(-1);
+        ContentValues[] after = createWindow(0);
+        // One day's high changed
+        after[3].put(WeatherEntry.COLUMN_MAX_TEMP, after[3].getAsDouble(WeatherEntry.COLUMN_MAX_TEMP) + 2);
+
+        ForecastPatch patch = ForecastPatch.diff(1, 2, before, after);
+        // The changed day, plus the day that is new at the end of the shifted window
+        assertEquals("Error: Patch should only contain the changed and the new day", 2, patch.size());
+        assertEquals("Error: Patch window should start at the first new day", mToday, patch.startDate);
+
+        ForecastPatch parsed = ForecastPatch.fromJson(patch.toJson().toString());
+        assertEquals("Error: Patch size changed by serialization", patch.size(), parsed.size());
+        assertEquals(patch.baseVersion, parsed.baseVersion);
+        assertEquals(patch.version, parsed.version);
+        assertEquals(patch.startDate, parsed.startDate);
+    }
+
+    public void testDiffStoredForecast() {
+        ContentValues[] before = createWindow(0);
+        mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI, before);
+
+        Cursor cursor = mContext.getContentResolver().query(
+                WeatherEntry.buildWeatherLocation(TestUtilities.TEST_LOCATION),
+                ForecastPatch.COLUMNS, null, null, WeatherEntry.COLUMN_DATE + " ASC");
+        Forecast stored = ForecastPatch.readForecast(cursor);
+        cursor.close();
+
+        assertEquals("Error: Not every stored day was read", WINDOW_DAYS, stored.size);
+        for (int i = 0; i < WINDOW_DAYS; i++) {
+            assertEquals(before[i].getAsLong(WeatherEntry.COLUMN_DATE).longValue(),
+                    stored.dates[i]);
+            assertEquals(before[i].getAsDouble(WeatherEntry.COLUMN_MAX_TEMP),
+                    stored.maxTemps[i], 0);
+        }
+        assertEquals("Error: An unchanged forecast should need no patch", 0,
+                ForecastPatch.diff(1, 1, stored, stored).size());
+    }
+
+    public void testApplyPatch() throws Exception {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.HONEYCOMB) {
+            return;
+        }
+        ContentValues[] before = createWindow(-1);
+        mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI, before);
+
+        ContentValues[] after = createWindow(0);
+        after[0].put(WeatherEntry.COLUMN_SHORT_DESC, "Snow");
+        after[0].put(WeatherEntry.COLUMN_WEATHER_ID, 600);
+
+        ForecastPatch patch = ForecastPatch.diff(0, 1, before, after);
+        assertTrue("Error: Patch was not applied",
+                patch.applyTo(mContext, TestUtilities.TEST_LOCATION));
+
+        Cursor cursor = mContext.getContentResolver().query(
+                WeatherEntry.buildWeatherLocation(TestUtilities.TEST_LOCATION),
+                ForecastPatch.COLUMNS, null, null, WeatherEntry.COLUMN_DATE + " ASC");
+        assertEquals("Error: Window should have been shifted by a day", WINDOW_DAYS, cursor.getCount());
+        for (ContentValues expected : after) {
+            assertTrue(cursor.moveToNext());
+            expected.remove(WeatherEntry.COLUMN_LOC_KEY);
+            TestUtilities.validateCurrentRecord("Error: Patched row doesn't match", cursor, expected);
+        }
+        cursor.close();
+
+        // The patch was computed against version 0, which the location no longer holds
+        assertFalse("Error: Stale patch was applied",
+                patch.applyTo(mContext, TestUtilities.TEST_LOCATION));
+
+        cursor = mContext.getContentResolver().query(LocationEntry.CONTENT_URI,
+                new String[]{LocationEntry.COLUMN_FORECAST_VERSION}, null, null, null);
+        assertTrue(cursor.moveToFirst());
+        assertEquals("Error: Location version not recorded", 1, cursor.getLong(0));
+        cursor.close();
+    }
+
+    private ContentValues[] createWindow(int firstDay) {
+        ContentValues[] window = new ContentValues[WINDOW_DAYS];
+        for (int i = 0; i < WINDOW_DAYS; i++) {
+            int day = firstDay + i;
+            ContentValues values = TestUtilities.createWeatherValues(mLocationId);
+            values.put(WeatherEntry.COLUMN_DATE, WeatherContract.addDays(mToday, day));
+            values.put(WeatherEntry.COLUMN_MAX_TEMP, 70.0 + day);
+            values.put(WeatherEntry.COLUMN_MIN_TEMP, 60.0 + day);
+            window[i] = values;
+        }
+        return window;
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.os.SystemClock;
+import android.test.AndroidTestCase;
+
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+import com.example.android.sunshine.core.Forecast;
+
+/*
+    Checks that the repository only reads a location's days again after the provider notifies
+    a change to that location.
+ */
+public class TestForecastRepository extends AndroidTestCase {
+
+    private static final String OTHER_LOCATION = "94043";
+    // Notifications reach the repository on a binder thread
+    private static final long NOTIFY_TIMEOUT_MILLIS = 5000;
+
+    private long mLocationId;
+    private long mOtherLocationId;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        deleteAll();
+        mLocationId = insertLocation(TestUtilities.createNorthPoleLocationValues());
+        ContentValues other = TestUtilities.createNorthPoleLocationValues();
+        other.put(LocationEntry.COLUMN_LOCATION_SETTING, OTHER_LOCATION);
+        mOtherLocationId = insertLocation(other);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        deleteAll();
+        super.tearDown();
+    }
+
+    public void testReadsOnlyAfterChanges() {
+        mContext.getContentResolver().insert(WeatherEntry.CONTENT_URI,
+                TestUtilities.createWeatherValues(mLocationId));
+        ForecastRepository repository = ForecastRepository.get(mContext);
+
+        // The provider stores the start of the day
+        long day = WeatherContract.normalizeDate(TestUtilities.TEST_DATE);
+        Forecast forecast = awaitDays(repository, 1);
+        assertEquals(day, forecast.dates[0]);
+        assertEquals("North Pole", forecast.cityName);
+        // Reading the same days again keeps the forecast already delivered
+        assertSame("Error: Days were read again without a change", forecast,
+                repository.getForecast(TestUtilities.TEST_LOCATION));
+
+        // Another location's days don't make these stale
+        mContext.getContentResolver().insert(WeatherEntry.CONTENT_URI,
+                TestUtilities.createWeatherValues(mOtherLocationId));
+        SystemClock.sleep(500);
+        assertSame("Error: Another location's change was delivered", forecast,
+                repository.getForecast(TestUtilities.TEST_LOCATION));
+
+        ContentValues nextDay = TestUtilities.createWeatherValues(mLocationId);
+        nextDay.put(WeatherEntry.COLUMN_DATE, WeatherContract.addDays(day, 1));
+        mContext.getContentResolver().insert(WeatherEntry.CONTENT_URI, nextDay);
+        Forecast changed = awaitDays(repository, 2);
+        assertEquals(1, changed.indexOf(WeatherContract.addDays(day, 1)));
+    }
+
+    // Changes made before the test, like setUp's deletes, may still be on their way
+    private static Forecast awaitDays(ForecastRepository repository, int size) {
+        long timeout = SystemClock.uptimeMillis() + NOTIFY_TIMEOUT_MILLIS;
+        while (true) {
+            Forecast forecast = repository.getForecast(TestUtilities.TEST_LOCATION);
+            if (forecast != null && forecast.size == size) {
+                return forecast;
+            }
+            assertTrue("Error: The change was never read", SystemClock.uptimeMillis() < timeout);
+            SystemClock.sleep(50);
+        }
+    }
+
+    private long insertLocation(ContentValues values) {
+        return ContentUris.parseId(
+                mContext.getContentResolver().insert(LocationEntry.CONTENT_URI, values));
+    }
+
+    private void deleteAll() {
+        mContext.getContentResolver().delete(WeatherEntry.CONTENT_URI, null, null);
+        mContext.getContentResolver().delete(LocationEntry.CONTENT_URI, null, null);
+    }
+}
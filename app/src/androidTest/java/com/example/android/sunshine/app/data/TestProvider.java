@@ -16,19 +16,27 @@
 package com.example.android.sunshine.app.data;
 
 import android.content.ComponentName;
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
+import android.content.ContentResolver;
 import android.content.ContentUris;
 import android.content.ContentValues;
 import android.content.pm.PackageManager;
 import android.content.pm.ProviderInfo;
 import android.database.Cursor;
+import android.database.SQLException;
 import android.database.sqlite.SQLiteDatabase;
 import android.net.Uri;
 import android.os.Build;
+import android.os.Bundle;
 import android.test.AndroidTestCase;
 import android.util.Log;
 
 import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
 import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+import com.example.android.sunshine.core.Forecast;
+
+import java.util.ArrayList;
 
 /*
     Note: This is not a complete set of tests of the Sunshine ContentProvider, but it does test
@@ -512,4 +520,492 @@ public class TestProvider extends AndroidTestCase {
         }
         cursor.close();
     }
+
+    /*
+        This test checks that a batch Uri, and the equivalent call(), return the rows of every
+        (location, date range) pair asked for and nothing else.
+     */
+    public void testBatchQuery() {
+        final String otherLocation = "London, UK";
+        final long millisecondsInADay = 1000*60*60*24;
+
+        long northPoleRowId = TestUtilities.insertNorthPoleLocationValues(mContext);
+        ContentValues otherValues = TestUtilities.createNorthPoleLocationValues();
+        otherValues.put(LocationEntry.COLUMN_LOCATION_SETTING, otherLocation);
+        long otherRowId = ContentUris.parseId(
+                mContext.getContentResolver().insert(LocationEntry.CONTENT_URI, otherValues));
+
+        mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI,
+                createBulkInsertWeatherValues(northPoleRowId));
+        mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI,
+                createBulkInsertWeatherValues(otherRowId));
+
+        // Three days of the first location and two of the second
+        String[] locations = {TestUtilities.TEST_LOCATION, otherLocation};
+        long[] startDates = {TestUtilities.TEST_DATE, TestUtilities.TEST_DATE};
+        long[] endDates = {TestUtilities.TEST_DATE + 2 * millisecondsInADay,
+                TestUtilities.TEST_DATE + millisecondsInADay};
+
+        Cursor cursor = mContext.getContentResolver().query(
+                WeatherEntry.buildWeatherBatchUri(locations, startDates, endDates),
+                null,
+                null,
+                null,
+                null
+        );
+        assertEquals("Error: Batch query returned the wrong number of rows", 5, cursor.getCount());
+        cursor.close();
+
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
+            Bundle result = mContext.getContentResolver().call(WeatherContract.BASE_CONTENT_URI,
+                    WeatherContract.METHOD_QUERY_BATCH, null,
+                    WeatherEntry.buildWeatherBatchExtras(new String[]{WeatherEntry.COLUMN_DATE},
+                            locations, startDates, endDates));
+            assertEquals("Error: Batch call returned the wrong number of rows",
+                    5, result.getParcelableArray(WeatherContract.RESULT_ROWS).length);
+
+            // The call's rows keep their column types, so they read as the same days
+            cursor = mContext.getContentResolver().query(
+                    WeatherEntry.buildWeatherBatchUri(locations, startDates, endDates),
+                    ForecastPatch.COLUMNS, null, null, WeatherEntry.COLUMN_DATE + " ASC");
+            Forecast queried = ForecastPatch.readForecast(cursor);
+            cursor.close();
+            result = mContext.getContentResolver().call(WeatherContract.BASE_CONTENT_URI,
+                    WeatherContract.METHOD_QUERY_BATCH, null,
+                    WeatherEntry.buildWeatherBatchExtras(ForecastPatch.COLUMNS,
+                            locations, startDates, endDates));
+            assertEquals("Error: Batch call rows don't read as the queried days", queried,
+                    ForecastPatch.readForecast(
+                            result.getParcelableArray(WeatherContract.RESULT_ROWS)));
+        }
+    }
+
+    /*
+        This test checks that upserting a location twice updates the one row instead of
+        inserting another.
+     */
+    public void testUpsertLocation() {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.HONEYCOMB) {
+            return;
+        }
+        ContentValues values = TestUtilities.createNorthPoleLocationValues();
+        values.remove(LocationEntry.COLUMN_LOCATION_SETTING);
+
+        Bundle extras = new Bundle();
+        extras.putParcelable(WeatherContract.EXTRA_VALUES, values);
+        long firstRowId = mContext.getContentResolver().call(WeatherContract.BASE_CONTENT_URI,
+                WeatherContract.METHOD_UPSERT_LOCATION, TestUtilities.TEST_LOCATION, extras)
+                .getLong(WeatherContract.RESULT_ID);
+        assertTrue(firstRowId != -1);
+
+        values.put(LocationEntry.COLUMN_CITY_NAME, "Santa's Village");
+        extras.putParcelable(WeatherContract.EXTRA_VALUES, values);
+        long secondRowId = mContext.getContentResolver().call(WeatherContract.BASE_CONTENT_URI,
+                WeatherContract.METHOD_UPSERT_LOCATION, TestUtilities.TEST_LOCATION, extras)
+                .getLong(WeatherContract.RESULT_ID);
+        assertEquals("Error: Upsert inserted the location again", firstRowId, secondRowId);
+
+        Cursor cursor = mContext.getContentResolver().query(
+                LocationEntry.CONTENT_URI,
+                null,
+                null,
+                null,
+                null
+        );
+        assertEquals("Error: Upsert should leave a single location", 1, cursor.getCount());
+        cursor.moveToFirst();
+        assertEquals("Error: Upsert didn't update the location", "Santa's Village",
+                cursor.getString(cursor.getColumnIndex(LocationEntry.COLUMN_CITY_NAME)));
+        cursor.close();
+    }
+
+    /*
+        This test reads a location's weather a page at a time, and checks that the pages follow
+        each other by date without skipping or repeating a row.
+     */
+    public void testPagedQuery() {
+        long locationRowId = TestUtilities.insertNorthPoleLocationValues(mContext);
+        mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI,
+                createBulkInsertWeatherValues(locationRowId));
+
+        final int pageSize = 4;
+        Uri pageUri = WeatherEntry.buildWeatherLocationPage(TestUtilities.TEST_LOCATION,
+                TestUtilities.TEST_DATE, pageSize);
+        int rowsRead = 0;
+        long lastDate = 0;
+        while (pageUri != null) {
+            Cursor cursor = mContext.getContentResolver().query(pageUri,
+                    new String[]{WeatherEntry.COLUMN_DATE}, null, null, null);
+            assertTrue("Error: Page is larger than asked for", cursor.getCount() <= pageSize);
+            while (cursor.moveToNext()) {
+                assertTrue("Error: Pages should be read in date order",
+                        cursor.getLong(0) > lastDate);
+                lastDate = cursor.getLong(0);
+                rowsRead++;
+            }
+            pageUri = cursor.getCount() < pageSize
+                    ? null : WeatherEntry.buildWeatherNextPageUri(pageUri, lastDate);
+            cursor.close();
+        }
+        assertEquals("Error: Pages didn't return every row once",
+                BULK_INSERT_RECORDS_TO_INSERT, rowsRead);
+    }
+
+    /*
+        This test moves the older half of a location's days to the archive, and checks that they
+        leave the weather table and can be read back from the history Uri.
+     */
+    public void testArchiveBefore() {
+        final long millisecondsInADay = 1000*60*60*24;
+        final int archivedDays = BULK_INSERT_RECORDS_TO_INSERT / 2;
+
+        long locationRowId = TestUtilities.insertNorthPoleLocationValues(mContext);
+        mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI,
+                createBulkInsertWeatherValues(locationRowId));
+
+        int archived = mContext.getContentResolver().delete(
+                WeatherEntry.buildWeatherLocationBeforeDate(TestUtilities.TEST_LOCATION,
+                        TestUtilities.TEST_DATE + archivedDays * millisecondsInADay),
+                null, null);
+        assertEquals("Error: Wrong number of days archived", archivedDays, archived);
+
+        Cursor cursor = mContext.getContentResolver().query(
+                WeatherEntry.buildWeatherLocation(TestUtilities.TEST_LOCATION),
+                null, null, null, null);
+        assertEquals("Error: Archived days should have left the weather table",
+                BULK_INSERT_RECORDS_TO_INSERT - archivedDays, cursor.getCount());
+        cursor.close();
+
+        cursor = mContext.getContentResolver().query(
+                WeatherEntry.buildWeatherHistoryUri(TestUtilities.TEST_LOCATION,
+                        TestUtilities.TEST_DATE,
+                        TestUtilities.TEST_DATE + BULK_INSERT_RECORDS_TO_INSERT * millisecondsInADay),
+                new String[]{WeatherEntry.COLUMN_DATE, WeatherEntry.COLUMN_MAX_TEMP},
+                null, null, null);
+        assertEquals("Error: Archived days not found in the history",
+                archivedDays, cursor.getCount());
+        for (int i = 0; cursor.moveToNext(); i++) {
+            assertEquals("Error: Archived temperature doesn't match", 75.0 + i, cursor.getDouble(1), 0.051);
+        }
+        cursor.close();
+
+        // Deleting the location takes its archive along
+        mContext.getContentResolver().delete(LocationEntry.CONTENT_URI, null, null);
+        cursor = mContext.getContentResolver().query(
+                WeatherEntry.buildWeatherHistoryUri(TestUtilities.TEST_LOCATION,
+                        TestUtilities.TEST_DATE,
+                        TestUtilities.TEST_DATE + BULK_INSERT_RECORDS_TO_INSERT * millisecondsInADay),
+                null, null, null, null);
+        assertEquals("Error: The archive outlived its location", 0, cursor.getCount());
+        cursor.close();
+    }
+
+    /*
+        This test checks the rolling means over a range of days against values worked out by hand
+        from createBulkInsertWeatherValues.
+     */
+    public void testRollingMeans() {
+        final long millisecondsInADay = 1000*60*60*24;
+        final long endDate = TestUtilities.TEST_DATE + 3 * millisecondsInADay;
+
+        long locationRowId = TestUtilities.insertNorthPoleLocationValues(mContext);
+        mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI,
+                createBulkInsertWeatherValues(locationRowId));
+
+        // Highs of 75 to 78 over the first four days, each a rolling mean over up to three days
+        Cursor cursor = mContext.getContentResolver().query(
+                WeatherContract.SummaryEntry.buildRollingMeanUri(TestUtilities.TEST_LOCATION,
+                        TestUtilities.TEST_DATE, endDate, 3),
+                null, null, null, null);
+        assertEquals("Error: Expected a rolling mean per day", 4, cursor.getCount());
+        int daysColumn = cursor.getColumnIndex(WeatherContract.SummaryEntry.COLUMN_MEAN_DAYS);
+        int maxColumn = cursor.getColumnIndex(WeatherContract.SummaryEntry.COLUMN_MAX_TEMP);
+        int lowestColumn = cursor.getColumnIndex(WeatherContract.SummaryEntry.COLUMN_LOWEST_TEMP);
+        int highestColumn = cursor.getColumnIndex(WeatherContract.SummaryEntry.COLUMN_HIGHEST_TEMP);
+        // Every day is drizzle, weather id 321
+        int drizzleColumn = cursor.getColumnIndex(WeatherContract.SummaryEntry.getConditionDaysColumn(
+                WeatherContract.SummaryEntry.CONDITION_DRIZZLE));
+        int rainColumn = cursor.getColumnIndex(WeatherContract.SummaryEntry.getConditionDaysColumn(
+                WeatherContract.SummaryEntry.CONDITION_RAIN));
+        double[] expectedMeans = {75, 75.5, 76, 77};
+        for (int i = 0; cursor.moveToNext(); i++) {
+            assertEquals("Error: Wrong window length", Math.min(i + 1, 3), cursor.getInt(daysColumn));
+            assertEquals("Error: Wrong rolling mean", expectedMeans[i], cursor.getDouble(maxColumn), 1e-9);
+            // Lows of 65 down to 62, so the window's lowest is its last day's, as is its highest
+            assertEquals("Error: Wrong lowest low", 65 - i, cursor.getDouble(lowestColumn), 1e-9);
+            assertEquals("Error: Wrong highest high", 75 + i, cursor.getDouble(highestColumn), 1e-9);
+            assertEquals("Error: Wrong drizzle day count", Math.min(i + 1, 3),
+                    cursor.getInt(drizzleColumn));
+            assertEquals("Error: Wrong rain day count", 0, cursor.getInt(rainColumn));
+        }
+        cursor.close();
+
+        // A projection picks the mean columns, in its order
+        cursor = mContext.getContentResolver().query(
+                WeatherContract.SummaryEntry.buildRollingMeanUri(TestUtilities.TEST_LOCATION,
+                        TestUtilities.TEST_DATE, endDate, 3),
+                new String[]{WeatherContract.SummaryEntry.COLUMN_MAX_TEMP}, null, null, null);
+        assertEquals("Error: Expected only the projected column", 1, cursor.getColumnCount());
+        assertTrue("Error: Expected a rolling mean", cursor.moveToLast());
+        assertEquals("Error: Wrong rolling mean", 77, cursor.getDouble(0), 1e-9);
+        cursor.close();
+    }
+
+    // The days of createBulkInsertWeatherValues, as the arrays a parsed forecast holds
+    static Forecast createBulkInsertForecast() {
+        final long millisecondsInADay = 1000*60*60*24;
+        int size = BULK_INSERT_RECORDS_TO_INSERT;
+        long[] dates = new long[size];
+        int[] weatherIds = new int[size];
+        String[] descriptions = new String[size];
+        double[] minTemps = new double[size];
+        double[] maxTemps = new double[size];
+        double[] humidities = new double[size];
+        double[] pressures = new double[size];
+        double[] windSpeeds = new double[size];
+        double[] degrees = new double[size];
+        for (int i = 0; i < size; i++) {
+            dates[i] = TestUtilities.TEST_DATE + i * millisecondsInADay;
+            weatherIds[i] = 321;
+            descriptions[i] = "Asteroids";
+            minTemps[i] = 65 - i;
+            maxTemps[i] = 75 + i;
+            humidities[i] = 1.2 + 0.01 * (float) i;
+            pressures[i] = 1.3 - 0.01 * (float) i;
+            windSpeeds[i] = 5.5 + 0.2 * (float) i;
+            degrees[i] = 1.1;
+        }
+        return new Forecast("North Pole", 64.7488, -147.353, dates, weatherIds,
+                descriptions, minTemps, maxTemps, humidities, pressures, windSpeeds, degrees);
+    }
+
+    /*
+        This test updates a stored day, and checks that the summary reads the updated value.
+     */
+    public void testUpdateRefreshesSummary() {
+        final long millisecondsInADay = 1000*60*60*24;
+        final long date = TestUtilities.TEST_DATE + millisecondsInADay;
+
+        long locationRowId = TestUtilities.insertNorthPoleLocationValues(mContext);
+        mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI,
+                createBulkInsertWeatherValues(locationRowId));
+
+        ContentValues values = new ContentValues();
+        values.put(WeatherEntry.COLUMN_MAX_TEMP, 90);
+        mContext.getContentResolver().update(WeatherEntry.CONTENT_URI, values,
+                WeatherEntry.COLUMN_LOC_KEY + " = ? AND " + WeatherEntry.COLUMN_DATE + " = ?",
+                new String[]{Long.toString(locationRowId),
+                        Long.toString(WeatherContract.normalizeDate(date))});
+
+        // Highs of 75 and 90 over the first two days
+        Cursor cursor = mContext.getContentResolver().query(
+                WeatherContract.SummaryEntry.buildRollingMeanUri(TestUtilities.TEST_LOCATION,
+                        date, date, 2),
+                null, null, null, null);
+        assertTrue("Error: No rolling mean for the updated day", cursor.moveToFirst());
+        assertEquals("Error: The summary wasn't brought up to date", 82.5,
+                cursor.getDouble(cursor.getColumnIndex(WeatherContract.SummaryEntry.COLUMN_MAX_TEMP)),
+                1e-9);
+        cursor.close();
+    }
+
+    /*
+        This test stores a location that isn't stored yet, its days and their packed hours in one
+        call, and checks that a day of hours comes back as a single row that unpacks to what was
+        stored.
+     */
+    public void testStoreForecastWithHours() {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.HONEYCOMB) {
+            return;
+        }
+        final long millisecondsInADay = 1000*60*60*24;
+
+        ContentValues[] hours = new ContentValues[2];
+        for (int day = 0; day < hours.length; day++) {
+            HourlyForecast.Builder builder = new HourlyForecast.Builder(
+                    TestUtilities.TEST_DATE + day * millisecondsInADay);
+            for (int hour = 0; hour < 24; hour += 3) {
+                builder.add(hour, 800 + day, 10.5 + hour, 80, 1013.25, 3.5, hour * 15);
+            }
+            hours[day] = builder.build().toContentValues();
+        }
+
+        ContentValues locationValues = TestUtilities.createNorthPoleLocationValues();
+        locationValues.remove(LocationEntry.COLUMN_LOCATION_SETTING);
+        Bundle extras = new Bundle();
+        extras.putParcelable(WeatherContract.EXTRA_VALUES, locationValues);
+        ForecastRows.putForecast(extras, createBulkInsertForecast());
+        extras.putParcelableArray(WeatherContract.EXTRA_HOURLY, hours);
+        extras.putLong(WeatherContract.EXTRA_FORECAST_VERSION, 7);
+        Bundle result = mContext.getContentResolver().call(WeatherContract.BASE_CONTENT_URI,
+                WeatherContract.METHOD_STORE_FORECAST, TestUtilities.TEST_LOCATION, extras);
+        assertEquals("Error: Wrong number of days stored",
+                BULK_INSERT_RECORDS_TO_INSERT, result.getInt(WeatherContract.RESULT_COUNT));
+
+        Cursor cursor = mContext.getContentResolver().query(LocationEntry.CONTENT_URI,
+                new String[]{LocationEntry._ID, LocationEntry.COLUMN_FORECAST_VERSION},
+                null, null, null);
+        assertEquals("Error: The location should have been inserted", 1, cursor.getCount());
+        assertTrue(cursor.moveToFirst());
+        assertEquals("Error: Wrong location id",
+                cursor.getLong(0), result.getLong(WeatherContract.RESULT_ID));
+        assertEquals("Error: Forecast version not stored", 7, cursor.getLong(1));
+        cursor.close();
+
+        cursor = mContext.getContentResolver().query(
+                WeatherContract.HourlyEntry.buildHourlyLocationWithDate(
+                        TestUtilities.TEST_LOCATION, TestUtilities.TEST_DATE + millisecondsInADay),
+                HourlyForecast.COLUMNS, null, null, null);
+        assertEquals("Error: A day of hours should be a single row", 1, cursor.getCount());
+        assertTrue(cursor.moveToFirst());
+        HourlyForecast stored = HourlyForecast.fromCursor(cursor);
+        cursor.close();
+
+        assertEquals("Error: Wrong number of hours", 8, stored.count);
+        for (int i = 0; i < stored.count; i++) {
+            assertEquals("Error: Hours out of order", i * 3, stored.hours[i]);
+            assertEquals("Error: Wrong weather id", 801, stored.weatherIds[i]);
+            assertEquals("Error: Wrong temperature", 10.5 + i * 3, stored.temps[i], 1e-6);
+            assertEquals("Error: Wrong pressure", 1013.25, stored.pressures[i], 1e-3);
+            assertEquals("Error: Wrong wind direction", i * 45, stored.degrees[i], 1e-6);
+        }
+
+        // Deleting the location takes its hours along
+        mContext.getContentResolver().delete(LocationEntry.CONTENT_URI, null, null);
+        cursor = mContext.getContentResolver().query(WeatherContract.HourlyEntry.CONTENT_URI,
+                null, null, null, null);
+        assertEquals("Error: Hours outlived their location", 0, cursor.getCount());
+        cursor.close();
+    }
+
+    /*
+        This test stores a forecast for a location that is already stored, and checks that the
+        location is refreshed rather than inserted again, and that the bound rows read back the
+        same as rows inserted from ContentValues.
+     */
+    public void testStoreForecastArrays() {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.HONEYCOMB) {
+            return;
+        }
+        long locationRowId = TestUtilities.insertNorthPoleLocationValues(mContext);
+        ContentValues locationValues = new ContentValues();
+        locationValues.put(LocationEntry.COLUMN_CITY_NAME, "Santa's Village");
+
+        Bundle extras = new Bundle();
+        extras.putParcelable(WeatherContract.EXTRA_VALUES, locationValues);
+        ForecastRows.putForecast(extras, createBulkInsertForecast());
+        Bundle result = mContext.getContentResolver().call(WeatherContract.BASE_CONTENT_URI,
+                WeatherContract.METHOD_STORE_FORECAST, TestUtilities.TEST_LOCATION, extras);
+        assertEquals("Error: Wrong number of days stored",
+                BULK_INSERT_RECORDS_TO_INSERT, result.getInt(WeatherContract.RESULT_COUNT));
+        assertEquals("Error: The stored location should have been reused",
+                locationRowId, result.getLong(WeatherContract.RESULT_ID));
+
+        Cursor cursor = mContext.getContentResolver().query(LocationEntry.CONTENT_URI,
+                new String[]{LocationEntry.COLUMN_CITY_NAME}, null, null, null);
+        assertEquals("Error: The location should have been updated", 1, cursor.getCount());
+        assertTrue(cursor.moveToFirst());
+        assertEquals("Santa's Village", cursor.getString(0));
+        cursor.close();
+
+        ContentValues[] expected = createBulkInsertWeatherValues(locationRowId);
+        cursor = mContext.getContentResolver().query(WeatherEntry.CONTENT_URI,
+                null, null, null, WeatherEntry.COLUMN_DATE + " ASC");
+        assertEquals(BULK_INSERT_RECORDS_TO_INSERT, cursor.getCount());
+        cursor.moveToFirst();
+        for (int i = 0; i < BULK_INSERT_RECORDS_TO_INSERT; i++, cursor.moveToNext()) {
+            TestUtilities.validateCurrentRecord("testStoreForecastArrays.  Error validating day " + i,
+                    cursor, expected[i]);
+        }
+        cursor.close();
+    }
+
+    /*
+        This test checks that a change to one day reaches the observers of that day and of its
+        location's forecast, but not the observers of the location's other days.
+     */
+    public void testScopedNotifications() {
+        long locationRowId = TestUtilities.insertNorthPoleLocationValues(mContext);
+        long date = WeatherContract.normalizeDate(TestUtilities.TEST_DATE);
+        long otherDate = WeatherContract.addDays(date, 1);
+
+        ContentResolver resolver = mContext.getContentResolver();
+        TestUtilities.TestContentObserver dayObserver = TestUtilities.getTestContentObserver();
+        resolver.registerContentObserver(WeatherEntry.buildWeatherLocationWithDate(
+                TestUtilities.TEST_LOCATION, date), true, dayObserver);
+        TestUtilities.TestContentObserver locationObserver = TestUtilities.getTestContentObserver();
+        resolver.registerContentObserver(
+                WeatherEntry.buildWeatherLocation(TestUtilities.TEST_LOCATION), true,
+                locationObserver);
+        TestUtilities.TestContentObserver otherDayObserver = TestUtilities.getTestContentObserver();
+        resolver.registerContentObserver(WeatherEntry.buildWeatherLocationWithDate(
+                TestUtilities.TEST_LOCATION, otherDate), true, otherDayObserver);
+
+        resolver.insert(WeatherEntry.CONTENT_URI, TestUtilities.createWeatherValues(locationRowId));
+
+        dayObserver.waitForNotificationOrFail();
+        locationObserver.waitForNotificationOrFail();
+        otherDayObserver.assertNotNotified(500);
+
+        resolver.unregisterContentObserver(dayObserver);
+        resolver.unregisterContentObserver(locationObserver);
+        resolver.unregisterContentObserver(otherDayObserver);
+    }
+
+    /*
+        This test writes a location, its days and the archiving of the oldest one as a single
+        batch, and checks that it commits as a whole, and that a failing batch leaves nothing
+        behind.
+     */
+    public void testApplyBatch() throws Exception {
+        ContentValues[] days = createBulkInsertWeatherValues(-1);
+        ArrayList<ContentProviderOperation> operations = new ArrayList<>();
+        operations.add(ContentProviderOperation.newInsert(LocationEntry.CONTENT_URI)
+                .withValues(TestUtilities.createNorthPoleLocationValues())
+                .build());
+        for (ContentValues day : days) {
+            operations.add(ContentProviderOperation.newInsert(WeatherEntry.CONTENT_URI)
+                    .withValues(day)
+                    .withValueBackReference(WeatherEntry.COLUMN_LOC_KEY, 0)
+                    .build());
+        }
+        operations.add(ContentProviderOperation.newDelete(
+                WeatherEntry.buildWeatherLocationBeforeDate(TestUtilities.TEST_LOCATION,
+                        days[1].getAsLong(WeatherEntry.COLUMN_DATE)))
+                .build());
+
+        TestUtilities.TestContentObserver weatherObserver = TestUtilities.getTestContentObserver();
+        mContext.getContentResolver().registerContentObserver(
+                WeatherEntry.buildWeatherLocation(TestUtilities.TEST_LOCATION), true,
+                weatherObserver);
+        ContentProviderResult[] results = mContext.getContentResolver().applyBatch(
+                WeatherContract.CONTENT_AUTHORITY, operations);
+        weatherObserver.waitForNotificationOrFail();
+        mContext.getContentResolver().unregisterContentObserver(weatherObserver);
+
+        assertEquals(operations.size(), results.length);
+        assertEquals("Error: Wrong number of days archived",
+                1, results[results.length - 1].count.intValue());
+        Cursor cursor = mContext.getContentResolver().query(
+                WeatherEntry.buildWeatherLocation(TestUtilities.TEST_LOCATION),
+                null, null, null, WeatherEntry.COLUMN_DATE + " ASC");
+        assertEquals("Error: Batch didn't store its days", days.length - 1, cursor.getCount());
+        cursor.close();
+
+        // A batch that fails part way rolls back the operations before the failure
+        deleteAllRecordsFromProvider();
+        operations.add(ContentProviderOperation.newInsert(WeatherEntry.CONTENT_URI)
+                .withValues(new ContentValues())
+                .build());
+        try {
+            mContext.getContentResolver().applyBatch(WeatherContract.CONTENT_AUTHORITY,
+                    operations);
+            fail("Error: A row without values was inserted");
+        } catch (SQLException expected) {
+        }
+        cursor = mContext.getContentResolver().query(LocationEntry.CONTENT_URI,
+                null, null, null, null);
+        assertEquals("Error: A failed batch left its location behind", 0, cursor.getCount());
+        cursor.close();
+    }
 }
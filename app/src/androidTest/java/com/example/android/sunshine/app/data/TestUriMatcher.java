@@ -34,6 +34,20 @@ public class TestUriMatcher extends AndroidTestCase {
     private static final Uri TEST_WEATHER_DIR = WeatherContract.WeatherEntry.CONTENT_URI;
     private static final Uri TEST_WEATHER_WITH_LOCATION_DIR = WeatherContract.WeatherEntry.buildWeatherLocation(LOCATION_QUERY);
     private static final Uri TEST_WEATHER_WITH_LOCATION_AND_DATE_DIR = WeatherContract.WeatherEntry.buildWeatherLocationWithDate(LOCATION_QUERY, TEST_DATE);
+    // content://com.example.android.sunshine.app/weather_batch?location=London%2C%20UK&start=...&end=..."
+    private static final Uri TEST_WEATHER_BATCH_DIR = WeatherContract.WeatherEntry.buildWeatherBatchUri(
+            new String[]{LOCATION_QUERY}, new long[]{TEST_DATE}, new long[]{TEST_DATE});
+    // content://com.example.android.sunshine.app/weather_history/London%2C%20UK?start=...&end=..."
+    private static final Uri TEST_WEATHER_HISTORY_DIR = WeatherContract.WeatherEntry.buildWeatherHistoryUri(
+            LOCATION_QUERY, TEST_DATE, TEST_DATE);
+    // content://com.example.android.sunshine.app/weather_summary/London%2C%20UK?start=...&window=7"
+    private static final Uri TEST_WEATHER_SUMMARY_DIR = WeatherContract.SummaryEntry.buildRollingMeanUri(
+            LOCATION_QUERY, TEST_DATE, TEST_DATE, 7);
+    // content://com.example.android.sunshine.app/hourly"
+    private static final Uri TEST_HOURLY_DIR = WeatherContract.HourlyEntry.CONTENT_URI;
+    // content://com.example.android.sunshine.app/hourly/London%2C%20UK/1419033600"
+    private static final Uri TEST_HOURLY_WITH_LOCATION_AND_DATE_DIR = WeatherContract.HourlyEntry.buildHourlyLocationWithDate(
+            LOCATION_QUERY, TEST_DATE);
     // content://com.example.android.sunshine.app/location"
     private static final Uri TEST_LOCATION_DIR = WeatherContract.LocationEntry.CONTENT_URI;
 
@@ -51,6 +65,16 @@ public class TestUriMatcher extends AndroidTestCase {
                 testMatcher.match(TEST_WEATHER_WITH_LOCATION_DIR), WeatherProvider.WEATHER_WITH_LOCATION);
         assertEquals("Error: The WEATHER WITH LOCATION AND DATE URI was matched incorrectly.",
                 testMatcher.match(TEST_WEATHER_WITH_LOCATION_AND_DATE_DIR), WeatherProvider.WEATHER_WITH_LOCATION_AND_DATE);
+        assertEquals("Error: The WEATHER BATCH URI was matched incorrectly.",
+                testMatcher.match(TEST_WEATHER_BATCH_DIR), WeatherProvider.WEATHER_BATCH);
+        assertEquals("Error: The WEATHER HISTORY URI was matched incorrectly.",
+                testMatcher.match(TEST_WEATHER_HISTORY_DIR), WeatherProvider.WEATHER_HISTORY);
+        assertEquals("Error: The WEATHER SUMMARY URI was matched incorrectly.",
+                testMatcher.match(TEST_WEATHER_SUMMARY_DIR), WeatherProvider.WEATHER_SUMMARY);
+        assertEquals("Error: The HOURLY URI was matched incorrectly.",
+                testMatcher.match(TEST_HOURLY_DIR), WeatherProvider.HOURLY);
+        assertEquals("Error: The HOURLY WITH LOCATION AND DATE URI was matched incorrectly.",
+                testMatcher.match(TEST_HOURLY_WITH_LOCATION_AND_DATE_DIR), WeatherProvider.HOURLY_WITH_LOCATION_AND_DATE);
         assertEquals("Error: The LOCATION URI was matched incorrectly.",
                 testMatcher.match(TEST_LOCATION_DIR), WeatherProvider.LOCATION);
     }
@@ -23,6 +23,7 @@ import android.database.sqlite.SQLiteDatabase;
 import android.net.Uri;
 import android.os.Handler;
 import android.os.HandlerThread;
+import android.os.SystemClock;
 import android.test.AndroidTestCase;
 
 import com.example.android.sunshine.app.utils.PollingCheck;
@@ -158,6 +159,13 @@ public class TestUtilities extends AndroidTestCase {
             }.run();
             mHT.quit();
         }
+
+        // For changes the observer mustn't see: fails if it is notified within the timeout
+        public void assertNotNotified(long timeoutMillis) {
+            SystemClock.sleep(timeoutMillis);
+            assertFalse("Observer was notified of a change it doesn't observe", mContentChanged);
+            mHT.quit();
+        }
     }
 
     static TestContentObserver getTestContentObserver() {
@@ -0,0 +1,145 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.test.AndroidTestCase;
+
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+import java.io.File;
+
+/*
+    Writes years of made up history to an archive in the cache directory, and checks that it
+    reads back within the quantization steps and stays small.
+ */
+public class TestWeatherArchive extends AndroidTestCase {
+
+    private static final int HISTORY_DAYS = 3 * 365;
+    // Three years should comfortably fit in this many bytes
+    private static final long MAX_ARCHIVE_BYTES = 16 * 1024;
+
+    private File mDirectory;
+    private WeatherArchive mArchive;
+    private long mFirstDay;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mDirectory = new File(mContext.getCacheDir(), "test_archive");
+        mArchive = new WeatherArchive(mDirectory);
+        mArchive.delete(TestUtilities.TEST_LOCATION);
+        mFirstDay = WeatherContract.normalizeDate(System.currentTimeMillis());
+        mFirstDay = WeatherContract.addDays(mFirstDay, -HISTORY_DAYS);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mArchive.delete(TestUtilities.TEST_LOCATION);
+        super.tearDown();
+    }
+
+    public void testRoundTrip() throws Exception {
+        ContentValues[] history = createHistory();
+        // Added in two parts, the way syncs add it
+        ContentValues[] older = new ContentValues[HISTORY_DAYS / 2];
+        ContentValues[] newer = new ContentValues[HISTORY_DAYS - older.length];
+        System.arraycopy(history, 0, older, 0, older.length);
+        System.arraycopy(history, older.length, newer, 0, newer.length);
+        mArchive.append(TestUtilities.TEST_LOCATION, older);
+        mArchive.append(TestUtilities.TEST_LOCATION, newer);
+
+        // A fresh instance reads from the file rather than from its cache
+        WeatherArchive archive = new WeatherArchive(mDirectory);
+        Cursor cursor = archive.query(TestUtilities.TEST_LOCATION, null,
+                mFirstDay, WeatherContract.addDays(mFirstDay, HISTORY_DAYS));
+        assertEquals("Error: Archive lost days", HISTORY_DAYS, cursor.getCount());
+        for (ContentValues expected : history) {
+            assertTrue(cursor.moveToNext());
+            assertEquals("Error: Archived date doesn't match",
+                    (long) expected.getAsLong(WeatherEntry.COLUMN_DATE),
+                    cursor.getLong(cursor.getColumnIndex(WeatherEntry.COLUMN_DATE)));
+            assertEquals((int) expected.getAsInteger(WeatherEntry.COLUMN_WEATHER_ID),
+                    cursor.getInt(cursor.getColumnIndex(WeatherEntry.COLUMN_WEATHER_ID)));
+            assertEquals(expected.getAsString(WeatherEntry.COLUMN_SHORT_DESC),
+                    cursor.getString(cursor.getColumnIndex(WeatherEntry.COLUMN_SHORT_DESC)));
+            assertEquals("Error: Archived temperature is off by more than its step",
+                    expected.getAsDouble(WeatherEntry.COLUMN_MAX_TEMP),
+                    cursor.getDouble(cursor.getColumnIndex(WeatherEntry.COLUMN_MAX_TEMP)), 0.051);
+            assertEquals("Error: Archived pressure is off by more than its step",
+                    expected.getAsDouble(WeatherEntry.COLUMN_PRESSURE),
+                    cursor.getDouble(cursor.getColumnIndex(WeatherEntry.COLUMN_PRESSURE)), 0.051);
+            assertEquals("Error: Archived humidity is off by more than its step",
+                    expected.getAsDouble(WeatherEntry.COLUMN_HUMIDITY),
+                    cursor.getDouble(cursor.getColumnIndex(WeatherEntry.COLUMN_HUMIDITY)), 0.501);
+        }
+        cursor.close();
+
+        long size = sizeOf(mDirectory);
+        assertTrue("Error: Archive takes " + size + " bytes", size <= MAX_ARCHIVE_BYTES);
+    }
+
+    public void testDateRange() throws Exception {
+        mArchive.append(TestUtilities.TEST_LOCATION, createHistory());
+
+        long start = WeatherContract.addDays(mFirstDay, 100);
+        Cursor cursor = mArchive.query(TestUtilities.TEST_LOCATION,
+                new String[]{WeatherEntry.COLUMN_DATE}, start, WeatherContract.addDays(start, 6));
+        assertEquals("Error: A week should be 7 days, both ends included", 7, cursor.getCount());
+        assertTrue(cursor.moveToFirst());
+        assertEquals("Error: Range should start on its first day", start, cursor.getLong(0));
+        cursor.close();
+
+        cursor = mArchive.query("unknown", null, start, WeatherContract.addDays(start, 6));
+        assertEquals("Error: Unknown location should have no history", 0, cursor.getCount());
+        cursor.close();
+    }
+
+    private static long sizeOf(File file) {
+        if (!file.isDirectory()) {
+            return file.length();
+        }
+        long size = 0;
+        for (File child : file.listFiles()) {
+            size += sizeOf(child);
+        }
+        return size;
+    }
+
+    private ContentValues[] createHistory() {
+        final String[] descriptions = {"Clear", "Clouds", "Rain", "Snow"};
+        final int[] weatherIds = {800, 803, 500, 600};
+        ContentValues[] history = new ContentValues[HISTORY_DAYS];
+        for (int i = 0; i < HISTORY_DAYS; i++) {
+            // A yearly cycle with some day to day noise
+            double season = Math.sin(2 * Math.PI * i / 365);
+            int condition = (i * 7 + i / 3) % descriptions.length;
+            ContentValues values = new ContentValues();
+            values.put(WeatherEntry.COLUMN_DATE, WeatherContract.addDays(mFirstDay, i));
+            values.put(WeatherEntry.COLUMN_WEATHER_ID, weatherIds[condition]);
+            values.put(WeatherEntry.COLUMN_SHORT_DESC, descriptions[condition]);
+            values.put(WeatherEntry.COLUMN_MIN_TEMP, 5 + 10 * season + (i % 5) * 0.37);
+            values.put(WeatherEntry.COLUMN_MAX_TEMP, 15 + 10 * season + (i % 7) * 0.41);
+            values.put(WeatherEntry.COLUMN_HUMIDITY, 60 + (i % 11) * 2.5);
+            values.put(WeatherEntry.COLUMN_PRESSURE, 1013.2 + (i % 13) * 0.8);
+            values.put(WeatherEntry.COLUMN_WIND_SPEED, 3.4 + (i % 9) * 0.6);
+            values.put(WeatherEntry.COLUMN_DEGREES, (i * 37) % 360);
+            history[i] = values;
+        }
+        return history;
+    }
+}
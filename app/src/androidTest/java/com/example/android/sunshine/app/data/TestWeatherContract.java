@@ -17,6 +17,12 @@ package com.example.android.sunshine.app.data;
 
 import android.net.Uri;
 import android.test.AndroidTestCase;
+import android.text.format.Time;
+import android.util.Log;
+
+import com.example.android.sunshine.core.ZoneDays;
+
+import java.util.TimeZone;
 
 /*
     Students: This is NOT a complete test for the WeatherContract --- just for the functions
@@ -42,4 +48,83 @@ public class TestWeatherContract extends AndroidTestCase {
                 locationUri.toString(),
                 "content://com.example.android.sunshine.app/weather/%2FNorth%20Pole");
     }
+
+    // Zones whose clocks change at different hours and by different amounts, none at midnight
+    private static final String[] TEST_ZONES = {
+            "UTC", "America/New_York", "Europe/London", "Australia/Sydney",
+            "Australia/Lord_Howe", "Asia/Kolkata", "America/St_Johns"
+    };
+    private static final long HOUR_IN_MILLIS = 1000 * 60 * 60;
+    // January 1st 2015 to January 1st 2018, in UTC
+    private static final long TEST_FROM = 1420070400000L;
+    private static final long TEST_TO = 1514764800000L;
+
+    /*
+        Dates used to be normalized with android.text.format.Time. Every stored date depends on
+        getting the same day back, so check every quarter hour of three years, DST changes
+        included.
+     */
+    public void testNormalizeDateMatchesTime() {
+        for (String id : TEST_ZONES) {
+            Time time = new Time(id);
+            ZoneDays days = ZoneDays.forZone(TimeZone.getTimeZone(id));
+            for (long millis = TEST_FROM; millis < TEST_TO; millis += HOUR_IN_MILLIS / 4) {
+                time.set(millis);
+                int julianDay = Time.getJulianDay(millis, time.gmtoff);
+                assertEquals("Error: Wrong day in " + id + " at " + millis,
+                        julianDay, days.getJulianDay(millis));
+                assertEquals("Error: Wrong start of day in " + id + " at " + millis,
+                        time.setJulianDay(julianDay), days.normalizeDate(millis));
+            }
+        }
+    }
+
+    public void testAddDaysMatchesTime() {
+        for (String id : TEST_ZONES) {
+            Time time = new Time(id);
+            ZoneDays days = ZoneDays.forZone(TimeZone.getTimeZone(id));
+            time.set(TEST_FROM);
+            int firstDay = Time.getJulianDay(TEST_FROM, time.gmtoff);
+            long first = time.setJulianDay(firstDay);
+            for (int day = 0; day < 3 * 366; day++) {
+                assertEquals("Error: Wrong date " + day + " days on in " + id,
+                        time.setJulianDay(firstDay + day), days.addDays(first, day));
+            }
+        }
+    }
+
+    /*
+        normalizeDate runs for every row the provider writes, so it should cost a fraction of
+        what Time did. Logs the cost of each per call.
+     */
+    public void testNormalizeDateCost() {
+        final int calls = 14 * 1000;
+        long start = WeatherContract.normalizeDate(System.currentTimeMillis());
+        long[] dates = new long[calls];
+        for (int i = 0; i < calls; i++) {
+            // A forecast's worth of days, at the time of day the sync happened to run
+            dates[i] = start + (i % 14) * 24 * HOUR_IN_MILLIS + 13 * HOUR_IN_MILLIS;
+        }
+
+        long sum = 0;
+        long timeStart = System.nanoTime();
+        for (long date : dates) {
+            Time time = new Time();
+            time.set(date);
+            sum += time.setJulianDay(Time.getJulianDay(date, time.gmtoff));
+        }
+        long timeNanos = (System.nanoTime() - timeStart) / calls;
+
+        long zoneDaysStart = System.nanoTime();
+        for (long date : dates) {
+            sum -= WeatherContract.normalizeDate(date);
+        }
+        long zoneDaysNanos = (System.nanoTime() - zoneDaysStart) / calls;
+
+        Log.i(TestWeatherContract.class.getSimpleName(), "normalizeDate: Time " + timeNanos
+                + "ns, ZoneDays " + zoneDaysNanos + "ns per call");
+        assertEquals("Error: Both ways should give the same dates", 0, sum);
+        assertTrue("Error: normalizeDate should be faster than Time",
+                zoneDaysNanos < timeNanos);
+    }
 }
@@ -13,7 +13,11 @@ public class Constants {
                 PATH = "/path",
                 WEATHER_ID = "weather_id",
                 WEATHER_TEMP_HIGH = "weather_temp_high",
-                WEATHER_TEMP_LOW = "weather_temp_low";
+                WEATHER_TEMP_LOW = "weather_temp_low",
+                WEATHER_DATES = "weather_dates",
+                WEATHER_IDS = "weather_ids",
+                WEATHER_TEMP_HIGHS = "weather_temp_highs",
+                WEATHER_TEMP_LOWS = "weather_temp_lows";
 
     }
 }
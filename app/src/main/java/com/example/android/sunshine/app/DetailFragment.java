@@ -37,13 +37,19 @@ import android.widget.ImageView;
 import android.widget.TextView;
 
 import com.bumptech.glide.Glide;
+import com.example.android.sunshine.app.data.ForecastPatch;
+import com.example.android.sunshine.app.data.ForecastRepository;
 import com.example.android.sunshine.app.data.WeatherContract;
 import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+import com.example.android.sunshine.core.Forecast;
+
+import java.util.Arrays;
 
 /**
  * A placeholder fragment containing a simple view.
  */
-public class DetailFragment extends Fragment implements LoaderManager.LoaderCallbacks<Cursor> {
+public class DetailFragment extends Fragment implements ForecastRepository.Observer,
+        LoaderManager.LoaderCallbacks<Cursor> {
 
     private static final String LOG_TAG = DetailFragment.class.getSimpleName();
     static final String DETAIL_URI = "URI";
@@ -55,36 +61,30 @@ public class DetailFragment extends Fragment implements LoaderManager.LoaderCall
     private Uri mUri;
     private boolean mTransitionAnimation;
 
-    private static final int DETAIL_LOADER = 0;
-
-    private static final String[] DETAIL_COLUMNS = {
-            WeatherEntry.TABLE_NAME + "." + WeatherEntry._ID,
-            WeatherEntry.COLUMN_DATE,
-            WeatherEntry.COLUMN_SHORT_DESC,
-            WeatherEntry.COLUMN_MAX_TEMP,
-            WeatherEntry.COLUMN_MIN_TEMP,
-            WeatherEntry.COLUMN_HUMIDITY,
-            WeatherEntry.COLUMN_PRESSURE,
-            WeatherEntry.COLUMN_WIND_SPEED,
-            WeatherEntry.COLUMN_DEGREES,
-            WeatherEntry.COLUMN_WEATHER_ID,
-            // This works because the WeatherProvider returns location data joined with
-            // weather data, even though they're stored in two different tables.
-            WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING
-    };
+    // How many days the chart shows on either side of the one detailed
+    private static final int CHART_DAYS_AROUND = 7;
 
-    // These indices are tied to DETAIL_COLUMNS.  If DETAIL_COLUMNS changes, these
-    // must change.
-    public static final int COL_WEATHER_ID = 0;
-    public static final int COL_WEATHER_DATE = 1;
-    public static final int COL_WEATHER_DESC = 2;
-    public static final int COL_WEATHER_MAX_TEMP = 3;
-    public static final int COL_WEATHER_MIN_TEMP = 4;
-    public static final int COL_WEATHER_HUMIDITY = 5;
-    public static final int COL_WEATHER_PRESSURE = 6;
-    public static final int COL_WEATHER_WIND_SPEED = 7;
-    public static final int COL_WEATHER_DEGREES = 8;
-    public static final int COL_WEATHER_CONDITION_ID = 9;
+    // How many days the week average covers, up to and including the one detailed
+    private static final int AVERAGE_WINDOW_DAYS = 7;
+
+    private static final int HISTORY_LOADER = 0;
+    private static final int AVERAGE_LOADER = 1;
+
+    private static final String[] AVERAGE_COLUMNS = {
+            WeatherContract.SummaryEntry.COLUMN_MAX_TEMP,
+            WeatherContract.SummaryEntry.COLUMN_MIN_TEMP
+    };
+    // these indices must match the projection
+    private static final int COL_AVERAGE_MAX_TEMP = 0;
+    private static final int COL_AVERAGE_MIN_TEMP = 1;
+
+    private ForecastRepository.Subscription mSubscription;
+    // Every stored day of the location, null until the repository delivers them
+    private Forecast mLocationForecast;
+    // The location's archived days in the chart's window, null until they are loaded
+    private Forecast mHistory;
+    // The day the chart is centered on. It keeps its days when another one is selected.
+    private long mChartDate;
 
     private ImageView mIconView;
     private TextView mDateView;
@@ -97,6 +97,9 @@ public class DetailFragment extends Fragment implements LoaderManager.LoaderCall
     private TextView mWindLabelView;
     private TextView mPressureView;
     private TextView mPressureLabelView;
+    private TextView mAverageView;
+    private TextView mAverageLabelView;
+    private TemperatureChartView mChartView;
 
     public DetailFragment() {
         setHasOptionsMenu(true);
@@ -124,6 +127,19 @@ public class DetailFragment extends Fragment implements LoaderManager.LoaderCall
         mWindLabelView = (TextView) rootView.findViewById(R.id.detail_wind_label_textview);
         mPressureView = (TextView) rootView.findViewById(R.id.detail_pressure_textview);
         mPressureLabelView = (TextView) rootView.findViewById(R.id.detail_pressure_label_textview);
+        // Not every detail layout has room for the week average and the chart
+        mAverageView = (TextView) rootView.findViewById(R.id.detail_week_average_textview);
+        mAverageLabelView = (TextView) rootView.findViewById(
+                R.id.detail_week_average_label_textview);
+        mChartView = (TemperatureChartView) rootView.findViewById(R.id.detail_chart);
+        if (null != mChartView) {
+            mChartView.setOnDaySelectedListener(new TemperatureChartView.OnDaySelectedListener() {
+                @Override
+                public void onDaySelected(long date) {
+                    onDateChanged(date);
+                }
+            });
+        }
         return rootView;
     }
 
@@ -152,8 +168,36 @@ public class DetailFragment extends Fragment implements LoaderManager.LoaderCall
 
     @Override
     public void onActivityCreated(Bundle savedInstanceState) {
-        getLoaderManager().initLoader(DETAIL_LOADER, null, this);
         super.onActivityCreated(savedInstanceState);
+        if (null != mUri) {
+            subscribe();
+            getLoaderManager().initLoader(HISTORY_LOADER, null, this);
+            if (null != mAverageView) {
+                getLoaderManager().initLoader(AVERAGE_LOADER, null, this);
+            }
+        } else {
+            ViewParent vp = getView().getParent();
+            if ( vp instanceof CardView ) {
+                ((View)vp).setVisibility(View.INVISIBLE);
+            }
+        }
+    }
+
+    @Override
+    public void onDestroyView() {
+        if (null != mSubscription) {
+            mSubscription.unsubscribe();
+            mSubscription = null;
+        }
+        super.onDestroyView();
+    }
+
+    private void subscribe() {
+        mLocationForecast = null;
+        mHistory = null;
+        mChartDate = WeatherEntry.getDateFromUri(mUri);
+        mSubscription = ForecastRepository.get(getActivity()).subscribe(
+                WeatherEntry.getLocationSettingFromUri(mUri), this);
     }
 
     void onLocationChanged( String newLocation ) {
@@ -163,41 +207,153 @@ public class DetailFragment extends Fragment implements LoaderManager.LoaderCall
             long date = WeatherContract.WeatherEntry.getDateFromUri(uri);
             Uri updatedUri = WeatherContract.WeatherEntry.buildWeatherLocationWithDate(newLocation, date);
             mUri = updatedUri;
-            getLoaderManager().restartLoader(DETAIL_LOADER, null, this);
+            if (null != mSubscription) {
+                mSubscription.unsubscribe();
+            }
+            subscribe();
+            getLoaderManager().restartLoader(HISTORY_LOADER, null, this);
+            if (null != mAverageView) {
+                getLoaderManager().restartLoader(AVERAGE_LOADER, null, this);
+            }
         }
     }
 
+    private void onDateChanged(long date) {
+        // The chart keeps its days, and the detail is bound from the days already in memory
+        mUri = WeatherEntry.buildWeatherLocationWithDate(
+                WeatherEntry.getLocationSettingFromUri(mUri), date);
+        if (null != mLocationForecast) {
+            bindDetail(withHistory(mHistory, mLocationForecast));
+        }
+        if (null != mAverageView) {
+            getLoaderManager().restartLoader(AVERAGE_LOADER, null, this);
+        }
+    }
+
+    @Override
+    public void onForecastChanged(String locationSetting, Forecast forecast) {
+        mLocationForecast = forecast;
+        bind();
+    }
+
     @Override
     public Loader<Cursor> onCreateLoader(int id, Bundle args) {
-        if ( null != mUri ) {
-            // Now create and return a CursorLoader that will take care of
-            // creating a Cursor for the data being displayed.
+        String locationSetting = WeatherEntry.getLocationSettingFromUri(mUri);
+        if (id == AVERAGE_LOADER) {
+            // The week's means of the day detailed, read from the summary
+            long date = WeatherEntry.getDateFromUri(mUri);
             return new CursorLoader(
                     getActivity(),
-                    mUri,
-                    DETAIL_COLUMNS,
+                    WeatherContract.SummaryEntry.buildRollingMeanUri(locationSetting, date, date,
+                            AVERAGE_WINDOW_DAYS),
+                    AVERAGE_COLUMNS,
                     null,
                     null,
                     null
             );
         }
-        ViewParent vp = getView().getParent();
-        if ( vp instanceof CardView ) {
-            ((View)vp).setVisibility(View.INVISIBLE);
-        }
-        return null;
+        // The days of the chart's window that have dropped out of the forecast
+        return new CursorLoader(
+                getActivity(),
+                WeatherEntry.buildWeatherHistoryUri(locationSetting,
+                        WeatherContract.addDays(mChartDate, -CHART_DAYS_AROUND),
+                        WeatherContract.addDays(mChartDate, CHART_DAYS_AROUND)),
+                ForecastPatch.COLUMNS,
+                null,
+                null,
+                null
+        );
     }
 
     @Override
     public void onLoadFinished(Loader<Cursor> loader, Cursor data) {
-        if (data != null && data.moveToFirst()) {
+        if (loader.getId() == AVERAGE_LOADER) {
+            bindAverage(data);
+            return;
+        }
+        // A cursor delivered again after a configuration change has already been read through
+        data.moveToPosition(-1);
+        mHistory = ForecastPatch.readForecast(data);
+        if (null != mLocationForecast) {
+            bind();
+        }
+    }
+
+    @Override
+    public void onLoaderReset(Loader<Cursor> loader) { }
+
+    private void bindAverage(Cursor data) {
+        if (!data.moveToFirst()) {
+            mAverageView.setText(null);
+            mAverageView.setContentDescription(null);
+            mAverageLabelView.setContentDescription(null);
+            return;
+        }
+        mAverageView.setText(getString(R.string.format_week_average,
+                Utility.formatTemperature(getActivity(), data.getDouble(COL_AVERAGE_MAX_TEMP)),
+                Utility.formatTemperature(getActivity(), data.getDouble(COL_AVERAGE_MIN_TEMP))));
+        mAverageView.setContentDescription(
+                getString(R.string.a11y_week_average, mAverageView.getText()));
+        mAverageLabelView.setContentDescription(mAverageView.getContentDescription());
+    }
+
+    private void bind() {
+        Forecast forecast = withHistory(mHistory, mLocationForecast);
+        bindDetail(forecast);
+        if (null != mChartView) {
+            bindChart(forecast);
+        }
+    }
+
+    /**
+     * The archived days before the forecast followed by the forecast's, so the chart and the
+     * detail can show the days just past as well.
+     */
+    private static Forecast withHistory(Forecast history, Forecast forecast) {
+        int past = history == null ? 0 : forecast.size == 0
+                ? history.size : history.indexFrom(forecast.dates[0]);
+        if (past == 0) {
+            return forecast;
+        }
+        int size = past + forecast.size;
+        long[] dates = new long[size];
+        int[] weatherIds = new int[size];
+        String[] descriptions = new String[size];
+        double[] minTemps = new double[size];
+        double[] maxTemps = new double[size];
+        double[] humidities = new double[size];
+        double[] pressures = new double[size];
+        double[] windSpeeds = new double[size];
+        double[] degrees = new double[size];
+        Forecast[] parts = {history, forecast};
+        int[] counts = {past, forecast.size};
+        for (int part = 0, offset = 0; part < parts.length; offset += counts[part], part++) {
+            Forecast from = parts[part];
+            int count = counts[part];
+            System.arraycopy(from.dates, 0, dates, offset, count);
+            System.arraycopy(from.weatherIds, 0, weatherIds, offset, count);
+            System.arraycopy(from.descriptions, 0, descriptions, offset, count);
+            System.arraycopy(from.minTemps, 0, minTemps, offset, count);
+            System.arraycopy(from.maxTemps, 0, maxTemps, offset, count);
+            System.arraycopy(from.humidities, 0, humidities, offset, count);
+            System.arraycopy(from.pressures, 0, pressures, offset, count);
+            System.arraycopy(from.windSpeeds, 0, windSpeeds, offset, count);
+            System.arraycopy(from.degrees, 0, degrees, offset, count);
+        }
+        return new Forecast(forecast.cityName, forecast.latitude, forecast.longitude, dates,
+                weatherIds, descriptions, minTemps, maxTemps, humidities, pressures,
+                windSpeeds, degrees);
+    }
+
+    private void bindDetail(Forecast forecast) {
+        int day = forecast.indexOf(WeatherEntry.getDateFromUri(mUri));
+        if (day >= 0) {
             ViewParent vp = getView().getParent();
             if ( vp instanceof CardView ) {
                 ((View)vp).setVisibility(View.VISIBLE);
             }
 
-            // Read weather condition ID from cursor
-            int weatherId = data.getInt(COL_WEATHER_CONDITION_ID);
+            int weatherId = forecast.weatherIds[day];
 
             if ( Utility.usingLocalGraphics(getActivity()) ) {
                 mIconView.setImageResource(Utility.getArtResourceForWeatherCondition(weatherId));
@@ -210,8 +366,8 @@ public class DetailFragment extends Fragment implements LoaderManager.LoaderCall
                         .into(mIconView);
             }
 
-            // Read date from cursor and update views for day of week and date
-            long date = data.getLong(COL_WEATHER_DATE);
+            // Update views for day of week and date
+            long date = forecast.dates[day];
             String dateText = Utility.getFullFriendlyDayString(getActivity(),date);
             mDateView.setText(dateText);
 
@@ -226,39 +382,36 @@ public class DetailFragment extends Fragment implements LoaderManager.LoaderCall
             // has text describing it in the same UI component.
             mIconView.setContentDescription(getString(R.string.a11y_forecast_icon, description));
 
-            // Read high temperature from cursor and update view
-            boolean isMetric = Utility.isMetric(getActivity());
-
-            double high = data.getDouble(COL_WEATHER_MAX_TEMP);
+            double high = forecast.maxTemps[day];
             String highString = Utility.formatTemperature(getActivity(), high);
             mHighTempView.setText(highString);
             mHighTempView.setContentDescription(getString(R.string.a11y_high_temp, highString));
 
-            // Read low temperature from cursor and update view
-            double low = data.getDouble(COL_WEATHER_MIN_TEMP);
+            double low = forecast.minTemps[day];
             String lowString = Utility.formatTemperature(getActivity(), low);
             mLowTempView.setText(lowString);
             mLowTempView.setContentDescription(getString(R.string.a11y_low_temp, lowString));
 
-            // Read humidity from cursor and update view
-            float humidity = data.getFloat(COL_WEATHER_HUMIDITY);
+            float humidity = (float) forecast.humidities[day];
             mHumidityView.setText(getActivity().getString(R.string.format_humidity, humidity));
             mHumidityView.setContentDescription(getString(R.string.a11y_humidity, mHumidityView.getText()));
             mHumidityLabelView.setContentDescription(mHumidityView.getContentDescription());
 
-            // Read wind speed and direction from cursor and update view
-            float windSpeedStr = data.getFloat(COL_WEATHER_WIND_SPEED);
-            float windDirStr = data.getFloat(COL_WEATHER_DEGREES);
+            float windSpeedStr = (float) forecast.windSpeeds[day];
+            float windDirStr = (float) forecast.degrees[day];
             mWindView.setText(Utility.getFormattedWind(getActivity(), windSpeedStr, windDirStr));
             mWindView.setContentDescription(getString(R.string.a11y_wind, mWindView.getText()));
             mWindLabelView.setContentDescription(mWindView.getContentDescription());
 
-            // Read pressure from cursor and update view
-            float pressure = data.getFloat(COL_WEATHER_PRESSURE);
+            float pressure = (float) forecast.pressures[day];
             mPressureView.setText(getString(R.string.format_pressure, pressure));
             mPressureView.setContentDescription(getString(R.string.a11y_pressure, mPressureView.getText()));
             mPressureLabelView.setContentDescription(mPressureView.getContentDescription());
 
+            if (null != mChartView) {
+                mChartView.setSelectedDate(date);
+            }
+
             // We still need this for the share intent
             mForecast = String.format("%s - %s - %s/%s", dateText, description, high, low);
 
@@ -286,6 +439,18 @@ public class DetailFragment extends Fragment implements LoaderManager.LoaderCall
         }
     }
 
-    @Override
-    public void onLoaderReset(Loader<Cursor> loader) { }
-}
\ No newline at end of file
+    private void bindChart(Forecast forecast) {
+        // The days around the one the chart was opened on, oldest first, which is the order
+        // the chart wants them in
+        int from = forecast.indexFrom(WeatherContract.addDays(mChartDate, -CHART_DAYS_AROUND));
+        int to = Math.min(forecast.size, from + 2 * CHART_DAYS_AROUND + 1);
+        if (from >= to) {
+            return;
+        }
+        mChartView.setTemperatures(new TemperatureChartView.Temperatures(
+                Arrays.copyOfRange(forecast.dates, from, to),
+                Arrays.copyOfRange(forecast.maxTemps, from, to),
+                Arrays.copyOfRange(forecast.minTemps, from, to)));
+        mChartView.setSelectedDate(WeatherEntry.getDateFromUri(mUri));
+    }
+}
@@ -17,6 +17,7 @@ package com.example.android.sunshine.app;
 
 import android.content.Context;
 import android.database.Cursor;
+import android.net.Uri;
 import android.os.Build;
 import android.os.Bundle;
 import android.support.v4.view.ViewCompat;
@@ -35,6 +36,7 @@ import com.example.android.sunshine.app.data.WeatherContract;
 /**
  * {@link ForecastAdapter} exposes a list of weather forecasts
  * from a {@link android.database.Cursor} to a {@link android.support.v7.widget.RecyclerView}.
+ * The rows after the first page are read by {@link ForecastPages} as the list is scrolled.
  */
 public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.ForecastAdapterViewHolder> {
 
@@ -44,11 +46,13 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
     // Flag to determine if we want to use a separate view for "today".
     private boolean mUseTodayLayout = true;
 
-    private Cursor mCursor;
+    final private ForecastPages mPages;
     final private Context mContext;
     final private ForecastAdapterOnClickHandler mClickHandler;
     final private View mEmptyView;
     final private ItemChoiceManager mICM;
+    // Shown until the loader delivers the first page, then dropped
+    private LastForecastRows mPlaceholderRows;
 
     /**
      * Cache of the children views for a forecast list item.
@@ -73,9 +77,13 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
         @Override
         public void onClick(View v) {
             int adapterPosition = getAdapterPosition();
-            mCursor.moveToPosition(adapterPosition);
-            int dateColumnIndex = mCursor.getColumnIndex(WeatherContract.WeatherEntry.COLUMN_DATE);
-            mClickHandler.onClick(mCursor.getLong(dateColumnIndex), this);
+            Cursor cursor = mPages.moveToPosition(adapterPosition);
+            if (null == cursor) {
+                // Still being read, or no longer there
+                return;
+            }
+            int dateColumnIndex = cursor.getColumnIndex(WeatherContract.WeatherEntry.COLUMN_DATE);
+            mClickHandler.onClick(cursor.getLong(dateColumnIndex), this);
             mICM.onClick(this);
         }
     }
@@ -84,8 +92,21 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
         void onClick(Long date, ForecastAdapterViewHolder vh);
     }
 
-    public ForecastAdapter(Context context, ForecastAdapterOnClickHandler dh, View emptyView, int choiceMode) {
+    public ForecastAdapter(Context context, ForecastAdapterOnClickHandler dh, View emptyView,
+                           int choiceMode, String[] projection, int dateColumn, int pageSize) {
         mContext = context;
+        mPages = new ForecastPages(context, projection, dateColumn, pageSize,
+                new ForecastPages.Listener() {
+                    @Override
+                    public void onPageAppended(int positionStart, int itemCount) {
+                        notifyItemRangeInserted(positionStart, itemCount);
+                    }
+
+                    @Override
+                    public void onPageReloaded(int positionStart, int itemCount) {
+                        notifyItemRangeChanged(positionStart, itemCount);
+                    }
+                });
         mClickHandler = dh;
         mEmptyView = emptyView;
         mICM = new ItemChoiceManager(this);
@@ -124,8 +145,17 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
 
     @Override
     public void onBindViewHolder(ForecastAdapterViewHolder forecastAdapterViewHolder, int position) {
-        mCursor.moveToPosition(position);
-        int weatherId = mCursor.getInt(ForecastFragment.COL_WEATHER_CONDITION_ID);
+        if (null != mPlaceholderRows) {
+            bindPlaceholderRow(forecastAdapterViewHolder, position);
+            return;
+        }
+        Cursor cursor = mPages.moveToPosition(position);
+        if (null == cursor) {
+            // The page is being read again, or lost the row; it is rebound once it changes
+            bindEmptyRow(forecastAdapterViewHolder);
+            return;
+        }
+        int weatherId = cursor.getInt(ForecastFragment.COL_WEATHER_CONDITION_ID);
         int defaultImage;
         boolean useLongToday;
 
@@ -154,7 +184,7 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
         ViewCompat.setTransitionName(forecastAdapterViewHolder.mIconView, "iconView" + position);
 
         // Read date from cursor
-        long dateInMillis = mCursor.getLong(ForecastFragment.COL_WEATHER_DATE);
+        long dateInMillis = cursor.getLong(ForecastFragment.COL_WEATHER_DATE);
 
         // Find TextView and set formatted date on it
         forecastAdapterViewHolder.mDateView.setText(Utility.getFriendlyDayString(mContext, dateInMillis, useLongToday));
@@ -171,13 +201,13 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
         // is not individually selectable
 
         // Read high temperature from cursor
-        double high = mCursor.getDouble(ForecastFragment.COL_WEATHER_MAX_TEMP);
+        double high = cursor.getDouble(ForecastFragment.COL_WEATHER_MAX_TEMP);
         String highString = Utility.formatTemperature(mContext, high);
         forecastAdapterViewHolder.mHighTempView.setText(highString);
         forecastAdapterViewHolder.mHighTempView.setContentDescription(mContext.getString(R.string.a11y_high_temp, highString));
 
         // Read low temperature from cursor
-        double low = mCursor.getDouble(ForecastFragment.COL_WEATHER_MIN_TEMP);
+        double low = cursor.getDouble(ForecastFragment.COL_WEATHER_MIN_TEMP);
         String lowString = Utility.formatTemperature(mContext, low);
         forecastAdapterViewHolder.mLowTempView.setText(lowString);
         forecastAdapterViewHolder.mLowTempView.setContentDescription(mContext.getString(R.string.a11y_low_temp, lowString));
@@ -185,6 +215,51 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
         mICM.onBindViewHolder(forecastAdapterViewHolder, position);
     }
 
+    /**
+     * Binds a row saved after the last sync. Everything is already formatted, and the icon is
+     * the bundled one, so nothing is read or fetched.
+     */
+    private void bindPlaceholderRow(ForecastAdapterViewHolder forecastAdapterViewHolder,
+                                    int position) {
+        LastForecastRows rows = mPlaceholderRows;
+        int weatherId = rows.weatherIds[position];
+        String dateText;
+        if (getItemViewType(position) == VIEW_TYPE_TODAY) {
+            forecastAdapterViewHolder.mIconView.setImageResource(
+                    Utility.getArtResourceForWeatherCondition(weatherId));
+            dateText = rows.todayDateText;
+        } else {
+            forecastAdapterViewHolder.mIconView.setImageResource(
+                    Utility.getIconResourceForWeatherCondition(weatherId));
+            dateText = rows.dateTexts[position];
+        }
+        ViewCompat.setTransitionName(forecastAdapterViewHolder.mIconView, "iconView" + position);
+        forecastAdapterViewHolder.mDateView.setText(dateText);
+
+        String description = rows.descriptions[position];
+        forecastAdapterViewHolder.mDescriptionView.setText(description);
+        forecastAdapterViewHolder.mDescriptionView.setContentDescription(mContext.getString(R.string.a11y_forecast, description));
+
+        String highString = rows.highTexts[position];
+        forecastAdapterViewHolder.mHighTempView.setText(highString);
+        forecastAdapterViewHolder.mHighTempView.setContentDescription(mContext.getString(R.string.a11y_high_temp, highString));
+
+        String lowString = rows.lowTexts[position];
+        forecastAdapterViewHolder.mLowTempView.setText(lowString);
+        forecastAdapterViewHolder.mLowTempView.setContentDescription(mContext.getString(R.string.a11y_low_temp, lowString));
+
+        mICM.onBindViewHolder(forecastAdapterViewHolder, position);
+    }
+
+    private void bindEmptyRow(ForecastAdapterViewHolder forecastAdapterViewHolder) {
+        Glide.clear(forecastAdapterViewHolder.mIconView);
+        forecastAdapterViewHolder.mIconView.setImageDrawable(null);
+        forecastAdapterViewHolder.mDateView.setText(null);
+        forecastAdapterViewHolder.mDescriptionView.setText(null);
+        forecastAdapterViewHolder.mHighTempView.setText(null);
+        forecastAdapterViewHolder.mLowTempView.setText(null);
+    }
+
     public void onRestoreInstanceState(Bundle savedInstanceState) {
         mICM.onRestoreInstanceState(savedInstanceState);
     }
@@ -208,18 +283,37 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
 
     @Override
     public int getItemCount() {
-        if ( null == mCursor ) return 0;
-        return mCursor.getCount();
+        if (null != mPlaceholderRows) {
+            return mPlaceholderRows.size();
+        }
+        return mPages.getCount();
     }
 
-    public void swapCursor(Cursor newCursor) {
-        mCursor = newCursor;
+    /**
+     * Shows rows saved after the last sync until the first page is swapped in. Clicks on them
+     * are ignored, as they have no cursor to read the day from.
+     */
+    void setPlaceholderRows(LastForecastRows rows) {
+        mPlaceholderRows = rows;
         notifyDataSetChanged();
         mEmptyView.setVisibility(getItemCount() == 0 ? View.VISIBLE : View.GONE);
     }
 
+    /**
+     * @param pageUri the Uri the cursor holds the first page of, used to read the pages after it
+     */
+    public void swapCursor(Uri pageUri, Cursor newCursor) {
+        mPlaceholderRows = null;
+        mPages.swapFirstPage(pageUri, newCursor);
+        notifyDataSetChanged();
+        mEmptyView.setVisibility(getItemCount() == 0 ? View.VISIBLE : View.GONE);
+    }
+
+    /**
+     * @return the first page of the forecast, starting with today
+     */
     public Cursor getCursor() {
-        return mCursor;
+        return mPages.getFirstPage();
     }
 
     public void selectView(RecyclerView.ViewHolder viewHolder) {
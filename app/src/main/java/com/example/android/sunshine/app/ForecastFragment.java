@@ -45,13 +45,15 @@ import android.view.ViewTreeObserver;
 import android.widget.AbsListView;
 import android.widget.TextView;
 
+import com.example.android.sunshine.app.data.ForecastRepository;
 import com.example.android.sunshine.app.data.WeatherContract;
 import com.example.android.sunshine.app.sync.SunshineSyncAdapter;
+import com.example.android.sunshine.core.Forecast;
 
 /**
  * Encapsulates fetching the forecast and displaying it as a {@link android.support.v7.widget.RecyclerView} layout.
  */
-public class ForecastFragment extends Fragment implements LoaderManager.LoaderCallbacks<Cursor>, SharedPreferences.OnSharedPreferenceChangeListener {
+public class ForecastFragment extends Fragment implements LoaderManager.LoaderCallbacks<Cursor>, SharedPreferences.OnSharedPreferenceChangeListener, ForecastRepository.Observer {
     public static final String LOG_TAG = ForecastFragment.class.getSimpleName();
     private ForecastAdapter mForecastAdapter;
     private RecyclerView mRecyclerView;
@@ -59,10 +61,17 @@ public class ForecastFragment extends Fragment implements LoaderManager.LoaderCa
     private int mChoiceMode;
     private boolean mHoldForTransition;
     private long mInitialSelectedDate = -1;
+    // The location's days, kept current by the repository. The list itself is paged from the
+    // loader's cursor, but the map and the detail pane read from these.
+    private ForecastRepository.Subscription mSubscription;
+    private Forecast mLocationForecast;
 
     private static final String SELECTED_KEY = "selected_position";
 
     private static final int FORECAST_LOADER = 0;
+    // Rows read at a time. Larger than the forecast the server sends, so a forecast without
+    // history fits the first page.
+    private static final int FORECAST_PAGE_SIZE = 20;
     // For the forecast view we're showing only a small subset of the stored data.
     // Specify the columns we need.
     private static final String[] FORECAST_COLUMNS = {
@@ -78,9 +87,7 @@ public class ForecastFragment extends Fragment implements LoaderManager.LoaderCa
             WeatherContract.WeatherEntry.COLUMN_MAX_TEMP,
             WeatherContract.WeatherEntry.COLUMN_MIN_TEMP,
             WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING,
-            WeatherContract.WeatherEntry.COLUMN_WEATHER_ID,
-            WeatherContract.LocationEntry.COLUMN_COORD_LAT,
-            WeatherContract.LocationEntry.COLUMN_COORD_LONG
+            WeatherContract.WeatherEntry.COLUMN_WEATHER_ID
     };
 
     // These indices are tied to FORECAST_COLUMNS.  If FORECAST_COLUMNS changes, these
@@ -92,8 +99,6 @@ public class ForecastFragment extends Fragment implements LoaderManager.LoaderCa
     static final int COL_WEATHER_MIN_TEMP = 4;
     static final int COL_LOCATION_SETTING = 5;
     static final int COL_WEATHER_CONDITION_ID = 6;
-    static final int COL_COORD_LAT = 7;
-    static final int COL_COORD_LONG = 8;
 
     /**
      * A callback interface that all activities containing this fragment must
@@ -195,7 +200,7 @@ public class ForecastFragment extends Fragment implements LoaderManager.LoaderCa
                                 vh
                         );
             }
-        }, emptyView, mChoiceMode);
+        }, emptyView, mChoiceMode, FORECAST_COLUMNS, COL_WEATHER_DATE, FORECAST_PAGE_SIZE);
 
         // specify an adapter (see also next example)
         mRecyclerView.setAdapter(mForecastAdapter);
@@ -248,6 +253,26 @@ public class ForecastFragment extends Fragment implements LoaderManager.LoaderCa
 
         mForecastAdapter.setUseTodayLayout(mUseTodayLayout);
 
+        if (savedInstanceState == null) {
+            // Show the rows saved after the last sync right away, rather than waiting for the
+            // database to open. The loader's rows replace them once they are read.
+            LastForecastRows lastRows = LastForecastRows.read(getActivity(),
+                    Utility.getPreferredLocation(getActivity()));
+            if (null != lastRows) {
+                mForecastAdapter.setPlaceholderRows(lastRows);
+                mRecyclerView.getViewTreeObserver().addOnPreDrawListener(new ViewTreeObserver.OnPreDrawListener() {
+                    @Override
+                    public boolean onPreDraw() {
+                        if (mRecyclerView.getChildCount() > 0) {
+                            mRecyclerView.getViewTreeObserver().removeOnPreDrawListener(this);
+                            StartupTasks.onFirstForecastRow();
+                        }
+                        return true;
+                    }
+                });
+            }
+        }
+
         return rootView;
     }
 
@@ -260,25 +285,43 @@ public class ForecastFragment extends Fragment implements LoaderManager.LoaderCa
             getActivity().supportPostponeEnterTransition();
         }
         getLoaderManager().initLoader(FORECAST_LOADER, null, this);
+        subscribe();
         super.onActivityCreated(savedInstanceState);
     }
 
+    @Override
+    public void onDestroyView() {
+        mSubscription.unsubscribe();
+        super.onDestroyView();
+    }
+
     // since we read the location when we create the loader, all we need to do is restart things
     void onLocationChanged() {
         getLoaderManager().restartLoader(FORECAST_LOADER, null, this);
+        mSubscription.unsubscribe();
+        subscribe();
+    }
+
+    private void subscribe() {
+        mLocationForecast = null;
+        mSubscription = ForecastRepository.get(getActivity())
+                .subscribe(Utility.getPreferredLocation(getActivity()), this);
+    }
+
+    @Override
+    public void onForecastChanged(String locationSetting, Forecast forecast) {
+        mLocationForecast = forecast;
     }
 
     private void openPreferredLocationInMap() {
         // Using the URI scheme for showing a location found on a map.  This super-handy
         // intent can is detailed in the "Common Intents" page of Android's developer site:
         // http://developer.android.com/guide/components/intents-common.html#Maps
-        if (null != mForecastAdapter) {
-            Cursor c = mForecastAdapter.getCursor();
-            if (null != c) {
-                c.moveToPosition(0);
-                String posLat = c.getString(COL_COORD_LAT);
-                String posLong = c.getString(COL_COORD_LONG);
-                Uri geoLocation = Uri.parse("geo:" + posLat + "," + posLong);
+        if (null != mLocationForecast) {
+            Forecast forecast = mLocationForecast;
+            // The coordinates come with the days, so there are none before the first sync
+            if (forecast.size > 0) {
+                Uri geoLocation = Uri.parse("geo:" + forecast.latitude + "," + forecast.longitude);
 
                 Intent intent = new Intent(Intent.ACTION_VIEW);
                 intent.setData(geoLocation);
@@ -313,8 +356,9 @@ public class ForecastFragment extends Fragment implements LoaderManager.LoaderCa
         String sortOrder = WeatherContract.WeatherEntry.COLUMN_DATE + " ASC";
 
         String locationSetting = Utility.getPreferredLocation(getActivity());
-        Uri weatherForLocationUri = WeatherContract.WeatherEntry.buildWeatherLocationWithStartDate(
-                locationSetting, System.currentTimeMillis());
+        // Only the first page is loaded here; the adapter reads the rest as the list scrolls
+        Uri weatherForLocationUri = WeatherContract.WeatherEntry.buildWeatherLocationPage(
+                locationSetting, System.currentTimeMillis(), FORECAST_PAGE_SIZE);
 
         return new CursorLoader(getActivity(),
                 weatherForLocationUri,
@@ -326,7 +370,7 @@ public class ForecastFragment extends Fragment implements LoaderManager.LoaderCa
 
     @Override
     public void onLoadFinished(Loader<Cursor> loader, Cursor data) {
-        mForecastAdapter.swapCursor(data);
+        mForecastAdapter.swapCursor(((CursorLoader) loader).getUri(), data);
         updateEmptyView();
         if ( data.getCount() == 0 ) {
             getActivity().supportStartPostponedEnterTransition();
@@ -338,6 +382,8 @@ public class ForecastFragment extends Fragment implements LoaderManager.LoaderCa
                     // we see Children.
                     if (mRecyclerView.getChildCount() > 0) {
                         mRecyclerView.getViewTreeObserver().removeOnPreDrawListener(this);
+                        // The rows are about to be drawn for the first time
+                        StartupTasks.onFirstForecastRow();
                         int position = mForecastAdapter.getSelectedItemPosition();
                         if (position == RecyclerView.NO_POSITION &&
                                 -1 != mInitialSelectedDate) {
@@ -384,7 +430,7 @@ public class ForecastFragment extends Fragment implements LoaderManager.LoaderCa
 
     @Override
     public void onLoaderReset(Loader<Cursor> loader) {
-        mForecastAdapter.swapCursor(null);
+        mForecastAdapter.swapCursor(null, null);
     }
 
     public void setUseTodayLayout(boolean useTodayLayout) {
@@ -0,0 +1,277 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+
+import com.example.android.sunshine.app.data.WeatherContract;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * The forecast list as a sequence of fixed size pages. The first page is the cursor delivered by
+ * {@link ForecastFragment}'s loader; the following ones are read in the background as the list
+ * is scrolled towards them, each starting after the last date of the one before.
+ *
+ * Only a few pages keep their cursor at a time. Pages scrolled far away are closed and read
+ * again when they come back into view, so memory doesn't grow with the number of stored days.
+ * All methods must be called on the main thread.
+ */
+final class ForecastPages {
+
+    // How many pages, the first one included, keep their cursor open
+    private static final int MAX_RESIDENT_PAGES = 4;
+
+    interface Listener {
+        /**
+         * Rows were added at the end of the list.
+         */
+        void onPageAppended(int positionStart, int itemCount);
+
+        /**
+         * Rows that had been released were read again.
+         */
+        void onPageReloaded(int positionStart, int itemCount);
+    }
+
+    private static final class Page {
+        final Uri uri;
+        Cursor cursor;
+        int count;
+        long lastDate;
+        boolean loading;
+
+        Page(Uri uri) {
+            this.uri = uri;
+        }
+    }
+
+    private static final ExecutorService sExecutor = Executors.newSingleThreadExecutor();
+    private static final Handler sHandler = new Handler(Looper.getMainLooper());
+
+    private final Context mContext;
+    private final String[] mProjection;
+    private final int mDateColumn;
+    private final int mPageSize;
+    private final Listener mListener;
+
+    private final List<Page> mPages = new ArrayList<>();
+    private boolean mEndReached;
+    // Bumped whenever the first page changes, so reads started before are dropped
+    private int mGeneration;
+
+    ForecastPages(Context context, String[] projection, int dateColumn, int pageSize,
+                  Listener listener) {
+        mContext = context.getApplicationContext();
+        mProjection = projection;
+        mDateColumn = dateColumn;
+        mPageSize = pageSize;
+        mListener = listener;
+    }
+
+    int getPageSize() {
+        return mPageSize;
+    }
+
+    /**
+     * Replaces every page with a new first page. The cursor stays owned by its loader.
+     *
+     * @param pageUri the Uri the cursor was read from, or null along with a null cursor
+     */
+    void swapFirstPage(Uri pageUri, Cursor firstPage) {
+        mGeneration++;
+        // The loader closes the first page; the others are ours
+        for (int i = 1; i < mPages.size(); i++) {
+            release(mPages.get(i));
+        }
+        mPages.clear();
+        mEndReached = true;
+        if (null != firstPage) {
+            Page page = new Page(pageUri);
+            setCursor(page, firstPage);
+            mPages.add(page);
+            mEndReached = page.count < mPageSize;
+        }
+    }
+
+    /**
+     * @return the first page, which starts the forecast, or null if there is none
+     */
+    Cursor getFirstPage() {
+        return mPages.isEmpty() ? null : mPages.get(0).cursor;
+    }
+
+    int getCount() {
+        int count = 0;
+        for (Page page : mPages) {
+            count += page.count;
+        }
+        return count;
+    }
+
+    /**
+     * Moves to the row at a position, starting to read the pages around it as needed.
+     *
+     * @return the cursor of the row's page, positioned on it, or null if the page is being read
+     * again, in which case the listener is told once it is back, or if the page was read again
+     * with fewer rows than it is listed with, which lasts until the next first page replaces it.
+     */
+    Cursor moveToPosition(int position) {
+        int pageIndex = position / mPageSize;
+        if (pageIndex >= mPages.size()) {
+            return null;
+        }
+        Page page = mPages.get(pageIndex);
+
+        // Start on the next page before the list runs out of rows
+        if (!mEndReached && pageIndex == mPages.size() - 1
+                && position % mPageSize >= mPageSize / 2) {
+            loadNextPage();
+        }
+
+        if (null == page.cursor) {
+            reload(pageIndex);
+            return null;
+        }
+        if (!page.cursor.moveToPosition(position % mPageSize)) {
+            // Days were archived since the page was listed
+            return null;
+        }
+        return page.cursor;
+    }
+
+    private void loadNextPage() {
+        Page last = mPages.get(mPages.size() - 1);
+        if (last.loading || null == last.cursor) {
+            return;
+        }
+        final Page page = new Page(WeatherContract.WeatherEntry.buildWeatherNextPageUri(
+                mPages.get(0).uri, last.lastDate));
+        mPages.add(page);
+        read(page, mPages.size() - 1, true);
+    }
+
+    private void reload(int pageIndex) {
+        Page page = mPages.get(pageIndex);
+        if (!page.loading) {
+            read(page, pageIndex, false);
+        }
+    }
+
+    private void read(final Page page, final int pageIndex, final boolean appending) {
+        page.loading = true;
+        final int generation = mGeneration;
+        sExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                final Cursor cursor = mContext.getContentResolver().query(page.uri, mProjection,
+                        null, null, WeatherContract.WeatherEntry.COLUMN_DATE + " ASC");
+                if (null != cursor) {
+                    // Fill the cursor window here rather than on the main thread
+                    cursor.getCount();
+                }
+                sHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        onPageRead(page, pageIndex, appending, generation, cursor);
+                    }
+                });
+            }
+        });
+    }
+
+    private void onPageRead(Page page, int pageIndex, boolean appending, int generation,
+                            Cursor cursor) {
+        page.loading = false;
+        if (generation != mGeneration || null == cursor) {
+            if (null != cursor) {
+                cursor.close();
+            }
+            if (generation == mGeneration && appending) {
+                // Reading failed; let a later bind try again
+                mPages.remove(page);
+            }
+            return;
+        }
+
+        int positionStart = pageIndex * mPageSize;
+        if (appending) {
+            setCursor(page, cursor);
+            mEndReached = page.count < mPageSize;
+            if (page.count == 0) {
+                mPages.remove(page);
+                cursor.close();
+                return;
+            }
+            mListener.onPageAppended(positionStart, page.count);
+        } else {
+            // Rows can't be added to a page that is already listed. If it came back shorter,
+            // moveToPosition answers its missing rows as unavailable.
+            int count = page.count;
+            setCursor(page, cursor);
+            page.count = count;
+            mListener.onPageReloaded(positionStart, count);
+        }
+        releaseFarPages(pageIndex);
+    }
+
+    private void setCursor(Page page, Cursor cursor) {
+        page.cursor = cursor;
+        page.count = cursor.getCount();
+        if (page.count > 0) {
+            cursor.moveToLast();
+            page.lastDate = cursor.getLong(mDateColumn);
+        }
+    }
+
+    // Closes the pages furthest from the one just read until few enough are left open
+    private void releaseFarPages(int pageIndex) {
+        int resident = 0;
+        for (Page page : mPages) {
+            if (null != page.cursor) {
+                resident++;
+            }
+        }
+        while (resident > MAX_RESIDENT_PAGES) {
+            int furthest = -1;
+            for (int i = 1; i < mPages.size(); i++) {
+                if (null != mPages.get(i).cursor && (furthest == -1
+                        || Math.abs(i - pageIndex) > Math.abs(furthest - pageIndex))) {
+                    furthest = i;
+                }
+            }
+            if (furthest == -1) {
+                return;
+            }
+            release(mPages.get(furthest));
+            resident--;
+        }
+    }
+
+    private static void release(Page page) {
+        if (null != page.cursor) {
+            page.cursor.close();
+            page.cursor = null;
+        }
+    }
+}
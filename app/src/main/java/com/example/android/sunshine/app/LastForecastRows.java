@@ -0,0 +1,195 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.support.annotation.VisibleForTesting;
+import android.support.v4.util.AtomicFile;
+import android.util.Log;
+
+import com.example.android.sunshine.app.data.WeatherContract;
+import com.example.android.sunshine.core.Forecast;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Locale;
+
+/**
+ * The first rows of the forecast list, formatted the way {@link ForecastAdapter} displays them
+ * and saved after each sync, so the list can show them before its loader has opened the
+ * database.
+ *
+ * The rows are only read back for the location, units, locale and day they were formatted for.
+ * Once the day changes, "Today" would be the wrong row.
+ */
+public final class LastForecastRows {
+
+    private static final String LOG_TAG = LastForecastRows.class.getSimpleName();
+
+    private static final String FILE_NAME = "last_forecast_rows";
+    // Bumped whenever the file's layout changes
+    private static final int FORMAT_VERSION = 1;
+    // About a screen of rows. The loader's rows replace them right after.
+    private static final int MAX_ROWS = 8;
+
+    final long[] dates;
+    final int[] weatherIds;
+    // The first day as the today layout shows it
+    final String todayDateText;
+    final String[] dateTexts;
+    final String[] descriptions;
+    final String[] highTexts;
+    final String[] lowTexts;
+
+    private LastForecastRows(int size, String todayDateText) {
+        this.todayDateText = todayDateText;
+        dates = new long[size];
+        weatherIds = new int[size];
+        dateTexts = new String[size];
+        descriptions = new String[size];
+        highTexts = new String[size];
+        lowTexts = new String[size];
+    }
+
+    int size() {
+        return dates.length;
+    }
+
+    /**
+     * Formats and saves the first rows of a location's forecast, from today on. Called off the
+     * main thread after each sync.
+     */
+    public static void write(Context context, String locationSetting, Forecast forecast) {
+        long today = WeatherContract.normalizeDate(System.currentTimeMillis());
+        int from = forecast.indexFrom(today);
+        int size = Math.min(MAX_ROWS, forecast.size - from);
+        if (size <= 0) {
+            return;
+        }
+
+        AtomicFile file = getFile(context);
+        FileOutputStream stream = null;
+        try {
+            stream = file.startWrite();
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream));
+            writeKey(out, context, locationSetting, today);
+            out.writeUTF(Utility.getFriendlyDayString(context, forecast.dates[from], true));
+            out.writeInt(size);
+            for (int i = from; i < from + size; i++) {
+                out.writeLong(forecast.dates[i]);
+                out.writeInt(forecast.weatherIds[i]);
+                out.writeUTF(Utility.getFriendlyDayString(context, forecast.dates[i], false));
+                out.writeUTF(Utility.getStringForWeatherCondition(context, forecast.weatherIds[i]));
+                out.writeUTF(Utility.formatTemperature(context, forecast.maxTemps[i]));
+                out.writeUTF(Utility.formatTemperature(context, forecast.minTemps[i]));
+            }
+            out.flush();
+            file.finishWrite(stream);
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Could not save the forecast rows", e);
+            if (stream != null) {
+                file.failWrite(stream);
+            }
+        }
+    }
+
+    /**
+     * Reads the rows saved for the location. Small enough to read on the main thread.
+     *
+     * @return the rows, or null if there are none, or they were formatted for another location,
+     * day, units or locale
+     */
+    static LastForecastRows read(Context context, String locationSetting) {
+        FileInputStream stream;
+        try {
+            stream = getFile(context).openRead();
+        } catch (FileNotFoundException e) {
+            // Nothing synced yet
+            return null;
+        }
+        try {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(stream));
+            long today = WeatherContract.normalizeDate(System.currentTimeMillis());
+            if (!readKey(in, context, locationSetting, today)) {
+                return null;
+            }
+            String todayDateText = in.readUTF();
+            int size = in.readInt();
+            if (size < 0 || size > MAX_ROWS) {
+                // A corrupt file; sizing the rows by it could throw or run out of memory
+                Log.w(LOG_TAG, "Ignoring saved forecast rows with a count of " + size);
+                return null;
+            }
+            LastForecastRows rows = new LastForecastRows(size, todayDateText);
+            for (int i = 0; i < rows.size(); i++) {
+                rows.dates[i] = in.readLong();
+                rows.weatherIds[i] = in.readInt();
+                rows.dateTexts[i] = in.readUTF();
+                rows.descriptions[i] = in.readUTF();
+                rows.highTexts[i] = in.readUTF();
+                rows.lowTexts[i] = in.readUTF();
+            }
+            return rows;
+        } catch (IOException e) {
+            Log.w(LOG_TAG, "Could not read the saved forecast rows", e);
+            return null;
+        } finally {
+            try {
+                stream.close();
+            } catch (IOException e) {
+                // Only read from
+            }
+        }
+    }
+
+    /**
+     * Deletes the saved rows, so the next launch waits for the loader.
+     */
+    @VisibleForTesting
+    public static void delete(Context context) {
+        getFile(context).delete();
+    }
+
+    private static AtomicFile getFile(Context context) {
+        return new AtomicFile(new File(context.getFilesDir(), FILE_NAME));
+    }
+
+    // Everything the formatting depends on besides the forecast itself
+    private static void writeKey(DataOutputStream out, Context context, String locationSetting,
+                                 long today) throws IOException {
+        out.writeInt(FORMAT_VERSION);
+        out.writeUTF(locationSetting);
+        out.writeLong(today);
+        out.writeBoolean(Utility.isMetric(context));
+        out.writeUTF(Locale.getDefault().toString());
+    }
+
+    private static boolean readKey(DataInputStream in, Context context, String locationSetting,
+                                   long today) throws IOException {
+        return in.readInt() == FORMAT_VERSION
+                && in.readUTF().equals(locationSetting)
+                && in.readLong() == today
+                && in.readBoolean() == Utility.isMetric(context)
+                && in.readUTF().equals(Locale.getDefault().toString());
+    }
+}
@@ -21,6 +21,7 @@ import android.app.Dialog;
 import android.content.Context;
 import android.content.res.TypedArray;
 import android.os.Bundle;
+import android.os.Handler;
 import android.preference.EditTextPreference;
 import android.text.Editable;
 import android.text.TextWatcher;
@@ -30,6 +31,7 @@ import android.view.ViewGroup;
 import android.widget.Button;
 import android.widget.EditText;
 
+import com.example.android.sunshine.app.sync.ForecastPrefetcher;
 import com.google.android.gms.common.ConnectionResult;
 import com.google.android.gms.common.GoogleApiAvailability;
 import com.google.android.gms.common.GooglePlayServicesNotAvailableException;
@@ -38,8 +40,32 @@ import com.google.android.gms.location.places.ui.PlacePicker;
 
 public class LocationEditTextPreference extends EditTextPreference {
     static final private int DEFAULT_MINIMUM_LOCATION_LENGTH = 2;
+    // Wait for typing to pause this long before checking the location with the server
+    static final private long VALIDATION_DELAY_MILLIS = 500;
     private int mMinLength;
 
+    private final Handler mHandler = new Handler();
+    private final Runnable mValidateRunnable = new Runnable() {
+        @Override
+        public void run() {
+            EditText et = getEditText();
+            if (getDialog() == null || et.length() < mMinLength) {
+                return;
+            }
+            LocationValidator.validate(et.getText().toString(), new LocationValidator.Listener() {
+                @Override
+                public void onLocationValidated(String location, LocationValidator.Result result) {
+                    // Only the latest text counts, and only while the dialog is showing
+                    String current = LocationValidator.normalize(
+                            getEditText().getText().toString());
+                    if (getDialog() != null && location.equals(current)) {
+                        showValidationResult(result);
+                    }
+                }
+            });
+        }
+    };
+
     public LocationEditTextPreference(Context context, AttributeSet attrs) {
         super(context, attrs);
         TypedArray a = context.getTheme().obtainStyledAttributes(
@@ -136,7 +162,49 @@ public class LocationEditTextPreference extends EditTextPreference {
                         positiveButton.setEnabled(true);
                     }
                 }
+
+                // Check the location once the user stops typing. Locations validated before
+                // are answered from the cache without waiting.
+                mHandler.removeCallbacks(mValidateRunnable);
+                getEditText().setError(null);
+                if (s.length() >= mMinLength) {
+                    String location = s.toString().trim();
+                    LocationValidator.Result cached = LocationValidator.getCachedResult(location);
+                    if (cached != null) {
+                        showValidationResult(cached);
+                    } else {
+                        mHandler.postDelayed(mValidateRunnable, VALIDATION_DELAY_MILLIS);
+                    }
+                }
             }
         });
     }
+
+    @Override
+    protected void onDialogClosed(boolean positiveResult) {
+        mHandler.removeCallbacks(mValidateRunnable);
+        if (positiveResult) {
+            // A confirmed location the server knows starts downloading before the sync that
+            // saving it requests gets going, which then commits the prefetched forecast
+            String location = getEditText().getText().toString().trim();
+            LocationValidator.Result result = LocationValidator.getCachedResult(location);
+            if (result != null && result.status == LocationValidator.STATUS_VALID) {
+                ForecastPrefetcher.prefetch(location);
+            }
+        }
+        super.onDialogClosed(positiveResult);
+    }
+
+    /**
+     * Flags a location the server doesn't know, and keeps it from being saved. If the server
+     * couldn't be reached we let the location through, and the sync will report on it.
+     */
+    private void showValidationResult(LocationValidator.Result result) {
+        boolean invalid = result.status == LocationValidator.STATUS_INVALID;
+        getEditText().setError(invalid ? getContext().getString(R.string.pref_location_not_found) : null);
+        Dialog d = getDialog();
+        if (d instanceof AlertDialog) {
+            ((AlertDialog) d).getButton(AlertDialog.BUTTON_POSITIVE).setEnabled(!invalid);
+        }
+    }
 }
@@ -0,0 +1,191 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.support.v4.util.LruCache;
+import android.util.Log;
+
+import com.example.android.sunshine.app.sync.SunshineSyncAdapter;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Checks that OpenWeatherMap knows a location before we fetch a whole forecast for it.
+ *
+ * The check asks the sync's server for the current weather only, a fraction of the 14 day
+ * forecast. Locations are keyed by {@link #normalize}, so the same place typed in another case
+ * or with spaces around it is checked once. Results are kept in an LRU cache, and requests for a
+ * location that is already being checked share the request in flight. All methods must be
+ * called on the main thread, and listeners are called back on it.
+ */
+final class LocationValidator {
+    private static final String LOG_TAG = LocationValidator.class.getSimpleName();
+
+    private static final int CACHE_SIZE = 32;
+
+    static final int STATUS_VALID = 0;
+    static final int STATUS_INVALID = 1;
+    // The server couldn't be reached; the sync will find out
+    static final int STATUS_UNKNOWN = 2;
+
+    /**
+     * Outcome of a validation. For valid locations, also what the server resolved them to.
+     */
+    static final class Result {
+        final int status;
+        final String cityName;
+        final double latitude;
+        final double longitude;
+
+        Result(int status, String cityName, double latitude, double longitude) {
+            this.status = status;
+            this.cityName = cityName;
+            this.latitude = latitude;
+            this.longitude = longitude;
+        }
+    }
+
+    interface Listener {
+        /**
+         * @param location the normalized location that was checked
+         */
+        void onLocationValidated(String location, Result result);
+    }
+
+    private static final Result UNKNOWN = new Result(STATUS_UNKNOWN, null, 0, 0);
+    private static final Result INVALID = new Result(STATUS_INVALID, null, 0, 0);
+
+    private static final LruCache<String, Result> sCache = new LruCache<>(CACHE_SIZE);
+    private static final Map<String, List<Listener>> sPending = new HashMap<>();
+    private static final ExecutorService sExecutor = Executors.newSingleThreadExecutor();
+    private static final Handler sHandler = new Handler(Looper.getMainLooper());
+
+    private LocationValidator() {
+    }
+
+    /**
+     * @return the cached result for the location, or null if it hasn't been validated yet
+     */
+    static Result getCachedResult(String location) {
+        return sCache.get(normalize(location));
+    }
+
+    /**
+     * Validates the location, calling the listener straight away if the result is cached.
+     */
+    static void validate(String location, Listener listener) {
+        final String key = normalize(location);
+        Result cached = sCache.get(key);
+        if (cached != null) {
+            listener.onLocationValidated(key, cached);
+            return;
+        }
+        List<Listener> listeners = sPending.get(key);
+        if (listeners != null) {
+            listeners.add(listener);
+            return;
+        }
+        listeners = new ArrayList<>();
+        listeners.add(listener);
+        sPending.put(key, listeners);
+
+        sExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                final Result result = fetch(key);
+                sHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        // An unreachable server says nothing about the location, so try again
+                        // next time
+                        if (result.status != STATUS_UNKNOWN) {
+                            sCache.put(key, result);
+                        }
+                        List<Listener> waiting = sPending.remove(key);
+                        if (waiting != null) {
+                            for (Listener l : waiting) {
+                                l.onLocationValidated(key, result);
+                            }
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * @return the key a location is checked and cached under
+     */
+    static String normalize(String location) {
+        return location.trim().toLowerCase();
+    }
+
+    private static Result fetch(String location) {
+        HttpURLConnection urlConnection = null;
+        BufferedReader reader = null;
+        try {
+            Uri builtUri = SunshineSyncAdapter.buildCurrentWeatherUri(location);
+            urlConnection = (HttpURLConnection) new URL(builtUri.toString()).openConnection();
+            int responseCode = urlConnection.getResponseCode();
+            if (responseCode == HttpURLConnection.HTTP_NOT_FOUND) {
+                return INVALID;
+            } else if (responseCode != HttpURLConnection.HTTP_OK) {
+                return UNKNOWN;
+            }
+
+            reader = new BufferedReader(new InputStreamReader(urlConnection.getInputStream()));
+            StringBuilder buffer = new StringBuilder();
+            String line;
+            while ((line = reader.readLine()) != null) {
+                buffer.append(line);
+            }
+            JSONObject weatherJson = new JSONObject(buffer.toString());
+            JSONObject coord = weatherJson.getJSONObject("coord");
+            return new Result(STATUS_VALID, weatherJson.optString("name"),
+                    coord.getDouble("lat"), coord.getDouble("lon"));
+        } catch (IOException | JSONException e) {
+            Log.e(LOG_TAG, "Error validating " + location, e);
+            return UNKNOWN;
+        } finally {
+            if (urlConnection != null) {
+                urlConnection.disconnect();
+            }
+            if (reader != null) {
+                try {
+                    reader.close();
+                } catch (final IOException e) {
+                    Log.e(LOG_TAG, "Error closing stream", e);
+                }
+            }
+        }
+    }
+}
@@ -16,6 +16,7 @@
 package com.example.android.sunshine.app;
 
 import android.annotation.TargetApi;
+import android.content.Context;
 import android.content.Intent;
 import android.content.SharedPreferences;
 import android.os.Build;
@@ -30,7 +31,9 @@ import android.util.Log;
 import android.view.View;
 import android.widget.ImageView;
 import com.example.android.sunshine.app.data.WeatherContract;
+import com.example.android.sunshine.app.sync.ForecastPrefetcher;
 import com.example.android.sunshine.app.sync.SunshineSyncAdapter;
+import com.example.android.sunshine.app.widget.WidgetUpdateService;
 import com.google.android.gms.location.places.Place;
 import com.google.android.gms.location.places.ui.PlacePicker;
 import com.google.android.gms.maps.model.LatLng;
@@ -167,10 +170,11 @@ public class SettingsActivity extends PreferenceActivity
             }
 
             Utility.resetLocationStatus(this);
-            SunshineSyncAdapter.syncImmediately(this);
+            syncOnceValidated(sharedPreferences.getString(key, ""));
         } else if ( key.equals(getString(R.string.pref_units_key)) ) {
             // units have changed. update lists of weather entries accordingly
             getContentResolver().notifyChange(WeatherContract.WeatherEntry.CONTENT_URI, null);
+            WidgetUpdateService.requestUpdate(this);
         } else if ( key.equals(getString(R.string.pref_location_status_key)) ) {
             // our location status has changed.  Update the summary accordingly
             Preference locationPreference = findPreference(getString(R.string.pref_location_key));
@@ -178,9 +182,34 @@ public class SettingsActivity extends PreferenceActivity
         } else if ( key.equals(getString(R.string.pref_art_pack_key)) ) {
             // art pack have changed. update lists of weather entries accordingly
             getContentResolver().notifyChange(WeatherContract.WeatherEntry.CONTENT_URI, null);
+            WidgetUpdateService.requestUpdate(this);
         }
     }
 
+    /**
+     * Only fetches the forecast once the server has confirmed the location, so a typo doesn't
+     * cost a full 14 day fetch. The dialog usually validated it already, so this rarely waits.
+     */
+    private void syncOnceValidated(final String location) {
+        // The sync may need to start after we've been closed
+        final Context context = getApplicationContext();
+        LocationValidator.validate(location, new LocationValidator.Listener() {
+            @Override
+            public void onLocationValidated(String validated, LocationValidator.Result result) {
+                // Another location may have been picked meanwhile, which has its own check
+                if (!validated.equals(LocationValidator.normalize(
+                        Utility.getPreferredLocation(context)))) {
+                    return;
+                }
+                if (result.status == LocationValidator.STATUS_INVALID) {
+                    Utility.setLocationStatus(context, SunshineSyncAdapter.LOCATION_STATUS_INVALID);
+                } else {
+                    SunshineSyncAdapter.syncImmediately(context);
+                }
+            }
+        });
+    }
+
     @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
     @Override
     public Intent getParentActivityIntent() {
@@ -235,6 +264,9 @@ public class SettingsActivity extends PreferenceActivity
                 }
 
                 Utility.resetLocationStatus(this);
+                // The sync picks up this request once it's in, rather than making its own
+                ForecastPrefetcher.prefetch(address,
+                        (float) latLong.latitude, (float) latLong.longitude);
                 SunshineSyncAdapter.syncImmediately(this);
             }
         } else {
@@ -0,0 +1,186 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.app.Activity;
+import android.content.Context;
+import android.content.Intent;
+import android.content.SharedPreferences;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.preference.PreferenceManager;
+import android.support.annotation.VisibleForTesting;
+import android.support.v4.os.TraceCompat;
+import android.util.Log;
+import android.view.View;
+import android.view.ViewTreeObserver;
+
+import com.bumptech.glide.Glide;
+import com.example.android.sunshine.app.gcm.RegistrationIntentService;
+import com.example.android.sunshine.app.sync.SunshineSyncAdapter;
+import com.google.android.gms.common.ConnectionResult;
+import com.google.android.gms.common.GoogleApiAvailability;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Runs the launch work the first forecast rows don't need (the sync account, its periodic
+ * sync, the GCM token check and Glide's setup) in the background once the first frame is
+ * drawn, and records how long the first rows took to show.
+ *
+ * Each step is a trace section, so startup can be read from a systrace. All methods must be
+ * called on the main thread.
+ */
+public final class StartupTasks {
+
+    private static final String LOG_TAG = StartupTasks.class.getSimpleName();
+
+    interface Callback {
+        /**
+         * Play Services can't be used, so GCM wasn't registered. Called on the main thread.
+         */
+        void onPlayServicesUnavailable(int resultCode);
+    }
+
+    private static final ExecutorService sExecutor = Executors.newSingleThreadExecutor();
+    private static final Handler sHandler = new Handler(Looper.getMainLooper());
+
+    // The account and Glide only need setting up once per process
+    private static boolean sProcessTasksStarted;
+    // Uptime of the last MainActivity.onCreate, and of its first forecast row, or 0. Volatile
+    // so that benchmarks can read them from the instrumentation thread.
+    private static volatile long sCreateTime;
+    private static volatile long sFirstRowTime;
+
+    private StartupTasks() {
+    }
+
+    /**
+     * Called at the start of MainActivity.onCreate, from where the time to the first forecast
+     * row is measured.
+     */
+    static void onActivityCreating() {
+        sCreateTime = SystemClock.uptimeMillis();
+        sFirstRowTime = 0;
+    }
+
+    /**
+     * Runs the deferred tasks after the activity's first frame.
+     */
+    static <T extends Activity & Callback> void startAfterFirstFrame(final T activity) {
+        final View decorView = activity.getWindow().getDecorView();
+        decorView.getViewTreeObserver().addOnPreDrawListener(
+                new ViewTreeObserver.OnPreDrawListener() {
+                    @Override
+                    public boolean onPreDraw() {
+                        decorView.getViewTreeObserver().removeOnPreDrawListener(this);
+                        // Posted from the frame about to be drawn, so it runs once it is
+                        sHandler.post(new Runnable() {
+                            @Override
+                            public void run() {
+                                start(activity);
+                            }
+                        });
+                        return true;
+                    }
+                });
+    }
+
+    /**
+     * Called when the forecast list first has rows to show.
+     */
+    static void onFirstForecastRow() {
+        if (sCreateTime == 0 || sFirstRowTime != 0) {
+            return;
+        }
+        sFirstRowTime = SystemClock.uptimeMillis();
+        Log.i(LOG_TAG, "First forecast row after " + getTimeToFirstForecastRow() + "ms");
+    }
+
+    /**
+     * @return the milliseconds from the last MainActivity.onCreate to its first forecast row,
+     * or -1 if there hasn't been one yet
+     */
+    @VisibleForTesting
+    public static long getTimeToFirstForecastRow() {
+        return sFirstRowTime == 0 ? -1 : sFirstRowTime - sCreateTime;
+    }
+
+    private static <T extends Activity & Callback> void start(final T activity) {
+        final Context context = activity.getApplicationContext();
+        final boolean processTasks = !sProcessTasksStarted;
+        sProcessTasksStarted = true;
+        sExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (processTasks) {
+                    TraceCompat.beginSection("StartupTasks.initializeSyncAdapter");
+                    try {
+                        // Reads the account from AccountManager, and on the first launch creates
+                        // it, configures its periodic sync and asks for a first one
+                        SunshineSyncAdapter.initializeSyncAdapter(context);
+                    } finally {
+                        TraceCompat.endSection();
+                    }
+                    TraceCompat.beginSection("StartupTasks.warmUpGlide");
+                    try {
+                        // Builds Glide's caches and pools before the first image needs them
+                        Glide.get(context);
+                    } finally {
+                        TraceCompat.endSection();
+                    }
+                }
+                TraceCompat.beginSection("StartupTasks.checkGcmToken");
+                try {
+                    checkGcmToken(activity, context);
+                } finally {
+                    TraceCompat.endSection();
+                }
+            }
+        });
+    }
+
+    private static <T extends Activity & Callback> void checkGcmToken(final T activity,
+                                                                       Context context) {
+        // If Google Play Services is up to date, we'll want to register GCM. If it is not, we'll
+        // skip the registration and this device will not receive any downstream messages from
+        // our fake server. Because weather alerts are not a core feature of the app, this should
+        // not affect the behavior of the app, from a user perspective.
+        final int resultCode =
+                GoogleApiAvailability.getInstance().isGooglePlayServicesAvailable(context);
+        if (resultCode != ConnectionResult.SUCCESS) {
+            // Resolving it needs a dialog, so it's left to the activity
+            sHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    if (!activity.isFinishing()) {
+                        activity.onPlayServicesUnavailable(resultCode);
+                    }
+                }
+            });
+            return;
+        }
+        // We'll want to be certain we have a token. If we do not, then we will start the
+        // IntentService that will register this application with GCM.
+        SharedPreferences sharedPreferences = PreferenceManager.getDefaultSharedPreferences(context);
+        boolean sentToken = sharedPreferences.getBoolean(MainActivity.SENT_TOKEN_TO_SERVER, false);
+        if (!sentToken) {
+            context.startService(new Intent(context, RegistrationIntentService.class));
+        }
+    }
+}
@@ -0,0 +1,336 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Path;
+import android.os.Handler;
+import android.os.Looper;
+import android.support.v4.content.ContextCompat;
+import android.util.AttributeSet;
+import android.util.TypedValue;
+import android.view.MotionEvent;
+import android.view.View;
+
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Draws the highs and lows of a run of days as two lines, with the selected day marked.
+ * Dragging across the chart moves the selection from day to day.
+ *
+ * The lines' geometry only changes with the data or the view's size. It is then computed on a
+ * background thread into the spare of two buffers, which is swapped in when ready; drawing a
+ * frame, or moving the selection, only strokes the paths already built. Paths, paints and point
+ * arrays are allocated once and reused.
+ */
+public class TemperatureChartView extends View {
+
+    private static final float STROKE_WIDTH_DP = 2;
+    private static final float POINT_RADIUS_DP = 4;
+    private static final float LABEL_TEXT_SP = 14;
+
+    public interface OnDaySelectedListener {
+        /**
+         * The user let go of the chart on a different day than the one selected before.
+         */
+        void onDaySelected(long date);
+    }
+
+    /**
+     * One value per day, in date order.
+     */
+    public static final class Temperatures {
+        final long[] dates;
+        final double[] highs;
+        final double[] lows;
+
+        public Temperatures(long[] dates, double[] highs, double[] lows) {
+            this.dates = dates;
+            this.highs = highs;
+            this.lows = lows;
+        }
+
+        int size() {
+            return dates.length;
+        }
+    }
+
+    /**
+     * Everything the background thread computes for a frame; only touched by the main thread
+     * once swapped in.
+     */
+    private static final class Geometry {
+        final Path highPath = new Path();
+        final Path lowPath = new Path();
+        float[] xs = new float[0];
+        float[] highYs = new float[0];
+        float[] lowYs = new float[0];
+        String[] highLabels = new String[0];
+        String[] lowLabels = new String[0];
+        Temperatures temperatures;
+
+        void compute(Context context, Temperatures temperatures, int width, int height,
+                     float inset, float labelHeight) {
+            this.temperatures = temperatures;
+            int size = temperatures.size();
+            if (xs.length < size) {
+                xs = new float[size];
+                highYs = new float[size];
+                lowYs = new float[size];
+                highLabels = new String[size];
+                lowLabels = new String[size];
+            }
+
+            double min = Double.MAX_VALUE;
+            double max = -Double.MAX_VALUE;
+            for (int i = 0; i < size; i++) {
+                min = Math.min(min, temperatures.lows[i]);
+                max = Math.max(max, temperatures.highs[i]);
+            }
+            double range = Math.max(max - min, 1);
+            // Room for the labels above the highest high and below the lowest low
+            float top = inset + labelHeight;
+            float plotHeight = height - 2 * top;
+            float step = size > 1 ? (width - 2 * inset) / (size - 1) : 0;
+
+            highPath.rewind();
+            lowPath.rewind();
+            for (int i = 0; i < size; i++) {
+                xs[i] = size > 1 ? inset + i * step : width / 2f;
+                highYs[i] = top + (float) ((max - temperatures.highs[i]) / range) * plotHeight;
+                lowYs[i] = top + (float) ((max - temperatures.lows[i]) / range) * plotHeight;
+                if (i == 0) {
+                    highPath.moveTo(xs[i], highYs[i]);
+                    lowPath.moveTo(xs[i], lowYs[i]);
+                } else {
+                    highPath.lineTo(xs[i], highYs[i]);
+                    lowPath.lineTo(xs[i], lowYs[i]);
+                }
+                highLabels[i] = Utility.formatTemperature(context, temperatures.highs[i]);
+                lowLabels[i] = Utility.formatTemperature(context, temperatures.lows[i]);
+            }
+        }
+    }
+
+    private static final ExecutorService sExecutor = Executors.newSingleThreadExecutor();
+    private static final Handler sHandler = new Handler(Looper.getMainLooper());
+
+    private final Paint mHighPaint;
+    private final Paint mLowPaint;
+    private final Paint mMarkerPaint;
+    private final Paint mLabelPaint;
+    private final float mInset;
+    private final float mLabelHeight;
+
+    // Drawn by the main thread, and filled by the background thread
+    private Geometry mFront = new Geometry();
+    private Geometry mBack = new Geometry();
+    // Set after the swap, so whoever sees it set also sees the geometry
+    private volatile boolean mHasGeometry;
+    private boolean mComputing;
+    private boolean mRecomputeWhenDone;
+
+    private Temperatures mTemperatures;
+    private int mSelected = -1;
+    private int mSelectedBeforeTouch = -1;
+    private OnDaySelectedListener mListener;
+
+    public TemperatureChartView(Context context) {
+        this(context, null);
+    }
+
+    public TemperatureChartView(Context context, AttributeSet attrs) {
+        super(context, attrs);
+        float density = getResources().getDisplayMetrics().density;
+
+        mHighPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        mHighPaint.setStyle(Paint.Style.STROKE);
+        mHighPaint.setStrokeWidth(STROKE_WIDTH_DP * density);
+        mHighPaint.setColor(ContextCompat.getColor(context, R.color.white));
+
+        mLowPaint = new Paint(mHighPaint);
+        mLowPaint.setColor(ContextCompat.getColor(context, R.color.detail_accent_label));
+
+        mMarkerPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        mMarkerPaint.setStrokeWidth(STROKE_WIDTH_DP * density / 2);
+        mMarkerPaint.setColor(ContextCompat.getColor(context, R.color.detail_accent_label));
+
+        mLabelPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        mLabelPaint.setColor(ContextCompat.getColor(context, R.color.white));
+        mLabelPaint.setTextAlign(Paint.Align.CENTER);
+        mLabelPaint.setTextSize(TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_SP,
+                LABEL_TEXT_SP, getResources().getDisplayMetrics()));
+
+        mLabelHeight = mLabelPaint.getFontSpacing();
+        mInset = POINT_RADIUS_DP * density * 2;
+    }
+
+    public void setOnDaySelectedListener(OnDaySelectedListener listener) {
+        mListener = listener;
+    }
+
+    /**
+     * Replaces the days shown. Their geometry is computed in the background, and the chart keeps
+     * showing the previous days until it's ready.
+     */
+    public void setTemperatures(Temperatures temperatures) {
+        mTemperatures = temperatures;
+        computeGeometry();
+    }
+
+    /**
+     * Marks a day, without recomputing anything.
+     *
+     * @return false if the day isn't charted
+     */
+    public boolean setSelectedDate(long date) {
+        if (mTemperatures == null) {
+            return false;
+        }
+        int index = Arrays.binarySearch(mTemperatures.dates, date);
+        if (index < 0) {
+            return false;
+        }
+        setSelectedIndex(index);
+        return true;
+    }
+
+    public boolean hasGeometry() {
+        return mHasGeometry;
+    }
+
+    private void setSelectedIndex(int index) {
+        if (index != mSelected) {
+            mSelected = index;
+            invalidate();
+        }
+    }
+
+    @Override
+    protected void onSizeChanged(int w, int h, int oldw, int oldh) {
+        super.onSizeChanged(w, h, oldw, oldh);
+        computeGeometry();
+    }
+
+    private void computeGeometry() {
+        if (mTemperatures == null || mTemperatures.size() == 0
+                || getWidth() == 0 || getHeight() == 0) {
+            return;
+        }
+        if (mComputing) {
+            // Picked up once the computation in flight is done
+            mRecomputeWhenDone = true;
+            return;
+        }
+        mComputing = true;
+        final Geometry back = mBack;
+        final Temperatures temperatures = mTemperatures;
+        final int width = getWidth();
+        final int height = getHeight();
+        final Context context = getContext().getApplicationContext();
+        sExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                back.compute(context, temperatures, width, height, mInset, mLabelHeight);
+                sHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        onGeometryComputed(back);
+                    }
+                });
+            }
+        });
+    }
+
+    private void onGeometryComputed(Geometry geometry) {
+        mComputing = false;
+        mBack = mFront;
+        mFront = geometry;
+        mHasGeometry = true;
+        invalidate();
+        if (mRecomputeWhenDone) {
+            mRecomputeWhenDone = false;
+            computeGeometry();
+        }
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        if (!mHasGeometry) {
+            return;
+        }
+        Geometry geometry = mFront;
+        canvas.drawPath(geometry.highPath, mHighPaint);
+        canvas.drawPath(geometry.lowPath, mLowPaint);
+
+        // The selection may be ahead of a geometry still being computed
+        int selected = mSelected;
+        if (selected >= 0 && selected < geometry.temperatures.size()) {
+            float x = geometry.xs[selected];
+            canvas.drawLine(x, 0, x, getHeight(), mMarkerPaint);
+            float radius = mInset / 2;
+            canvas.drawCircle(x, geometry.highYs[selected], radius, mHighPaint);
+            canvas.drawCircle(x, geometry.lowYs[selected], radius, mLowPaint);
+            canvas.drawText(geometry.highLabels[selected], x,
+                    geometry.highYs[selected] - radius - mLabelPaint.descent(), mLabelPaint);
+            canvas.drawText(geometry.lowLabels[selected], x,
+                    geometry.lowYs[selected] + radius - mLabelPaint.ascent(), mLabelPaint);
+        }
+    }
+
+    @Override
+    public boolean onTouchEvent(MotionEvent event) {
+        if (!mHasGeometry || !isEnabled()) {
+            return super.onTouchEvent(event);
+        }
+        Geometry geometry = mFront;
+        switch (event.getActionMasked()) {
+            case MotionEvent.ACTION_DOWN:
+                getParent().requestDisallowInterceptTouchEvent(true);
+                mSelectedBeforeTouch = mSelected;
+                setSelectedIndex(findNearestDay(geometry, event.getX()));
+                return true;
+            case MotionEvent.ACTION_MOVE:
+                setSelectedIndex(findNearestDay(geometry, event.getX()));
+                return true;
+            case MotionEvent.ACTION_UP:
+                setSelectedIndex(findNearestDay(geometry, event.getX()));
+                if (mListener != null && mSelected != mSelectedBeforeTouch) {
+                    mListener.onDaySelected(geometry.temperatures.dates[mSelected]);
+                }
+                return true;
+            case MotionEvent.ACTION_CANCEL:
+                setSelectedIndex(mSelectedBeforeTouch);
+                return true;
+        }
+        return super.onTouchEvent(event);
+    }
+
+    private static int findNearestDay(Geometry geometry, float x) {
+        int size = geometry.temperatures.size();
+        int nearest = 0;
+        for (int i = 1; i < size; i++) {
+            if (Math.abs(geometry.xs[i] - x) < Math.abs(geometry.xs[nearest] - x)) {
+                nearest = i;
+            }
+        }
+        return nearest;
+    }
+}
@@ -0,0 +1,442 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.annotation.TargetApi;
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.os.Build;
+import android.os.Bundle;
+import android.os.Parcelable;
+import android.util.Log;
+
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+import com.example.android.sunshine.core.Forecast;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The difference between the forecast stored for a location and a newer one: where the window
+ * now starts, and for each day only the fields that changed. Applying it rewrites the days that
+ * changed rather than the whole window.
+ *
+ * A patch is tied to the forecast version it was computed against, and is only applied if the
+ * location still holds that version. Serialized, it looks like:
+ * <pre>
+ * {"base": 12, "version": 13, "start": 1476662400000,
+ *  "days": [{"day": 0, "max": 21.5}, {"day": 13, "weather_id": 800, "short_desc": "Clear", ...}]}
+ * </pre>
+ * where "day" counts days from "start", and the other keys are weather column names. A day not
+ * stored yet must list every column.
+ */
+public final class ForecastPatch {
+    private static final String LOG_TAG = ForecastPatch.class.getSimpleName();
+
+    private static final String KEY_BASE = "base";
+    private static final String KEY_VERSION = "version";
+    private static final String KEY_START = "start";
+    private static final String KEY_DAYS = "days";
+    private static final String KEY_DAY = "day";
+
+    /**
+     * Projection to read stored weather rows for {@link #readForecast(Cursor)},
+     * {@link #readForecast(Parcelable[])} and {@link #readRows(Cursor)}.
+     */
+    public static final String[] COLUMNS = {
+            WeatherEntry.COLUMN_DATE,
+            WeatherEntry.COLUMN_WEATHER_ID,
+            WeatherEntry.COLUMN_SHORT_DESC,
+            WeatherEntry.COLUMN_MIN_TEMP,
+            WeatherEntry.COLUMN_MAX_TEMP,
+            WeatherEntry.COLUMN_HUMIDITY,
+            WeatherEntry.COLUMN_PRESSURE,
+            WeatherEntry.COLUMN_WIND_SPEED,
+            WeatherEntry.COLUMN_DEGREES
+    };
+    // these indices must match the projection
+    private static final int INDEX_DATE = 0;
+    private static final int INDEX_WEATHER_ID = 1;
+    private static final int INDEX_SHORT_DESC = 2;
+    private static final int INDEX_MIN_TEMP = 3;
+    private static final int INDEX_MAX_TEMP = 4;
+    private static final int INDEX_HUMIDITY = 5;
+    private static final int INDEX_PRESSURE = 6;
+    private static final int INDEX_WIND_SPEED = 7;
+    private static final int INDEX_DEGREES = 8;
+    // Every column from here on is a REAL
+    private static final int INDEX_FIRST_REAL = INDEX_MIN_TEMP;
+
+    public final long baseVersion;
+    public final long version;
+    public final long startDate;
+    private final int[] mDayOffsets;
+    private final ContentValues[] mChanges;
+
+    private ForecastPatch(long baseVersion, long version, long startDate, int[] dayOffsets,
+                          ContentValues[] changes) {
+        this.baseVersion = baseVersion;
+        this.version = version;
+        this.startDate = startDate;
+        mDayOffsets = dayOffsets;
+        mChanges = changes;
+    }
+
+    /**
+     * @return the number of days the patch changes or adds
+     */
+    public int size() {
+        return mChanges.length;
+    }
+
+    /**
+     * Computes the patch turning one forecast window into another.
+     *
+     * @param baseVersion version of the stored forecast
+     * @param version     version the patch brings the location to
+     * @param from        stored rows, in any order
+     * @param to          new rows in date order; the first one starts the new window
+     */
+    public static ForecastPatch diff(long baseVersion, long version, ContentValues[] from,
+                                     ContentValues[] to) {
+        return diff(baseVersion, version, toForecast(from), toForecast(to));
+    }
+
+    /**
+     * Computes the patch turning one forecast window into another, comparing the days' arrays
+     * directly. Only the days that changed get a ContentValues.
+     *
+     * @param from stored days, in any order, as read by {@link #readForecast(Cursor)}
+     * @param to   new days in date order; the first one starts the new window
+     */
+    public static ForecastPatch diff(long baseVersion, long version, Forecast from,
+                                     Forecast to) {
+        long startDate = to.size > 0
+                ? WeatherContract.normalizeDate(to.dates[0])
+                : WeatherContract.normalizeDate(System.currentTimeMillis());
+        int startDay = getJulianDay(startDate);
+
+        int[] offsets = new int[to.size];
+        int windowDays = 0;
+        for (int i = 0; i < to.size; i++) {
+            offsets[i] = getJulianDay(WeatherContract.normalizeDate(to.dates[i])) - startDay;
+            windowDays = Math.max(windowDays, offsets[i] + 1);
+        }
+
+        // Index of the stored day at each offset into the new window, or -1
+        int[] stored = new int[windowDays];
+        Arrays.fill(stored, -1);
+        for (int i = 0; i < from.size; i++) {
+            int offset = getJulianDay(WeatherContract.normalizeDate(from.dates[i])) - startDay;
+            if (offset >= 0 && offset < windowDays) {
+                stored[offset] = i;
+            }
+        }
+
+        int[] dayOffsets = new int[to.size];
+        List<ContentValues> changes = new ArrayList<>();
+        for (int i = 0; i < to.size; i++) {
+            int old = stored[offsets[i]];
+            ContentValues changed = new ContentValues();
+            if (old == -1 || from.weatherIds[old] != to.weatherIds[i]) {
+                changed.put(WeatherEntry.COLUMN_WEATHER_ID, to.weatherIds[i]);
+            }
+            if (old == -1 || from.descriptions[old] == null
+                    || !from.descriptions[old].equals(to.descriptions[i])) {
+                changed.put(WeatherEntry.COLUMN_SHORT_DESC, to.descriptions[i]);
+            }
+            putIfChanged(changed, WeatherEntry.COLUMN_MIN_TEMP, from.minTemps, old,
+                    to.minTemps[i]);
+            putIfChanged(changed, WeatherEntry.COLUMN_MAX_TEMP, from.maxTemps, old,
+                    to.maxTemps[i]);
+            putIfChanged(changed, WeatherEntry.COLUMN_HUMIDITY, from.humidities, old,
+                    to.humidities[i]);
+            putIfChanged(changed, WeatherEntry.COLUMN_PRESSURE, from.pressures, old,
+                    to.pressures[i]);
+            putIfChanged(changed, WeatherEntry.COLUMN_WIND_SPEED, from.windSpeeds, old,
+                    to.windSpeeds[i]);
+            putIfChanged(changed, WeatherEntry.COLUMN_DEGREES, from.degrees, old,
+                    to.degrees[i]);
+            if (changed.size() > 0) {
+                dayOffsets[changes.size()] = offsets[i];
+                changes.add(changed);
+            }
+        }
+
+        return new ForecastPatch(baseVersion, version, startDate,
+                Arrays.copyOf(dayOffsets, changes.size()),
+                changes.toArray(new ContentValues[changes.size()]));
+    }
+
+    /**
+     * Reads days queried with {@link #COLUMNS}. The cursor is left open.
+     */
+    public static Forecast readForecast(Cursor cursor) {
+        int size = cursor.getCount();
+        long[] dates = new long[size];
+        int[] weatherIds = new int[size];
+        String[] descriptions = new String[size];
+        double[] minTemps = new double[size];
+        double[] maxTemps = new double[size];
+        double[] humidities = new double[size];
+        double[] pressures = new double[size];
+        double[] windSpeeds = new double[size];
+        double[] degrees = new double[size];
+        for (int i = 0; cursor.moveToNext(); i++) {
+            dates[i] = cursor.getLong(INDEX_DATE);
+            weatherIds[i] = cursor.getInt(INDEX_WEATHER_ID);
+            descriptions[i] = cursor.getString(INDEX_SHORT_DESC);
+            minTemps[i] = cursor.getDouble(INDEX_MIN_TEMP);
+            maxTemps[i] = cursor.getDouble(INDEX_MAX_TEMP);
+            humidities[i] = cursor.getDouble(INDEX_HUMIDITY);
+            pressures[i] = cursor.getDouble(INDEX_PRESSURE);
+            windSpeeds[i] = cursor.getDouble(INDEX_WIND_SPEED);
+            degrees[i] = cursor.getDouble(INDEX_DEGREES);
+        }
+        return new Forecast(null, 0, 0, dates, weatherIds, descriptions, minTemps, maxTemps,
+                humidities, pressures, windSpeeds, degrees);
+    }
+
+    /**
+     * Reads the rows of a {@link WeatherContract#METHOD_QUERY_BATCH} call made with
+     * {@link #COLUMNS}, each a ContentValues.
+     */
+    public static Forecast readForecast(Parcelable[] rows) {
+        int size = rows.length;
+        long[] dates = new long[size];
+        int[] weatherIds = new int[size];
+        String[] descriptions = new String[size];
+        double[] minTemps = new double[size];
+        double[] maxTemps = new double[size];
+        double[] humidities = new double[size];
+        double[] pressures = new double[size];
+        double[] windSpeeds = new double[size];
+        double[] degrees = new double[size];
+        for (int i = 0; i < size; i++) {
+            ContentValues row = (ContentValues) rows[i];
+            dates[i] = row.getAsLong(WeatherEntry.COLUMN_DATE);
+            weatherIds[i] = row.getAsInteger(WeatherEntry.COLUMN_WEATHER_ID);
+            descriptions[i] = row.getAsString(WeatherEntry.COLUMN_SHORT_DESC);
+            minTemps[i] = row.getAsDouble(WeatherEntry.COLUMN_MIN_TEMP);
+            maxTemps[i] = row.getAsDouble(WeatherEntry.COLUMN_MAX_TEMP);
+            humidities[i] = row.getAsDouble(WeatherEntry.COLUMN_HUMIDITY);
+            pressures[i] = row.getAsDouble(WeatherEntry.COLUMN_PRESSURE);
+            windSpeeds[i] = row.getAsDouble(WeatherEntry.COLUMN_WIND_SPEED);
+            degrees[i] = row.getAsDouble(WeatherEntry.COLUMN_DEGREES);
+        }
+        return new Forecast(null, 0, 0, dates, weatherIds, descriptions, minTemps, maxTemps,
+                humidities, pressures, windSpeeds, degrees);
+    }
+
+    /**
+     * Reads rows queried with {@link #COLUMNS}. The cursor is left open.
+     */
+    public static ContentValues[] readRows(Cursor cursor) {
+        ContentValues[] rows = new ContentValues[cursor.getCount()];
+        for (int i = 0; cursor.moveToNext(); i++) {
+            ContentValues row = new ContentValues();
+            row.put(WeatherEntry.COLUMN_DATE, cursor.getLong(INDEX_DATE));
+            row.put(WeatherEntry.COLUMN_WEATHER_ID, cursor.getInt(INDEX_WEATHER_ID));
+            row.put(WeatherEntry.COLUMN_SHORT_DESC, cursor.getString(INDEX_SHORT_DESC));
+            for (int column = INDEX_FIRST_REAL; column < COLUMNS.length; column++) {
+                row.put(COLUMNS[column], cursor.getDouble(column));
+            }
+            rows[i] = row;
+        }
+        return rows;
+    }
+
+    public static ForecastPatch fromJson(String json) throws JSONException {
+        return fromJson(new JSONObject(json));
+    }
+
+    public static ForecastPatch fromJson(JSONObject json) throws JSONException {
+        JSONArray days = json.getJSONArray(KEY_DAYS);
+        int[] dayOffsets = new int[days.length()];
+        ContentValues[] changes = new ContentValues[days.length()];
+        for (int i = 0; i < changes.length; i++) {
+            JSONObject day = days.getJSONObject(i);
+            dayOffsets[i] = day.getInt(KEY_DAY);
+            ContentValues changed = new ContentValues();
+            if (day.has(WeatherEntry.COLUMN_WEATHER_ID)) {
+                changed.put(WeatherEntry.COLUMN_WEATHER_ID, day.getInt(WeatherEntry.COLUMN_WEATHER_ID));
+            }
+            if (day.has(WeatherEntry.COLUMN_SHORT_DESC)) {
+                changed.put(WeatherEntry.COLUMN_SHORT_DESC, day.getString(WeatherEntry.COLUMN_SHORT_DESC));
+            }
+            for (int column = INDEX_FIRST_REAL; column < COLUMNS.length; column++) {
+                if (day.has(COLUMNS[column])) {
+                    changed.put(COLUMNS[column], day.getDouble(COLUMNS[column]));
+                }
+            }
+            changes[i] = changed;
+        }
+        return new ForecastPatch(json.getLong(KEY_BASE), json.getLong(KEY_VERSION),
+                WeatherContract.normalizeDate(json.getLong(KEY_START)), dayOffsets, changes);
+    }
+
+    public JSONObject toJson() throws JSONException {
+        JSONArray days = new JSONArray();
+        for (int i = 0; i < mChanges.length; i++) {
+            JSONObject day = new JSONObject();
+            day.put(KEY_DAY, mDayOffsets[i]);
+            for (Map.Entry<String, Object> value : mChanges[i].valueSet()) {
+                day.put(value.getKey(), value.getValue());
+            }
+            days.put(day);
+        }
+        return new JSONObject()
+                .put(KEY_BASE, baseVersion)
+                .put(KEY_VERSION, version)
+                .put(KEY_START, startDate)
+                .put(KEY_DAYS, days);
+    }
+
+    /**
+     * Applies the patch through {@link WeatherProvider}, in a single transaction.
+     *
+     * @return true if it was applied, false if the location doesn't hold the patch's base
+     * version anymore, the patch was incomplete, or the platform can't apply patches. The
+     * caller should then fetch the full forecast.
+     */
+    public boolean applyTo(Context context, String locationSetting) {
+        return applyTo(context, locationSetting, new ContentValues[0]);
+    }
+
+    /**
+     * Applies the patch, and stores the location's hours in the same transaction.
+     *
+     * @param hours packed rows from {@link HourlyForecast#toContentValues()}
+     */
+    public boolean applyTo(Context context, String locationSetting, ContentValues[] hours) {
+        return applyTo(context, locationSetting, hours, null);
+    }
+
+    /**
+     * Applies the patch, and stores the location's hours and refreshed values in the same
+     * transaction.
+     *
+     * @param locationValues values to update the location with, or null
+     */
+    @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+    public boolean applyTo(Context context, String locationSetting, ContentValues[] hours,
+                           ContentValues locationValues) {
+        // ContentResolver.call was only added in Honeycomb
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.HONEYCOMB) {
+            return false;
+        }
+        Bundle extras = new Bundle();
+        extras.putParcelableArray(WeatherContract.EXTRA_HOURLY, hours);
+        if (locationValues != null) {
+            extras.putParcelable(WeatherContract.EXTRA_VALUES, locationValues);
+        }
+        try {
+            extras.putString(WeatherContract.EXTRA_PATCH, toJson().toString());
+        } catch (JSONException e) {
+            Log.e(LOG_TAG, "Error serializing patch", e);
+            return false;
+        }
+        Bundle result = context.getContentResolver().call(WeatherContract.BASE_CONTENT_URI,
+                WeatherContract.METHOD_APPLY_PATCH, locationSetting, extras);
+        return result != null && result.getBoolean(WeatherContract.RESULT_APPLIED);
+    }
+
+    /**
+     * Writes the patch for a location. Must run inside the caller's transaction, which should be
+     * rolled back if this throws.
+     *
+     * @return the number of rows deleted, updated or inserted
+     * @throws android.database.SQLException if a new day is missing columns
+     */
+    int applyTo(SQLiteDatabase db, long locationId, WeatherChanges changes) {
+        String locationArg = Long.toString(locationId);
+        // Shift the window: days before its start are gone from the forecast
+        int touched = db.delete(WeatherEntry.TABLE_NAME,
+                WeatherEntry.COLUMN_LOC_KEY + " = ? AND " + WeatherEntry.COLUMN_DATE + " < ?",
+                new String[]{locationArg, Long.toString(startDate)});
+        if (touched > 0) {
+            changes.addWeatherLocation(locationId);
+        }
+        for (int i = 0; i < mChanges.length; i++) {
+            long date = WeatherContract.addDays(startDate, mDayOffsets[i]);
+            ContentValues values = new ContentValues(mChanges[i]);
+            int updated = db.update(WeatherEntry.TABLE_NAME, values,
+                    WeatherEntry.COLUMN_LOC_KEY + " = ? AND " + WeatherEntry.COLUMN_DATE + " = ?",
+                    new String[]{locationArg, Long.toString(date)});
+            if (updated == 0) {
+                values.put(WeatherEntry.COLUMN_LOC_KEY, locationId);
+                values.put(WeatherEntry.COLUMN_DATE, date);
+                db.insertOrThrow(WeatherEntry.TABLE_NAME, null, values);
+            }
+            changes.addWeather(locationId, date);
+            touched++;
+        }
+        return touched;
+    }
+
+    private static void putIfChanged(ContentValues changed, String column, double[] from,
+                                     int old, double value) {
+        if (old == -1 || Double.compare(from[old], value) != 0) {
+            changed.put(column, value);
+        }
+    }
+
+    // Missing values never match a stored one, so they always make it into the patch
+    private static Forecast toForecast(ContentValues[] rows) {
+        int size = rows.length;
+        long[] dates = new long[size];
+        int[] weatherIds = new int[size];
+        String[] descriptions = new String[size];
+        double[] minTemps = new double[size];
+        double[] maxTemps = new double[size];
+        double[] humidities = new double[size];
+        double[] pressures = new double[size];
+        double[] windSpeeds = new double[size];
+        double[] degrees = new double[size];
+        for (int i = 0; i < size; i++) {
+            ContentValues row = rows[i];
+            dates[i] = row.getAsLong(WeatherEntry.COLUMN_DATE);
+            Integer weatherId = row.getAsInteger(WeatherEntry.COLUMN_WEATHER_ID);
+            weatherIds[i] = weatherId == null ? -1 : weatherId;
+            descriptions[i] = row.getAsString(WeatherEntry.COLUMN_SHORT_DESC);
+            minTemps[i] = getDouble(row, WeatherEntry.COLUMN_MIN_TEMP);
+            maxTemps[i] = getDouble(row, WeatherEntry.COLUMN_MAX_TEMP);
+            humidities[i] = getDouble(row, WeatherEntry.COLUMN_HUMIDITY);
+            pressures[i] = getDouble(row, WeatherEntry.COLUMN_PRESSURE);
+            windSpeeds[i] = getDouble(row, WeatherEntry.COLUMN_WIND_SPEED);
+            degrees[i] = getDouble(row, WeatherEntry.COLUMN_DEGREES);
+        }
+        return new Forecast(null, 0, 0, dates, weatherIds, descriptions, minTemps, maxTemps,
+                humidities, pressures, windSpeeds, degrees);
+    }
+
+    private static double getDouble(ContentValues row, String column) {
+        Double value = row.getAsDouble(column);
+        return value == null ? Double.NaN : value;
+    }
+
+    private static int getJulianDay(long date) {
+        return WeatherContract.getJulianDay(date);
+    }
+}
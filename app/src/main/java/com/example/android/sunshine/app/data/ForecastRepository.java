@@ -0,0 +1,369 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.annotation.TargetApi;
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.ContentObserver;
+import android.database.Cursor;
+import android.os.Build;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Parcelable;
+import android.util.Log;
+
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+import com.example.android.sunshine.core.Forecast;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Every stored day of a location, kept in memory as an immutable {@link Forecast} and read
+ * again in the background only when the provider notifies a change to the location.
+ *
+ * Subscribers are called on the main thread with the current forecast, then each time it
+ * changes. A read that returns the same days as the one before isn't delivered. Components
+ * without a main thread lifecycle, like the widgets, call {@link #getForecast(String)} from a
+ * worker thread instead, which only reads the provider when the days in memory are stale.
+ */
+public final class ForecastRepository {
+
+    private static final String LOG_TAG = ForecastRepository.class.getSimpleName();
+
+    // How many locations stay in memory. Each one keeps an observer registered, so that its
+    // days are known to be current without reading them again.
+    private static final int MAX_LOCATIONS = 3;
+
+    private static final String[] COLUMNS;
+    static {
+        String[] dayColumns = ForecastPatch.COLUMNS;
+        COLUMNS = new String[dayColumns.length + 3];
+        System.arraycopy(dayColumns, 0, COLUMNS, 0, dayColumns.length);
+        COLUMNS[dayColumns.length] = LocationEntry.COLUMN_CITY_NAME;
+        COLUMNS[dayColumns.length + 1] = LocationEntry.COLUMN_COORD_LAT;
+        COLUMNS[dayColumns.length + 2] = LocationEntry.COLUMN_COORD_LONG;
+    }
+    // these indices must match the projection
+    private static final int INDEX_CITY_NAME = ForecastPatch.COLUMNS.length;
+    private static final int INDEX_COORD_LAT = ForecastPatch.COLUMNS.length + 1;
+    private static final int INDEX_COORD_LONG = ForecastPatch.COLUMNS.length + 2;
+
+    public interface Observer {
+        /**
+         * Called on the main thread with every stored day of the location, oldest first.
+         */
+        void onForecastChanged(String locationSetting, Forecast forecast);
+    }
+
+    /**
+     * Stops a subscriber from being called. Must be called on the main thread.
+     */
+    public final class Subscription {
+        private final Location mLocation;
+        private final Observer mObserver;
+        // The forecast last delivered, main thread only
+        private Forecast mDelivered;
+
+        private Subscription(Location location, Observer observer) {
+            mLocation = location;
+            mObserver = observer;
+        }
+
+        public void unsubscribe() {
+            synchronized (ForecastRepository.this) {
+                mLocation.subscriptions.remove(this);
+            }
+        }
+
+        private void deliver(Forecast forecast) {
+            boolean subscribed;
+            synchronized (ForecastRepository.this) {
+                subscribed = mLocation.subscriptions.contains(this);
+            }
+            if (forecast != mDelivered && subscribed) {
+                mDelivered = forecast;
+                mObserver.onForecastChanged(mLocation.setting, forecast);
+            }
+        }
+    }
+
+    private final class Location {
+        final String setting;
+        final ContentObserver observer;
+        // Guarded by the repository, so a location isn't forgotten while it is subscribed to
+        final List<Subscription> subscriptions = new ArrayList<>();
+        Forecast forecast;
+        boolean stale = true;
+        boolean reading;
+
+        Location(String setting) {
+            this.setting = setting;
+            // Called on a binder thread, which only has to mark the days stale
+            observer = new ContentObserver(null) {
+                @Override
+                public void onChange(boolean selfChange) {
+                    onLocationChanged(Location.this);
+                }
+            };
+        }
+    }
+
+    private static ForecastRepository sInstance;
+
+    private final ContentResolver mResolver;
+    private final ExecutorService mExecutor = Executors.newSingleThreadExecutor();
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    // Most recently used last. Guarded by this.
+    private final Map<String, Location> mLocations = new LinkedHashMap<>(4, 0.75f, true);
+
+    private ForecastRepository(Context context) {
+        mResolver = context.getApplicationContext().getContentResolver();
+    }
+
+    public static synchronized ForecastRepository get(Context context) {
+        if (sInstance == null) {
+            sInstance = new ForecastRepository(context);
+        }
+        return sInstance;
+    }
+
+    /**
+     * Calls the observer with the location's forecast as soon as it is known, then whenever it
+     * changes, until it unsubscribes. Must be called on the main thread.
+     */
+    public Subscription subscribe(String locationSetting, Observer observer) {
+        final Subscription subscription;
+        final Forecast forecast;
+        synchronized (this) {
+            // Subscribed under the same lock the location is obtained with, so a worker
+            // obtaining another location can't forget this one in between
+            Location location = obtainLocation(locationSetting);
+            subscription = new Subscription(location, observer);
+            location.subscriptions.add(subscription);
+            forecast = location.forecast;
+            if (location.stale) {
+                readLater(location);
+            }
+        }
+        if (forecast != null) {
+            // Posted, so the subscriber isn't called before subscribe returns
+            mHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    subscription.deliver(forecast);
+                }
+            });
+        }
+        return subscription;
+    }
+
+    /**
+     * Returns the location's forecast, reading it first if the one in memory is stale. Must not
+     * be called on the main thread.
+     *
+     * @return the forecast, or null if the provider could not be queried
+     */
+    public Forecast getForecast(String locationSetting) {
+        Location location = obtainLocation(locationSetting);
+        synchronized (this) {
+            while (location.reading) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return location.forecast;
+                }
+            }
+            if (!location.stale) {
+                return location.forecast;
+            }
+            location.reading = true;
+        }
+        return read(location);
+    }
+
+    private synchronized Location obtainLocation(String locationSetting) {
+        Location location = mLocations.get(locationSetting);
+        if (location != null) {
+            return location;
+        }
+        location = new Location(locationSetting);
+        // Registered before the first read, so no change after it can be missed
+        mResolver.registerContentObserver(WeatherEntry.buildWeatherLocation(locationSetting),
+                true, location.observer);
+        mLocations.put(locationSetting, location);
+        if (mLocations.size() > MAX_LOCATIONS) {
+            // Forget the least recently used location nobody is reading or subscribed to
+            Iterator<Location> eldest = mLocations.values().iterator();
+            while (eldest.hasNext()) {
+                Location candidate = eldest.next();
+                if (candidate != location && !candidate.reading
+                        && candidate.subscriptions.isEmpty()) {
+                    mResolver.unregisterContentObserver(candidate.observer);
+                    eldest.remove();
+                    break;
+                }
+            }
+        }
+        return location;
+    }
+
+    private void onLocationChanged(final Location location) {
+        synchronized (this) {
+            location.stale = true;
+        }
+        // Only read again if someone is waiting for the days. Otherwise they are read by the
+        // next subscriber or getForecast.
+        mHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                synchronized (ForecastRepository.this) {
+                    if (!location.subscriptions.isEmpty() && location.stale) {
+                        readLater(location);
+                    }
+                }
+            }
+        });
+    }
+
+    // Must hold the lock
+    private void readLater(final Location location) {
+        if (location.reading) {
+            // The running read starts again once it sees the days are stale
+            return;
+        }
+        location.reading = true;
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                read(location);
+            }
+        });
+    }
+
+    /**
+     * Reads the location's days until they don't change in the middle of the read. The caller
+     * must have set the location as reading.
+     */
+    private Forecast read(final Location location) {
+        Forecast previous;
+        Forecast forecast;
+        synchronized (this) {
+            previous = location.forecast;
+        }
+        while (true) {
+            synchronized (this) {
+                location.stale = false;
+            }
+            Forecast read = query(location.setting);
+            synchronized (this) {
+                if (read == null) {
+                    // Leave the days stale, so they're read again next time
+                    location.stale = true;
+                } else if (!read.equals(location.forecast)) {
+                    location.forecast = read;
+                }
+                if (read == null || !location.stale) {
+                    location.reading = false;
+                    notifyAll();
+                    forecast = location.forecast;
+                    break;
+                }
+            }
+        }
+        if (forecast != previous) {
+            final Forecast changed = forecast;
+            mHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    // Copied, as a subscriber may unsubscribe while being called
+                    List<Subscription> subscriptions;
+                    synchronized (ForecastRepository.this) {
+                        subscriptions = new ArrayList<>(location.subscriptions);
+                    }
+                    for (Subscription subscription : subscriptions) {
+                        subscription.deliver(changed);
+                    }
+                }
+            });
+        }
+        return forecast;
+    }
+
+    private Forecast query(String locationSetting) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
+            return queryBatch(locationSetting);
+        }
+        Cursor cursor = mResolver.query(WeatherEntry.buildWeatherLocation(locationSetting),
+                COLUMNS, null, null, WeatherEntry.COLUMN_DATE + " ASC");
+        if (cursor == null) {
+            Log.w(LOG_TAG, "Could not query the forecast of " + locationSetting);
+            return null;
+        }
+        try {
+            Forecast days = ForecastPatch.readForecast(cursor);
+            if (!cursor.moveToFirst()) {
+                return days;
+            }
+            return withLocation(days, cursor.getString(INDEX_CITY_NAME),
+                    cursor.getDouble(INDEX_COORD_LAT), cursor.getDouble(INDEX_COORD_LONG));
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Same as {@link #query(String)}, as a single batch call returning plain values, which
+     * spares the widgets and Muzei, which read through here, a cursor window per read.
+     */
+    @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+    private Forecast queryBatch(String locationSetting) {
+        Bundle result = mResolver.call(WeatherContract.BASE_CONTENT_URI,
+                WeatherContract.METHOD_QUERY_BATCH, null,
+                WeatherEntry.buildWeatherBatchExtras(COLUMNS, new String[]{locationSetting},
+                        new long[]{0}, new long[]{Long.MAX_VALUE}));
+        if (result == null) {
+            Log.w(LOG_TAG, "Could not query the forecast of " + locationSetting);
+            return null;
+        }
+        Parcelable[] rows = result.getParcelableArray(WeatherContract.RESULT_ROWS);
+        Forecast days = ForecastPatch.readForecast(rows);
+        if (rows.length == 0) {
+            return days;
+        }
+        ContentValues first = (ContentValues) rows[0];
+        return withLocation(days, first.getAsString(LocationEntry.COLUMN_CITY_NAME),
+                first.getAsDouble(LocationEntry.COLUMN_COORD_LAT),
+                first.getAsDouble(LocationEntry.COLUMN_COORD_LONG));
+    }
+
+    private static Forecast withLocation(Forecast days, String cityName, double latitude,
+                                         double longitude) {
+        return new Forecast(cityName, latitude, longitude, days.dates, days.weatherIds,
+                days.descriptions, days.minTemps, days.maxTemps, days.humidities,
+                days.pressures, days.windSpeeds, days.degrees);
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.os.Bundle;
+
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+import com.example.android.sunshine.core.Forecast;
+
+/**
+ * Writes a parsed {@link Forecast} to the weather table without a ContentValues per day. The
+ * forecast's arrays go into the extras of {@link WeatherContract#METHOD_STORE_FORECAST} as they
+ * are, which the provider gets back uncopied within the app's process, and are bound to a single
+ * compiled insert.
+ */
+public final class ForecastRows {
+
+    private static final String INSERT = "INSERT INTO " + WeatherEntry.TABLE_NAME + " ("
+            + WeatherEntry.COLUMN_LOC_KEY + ", "
+            + WeatherEntry.COLUMN_DATE + ", "
+            + WeatherEntry.COLUMN_WEATHER_ID + ", "
+            + WeatherEntry.COLUMN_SHORT_DESC + ", "
+            + WeatherEntry.COLUMN_MIN_TEMP + ", "
+            + WeatherEntry.COLUMN_MAX_TEMP + ", "
+            + WeatherEntry.COLUMN_HUMIDITY + ", "
+            + WeatherEntry.COLUMN_PRESSURE + ", "
+            + WeatherEntry.COLUMN_WIND_SPEED + ", "
+            + WeatherEntry.COLUMN_DEGREES
+            + ") VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+    // these indices must match the insert; bind arguments count from 1
+    private static final int BIND_LOC_KEY = 1;
+    private static final int BIND_DATE = 2;
+    private static final int BIND_WEATHER_ID = 3;
+    private static final int BIND_SHORT_DESC = 4;
+    private static final int BIND_MIN_TEMP = 5;
+    private static final int BIND_MAX_TEMP = 6;
+    private static final int BIND_HUMIDITY = 7;
+    private static final int BIND_PRESSURE = 8;
+    private static final int BIND_WIND_SPEED = 9;
+    private static final int BIND_DEGREES = 10;
+
+    private ForecastRows() {
+    }
+
+    /**
+     * Puts the forecast's days for {@link WeatherContract#METHOD_STORE_FORECAST}.
+     */
+    public static void putForecast(Bundle extras, Forecast forecast) {
+        extras.putLongArray(WeatherContract.EXTRA_DATES, forecast.dates);
+        extras.putIntArray(WeatherContract.EXTRA_WEATHER_IDS, forecast.weatherIds);
+        extras.putStringArray(WeatherContract.EXTRA_DESCRIPTIONS, forecast.descriptions);
+        extras.putDoubleArray(WeatherContract.EXTRA_MIN_TEMPS, forecast.minTemps);
+        extras.putDoubleArray(WeatherContract.EXTRA_MAX_TEMPS, forecast.maxTemps);
+        extras.putDoubleArray(WeatherContract.EXTRA_HUMIDITIES, forecast.humidities);
+        extras.putDoubleArray(WeatherContract.EXTRA_PRESSURES, forecast.pressures);
+        extras.putDoubleArray(WeatherContract.EXTRA_WIND_SPEEDS, forecast.windSpeeds);
+        extras.putDoubleArray(WeatherContract.EXTRA_DEGREES, forecast.degrees);
+    }
+
+    /**
+     * Inserts the days put with {@link #putForecast} for a location, replacing any stored for
+     * the same dates. Must run inside the caller's transaction, which brings the location's
+     * summary up to date afterwards.
+     *
+     * @return the number of rows inserted
+     */
+    static int insert(SQLiteDatabase db, long locationId, Bundle extras, WeatherChanges changes) {
+        long[] dates = extras.getLongArray(WeatherContract.EXTRA_DATES);
+        int[] weatherIds = extras.getIntArray(WeatherContract.EXTRA_WEATHER_IDS);
+        String[] descriptions = extras.getStringArray(WeatherContract.EXTRA_DESCRIPTIONS);
+        double[] minTemps = extras.getDoubleArray(WeatherContract.EXTRA_MIN_TEMPS);
+        double[] maxTemps = extras.getDoubleArray(WeatherContract.EXTRA_MAX_TEMPS);
+        double[] humidities = extras.getDoubleArray(WeatherContract.EXTRA_HUMIDITIES);
+        double[] pressures = extras.getDoubleArray(WeatherContract.EXTRA_PRESSURES);
+        double[] windSpeeds = extras.getDoubleArray(WeatherContract.EXTRA_WIND_SPEEDS);
+        double[] degrees = extras.getDoubleArray(WeatherContract.EXTRA_DEGREES);
+
+        int inserted = 0;
+        SQLiteStatement insert = db.compileStatement(INSERT);
+        try {
+            for (int i = 0; i < dates.length; i++) {
+                long date = WeatherContract.normalizeDate(dates[i]);
+                insert.bindLong(BIND_LOC_KEY, locationId);
+                insert.bindLong(BIND_DATE, date);
+                insert.bindLong(BIND_WEATHER_ID, weatherIds[i]);
+                insert.bindString(BIND_SHORT_DESC, descriptions[i]);
+                insert.bindDouble(BIND_MIN_TEMP, minTemps[i]);
+                insert.bindDouble(BIND_MAX_TEMP, maxTemps[i]);
+                insert.bindDouble(BIND_HUMIDITY, humidities[i]);
+                insert.bindDouble(BIND_PRESSURE, pressures[i]);
+                insert.bindDouble(BIND_WIND_SPEED, windSpeeds[i]);
+                insert.bindDouble(BIND_DEGREES, degrees[i]);
+                if (insert.executeInsert() != -1) {
+                    inserted++;
+                    changes.addWeather(locationId, date);
+                }
+            }
+        } finally {
+            insert.close();
+        }
+        return inserted;
+    }
+}
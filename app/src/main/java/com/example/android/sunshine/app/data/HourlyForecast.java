@@ -0,0 +1,194 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+
+import com.example.android.sunshine.app.data.WeatherContract.HourlyEntry;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * The hours of one day at one location, as stored in a single row of the hourly table. Each
+ * value is kept in its own array, and each array is packed into a BLOB: one byte per hour of
+ * the day, one short per weather id, and one float per measurement.
+ */
+public final class HourlyForecast {
+
+    /**
+     * Projection to read stored rows for {@link #fromCursor(Cursor)}.
+     */
+    public static final String[] COLUMNS = {
+            HourlyEntry.COLUMN_DATE,
+            HourlyEntry.COLUMN_COUNT,
+            HourlyEntry.COLUMN_HOURS,
+            HourlyEntry.COLUMN_WEATHER_IDS,
+            HourlyEntry.COLUMN_TEMPS,
+            HourlyEntry.COLUMN_HUMIDITIES,
+            HourlyEntry.COLUMN_PRESSURES,
+            HourlyEntry.COLUMN_WIND_SPEEDS,
+            HourlyEntry.COLUMN_DEGREES
+    };
+    // these indices must match the projection
+    private static final int INDEX_DATE = 0;
+    private static final int INDEX_COUNT = 1;
+    private static final int INDEX_HOURS = 2;
+    private static final int INDEX_WEATHER_IDS = 3;
+    private static final int INDEX_TEMPS = 4;
+    private static final int INDEX_HUMIDITIES = 5;
+    private static final int INDEX_PRESSURES = 6;
+    private static final int INDEX_WIND_SPEEDS = 7;
+    private static final int INDEX_DEGREES = 8;
+
+    public final long date;
+    public final int count;
+    // Hour of the day, 0 to 23, in ascending order
+    public final int[] hours;
+    public final int[] weatherIds;
+    public final float[] temps;
+    public final float[] humidities;
+    public final float[] pressures;
+    public final float[] windSpeeds;
+    public final float[] degrees;
+
+    private HourlyForecast(long date, int count, int[] hours, int[] weatherIds, float[] temps,
+                           float[] humidities, float[] pressures, float[] windSpeeds,
+                           float[] degrees) {
+        this.date = date;
+        this.count = count;
+        this.hours = hours;
+        this.weatherIds = weatherIds;
+        this.temps = temps;
+        this.humidities = humidities;
+        this.pressures = pressures;
+        this.windSpeeds = windSpeeds;
+        this.degrees = degrees;
+    }
+
+    /**
+     * Packs the day into the values of an hourly row, without its location.
+     */
+    public ContentValues toContentValues() {
+        ContentValues values = new ContentValues();
+        values.put(HourlyEntry.COLUMN_DATE, date);
+        values.put(HourlyEntry.COLUMN_COUNT, count);
+
+        ByteBuffer hourBuffer = ByteBuffer.allocate(count);
+        ByteBuffer weatherIdBuffer = ByteBuffer.allocate(count * 2);
+        for (int i = 0; i < count; i++) {
+            hourBuffer.put((byte) hours[i]);
+            weatherIdBuffer.putShort((short) weatherIds[i]);
+        }
+        values.put(HourlyEntry.COLUMN_HOURS, hourBuffer.array());
+        values.put(HourlyEntry.COLUMN_WEATHER_IDS, weatherIdBuffer.array());
+        values.put(HourlyEntry.COLUMN_TEMPS, pack(temps, count));
+        values.put(HourlyEntry.COLUMN_HUMIDITIES, pack(humidities, count));
+        values.put(HourlyEntry.COLUMN_PRESSURES, pack(pressures, count));
+        values.put(HourlyEntry.COLUMN_WIND_SPEEDS, pack(windSpeeds, count));
+        values.put(HourlyEntry.COLUMN_DEGREES, pack(degrees, count));
+        return values;
+    }
+
+    /**
+     * Unpacks the row the cursor is on, read with {@link #COLUMNS}.
+     */
+    public static HourlyForecast fromCursor(Cursor cursor) {
+        int count = cursor.getInt(INDEX_COUNT);
+        int[] hours = new int[count];
+        int[] weatherIds = new int[count];
+        ByteBuffer hourBuffer = ByteBuffer.wrap(cursor.getBlob(INDEX_HOURS));
+        ByteBuffer weatherIdBuffer = ByteBuffer.wrap(cursor.getBlob(INDEX_WEATHER_IDS));
+        for (int i = 0; i < count; i++) {
+            hours[i] = hourBuffer.get();
+            weatherIds[i] = weatherIdBuffer.getShort();
+        }
+        return new HourlyForecast(cursor.getLong(INDEX_DATE), count, hours, weatherIds,
+                unpack(cursor.getBlob(INDEX_TEMPS), count),
+                unpack(cursor.getBlob(INDEX_HUMIDITIES), count),
+                unpack(cursor.getBlob(INDEX_PRESSURES), count),
+                unpack(cursor.getBlob(INDEX_WIND_SPEEDS), count),
+                unpack(cursor.getBlob(INDEX_DEGREES), count));
+    }
+
+    private static byte[] pack(float[] values, int count) {
+        ByteBuffer buffer = ByteBuffer.allocate(count * 4);
+        for (int i = 0; i < count; i++) {
+            buffer.putFloat(values[i]);
+        }
+        return buffer.array();
+    }
+
+    private static float[] unpack(byte[] packed, int count) {
+        float[] values = new float[count];
+        ByteBuffer.wrap(packed).asFloatBuffer().get(values);
+        return values;
+    }
+
+    /**
+     * Collects a day's hours as they are parsed, in ascending order.
+     */
+    public static final class Builder {
+        private final long mDate;
+        private int mCount;
+        private int[] mHours = new int[8];
+        private int[] mWeatherIds = new int[8];
+        private float[] mTemps = new float[8];
+        private float[] mHumidities = new float[8];
+        private float[] mPressures = new float[8];
+        private float[] mWindSpeeds = new float[8];
+        private float[] mDegrees = new float[8];
+
+        public Builder(long date) {
+            mDate = date;
+        }
+
+        public Builder add(int hour, int weatherId, double temp, double humidity,
+                           double pressure, double windSpeed, double degrees) {
+            if (mCount == mHours.length) {
+                int capacity = mCount * 2;
+                mHours = Arrays.copyOf(mHours, capacity);
+                mWeatherIds = Arrays.copyOf(mWeatherIds, capacity);
+                mTemps = Arrays.copyOf(mTemps, capacity);
+                mHumidities = Arrays.copyOf(mHumidities, capacity);
+                mPressures = Arrays.copyOf(mPressures, capacity);
+                mWindSpeeds = Arrays.copyOf(mWindSpeeds, capacity);
+                mDegrees = Arrays.copyOf(mDegrees, capacity);
+            }
+            mHours[mCount] = hour;
+            mWeatherIds[mCount] = weatherId;
+            mTemps[mCount] = (float) temp;
+            mHumidities[mCount] = (float) humidity;
+            mPressures[mCount] = (float) pressure;
+            mWindSpeeds[mCount] = (float) windSpeed;
+            mDegrees[mCount] = (float) degrees;
+            mCount++;
+            return this;
+        }
+
+        public long getDate() {
+            return mDate;
+        }
+
+        public HourlyForecast build() {
+            return new HourlyForecast(mDate, mCount, Arrays.copyOf(mHours, mCount),
+                    Arrays.copyOf(mWeatherIds, mCount), Arrays.copyOf(mTemps, mCount),
+                    Arrays.copyOf(mHumidities, mCount), Arrays.copyOf(mPressures, mCount),
+                    Arrays.copyOf(mWindSpeeds, mCount), Arrays.copyOf(mDegrees, mCount));
+        }
+    }
+}
@@ -0,0 +1,369 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.net.Uri;
+import android.support.v4.util.LruCache;
+
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Weather history that has dropped out of the forecast window, kept in one compressed file per
+ * location instead of in the weather table.
+ *
+ * Each file stores its days column by column. Dates are kept as the difference in days from the
+ * previous row, descriptions as indices into a table of the distinct ones, and every measurement
+ * is quantized to the precision the app displays and stored as the difference from the previous
+ * day. Those small numbers are written as variable length integers and the whole file is
+ * deflated, so a year of history takes a few kilobytes. Files are small enough that they are
+ * rewritten whole when days are added, and read whole when queried.
+ */
+public final class WeatherArchive {
+
+    private static final String DIRECTORY = "weather_archive";
+    private static final String FILE_SUFFIX = ".swa";
+    private static final int MAGIC = 0x53574131; // "SWA1"
+
+    // Decoded files kept around for charting the same location again
+    private static final int CACHE_SIZE = 4;
+
+    /**
+     * Columns an archive can return, in the order of a null projection.
+     */
+    public static final String[] COLUMNS = {
+            WeatherEntry.COLUMN_DATE,
+            WeatherEntry.COLUMN_WEATHER_ID,
+            WeatherEntry.COLUMN_SHORT_DESC,
+            WeatherEntry.COLUMN_MIN_TEMP,
+            WeatherEntry.COLUMN_MAX_TEMP,
+            WeatherEntry.COLUMN_HUMIDITY,
+            WeatherEntry.COLUMN_PRESSURE,
+            WeatherEntry.COLUMN_WIND_SPEED,
+            WeatherEntry.COLUMN_DEGREES
+    };
+    // these indices must match the projection
+    private static final int INDEX_DATE = 0;
+    private static final int INDEX_WEATHER_ID = 1;
+    private static final int INDEX_SHORT_DESC = 2;
+    // Every column from here on is a quantized REAL
+    private static final int INDEX_FIRST_REAL = 3;
+
+    // Steps each REAL column is quantized to, from INDEX_FIRST_REAL on: tenths of a degree for
+    // temperatures, whole percent, tenths of a hPa, tenths of a unit of wind speed, whole degrees
+    private static final double[] STEPS = {0.1, 0.1, 1, 0.1, 0.1, 1};
+
+    /**
+     * One location's archived days, in date order.
+     */
+    private static final class Days {
+        int size;
+        int[] julianDays;
+        int[] weatherIds;
+        int[] descriptions;
+        final List<String> descriptionTable = new ArrayList<>();
+        // Quantized values of each REAL column
+        int[][] reals = new int[STEPS.length][];
+
+        Days(int capacity) {
+            julianDays = new int[capacity];
+            weatherIds = new int[capacity];
+            descriptions = new int[capacity];
+            for (int i = 0; i < reals.length; i++) {
+                reals[i] = new int[capacity];
+            }
+        }
+    }
+
+    private final File mDirectory;
+    private final LruCache<String, Days> mCache = new LruCache<>(CACHE_SIZE);
+
+    public WeatherArchive(File filesDir) {
+        mDirectory = new File(filesDir, DIRECTORY);
+    }
+
+    /**
+     * Adds days to a location's archive. A day that is already archived is replaced.
+     *
+     * @param rows weather rows holding at least the {@link #COLUMNS}
+     */
+    public synchronized void append(String locationSetting, ContentValues[] rows)
+            throws IOException {
+        if (rows.length == 0) {
+            return;
+        }
+        Days stored = read(locationSetting);
+
+        // Merge by day; the new rows win
+        Map<Integer, ContentValues> byDay = new HashMap<>(stored.size + rows.length);
+        for (int i = 0; i < stored.size; i++) {
+            byDay.put(stored.julianDays[i], toValues(stored, i));
+        }
+        for (ContentValues row : rows) {
+            byDay.put(getJulianDay(row.getAsLong(WeatherEntry.COLUMN_DATE)), row);
+        }
+        Integer[] days = byDay.keySet().toArray(new Integer[byDay.size()]);
+        Arrays.sort(days);
+
+        Days merged = new Days(days.length);
+        Map<String, Integer> descriptionIndices = new HashMap<>();
+        for (int julianDay : days) {
+            ContentValues row = byDay.get(julianDay);
+            int i = merged.size++;
+            merged.julianDays[i] = julianDay;
+            merged.weatherIds[i] = row.getAsInteger(WeatherEntry.COLUMN_WEATHER_ID);
+            String description = row.getAsString(WeatherEntry.COLUMN_SHORT_DESC);
+            Integer index = descriptionIndices.get(description);
+            if (index == null) {
+                index = merged.descriptionTable.size();
+                merged.descriptionTable.add(description);
+                descriptionIndices.put(description, index);
+            }
+            merged.descriptions[i] = index;
+            for (int column = 0; column < STEPS.length; column++) {
+                merged.reals[column][i] = (int) Math.round(
+                        row.getAsDouble(COLUMNS[INDEX_FIRST_REAL + column]) / STEPS[column]);
+            }
+        }
+
+        write(locationSetting, merged);
+        mCache.put(locationSetting, merged);
+    }
+
+    /**
+     * Reads a location's archived days between two dates, inclusive, in date order.
+     *
+     * @param projection columns out of {@link #COLUMNS}, or null for all of them
+     */
+    public synchronized Cursor query(String locationSetting, String[] projection,
+                                     long startDate, long endDate) throws IOException {
+        if (projection == null) {
+            projection = COLUMNS;
+        }
+        int[] columns = new int[projection.length];
+        for (int i = 0; i < projection.length; i++) {
+            columns[i] = Arrays.asList(COLUMNS).indexOf(projection[i]);
+            if (columns[i] == -1) {
+                throw new IllegalArgumentException("Column not archived: " + projection[i]);
+            }
+        }
+
+        Days days = read(locationSetting);
+        int from = lowerBound(days, getJulianDay(startDate));
+        int to = lowerBound(days, getJulianDay(endDate) + 1);
+
+        MatrixCursor cursor = new MatrixCursor(projection, Math.max(0, to - from));
+        Object[] row = new Object[projection.length];
+        for (int i = from; i < to; i++) {
+            for (int c = 0; c < columns.length; c++) {
+                switch (columns[c]) {
+                    case INDEX_DATE:
+                        row[c] = WeatherContract.getStartOfJulianDay(days.julianDays[i]);
+                        break;
+                    case INDEX_WEATHER_ID:
+                        row[c] = days.weatherIds[i];
+                        break;
+                    case INDEX_SHORT_DESC:
+                        row[c] = days.descriptionTable.get(days.descriptions[i]);
+                        break;
+                    default:
+                        int real = columns[c] - INDEX_FIRST_REAL;
+                        row[c] = days.reals[real][i] * STEPS[real];
+                }
+            }
+            cursor.addRow(row);
+        }
+        return cursor;
+    }
+
+    /**
+     * Forgets a location's archive.
+     */
+    public synchronized void delete(String locationSetting) {
+        mCache.remove(locationSetting);
+        getFile(locationSetting).delete();
+    }
+
+    private File getFile(String locationSetting) {
+        return new File(mDirectory, Uri.encode(locationSetting) + FILE_SUFFIX);
+    }
+
+    // Index of the first archived day on or after the julian day
+    private static int lowerBound(Days days, int julianDay) {
+        int low = 0;
+        int high = days.size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (days.julianDays[mid] < julianDay) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private ContentValues toValues(Days days, int i) {
+        ContentValues values = new ContentValues();
+        values.put(WeatherEntry.COLUMN_DATE, WeatherContract.getStartOfJulianDay(days.julianDays[i]));
+        values.put(WeatherEntry.COLUMN_WEATHER_ID, days.weatherIds[i]);
+        values.put(WeatherEntry.COLUMN_SHORT_DESC, days.descriptionTable.get(days.descriptions[i]));
+        for (int column = 0; column < STEPS.length; column++) {
+            values.put(COLUMNS[INDEX_FIRST_REAL + column], days.reals[column][i] * STEPS[column]);
+        }
+        return values;
+    }
+
+    private Days read(String locationSetting) throws IOException {
+        Days days = mCache.get(locationSetting);
+        if (days != null) {
+            return days;
+        }
+        File file = getFile(locationSetting);
+        if (!file.exists()) {
+            return new Days(0);
+        }
+
+        DataInputStream in = new DataInputStream(new InflaterInputStream(
+                new BufferedInputStream(new FileInputStream(file))));
+        try {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Not a weather archive: " + file);
+            }
+            int size = readVarInt(in);
+            days = new Days(size);
+            days.size = size;
+
+            int descriptionCount = readVarInt(in);
+            for (int i = 0; i < descriptionCount; i++) {
+                days.descriptionTable.add(in.readUTF());
+            }
+
+            readDeltas(in, days.julianDays, size);
+            readDeltas(in, days.weatherIds, size);
+            for (int i = 0; i < size; i++) {
+                days.descriptions[i] = readVarInt(in);
+            }
+            for (int[] column : days.reals) {
+                readDeltas(in, column, size);
+            }
+        } finally {
+            in.close();
+        }
+        mCache.put(locationSetting, days);
+        return days;
+    }
+
+    private void write(String locationSetting, Days days) throws IOException {
+        if (!mDirectory.isDirectory() && !mDirectory.mkdirs()) {
+            throw new IOException("Can't create " + mDirectory);
+        }
+        File file = getFile(locationSetting);
+        // Written next to the archive and renamed over it, so a failed write keeps the old one
+        File temp = new File(mDirectory, file.getName() + ".tmp");
+
+        DataOutputStream out = new DataOutputStream(new DeflaterOutputStream(
+                new BufferedOutputStream(new FileOutputStream(temp))));
+        try {
+            out.writeInt(MAGIC);
+            writeVarInt(out, days.size);
+
+            writeVarInt(out, days.descriptionTable.size());
+            for (String description : days.descriptionTable) {
+                out.writeUTF(description);
+            }
+
+            writeDeltas(out, days.julianDays, days.size);
+            writeDeltas(out, days.weatherIds, days.size);
+            for (int i = 0; i < days.size; i++) {
+                writeVarInt(out, days.descriptions[i]);
+            }
+            for (int[] column : days.reals) {
+                writeDeltas(out, column, days.size);
+            }
+        } finally {
+            out.close();
+        }
+        if (!temp.renameTo(file)) {
+            temp.delete();
+            throw new IOException("Can't replace " + file);
+        }
+    }
+
+    // Each value as the zigzag encoded difference from the one before
+    private static void writeDeltas(DataOutputStream out, int[] values, int size)
+            throws IOException {
+        int previous = 0;
+        for (int i = 0; i < size; i++) {
+            int delta = values[i] - previous;
+            writeVarInt(out, (delta << 1) ^ (delta >> 31));
+            previous = values[i];
+        }
+    }
+
+    private static void readDeltas(DataInputStream in, int[] values, int size)
+            throws IOException {
+        int previous = 0;
+        for (int i = 0; i < size; i++) {
+            int zigzag = readVarInt(in);
+            previous += (zigzag >>> 1) ^ -(zigzag & 1);
+            values[i] = previous;
+        }
+    }
+
+    // Seven bits at a time, low bits first, with the high bit set while more follow
+    private static void writeVarInt(DataOutputStream out, int value) throws IOException {
+        while ((value & ~0x7f) != 0) {
+            out.writeByte((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    private static int readVarInt(DataInputStream in) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed weather archive");
+    }
+
+    private static int getJulianDay(long date) {
+        return WeatherContract.getJulianDay(date);
+    }
+}
@@ -0,0 +1,298 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.net.Uri;
+import android.util.Log;
+
+import com.example.android.sunshine.app.data.WeatherContract.HourlyEntry;
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.SummaryEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The days a write changed, collected while its transaction runs and notified once it commits.
+ *
+ * A change to a day is notified on weather/&lt;location&gt;/&lt;date&gt; (or hourly/...), which
+ * reaches the observers of that day, of the location's forecast and of the whole table, but not
+ * those of the location's other days. Each Uri is notified once however many rows of it the
+ * transaction wrote.
+ *
+ * A location whose days changed also has its rolling means notified, on
+ * weather_summary/&lt;location&gt;, since the summary follows the weather table.
+ *
+ * Days moved to the archive are also held here, and only written to its files after the commit,
+ * so a write that rolls back leaves the archive as it was.
+ */
+final class WeatherChanges {
+    private static final String LOG_TAG = WeatherChanges.class.getSimpleName();
+
+    // Past this many days of one location, its whole forecast Uri is notified instead. It
+    // reaches every observer of the location anyway, since a sync rewrites all of its days.
+    static final int MAX_DAYS_PER_LOCATION = 7;
+
+    private final SQLiteDatabase mDb;
+    // Location settings by location id, read once per location
+    private final Map<Long, String> mLocationSettings = new HashMap<>();
+    // Days changed, by location setting
+    private final Map<String, Set<Long>> mWeatherDays = new LinkedHashMap<>();
+    private final Map<String, Set<Long>> mHourlyDays = new LinkedHashMap<>();
+    // Uris notified as they are, such as the location table's
+    private final Set<Uri> mUris = new LinkedHashSet<>();
+    // Set when rows changed that can't be told apart, so the whole table is notified
+    private boolean mAllWeather;
+    private boolean mAllHourly;
+    // Days to add to each location's archive, and the locations whose archive goes
+    private final Map<String, List<ContentValues>> mArchivedDays = new LinkedHashMap<>();
+    private final Set<String> mDeletedArchives = new LinkedHashSet<>();
+
+    /**
+     * @param db the database being written, to look location settings up in the transaction
+     */
+    WeatherChanges(SQLiteDatabase db) {
+        mDb = db;
+    }
+
+    void addWeather(long locationId, long date) {
+        String locationSetting = getLocationSetting(locationId);
+        if (locationSetting == null) {
+            mAllWeather = true;
+        } else {
+            addWeather(locationSetting, date);
+        }
+    }
+
+    void addWeather(String locationSetting, long date) {
+        addDay(mWeatherDays, locationSetting, date);
+    }
+
+    /**
+     * Adds every day of a location, for a write that isn't keyed by date.
+     */
+    void addWeatherLocation(long locationId) {
+        String locationSetting = getLocationSetting(locationId);
+        if (locationSetting == null) {
+            mAllWeather = true;
+        } else {
+            mUris.add(WeatherEntry.buildWeatherLocation(locationSetting));
+            mUris.add(buildSummaryUri(locationSetting));
+        }
+    }
+
+    void addAllWeather() {
+        mAllWeather = true;
+    }
+
+    void addHourly(long locationId, long date) {
+        String locationSetting = getLocationSetting(locationId);
+        if (locationSetting == null) {
+            mAllHourly = true;
+        } else {
+            addDay(mHourlyDays, locationSetting, date);
+        }
+    }
+
+    void addAllHourly() {
+        mAllHourly = true;
+    }
+
+    void add(Uri uri) {
+        mUris.add(uri);
+    }
+
+    /**
+     * Adds the days of the weather rows a selection matches, before they are updated or
+     * deleted. Must run inside the transaction that changes them.
+     */
+    void addWeatherRows(String selection, String[] selectionArgs) {
+        addRows(WeatherEntry.TABLE_NAME, WeatherEntry.COLUMN_LOC_KEY, WeatherEntry.COLUMN_DATE,
+                selection, selectionArgs, false);
+    }
+
+    void addHourlyRows(String selection, String[] selectionArgs) {
+        addRows(HourlyEntry.TABLE_NAME, HourlyEntry.COLUMN_LOC_KEY, HourlyEntry.COLUMN_DATE,
+                selection, selectionArgs, true);
+    }
+
+    boolean isEmpty() {
+        return !mAllWeather && !mAllHourly && mWeatherDays.isEmpty() && mHourlyDays.isEmpty()
+                && mUris.isEmpty() && mArchivedDays.isEmpty() && mDeletedArchives.isEmpty();
+    }
+
+    /**
+     * Adds days moved out of the weather table to a location's archive.
+     */
+    void addArchived(String locationSetting, ContentValues[] rows) {
+        List<ContentValues> days = mArchivedDays.get(locationSetting);
+        if (days == null) {
+            days = new ArrayList<>(rows.length);
+            mArchivedDays.put(locationSetting, days);
+        }
+        days.addAll(Arrays.asList(rows));
+    }
+
+    /**
+     * Adds a deleted location, whose archive goes with it along with any days archived for it
+     * earlier in the transaction.
+     */
+    void addDeletedArchive(String locationSetting) {
+        mArchivedDays.remove(locationSetting);
+        mDeletedArchives.add(locationSetting);
+    }
+
+    /**
+     * Writes the archive changes. Call after the transaction commits, before notifying. Should
+     * the archive fail, the days are deleted all the same, so the table stays bounded; only
+     * their history is lost.
+     */
+    void writeArchive(WeatherArchive archive) {
+        for (String locationSetting : mDeletedArchives) {
+            archive.delete(locationSetting);
+            mUris.add(buildHistoryUri(locationSetting));
+        }
+        for (Map.Entry<String, List<ContentValues>> location : mArchivedDays.entrySet()) {
+            List<ContentValues> days = location.getValue();
+            try {
+                archive.append(location.getKey(), days.toArray(new ContentValues[days.size()]));
+                mUris.add(buildHistoryUri(location.getKey()));
+            } catch (IOException e) {
+                Log.e(LOG_TAG, "Error archiving " + days.size() + " days of "
+                        + location.getKey(), e);
+            }
+        }
+        mDeletedArchives.clear();
+        mArchivedDays.clear();
+    }
+
+    private static Uri buildHistoryUri(String locationSetting) {
+        return WeatherEntry.HISTORY_CONTENT_URI.buildUpon().appendPath(locationSetting).build();
+    }
+
+    private static Uri buildSummaryUri(String locationSetting) {
+        return SummaryEntry.CONTENT_URI.buildUpon().appendPath(locationSetting).build();
+    }
+
+    /**
+     * Notifies every Uri changed once. Call after the transaction commits, so observers
+     * re-query committed rows.
+     */
+    void notifyObservers(ContentResolver resolver) {
+        Set<Uri> uris = new LinkedHashSet<>();
+        if (mAllWeather) {
+            uris.add(WeatherEntry.CONTENT_URI);
+            uris.add(SummaryEntry.CONTENT_URI);
+        } else {
+            collectDays(uris, mWeatherDays, WeatherEntry.CONTENT_URI);
+            for (String locationSetting : mWeatherDays.keySet()) {
+                uris.add(buildSummaryUri(locationSetting));
+            }
+        }
+        if (mAllHourly) {
+            uris.add(HourlyEntry.CONTENT_URI);
+        } else {
+            collectDays(uris, mHourlyDays, HourlyEntry.CONTENT_URI);
+        }
+        for (Uri uri : mUris) {
+            if ((mAllWeather && (isWithin(uri, WeatherEntry.CONTENT_URI)
+                    || isWithin(uri, SummaryEntry.CONTENT_URI)))
+                    || (mAllHourly && isWithin(uri, HourlyEntry.CONTENT_URI))) {
+                continue;
+            }
+            uris.add(uri);
+        }
+        for (Uri uri : uris) {
+            resolver.notifyChange(uri, null);
+        }
+    }
+
+    private void collectDays(Set<Uri> uris, Map<String, Set<Long>> days, Uri contentUri) {
+        for (Map.Entry<String, Set<Long>> location : days.entrySet()) {
+            Uri locationUri = contentUri.buildUpon().appendPath(location.getKey()).build();
+            if (location.getValue().size() > MAX_DAYS_PER_LOCATION
+                    || mUris.contains(locationUri)) {
+                // The location's Uri reaches the observers of each of its days
+                uris.add(locationUri);
+                continue;
+            }
+            for (long date : location.getValue()) {
+                uris.add(locationUri.buildUpon().appendPath(Long.toString(date)).build());
+            }
+        }
+    }
+
+    // Whether notifying the parent already reaches the observers of the Uri
+    private static boolean isWithin(Uri uri, Uri parent) {
+        List<String> segments = uri.getPathSegments();
+        List<String> parentSegments = parent.getPathSegments();
+        return segments.size() >= parentSegments.size()
+                && segments.subList(0, parentSegments.size()).equals(parentSegments);
+    }
+
+    private static void addDay(Map<String, Set<Long>> days, String locationSetting, long date) {
+        Set<Long> dates = days.get(locationSetting);
+        if (dates == null) {
+            dates = new LinkedHashSet<>();
+            days.put(locationSetting, dates);
+        }
+        dates.add(date);
+    }
+
+    private void addRows(String table, String locationColumn, String dateColumn,
+                         String selection, String[] selectionArgs, boolean hourly) {
+        Cursor rows = mDb.query(true, table, new String[]{locationColumn, dateColumn},
+                selection, selectionArgs, null, null, null, null);
+        try {
+            while (rows.moveToNext()) {
+                if (hourly) {
+                    addHourly(rows.getLong(0), rows.getLong(1));
+                } else {
+                    addWeather(rows.getLong(0), rows.getLong(1));
+                }
+            }
+        } finally {
+            rows.close();
+        }
+    }
+
+    // Returns null if the location isn't stored
+    private String getLocationSetting(long locationId) {
+        if (mLocationSettings.containsKey(locationId)) {
+            return mLocationSettings.get(locationId);
+        }
+        Cursor location = mDb.query(LocationEntry.TABLE_NAME,
+                new String[]{LocationEntry.COLUMN_LOCATION_SETTING},
+                LocationEntry._ID + " = ?", new String[]{Long.toString(locationId)},
+                null, null, null);
+        String locationSetting = location.moveToFirst() ? location.getString(0) : null;
+        location.close();
+        mLocationSettings.put(locationId, locationSetting);
+        return locationSetting;
+    }
+}
@@ -18,8 +18,10 @@ package com.example.android.sunshine.app.data;
 import android.content.ContentResolver;
 import android.content.ContentUris;
 import android.net.Uri;
+import android.os.Bundle;
 import android.provider.BaseColumns;
-import android.text.format.Time;
+
+import com.example.android.sunshine.core.ZoneDays;
 
 /**
  * Defines table and column names for the weather database.
@@ -43,15 +45,79 @@ public class WeatherContract {
     // At least, let's hope not.  Don't be that dev, reader.  Don't be that dev.
     public static final String PATH_WEATHER = "weather";
     public static final String PATH_LOCATION = "location";
+    // Rows for several (location, date range) pairs at once
+    public static final String PATH_WEATHER_BATCH = "weather_batch";
+    // Days that dropped out of the forecast, read from the archive
+    public static final String PATH_WEATHER_HISTORY = "weather_history";
+    // Rolling means over a location's days, from the summary table
+    public static final String PATH_WEATHER_SUMMARY = "weather_summary";
+    // A location's hours, one row per day
+    public static final String PATH_HOURLY = "hourly";
+
+    // Provider call() methods, with their extras and results
+    // Applies a ForecastPatch (EXTRA_PATCH) to the location setting passed as the argument.
+    // Location values (EXTRA_VALUES), if any, are written to the location in the same
+    // transaction.
+    public static final String METHOD_APPLY_PATCH = "applyPatch";
+    public static final String EXTRA_PATCH = "patch";
+    public static final String EXTRA_VALUES = "values";
+    public static final String RESULT_APPLIED = "applied";
+
+    // Same rows as a WeatherEntry batch Uri, returned as a ContentValues array (RESULT_ROWS).
+    // Cheaper than a cursor for the few dozen rows the widgets and Muzei read.
+    public static final String METHOD_QUERY_BATCH = "queryBatch";
+    public static final String EXTRA_PROJECTION = "projection";
+    public static final String EXTRA_LOCATIONS = "locations";
+    public static final String EXTRA_START_DATES = "startDates";
+    public static final String EXTRA_END_DATES = "endDates";
+    public static final String RESULT_ROWS = "rows";
+
+    // Inserts the location setting passed as the argument with EXTRA_VALUES, or updates it if
+    // it is already stored, atomically. Returns the location's row ID as RESULT_ID.
+    public static final String METHOD_UPSERT_LOCATION = "upsertLocation";
+
+    // Stores a forecast for the location setting passed as the argument, in one transaction:
+    // the location, inserted or refreshed with EXTRA_VALUES, the days, the packed hours
+    // (EXTRA_HOURLY), the move of the days before the forecast to the archive and the forecast
+    // version (EXTRA_FORECAST_VERSION), which only moves forward. The days are one array per
+    // column with a value per day, as put by ForecastRows. Returns the number of days inserted
+    // as RESULT_COUNT and the location's row ID as RESULT_ID. EXTRA_HOURLY may also be passed
+    // to METHOD_APPLY_PATCH.
+    public static final String METHOD_STORE_FORECAST = "storeForecast";
+    public static final String EXTRA_HOURLY = "hourly";
+    public static final String EXTRA_FORECAST_VERSION = "forecastVersion";
+    public static final String RESULT_COUNT = "count";
+    public static final String RESULT_ID = "id";
+    public static final String EXTRA_DATES = "dates";
+    public static final String EXTRA_WEATHER_IDS = "weatherIds";
+    public static final String EXTRA_DESCRIPTIONS = "descriptions";
+    public static final String EXTRA_MIN_TEMPS = "minTemps";
+    public static final String EXTRA_MAX_TEMPS = "maxTemps";
+    public static final String EXTRA_HUMIDITIES = "humidities";
+    public static final String EXTRA_PRESSURES = "pressures";
+    public static final String EXTRA_WIND_SPEEDS = "windSpeeds";
+    public static final String EXTRA_DEGREES = "degrees";
 
     // To make it easy to query for the exact date, we normalize all dates that go into
     // the database to the start of the the Julian day at UTC.
     public static long normalizeDate(long startDate) {
-        // normalize the start date to the beginning of the (UTC) day
-        Time time = new Time();
-        time.set(startDate);
-        int julianDay = Time.getJulianDay(startDate, time.gmtoff);
-        return time.setJulianDay(julianDay);
+        // normalize the start date to the beginning of the local day
+        return ZoneDays.forDefaultZone().normalizeDate(startDate);
+    }
+
+    // Moves a normalized date by whole days, staying on the start of the day across DST changes
+    public static long addDays(long normalizedDate, int days) {
+        return ZoneDays.forDefaultZone().addDays(normalizedDate, days);
+    }
+
+    // Julian day of a date in the local zone, as android.text.format.Time counts them
+    public static int getJulianDay(long date) {
+        return ZoneDays.forDefaultZone().getJulianDay(date);
+    }
+
+    // The normalized date of a local Julian day
+    public static long getStartOfJulianDay(int julianDay) {
+        return ZoneDays.forDefaultZone().getStartOfJulianDay(julianDay);
     }
 
     /* Inner class that defines the table contents of the location table */
@@ -81,6 +147,10 @@ public class WeatherContract {
         public static final String COLUMN_COORD_LAT = "coord_lat";
         public static final String COLUMN_COORD_LONG = "coord_long";
 
+        // Version of the forecast currently stored for this location, as announced by push
+        // messages. Lets us drop pushes for data we already have.
+        public static final String COLUMN_FORECAST_VERSION = "forecast_version";
+
         public static Uri buildLocationUri(long id) {
             return ContentUris.withAppendedId(CONTENT_URI, id);
         }
@@ -92,6 +162,27 @@ public class WeatherContract {
         public static final Uri CONTENT_URI =
                 BASE_CONTENT_URI.buildUpon().appendPath(PATH_WEATHER).build();
 
+        public static final Uri BATCH_CONTENT_URI =
+                BASE_CONTENT_URI.buildUpon().appendPath(PATH_WEATHER_BATCH).build();
+
+        public static final Uri HISTORY_CONTENT_URI =
+                BASE_CONTENT_URI.buildUpon().appendPath(PATH_WEATHER_HISTORY).build();
+
+        // Query parameters of a batch Uri, one of each per (location, date range) pair,
+        // and of a history Uri
+        static final String PARAM_LOCATION = "location";
+        static final String PARAM_START_DATE = "start";
+        static final String PARAM_END_DATE = "end";
+
+        // Query parameters of a page of a location's weather: at most "limit" rows, starting
+        // after the row dated "after". Keyed by date rather than by offset, so reading a page
+        // doesn't walk every row before it.
+        static final String PARAM_LIMIT = "limit";
+        static final String PARAM_AFTER_DATE = "after";
+
+        // Query parameter of a location's weather Uri deleting its days before a date
+        static final String PARAM_BEFORE_DATE = "before";
+
         public static final String CONTENT_TYPE =
                 ContentResolver.CURSOR_DIR_BASE_TYPE + "/" + CONTENT_AUTHORITY + "/" + PATH_WEATHER;
         public static final String CONTENT_ITEM_TYPE =
@@ -149,6 +240,89 @@ public class WeatherContract {
                     .appendPath(Long.toString(normalizeDate(date))).build();
         }
 
+        /**
+         * Builds a Uri returning the first page of a location's weather from the start date on.
+         * Rows must be sorted by ascending date for {@link #buildWeatherNextPageUri} to follow.
+         */
+        public static Uri buildWeatherLocationPage(
+                String locationSetting, long startDate, int pageSize) {
+            return buildWeatherLocationWithStartDate(locationSetting, startDate).buildUpon()
+                    .appendQueryParameter(PARAM_LIMIT, Integer.toString(pageSize)).build();
+        }
+
+        /**
+         * Builds the Uri of the page following the one a Uri returned, given the date of its
+         * last row.
+         */
+        public static Uri buildWeatherNextPageUri(Uri pageUri, long lastDate) {
+            Uri.Builder builder = pageUri.buildUpon().clearQuery();
+            String startDate = pageUri.getQueryParameter(COLUMN_DATE);
+            if (null != startDate) {
+                builder.appendQueryParameter(COLUMN_DATE, startDate);
+            }
+            return builder
+                    .appendQueryParameter(PARAM_LIMIT, pageUri.getQueryParameter(PARAM_LIMIT))
+                    .appendQueryParameter(PARAM_AFTER_DATE, Long.toString(lastDate))
+                    .build();
+        }
+
+        /**
+         * Builds a Uri that, when deleted, moves a location's days before the date from the
+         * weather table to its archive, along with their hours, so a batch of operations can
+         * archive days too.
+         */
+        public static Uri buildWeatherLocationBeforeDate(String locationSetting, long date) {
+            return CONTENT_URI.buildUpon().appendPath(locationSetting)
+                    .appendQueryParameter(PARAM_BEFORE_DATE, Long.toString(normalizeDate(date)))
+                    .build();
+        }
+
+        /**
+         * Builds a Uri returning the rows of every location between its start and end date,
+         * inclusive, in one cursor.
+         */
+        public static Uri buildWeatherBatchUri(
+                String[] locationSettings, long[] startDates, long[] endDates) {
+            Uri.Builder builder = BATCH_CONTENT_URI.buildUpon();
+            for (int i = 0; i < locationSettings.length; i++) {
+                builder.appendQueryParameter(PARAM_LOCATION, locationSettings[i])
+                        .appendQueryParameter(PARAM_START_DATE,
+                                Long.toString(normalizeDate(startDates[i])))
+                        .appendQueryParameter(PARAM_END_DATE, Long.toString(endDates[i]));
+            }
+            return builder.build();
+        }
+
+        /**
+         * Builds the extras for a {@link #METHOD_QUERY_BATCH} call, the call() equivalent of
+         * {@link #buildWeatherBatchUri}.
+         */
+        public static Bundle buildWeatherBatchExtras(String[] projection,
+                String[] locationSettings, long[] startDates, long[] endDates) {
+            long[] normalizedStartDates = new long[startDates.length];
+            for (int i = 0; i < startDates.length; i++) {
+                normalizedStartDates[i] = normalizeDate(startDates[i]);
+            }
+            Bundle extras = new Bundle();
+            extras.putStringArray(EXTRA_PROJECTION, projection);
+            extras.putStringArray(EXTRA_LOCATIONS, locationSettings);
+            extras.putLongArray(EXTRA_START_DATES, normalizedStartDates);
+            extras.putLongArray(EXTRA_END_DATES, endDates);
+            return extras;
+        }
+
+        /**
+         * Builds a Uri returning a location's archived days between the start and end date,
+         * inclusive, in date order.
+         */
+        public static Uri buildWeatherHistoryUri(
+                String locationSetting, long startDate, long endDate) {
+            return HISTORY_CONTENT_URI.buildUpon().appendPath(locationSetting)
+                    .appendQueryParameter(PARAM_START_DATE, Long.toString(normalizeDate(startDate)))
+                    .appendQueryParameter(PARAM_END_DATE, Long.toString(endDate))
+                    .build();
+        }
+
         public static String getLocationSettingFromUri(Uri uri) {
             return uri.getPathSegments().get(1);
         }
@@ -164,5 +338,184 @@ public class WeatherContract {
             else
                 return 0;
         }
+
+        // Returns the page size of a page Uri, or 0 if it isn't paged
+        public static int getPageLimitFromUri(Uri uri) {
+            String limitString = uri.getQueryParameter(PARAM_LIMIT);
+            if (null != limitString && limitString.length() > 0)
+                return Integer.parseInt(limitString);
+            else
+                return 0;
+        }
+
+        // Returns the date rows of a page Uri come after, or 0 for a first page
+        public static long getAfterDateFromUri(Uri uri) {
+            String dateString = uri.getQueryParameter(PARAM_AFTER_DATE);
+            if (null != dateString && dateString.length() > 0)
+                return Long.parseLong(dateString);
+            else
+                return 0;
+        }
+
+        // Returns the date a delete Uri archives the days before, or 0 if it has none
+        public static long getBeforeDateFromUri(Uri uri) {
+            String dateString = uri.getQueryParameter(PARAM_BEFORE_DATE);
+            if (null != dateString && dateString.length() > 0)
+                return Long.parseLong(dateString);
+            else
+                return 0;
+        }
+    }
+
+    /*
+        Inner class that defines the table contents of the hourly table: one row per location
+        and day, holding all of the day's hours as packed arrays, so a day of hours is read
+        with a single row fetch. See HourlyForecast for the packing.
+     */
+    public static final class HourlyEntry implements BaseColumns {
+
+        public static final Uri CONTENT_URI =
+                BASE_CONTENT_URI.buildUpon().appendPath(PATH_HOURLY).build();
+
+        public static final String CONTENT_TYPE =
+                ContentResolver.CURSOR_DIR_BASE_TYPE + "/" + CONTENT_AUTHORITY + "/" + PATH_HOURLY;
+        public static final String CONTENT_ITEM_TYPE =
+                ContentResolver.CURSOR_ITEM_BASE_TYPE + "/" + CONTENT_AUTHORITY + "/" + PATH_HOURLY;
+
+        public static final String TABLE_NAME = "hourly";
+
+        // Column with the foreign key into the location table.
+        public static final String COLUMN_LOC_KEY = "location_id";
+        // Normalized date of the day the hours belong to, as in the weather table
+        public static final String COLUMN_DATE = "date";
+        // Number of hours in each of the arrays below
+        public static final String COLUMN_COUNT = "count";
+
+        // Packed arrays, one entry per hour: the hour of the day as a byte, the weather id
+        // as a short, and the rest as floats
+        public static final String COLUMN_HOURS = "hours";
+        public static final String COLUMN_WEATHER_IDS = "weather_ids";
+        public static final String COLUMN_TEMPS = "temps";
+        public static final String COLUMN_HUMIDITIES = "humidities";
+        public static final String COLUMN_PRESSURES = "pressures";
+        public static final String COLUMN_WIND_SPEEDS = "winds";
+        public static final String COLUMN_DEGREES = "degrees";
+
+        public static Uri buildHourlyLocationWithDate(String locationSetting, long date) {
+            return CONTENT_URI.buildUpon().appendPath(locationSetting)
+                    .appendPath(Long.toString(normalizeDate(date))).build();
+        }
+
+        public static String getLocationSettingFromUri(Uri uri) {
+            return uri.getPathSegments().get(1);
+        }
+
+        public static long getDateFromUri(Uri uri) {
+            return Long.parseLong(uri.getPathSegments().get(2));
+        }
+    }
+
+    /*
+        Inner class that defines the table contents of the summary table: one row per location
+        and day, kept when the day moves to the archive, holding the day's values and the running
+        totals of every day up to it. The totals of a range are the difference of two rows.
+     */
+    public static final class SummaryEntry implements BaseColumns {
+
+        public static final Uri CONTENT_URI =
+                BASE_CONTENT_URI.buildUpon().appendPath(PATH_WEATHER_SUMMARY).build();
+
+        public static final String CONTENT_TYPE =
+                ContentResolver.CURSOR_DIR_BASE_TYPE + "/" + CONTENT_AUTHORITY + "/" + PATH_WEATHER_SUMMARY;
+
+        public static final String TABLE_NAME = "weather_summary";
+
+        // Query parameter of a rolling mean Uri: how many days each mean covers
+        static final String PARAM_WINDOW = "window";
+
+        // Column with the foreign key into the location table.
+        public static final String COLUMN_LOC_KEY = "location_id";
+        // Normalized date, as in the weather table
+        public static final String COLUMN_DATE = "date";
+        // Julian day of the date, so ranges of days can be computed in SQL
+        public static final String COLUMN_DAY = "day";
+
+        // The day's own values
+        public static final String COLUMN_MIN_TEMP = "min";
+        public static final String COLUMN_MAX_TEMP = "max";
+        public static final String COLUMN_HUMIDITY = "humidity";
+        public static final String COLUMN_PRESSURE = "pressure";
+        public static final String COLUMN_WIND_SPEED = "wind";
+        // One of the CONDITION_* groups
+        public static final String COLUMN_CONDITION = "condition";
+        // Number of days a rolling mean covers, fewer than the window at the location's start
+        public static final String COLUMN_MEAN_DAYS = "days";
+        // A rolling window's lowest low and highest high
+        public static final String COLUMN_LOWEST_TEMP = "lowest";
+        public static final String COLUMN_HIGHEST_TEMP = "highest";
+        // Number of a rolling window's days in each condition group, "condition_days_0" to "_6"
+        public static final String COLUMN_CONDITION_DAYS_PREFIX = "condition_days_";
+
+        // Running totals up to and including the day
+        public static final String COLUMN_TOTAL_DAYS = "total_days";
+        public static final String COLUMN_TOTAL_MIN_TEMP = "total_min";
+        public static final String COLUMN_TOTAL_MAX_TEMP = "total_max";
+        public static final String COLUMN_TOTAL_HUMIDITY = "total_humidity";
+        public static final String COLUMN_TOTAL_PRESSURE = "total_pressure";
+        public static final String COLUMN_TOTAL_WIND_SPEED = "total_wind";
+        // Running count of days in each condition group, "total_condition_0" to "_6"
+        public static final String COLUMN_TOTAL_CONDITION_PREFIX = "total_condition_";
+
+        // Condition groups of OpenWeatherMap weather ids
+        public static final int CONDITION_STORM = 0;
+        public static final int CONDITION_DRIZZLE = 1;
+        public static final int CONDITION_RAIN = 2;
+        public static final int CONDITION_SNOW = 3;
+        public static final int CONDITION_ATMOSPHERE = 4;
+        public static final int CONDITION_CLEAR = 5;
+        public static final int CONDITION_CLOUDS = 6;
+        public static final int CONDITION_GROUPS = 7;
+
+        public static int getConditionGroup(int weatherId) {
+            if (weatherId >= 200 && weatherId < 300) {
+                return CONDITION_STORM;
+            } else if (weatherId >= 300 && weatherId < 400) {
+                return CONDITION_DRIZZLE;
+            } else if (weatherId >= 500 && weatherId < 600) {
+                return CONDITION_RAIN;
+            } else if (weatherId >= 600 && weatherId < 700) {
+                return CONDITION_SNOW;
+            } else if (weatherId >= 700 && weatherId < 800) {
+                return CONDITION_ATMOSPHERE;
+            } else if (weatherId == 800) {
+                return CONDITION_CLEAR;
+            }
+            // 80x, and anything OpenWeatherMap adds later
+            return CONDITION_CLOUDS;
+        }
+
+        public static String getTotalConditionColumn(int conditionGroup) {
+            return COLUMN_TOTAL_CONDITION_PREFIX + conditionGroup;
+        }
+
+        public static String getConditionDaysColumn(int conditionGroup) {
+            return COLUMN_CONDITION_DAYS_PREFIX + conditionGroup;
+        }
+
+        /**
+         * Builds a Uri returning, for each of a location's days between the start and end date,
+         * the mean of its values over the window of days ending with it. The mean columns are
+         * named like the day's own, along with COLUMN_MEAN_DAYS, and are followed by the
+         * window's extremes and the number of its days in each condition group.
+         */
+        public static Uri buildRollingMeanUri(String locationSetting, long startDate,
+                                              long endDate, int windowDays) {
+            return CONTENT_URI.buildUpon().appendPath(locationSetting)
+                    .appendQueryParameter(WeatherEntry.PARAM_START_DATE,
+                            Long.toString(normalizeDate(startDate)))
+                    .appendQueryParameter(WeatherEntry.PARAM_END_DATE, Long.toString(endDate))
+                    .appendQueryParameter(PARAM_WINDOW, Integer.toString(windowDays))
+                    .build();
+        }
     }
 }
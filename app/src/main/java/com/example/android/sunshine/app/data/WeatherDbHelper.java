@@ -19,7 +19,9 @@ import android.content.Context;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
 
+import com.example.android.sunshine.app.data.WeatherContract.HourlyEntry;
 import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.SummaryEntry;
 import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
 
 /**
@@ -28,7 +30,7 @@ import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
 public class WeatherDbHelper extends SQLiteOpenHelper {
 
     // If you change the database schema, you must increment the database version.
-    private static final int DATABASE_VERSION = 2;
+    private static final int DATABASE_VERSION = 5;
 
     static final String DATABASE_NAME = "weather.db";
 
@@ -45,7 +47,8 @@ public class WeatherDbHelper extends SQLiteOpenHelper {
                 LocationEntry.COLUMN_LOCATION_SETTING + " TEXT UNIQUE NOT NULL, " +
                 LocationEntry.COLUMN_CITY_NAME + " TEXT NOT NULL, " +
                 LocationEntry.COLUMN_COORD_LAT + " REAL NOT NULL, " +
-                LocationEntry.COLUMN_COORD_LONG + " REAL NOT NULL " +
+                LocationEntry.COLUMN_COORD_LONG + " REAL NOT NULL, " +
+                LocationEntry.COLUMN_FORECAST_VERSION + " INTEGER NOT NULL DEFAULT 0 " +
                 " );";
 
         final String SQL_CREATE_WEATHER_TABLE = "CREATE TABLE " + WeatherEntry.TABLE_NAME + " (" +
@@ -79,8 +82,66 @@ public class WeatherDbHelper extends SQLiteOpenHelper {
                 " UNIQUE (" + WeatherEntry.COLUMN_DATE + ", " +
                 WeatherEntry.COLUMN_LOC_KEY + ") ON CONFLICT REPLACE);";
 
+        StringBuilder conditionTotals = new StringBuilder();
+        for (int group = 0; group < SummaryEntry.CONDITION_GROUPS; group++) {
+            conditionTotals.append(SummaryEntry.getTotalConditionColumn(group))
+                    .append(" INTEGER NOT NULL DEFAULT 0, ");
+        }
+        final String SQL_CREATE_SUMMARY_TABLE = "CREATE TABLE " + SummaryEntry.TABLE_NAME + " (" +
+                SummaryEntry._ID + " INTEGER PRIMARY KEY," +
+                SummaryEntry.COLUMN_LOC_KEY + " INTEGER NOT NULL, " +
+                SummaryEntry.COLUMN_DATE + " INTEGER NOT NULL, " +
+                SummaryEntry.COLUMN_DAY + " INTEGER NOT NULL, " +
+
+                SummaryEntry.COLUMN_MIN_TEMP + " REAL NOT NULL, " +
+                SummaryEntry.COLUMN_MAX_TEMP + " REAL NOT NULL, " +
+                SummaryEntry.COLUMN_HUMIDITY + " REAL NOT NULL, " +
+                SummaryEntry.COLUMN_PRESSURE + " REAL NOT NULL, " +
+                SummaryEntry.COLUMN_WIND_SPEED + " REAL NOT NULL, " +
+                SummaryEntry.COLUMN_CONDITION + " INTEGER NOT NULL, " +
+
+                // Filled in once the day's place among the others is known
+                SummaryEntry.COLUMN_TOTAL_DAYS + " INTEGER NOT NULL DEFAULT 0, " +
+                SummaryEntry.COLUMN_TOTAL_MIN_TEMP + " REAL NOT NULL DEFAULT 0, " +
+                SummaryEntry.COLUMN_TOTAL_MAX_TEMP + " REAL NOT NULL DEFAULT 0, " +
+                SummaryEntry.COLUMN_TOTAL_HUMIDITY + " REAL NOT NULL DEFAULT 0, " +
+                SummaryEntry.COLUMN_TOTAL_PRESSURE + " REAL NOT NULL DEFAULT 0, " +
+                SummaryEntry.COLUMN_TOTAL_WIND_SPEED + " REAL NOT NULL DEFAULT 0, " +
+                conditionTotals.toString() +
+
+                " FOREIGN KEY (" + SummaryEntry.COLUMN_LOC_KEY + ") REFERENCES " +
+                LocationEntry.TABLE_NAME + " (" + LocationEntry._ID + "), " +
+
+                // One row per day per location; also the index every aggregate reads through
+                " UNIQUE (" + SummaryEntry.COLUMN_LOC_KEY + ", " +
+                SummaryEntry.COLUMN_DAY + ") ON CONFLICT REPLACE);";
+
+        final String SQL_CREATE_HOURLY_TABLE = "CREATE TABLE " + HourlyEntry.TABLE_NAME + " (" +
+                HourlyEntry._ID + " INTEGER PRIMARY KEY," +
+                HourlyEntry.COLUMN_LOC_KEY + " INTEGER NOT NULL, " +
+                HourlyEntry.COLUMN_DATE + " INTEGER NOT NULL, " +
+                HourlyEntry.COLUMN_COUNT + " INTEGER NOT NULL, " +
+
+                // Packed arrays of COLUMN_COUNT entries each
+                HourlyEntry.COLUMN_HOURS + " BLOB NOT NULL, " +
+                HourlyEntry.COLUMN_WEATHER_IDS + " BLOB NOT NULL, " +
+                HourlyEntry.COLUMN_TEMPS + " BLOB NOT NULL, " +
+                HourlyEntry.COLUMN_HUMIDITIES + " BLOB NOT NULL, " +
+                HourlyEntry.COLUMN_PRESSURES + " BLOB NOT NULL, " +
+                HourlyEntry.COLUMN_WIND_SPEEDS + " BLOB NOT NULL, " +
+                HourlyEntry.COLUMN_DEGREES + " BLOB NOT NULL, " +
+
+                " FOREIGN KEY (" + HourlyEntry.COLUMN_LOC_KEY + ") REFERENCES " +
+                LocationEntry.TABLE_NAME + " (" + LocationEntry._ID + "), " +
+
+                // One row per day per location, like the weather table
+                " UNIQUE (" + HourlyEntry.COLUMN_LOC_KEY + ", " +
+                HourlyEntry.COLUMN_DATE + ") ON CONFLICT REPLACE);";
+
         sqLiteDatabase.execSQL(SQL_CREATE_LOCATION_TABLE);
         sqLiteDatabase.execSQL(SQL_CREATE_WEATHER_TABLE);
+        sqLiteDatabase.execSQL(SQL_CREATE_SUMMARY_TABLE);
+        sqLiteDatabase.execSQL(SQL_CREATE_HOURLY_TABLE);
     }
 
     @Override
@@ -93,6 +154,8 @@ public class WeatherDbHelper extends SQLiteOpenHelper {
         // should be your top priority before modifying this method.
         sqLiteDatabase.execSQL("DROP TABLE IF EXISTS " + LocationEntry.TABLE_NAME);
         sqLiteDatabase.execSQL("DROP TABLE IF EXISTS " + WeatherEntry.TABLE_NAME);
+        sqLiteDatabase.execSQL("DROP TABLE IF EXISTS " + SummaryEntry.TABLE_NAME);
+        sqLiteDatabase.execSQL("DROP TABLE IF EXISTS " + HourlyEntry.TABLE_NAME);
         onCreate(sqLiteDatabase);
     }
 }
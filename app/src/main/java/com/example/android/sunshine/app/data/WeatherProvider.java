@@ -17,25 +17,54 @@ package com.example.android.sunshine.app.data;
 
 import android.annotation.TargetApi;
 import android.content.ContentProvider;
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
+import android.content.ContentUris;
 import android.content.ContentValues;
+import android.content.OperationApplicationException;
 import android.content.UriMatcher;
 import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.database.SQLException;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteQueryBuilder;
 import android.net.Uri;
+import android.os.Build;
+import android.os.Bundle;
+import android.os.Parcelable;
+import android.support.annotation.VisibleForTesting;
+import android.util.Log;
+
+import org.json.JSONException;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 public class WeatherProvider extends ContentProvider {
+    private static final String LOG_TAG = WeatherProvider.class.getSimpleName();
 
     // The URI Matcher used by this content provider.
     private static final UriMatcher sUriMatcher = buildUriMatcher();
     private WeatherDbHelper mOpenHelper;
+    private WeatherArchive mArchive;
+    // The batch applyBatch is running on this thread, if any
+    private final ThreadLocal<Batch> mBatch = new ThreadLocal<>();
 
     static final int WEATHER = 100;
     static final int WEATHER_WITH_LOCATION = 101;
     static final int WEATHER_WITH_LOCATION_AND_DATE = 102;
+    static final int WEATHER_BATCH = 103;
+    static final int WEATHER_HISTORY = 104;
+    static final int WEATHER_SUMMARY = 105;
+    static final int HOURLY = 200;
+    static final int HOURLY_WITH_LOCATION_AND_DATE = 201;
     static final int LOCATION = 300;
 
     private static final SQLiteQueryBuilder sWeatherByLocationSettingQueryBuilder;
+    private static final SQLiteQueryBuilder sHourlyByLocationSettingQueryBuilder;
 
     static{
         sWeatherByLocationSettingQueryBuilder = new SQLiteQueryBuilder();
@@ -49,6 +78,16 @@ public class WeatherProvider extends ContentProvider {
                         "." + WeatherContract.WeatherEntry.COLUMN_LOC_KEY +
                         " = " + WeatherContract.LocationEntry.TABLE_NAME +
                         "." + WeatherContract.LocationEntry._ID);
+
+        //hourly INNER JOIN location ON hourly.location_id = location._id
+        sHourlyByLocationSettingQueryBuilder = new SQLiteQueryBuilder();
+        sHourlyByLocationSettingQueryBuilder.setTables(
+                WeatherContract.HourlyEntry.TABLE_NAME + " INNER JOIN " +
+                        WeatherContract.LocationEntry.TABLE_NAME +
+                        " ON " + WeatherContract.HourlyEntry.TABLE_NAME +
+                        "." + WeatherContract.HourlyEntry.COLUMN_LOC_KEY +
+                        " = " + WeatherContract.LocationEntry.TABLE_NAME +
+                        "." + WeatherContract.LocationEntry._ID);
     }
 
     //location.location_setting = ?
@@ -68,9 +107,29 @@ public class WeatherProvider extends ContentProvider {
                     "." + WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING + " = ? AND " +
                     WeatherContract.WeatherEntry.COLUMN_DATE + " = ? ";
 
+    //location.location_setting = ? AND date >= ? AND date <= ?
+    private static final String sLocationSettingWithDateRangeSelection =
+            WeatherContract.LocationEntry.TABLE_NAME +
+                    "." + WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING + " = ? AND " +
+                    WeatherContract.WeatherEntry.COLUMN_DATE + " >= ? AND " +
+                    WeatherContract.WeatherEntry.COLUMN_DATE + " <= ? ";
+
+    //location.location_setting = ? AND hourly.date = ?
+    private static final String sLocationSettingAndHourlyDaySelection =
+            WeatherContract.LocationEntry.TABLE_NAME +
+                    "." + WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING + " = ? AND " +
+                    WeatherContract.HourlyEntry.TABLE_NAME +
+                    "." + WeatherContract.HourlyEntry.COLUMN_DATE + " = ? ";
+
+    // AND date > ?, appended to either selection above for the pages after the first
+    private static final String sAfterDateSelection =
+            "AND " + WeatherContract.WeatherEntry.COLUMN_DATE + " > ? ";
+
     private Cursor getWeatherByLocationSetting(Uri uri, String[] projection, String sortOrder) {
         String locationSetting = WeatherContract.WeatherEntry.getLocationSettingFromUri(uri);
         long startDate = WeatherContract.WeatherEntry.getStartDateFromUri(uri);
+        long afterDate = WeatherContract.WeatherEntry.getAfterDateFromUri(uri);
+        int pageSize = WeatherContract.WeatherEntry.getPageLimitFromUri(uri);
 
         String[] selectionArgs;
         String selection;
@@ -83,13 +142,28 @@ public class WeatherProvider extends ContentProvider {
             selection = sLocationSettingWithStartDateSelection;
         }
 
+        String limit = null;
+        if (pageSize > 0) {
+            limit = Integer.toString(pageSize);
+            // Pages follow each other by date, so they have to be read in date order
+            sortOrder = WeatherContract.WeatherEntry.COLUMN_DATE + " ASC";
+            if (afterDate != 0) {
+                selection += sAfterDateSelection;
+                String[] pageArgs = new String[selectionArgs.length + 1];
+                System.arraycopy(selectionArgs, 0, pageArgs, 0, selectionArgs.length);
+                pageArgs[selectionArgs.length] = Long.toString(afterDate);
+                selectionArgs = pageArgs;
+            }
+        }
+
         return sWeatherByLocationSettingQueryBuilder.query(mOpenHelper.getReadableDatabase(),
                 projection,
                 selection,
                 selectionArgs,
                 null,
                 null,
-                sortOrder
+                sortOrder,
+                limit
         );
     }
 
@@ -108,13 +182,82 @@ public class WeatherProvider extends ContentProvider {
         );
     }
 
+    /**
+     * Reads the rows of several (location, date range) pairs with a single query. SQLite limits
+     * a statement to 999 arguments, so at most 333 pairs can be asked for at once.
+     */
+    private Cursor getWeatherBatch(String[] projection, String[] locationSettings,
+                                   long[] startDates, long[] endDates, String sortOrder) {
+        if (locationSettings == null || startDates == null || endDates == null
+                || locationSettings.length != startDates.length
+                || locationSettings.length != endDates.length) {
+            throw new IllegalArgumentException("Every location needs a start and an end date");
+        }
+
+        StringBuilder selection = new StringBuilder();
+        String[] selectionArgs = new String[locationSettings.length * 3];
+        for (int i = 0; i < locationSettings.length; i++) {
+            if (i > 0) {
+                selection.append(" OR ");
+            }
+            selection.append('(').append(sLocationSettingWithDateRangeSelection).append(')');
+            selectionArgs[i * 3] = locationSettings[i];
+            selectionArgs[i * 3 + 1] = Long.toString(startDates[i]);
+            selectionArgs[i * 3 + 2] = Long.toString(endDates[i]);
+        }
+
+        return sWeatherByLocationSettingQueryBuilder.query(mOpenHelper.getReadableDatabase(),
+                projection,
+                selection.toString(),
+                selectionArgs,
+                null,
+                null,
+                sortOrder
+        );
+    }
+
+    private Cursor getWeatherBatch(Uri uri, String[] projection, String sortOrder) {
+        List<String> locations =
+                uri.getQueryParameters(WeatherContract.WeatherEntry.PARAM_LOCATION);
+        List<String> startDates =
+                uri.getQueryParameters(WeatherContract.WeatherEntry.PARAM_START_DATE);
+        List<String> endDates =
+                uri.getQueryParameters(WeatherContract.WeatherEntry.PARAM_END_DATE);
+        long[] starts = new long[startDates.size()];
+        for (int i = 0; i < starts.length; i++) {
+            starts[i] = Long.parseLong(startDates.get(i));
+        }
+        long[] ends = new long[endDates.size()];
+        for (int i = 0; i < ends.length; i++) {
+            ends[i] = Long.parseLong(endDates.get(i));
+        }
+        return getWeatherBatch(projection, locations.toArray(new String[locations.size()]),
+                starts, ends, sortOrder);
+    }
+
+    private Cursor getHourlyByLocationSettingAndDate(
+            Uri uri, String[] projection, String sortOrder) {
+        String locationSetting = WeatherContract.HourlyEntry.getLocationSettingFromUri(uri);
+        long date = WeatherContract.HourlyEntry.getDateFromUri(uri);
+
+        return sHourlyByLocationSettingQueryBuilder.query(mOpenHelper.getReadableDatabase(),
+                projection,
+                sLocationSettingAndHourlyDaySelection,
+                new String[]{locationSetting, Long.toString(date)},
+                null,
+                null,
+                sortOrder
+        );
+    }
+
     /*
         Students: Here is where you need to create the UriMatcher. This UriMatcher will
         match each URI to the WEATHER, WEATHER_WITH_LOCATION, WEATHER_WITH_LOCATION_AND_DATE,
         and LOCATION integer constants defined above.  You can test this by uncommenting the
         testUriMatcher test within TestUriMatcher.
      */
-    static UriMatcher buildUriMatcher() {
+    @VisibleForTesting
+    public static UriMatcher buildUriMatcher() {
         // I know what you're thinking.  Why create a UriMatcher when you can use regular
         // expressions instead?  Because you're not crazy, that's why.
 
@@ -129,6 +272,13 @@ public class WeatherProvider extends ContentProvider {
         matcher.addURI(authority, WeatherContract.PATH_WEATHER + "/*", WEATHER_WITH_LOCATION);
         matcher.addURI(authority, WeatherContract.PATH_WEATHER + "/*/#", WEATHER_WITH_LOCATION_AND_DATE);
 
+        matcher.addURI(authority, WeatherContract.PATH_WEATHER_BATCH, WEATHER_BATCH);
+        matcher.addURI(authority, WeatherContract.PATH_WEATHER_HISTORY + "/*", WEATHER_HISTORY);
+        matcher.addURI(authority, WeatherContract.PATH_WEATHER_SUMMARY + "/*", WEATHER_SUMMARY);
+
+        matcher.addURI(authority, WeatherContract.PATH_HOURLY, HOURLY);
+        matcher.addURI(authority, WeatherContract.PATH_HOURLY + "/*/#", HOURLY_WITH_LOCATION_AND_DATE);
+
         matcher.addURI(authority, WeatherContract.PATH_LOCATION, LOCATION);
         return matcher;
     }
@@ -140,6 +290,7 @@ public class WeatherProvider extends ContentProvider {
     @Override
     public boolean onCreate() {
         mOpenHelper = new WeatherDbHelper(getContext());
+        mArchive = new WeatherArchive(getContext().getFilesDir());
         return true;
     }
 
@@ -162,6 +313,16 @@ public class WeatherProvider extends ContentProvider {
                 return WeatherContract.WeatherEntry.CONTENT_TYPE;
             case WEATHER:
                 return WeatherContract.WeatherEntry.CONTENT_TYPE;
+            case WEATHER_BATCH:
+                return WeatherContract.WeatherEntry.CONTENT_TYPE;
+            case WEATHER_HISTORY:
+                return WeatherContract.WeatherEntry.CONTENT_TYPE;
+            case WEATHER_SUMMARY:
+                return WeatherContract.SummaryEntry.CONTENT_TYPE;
+            case HOURLY:
+                return WeatherContract.HourlyEntry.CONTENT_TYPE;
+            case HOURLY_WITH_LOCATION_AND_DATE:
+                return WeatherContract.HourlyEntry.CONTENT_ITEM_TYPE;
             case LOCATION:
                 return WeatherContract.LocationEntry.CONTENT_TYPE;
             default:
@@ -187,6 +348,39 @@ public class WeatherProvider extends ContentProvider {
                 retCursor = getWeatherByLocationSetting(uri, projection, sortOrder);
                 break;
             }
+            // "weather_batch?location=*&start=#&end=#..."
+            case WEATHER_BATCH: {
+                retCursor = getWeatherBatch(uri, projection, sortOrder);
+                break;
+            }
+            // "weather_history/*?start=#&end=#"
+            case WEATHER_HISTORY: {
+                retCursor = getWeatherHistory(uri, projection);
+                break;
+            }
+            // "weather_summary/*?start=#&end=#&window=#"
+            case WEATHER_SUMMARY: {
+                retCursor = getRollingMeans(uri, projection);
+                break;
+            }
+            // "hourly/*/#"
+            case HOURLY_WITH_LOCATION_AND_DATE: {
+                retCursor = getHourlyByLocationSettingAndDate(uri, projection, sortOrder);
+                break;
+            }
+            // "hourly"
+            case HOURLY: {
+                retCursor = mOpenHelper.getReadableDatabase().query(
+                        WeatherContract.HourlyEntry.TABLE_NAME,
+                        projection,
+                        selection,
+                        selectionArgs,
+                        null,
+                        null,
+                        sortOrder
+                );
+                break;
+            }
             // "weather"
             case WEATHER: {
                 retCursor = mOpenHelper.getReadableDatabase().query(
@@ -228,30 +422,57 @@ public class WeatherProvider extends ContentProvider {
     public Uri insert(Uri uri, ContentValues values) {
         final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
         final int match = sUriMatcher.match(uri);
+        final WeatherChanges changes = startChanges(db);
         Uri returnUri;
 
         switch (match) {
             case WEATHER: {
                 normalizeDate(values);
-                long _id = db.insert(WeatherContract.WeatherEntry.TABLE_NAME, null, values);
+                long _id;
+                db.beginTransaction();
+                try {
+                    _id = db.insert(WeatherContract.WeatherEntry.TABLE_NAME, null, values);
+                    if (_id > 0) {
+                        long locationId =
+                                values.getAsLong(WeatherContract.WeatherEntry.COLUMN_LOC_KEY);
+                        long date = values.getAsLong(WeatherContract.WeatherEntry.COLUMN_DATE);
+                        updateSummary(db, locationId, date);
+                        changes.addWeather(locationId, date);
+                        db.setTransactionSuccessful();
+                    }
+                } finally {
+                    db.endTransaction();
+                }
                 if ( _id > 0 )
                     returnUri = WeatherContract.WeatherEntry.buildWeatherUri(_id);
                 else
                     throw new android.database.SQLException("Failed to insert row into " + uri);
                 break;
             }
+            case HOURLY: {
+                normalizeDate(values);
+                long _id = db.insert(WeatherContract.HourlyEntry.TABLE_NAME, null, values);
+                if ( _id > 0 )
+                    returnUri = ContentUris.withAppendedId(WeatherContract.HourlyEntry.CONTENT_URI, _id);
+                else
+                    throw new android.database.SQLException("Failed to insert row into " + uri);
+                changes.addHourly(values.getAsLong(WeatherContract.HourlyEntry.COLUMN_LOC_KEY),
+                        values.getAsLong(WeatherContract.HourlyEntry.COLUMN_DATE));
+                break;
+            }
             case LOCATION: {
                 long _id = db.insert(WeatherContract.LocationEntry.TABLE_NAME, null, values);
                 if ( _id > 0 )
                     returnUri = WeatherContract.LocationEntry.buildLocationUri(_id);
                 else
                     throw new android.database.SQLException("Failed to insert row into " + uri);
+                changes.add(uri);
                 break;
             }
             default:
                 throw new UnsupportedOperationException("Unknown uri: " + uri);
         }
-        getContext().getContentResolver().notifyChange(uri, null);
+        notifyChanges(changes);
         return returnUri;
     }
 
@@ -259,24 +480,77 @@ public class WeatherProvider extends ContentProvider {
     public int delete(Uri uri, String selection, String[] selectionArgs) {
         final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
         final int match = sUriMatcher.match(uri);
+        final WeatherChanges changes = startChanges(db);
         int rowsDeleted;
+        // Deleting every row changes every day, so there's no need to look them up
+        final boolean deleteAll = null == selection;
         // this makes delete all rows return the number of rows deleted
         if ( null == selection ) selection = "1";
-        switch (match) {
-            case WEATHER:
-                rowsDeleted = db.delete(
-                        WeatherContract.WeatherEntry.TABLE_NAME, selection, selectionArgs);
-                break;
-            case LOCATION:
-                rowsDeleted = db.delete(
-                        WeatherContract.LocationEntry.TABLE_NAME, selection, selectionArgs);
-                break;
-            default:
-                throw new UnsupportedOperationException("Unknown uri: " + uri);
+        db.beginTransaction();
+        try {
+            switch (match) {
+                case WEATHER:
+                    if (deleteAll) {
+                        changes.addAllWeather();
+                    } else {
+                        changes.addWeatherRows(selection, selectionArgs);
+                    }
+                    rowsDeleted = db.delete(
+                            WeatherContract.WeatherEntry.TABLE_NAME, selection, selectionArgs);
+                    break;
+                case WEATHER_WITH_LOCATION: {
+                    // Only deletes by date, moving the days to the location's archive
+                    long beforeDate = WeatherContract.WeatherEntry.getBeforeDateFromUri(uri);
+                    if (beforeDate == 0 || !deleteAll) {
+                        throw new UnsupportedOperationException("Unknown uri: " + uri);
+                    }
+                    String locationSetting =
+                            WeatherContract.WeatherEntry.getLocationSettingFromUri(uri);
+                    long locationId = getLocationId(db, locationSetting);
+                    rowsDeleted = locationId == -1 ? 0
+                            : archiveBefore(db, locationId, locationSetting, beforeDate, changes);
+                    break;
+                }
+                case HOURLY:
+                    if (deleteAll) {
+                        changes.addAllHourly();
+                    } else {
+                        changes.addHourlyRows(selection, selectionArgs);
+                    }
+                    rowsDeleted = db.delete(
+                            WeatherContract.HourlyEntry.TABLE_NAME, selection, selectionArgs);
+                    break;
+                case LOCATION: {
+                    // Their archives go with them, once the delete commits
+                    Cursor locations = db.query(WeatherContract.LocationEntry.TABLE_NAME,
+                            new String[]{WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING},
+                            selection, selectionArgs, null, null, null);
+                    while (locations.moveToNext()) {
+                        changes.addDeletedArchive(locations.getString(0));
+                    }
+                    locations.close();
+                    rowsDeleted = db.delete(
+                            WeatherContract.LocationEntry.TABLE_NAME, selection, selectionArgs);
+                    WeatherSummary.deleteOrphans(db);
+                    if (db.delete(WeatherContract.HourlyEntry.TABLE_NAME,
+                            WeatherContract.HourlyEntry.COLUMN_LOC_KEY + " NOT IN (SELECT "
+                                    + WeatherContract.LocationEntry._ID + " FROM "
+                                    + WeatherContract.LocationEntry.TABLE_NAME + ")", null) > 0) {
+                        changes.addAllHourly();
+                    }
+                    changes.add(uri);
+                    break;
+                }
+                default:
+                    throw new UnsupportedOperationException("Unknown uri: " + uri);
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
         }
         // Because a null deletes all rows
         if (rowsDeleted != 0) {
-            getContext().getContentResolver().notifyChange(uri, null);
+            notifyChanges(changes);
         }
         return rowsDeleted;
     }
@@ -294,23 +568,54 @@ public class WeatherProvider extends ContentProvider {
             Uri uri, ContentValues values, String selection, String[] selectionArgs) {
         final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
         final int match = sUriMatcher.match(uri);
+        final WeatherChanges changes = startChanges(db);
         int rowsUpdated;
 
         switch (match) {
             case WEATHER:
                 normalizeDate(values);
-                rowsUpdated = db.update(WeatherContract.WeatherEntry.TABLE_NAME, values, selection,
-                        selectionArgs);
+                db.beginTransaction();
+                try {
+                    // The summary of every location the rows are in is brought up to date from
+                    // the first of them
+                    Map<Long, Long> firstDates = getFirstDates(db, selection, selectionArgs);
+                    Long newLocationId =
+                            values.getAsLong(WeatherContract.WeatherEntry.COLUMN_LOC_KEY);
+                    Long newDate = values.getAsLong(WeatherContract.WeatherEntry.COLUMN_DATE);
+                    if (newLocationId != null || newDate != null) {
+                        // The rows move to days that the selection doesn't name, and leave
+                        // their old days' summaries behind
+                        changes.addAllWeather();
+                        WeatherSummary.deleteWeatherRows(db,
+                                selection == null ? "1" : selection, selectionArgs);
+                    } else {
+                        changes.addWeatherRows(selection, selectionArgs);
+                    }
+                    rowsUpdated = db.update(WeatherContract.WeatherEntry.TABLE_NAME, values,
+                            selection, selectionArgs);
+                    for (Map.Entry<Long, Long> firstDate : firstDates.entrySet()) {
+                        long date = newDate == null
+                                ? firstDate.getValue() : Math.min(firstDate.getValue(), newDate);
+                        updateSummary(db, firstDate.getKey(), date);
+                        if (newLocationId != null) {
+                            updateSummary(db, newLocationId, date);
+                        }
+                    }
+                    db.setTransactionSuccessful();
+                } finally {
+                    db.endTransaction();
+                }
                 break;
             case LOCATION:
                 rowsUpdated = db.update(WeatherContract.LocationEntry.TABLE_NAME, values, selection,
                         selectionArgs);
+                changes.add(uri);
                 break;
             default:
                 throw new UnsupportedOperationException("Unknown uri: " + uri);
         }
         if (rowsUpdated != 0) {
-            getContext().getContentResolver().notifyChange(uri, null);
+            notifyChanges(changes);
         }
         return rowsUpdated;
     }
@@ -319,29 +624,495 @@ public class WeatherProvider extends ContentProvider {
     public int bulkInsert(Uri uri, ContentValues[] values) {
         final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
         final int match = sUriMatcher.match(uri);
+        final WeatherChanges changes = startChanges(db);
         switch (match) {
-            case WEATHER:
+            case WEATHER: {
                 db.beginTransaction();
-                int returnCount = 0;
+                int returnCount;
                 try {
-                    for (ContentValues value : values) {
-                        normalizeDate(value);
-                        long _id = db.insert(WeatherContract.WeatherEntry.TABLE_NAME, null, value);
-                        if (_id != -1) {
-                            returnCount++;
-                        }
-                    }
+                    returnCount = insertWeather(db, values, changes);
+                    db.setTransactionSuccessful();
+                } finally {
+                    db.endTransaction();
+                }
+                notifyChanges(changes);
+                return returnCount;
+            }
+            case HOURLY: {
+                db.beginTransaction();
+                int returnCount;
+                try {
+                    returnCount = insertHourly(db, values, -1, changes);
                     db.setTransactionSuccessful();
                 } finally {
                     db.endTransaction();
                 }
-                getContext().getContentResolver().notifyChange(uri, null);
+                notifyChanges(changes);
                 return returnCount;
+            }
             default:
                 return super.bulkInsert(uri, values);
         }
     }
 
+    /**
+     * Applies the operations in one transaction, so they commit or roll back together and
+     * readers never see the state between two of them. The days they change are notified once,
+     * after the commit, and each location's summary is brought up to date once rather than
+     * after every row.
+     */
+    @Override
+    public ContentProviderResult[] applyBatch(ArrayList<ContentProviderOperation> operations)
+            throws OperationApplicationException {
+        final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
+        Batch batch = new Batch(new WeatherChanges(db));
+        ContentProviderResult[] results;
+        db.beginTransaction();
+        mBatch.set(batch);
+        try {
+            results = super.applyBatch(operations);
+            for (Map.Entry<Long, Long> firstDate : batch.firstDates.entrySet()) {
+                WeatherSummary.update(db, firstDate.getKey(), firstDate.getValue());
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            mBatch.remove();
+            db.endTransaction();
+        }
+        notifyChanges(batch.changes);
+        return results;
+    }
+
+    // Writes inside a batch add their days to the batch's changes
+    private WeatherChanges startChanges(SQLiteDatabase db) {
+        Batch batch = mBatch.get();
+        return batch == null ? new WeatherChanges(db) : batch.changes;
+    }
+
+    /**
+     * Writes the archive changes of a write and notifies the observers of the days it changed,
+     * once it has committed. The changes of a batch are left for the batch to notify.
+     */
+    private void notifyChanges(WeatherChanges changes) {
+        Batch batch = mBatch.get();
+        if (batch == null || batch.changes != changes) {
+            changes.writeArchive(mArchive);
+            changes.notifyObservers(getContext().getContentResolver());
+        }
+    }
+
+    // Brings a location's summary up to date from a date, or leaves it to the end of the batch
+    private void updateSummary(SQLiteDatabase db, long locationId, long date) {
+        Batch batch = mBatch.get();
+        if (batch == null) {
+            WeatherSummary.update(db, locationId, date);
+            return;
+        }
+        Long firstDate = batch.firstDates.get(locationId);
+        if (firstDate == null || date < firstDate) {
+            batch.firstDates.put(locationId, date);
+        }
+    }
+
+    // Returns the first date of the weather rows a selection matches, for each of their locations
+    private static Map<Long, Long> getFirstDates(SQLiteDatabase db, String selection,
+                                                 String[] selectionArgs) {
+        Map<Long, Long> firstDates = new HashMap<>();
+        Cursor rows = db.query(WeatherContract.WeatherEntry.TABLE_NAME,
+                new String[]{WeatherContract.WeatherEntry.COLUMN_LOC_KEY,
+                        "MIN(" + WeatherContract.WeatherEntry.COLUMN_DATE + ")"},
+                selection, selectionArgs, WeatherContract.WeatherEntry.COLUMN_LOC_KEY, null, null);
+        while (rows.moveToNext()) {
+            firstDates.put(rows.getLong(0), rows.getLong(1));
+        }
+        rows.close();
+        return firstDates;
+    }
+
+    /**
+     * Inserts weather rows and brings the summary of their locations up to date. Must run inside
+     * the caller's transaction.
+     *
+     * @return the number of rows inserted
+     */
+    private int insertWeather(SQLiteDatabase db, ContentValues[] values,
+                              WeatherChanges changes) {
+        int returnCount = 0;
+        // First date written for each location, to bring its summary up to date from
+        Map<Long, Long> firstDates = new HashMap<>();
+        for (ContentValues value : values) {
+            normalizeDate(value);
+            long _id = db.insert(WeatherContract.WeatherEntry.TABLE_NAME, null, value);
+            if (_id != -1) {
+                returnCount++;
+                Long locationId = value.getAsLong(WeatherContract.WeatherEntry.COLUMN_LOC_KEY);
+                Long date = value.getAsLong(WeatherContract.WeatherEntry.COLUMN_DATE);
+                changes.addWeather(locationId, date);
+                Long firstDate = firstDates.get(locationId);
+                if (firstDate == null || date < firstDate) {
+                    firstDates.put(locationId, date);
+                }
+            }
+        }
+        for (Map.Entry<Long, Long> firstDate : firstDates.entrySet()) {
+            updateSummary(db, firstDate.getKey(), firstDate.getValue());
+        }
+        return returnCount;
+    }
+
+    /**
+     * Inserts packed hourly rows, replacing any stored for the same day. Must run inside the
+     * caller's transaction.
+     *
+     * @param locationId location to store the rows for, or -1 if they carry their own
+     * @return the number of rows inserted
+     */
+    private int insertHourly(SQLiteDatabase db, ContentValues[] values, long locationId,
+                             WeatherChanges changes) {
+        int returnCount = 0;
+        for (ContentValues value : values) {
+            if (locationId != -1) {
+                value.put(WeatherContract.HourlyEntry.COLUMN_LOC_KEY, locationId);
+            }
+            normalizeDate(value);
+            if (db.insert(WeatherContract.HourlyEntry.TABLE_NAME, null, value) != -1) {
+                returnCount++;
+                changes.addHourly(value.getAsLong(WeatherContract.HourlyEntry.COLUMN_LOC_KEY),
+                        value.getAsLong(WeatherContract.HourlyEntry.COLUMN_DATE));
+            }
+        }
+        return returnCount;
+    }
+
+    @Override
+    public Bundle call(String method, String arg, Bundle extras) {
+        if (WeatherContract.METHOD_APPLY_PATCH.equals(method)) {
+            return applyPatch(arg, extras.getString(WeatherContract.EXTRA_PATCH),
+                    getContentValuesArray(extras, WeatherContract.EXTRA_HOURLY),
+                    (ContentValues) extras.getParcelable(WeatherContract.EXTRA_VALUES));
+        } else if (WeatherContract.METHOD_STORE_FORECAST.equals(method)) {
+            return storeForecast(arg, extras);
+        } else if (WeatherContract.METHOD_QUERY_BATCH.equals(method)) {
+            return queryBatch(extras);
+        } else if (WeatherContract.METHOD_UPSERT_LOCATION.equals(method)) {
+            return upsertLocation(arg,
+                    (ContentValues) extras.getParcelable(WeatherContract.EXTRA_VALUES));
+        }
+        return super.call(method, arg, extras);
+    }
+
+    // A Bundle hands parcelable arrays back as Parcelable[], whatever they were put in as
+    private static ContentValues[] getContentValuesArray(Bundle extras, String key) {
+        Parcelable[] parcelables = extras.getParcelableArray(key);
+        if (parcelables == null) {
+            return new ContentValues[0];
+        }
+        ContentValues[] values = new ContentValues[parcelables.length];
+        System.arraycopy(parcelables, 0, values, 0, parcelables.length);
+        return values;
+    }
+
+    /**
+     * Stores a forecast for a location in one transaction: the location, inserted or refreshed,
+     * its days and hours, the move of the days before them to the archive and the forecast
+     * version. Readers see either the old forecast or the new one, never a mix.
+     *
+     * @param extras the days, as arrays put with {@link ForecastRows}, and the location values,
+     *               hours and version
+     */
+    private Bundle storeForecast(String locationSetting, Bundle extras) {
+        ContentValues locationValues =
+                (ContentValues) extras.getParcelable(WeatherContract.EXTRA_VALUES);
+        ContentValues[] hours = getContentValuesArray(extras, WeatherContract.EXTRA_HOURLY);
+        long[] dates = extras.getLongArray(WeatherContract.EXTRA_DATES);
+        long version = extras.getLong(WeatherContract.EXTRA_FORECAST_VERSION);
+
+        final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
+        final WeatherChanges changes = startChanges(db);
+        long locationId;
+        int inserted;
+        db.beginTransaction();
+        try {
+            locationId = upsertLocation(db, locationSetting, locationValues, changes);
+            if (dates.length > 0) {
+                // move old data out of the weather table so it doesn't build up an endless
+                // history there
+                archiveBefore(db, locationId, locationSetting,
+                        WeatherContract.normalizeDate(dates[0]), changes);
+            }
+            inserted = ForecastRows.insert(db, locationId, extras, changes);
+            if (inserted > 0) {
+                // The days are oldest first
+                updateSummary(db, locationId, WeatherContract.normalizeDate(dates[0]));
+            }
+            insertHourly(db, hours, locationId, changes);
+            if (version > 0) {
+                // Versions only move forward, so a push that was overtaken by a newer one can't
+                // roll the stored version back
+                ContentValues values = new ContentValues();
+                values.put(WeatherContract.LocationEntry.COLUMN_FORECAST_VERSION, version);
+                db.update(WeatherContract.LocationEntry.TABLE_NAME, values,
+                        WeatherContract.LocationEntry._ID + " = ? AND "
+                                + WeatherContract.LocationEntry.COLUMN_FORECAST_VERSION + " < ?",
+                        new String[]{Long.toString(locationId), Long.toString(version)});
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        notifyChanges(changes);
+
+        Bundle result = new Bundle();
+        result.putInt(WeatherContract.RESULT_COUNT, inserted);
+        result.putLong(WeatherContract.RESULT_ID, locationId);
+        return result;
+    }
+
+    /**
+     * Returns the rows of a batch query as ContentValues, keeping each column's type.
+     */
+    @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+    private Bundle queryBatch(Bundle extras) {
+        Cursor cursor = getWeatherBatch(
+                extras.getStringArray(WeatherContract.EXTRA_PROJECTION),
+                extras.getStringArray(WeatherContract.EXTRA_LOCATIONS),
+                extras.getLongArray(WeatherContract.EXTRA_START_DATES),
+                extras.getLongArray(WeatherContract.EXTRA_END_DATES),
+                WeatherContract.WeatherEntry.COLUMN_DATE + " ASC");
+        ContentValues[] rows = new ContentValues[cursor.getCount()];
+        String[] columnNames = cursor.getColumnNames();
+        for (int i = 0; cursor.moveToNext(); i++) {
+            ContentValues row = new ContentValues(columnNames.length);
+            for (int column = 0; column < columnNames.length; column++) {
+                switch (cursor.getType(column)) {
+                    case Cursor.FIELD_TYPE_INTEGER:
+                        row.put(columnNames[column], cursor.getLong(column));
+                        break;
+                    case Cursor.FIELD_TYPE_FLOAT:
+                        row.put(columnNames[column], cursor.getDouble(column));
+                        break;
+                    case Cursor.FIELD_TYPE_BLOB:
+                        row.put(columnNames[column], cursor.getBlob(column));
+                        break;
+                    case Cursor.FIELD_TYPE_NULL:
+                        row.putNull(columnNames[column]);
+                        break;
+                    default:
+                        row.put(columnNames[column], cursor.getString(column));
+                }
+            }
+            rows[i] = row;
+        }
+        cursor.close();
+
+        Bundle result = new Bundle();
+        result.putParcelableArray(WeatherContract.RESULT_ROWS, rows);
+        return result;
+    }
+
+    /**
+     * Inserts the location, or updates the stored one with the same location setting, in one
+     * transaction. Unlike a query followed by an insert, two concurrent callers can't both
+     * insert it.
+     */
+    private Bundle upsertLocation(String locationSetting, ContentValues values) {
+        final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
+        final WeatherChanges changes = startChanges(db);
+        long locationId;
+        db.beginTransaction();
+        try {
+            locationId = upsertLocation(db, locationSetting, values, changes);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        notifyChanges(changes);
+
+        Bundle result = new Bundle();
+        result.putLong(WeatherContract.RESULT_ID, locationId);
+        return result;
+    }
+
+    /**
+     * Inserts the location, or updates the stored one with the same location setting. Must run
+     * inside the caller's transaction, which holds the write lock from the lookup to the insert.
+     *
+     * @param values values to store for the location, or null to only look it up or insert it
+     * @return the location's row ID
+     * @throws SQLException if the location can't be inserted
+     */
+    private long upsertLocation(SQLiteDatabase db, String locationSetting, ContentValues values,
+                                WeatherChanges changes) {
+        ContentValues locationValues = values == null
+                ? new ContentValues() : new ContentValues(values);
+        locationValues.put(WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING, locationSetting);
+
+        long locationId = getLocationId(db, locationSetting);
+        if (locationId == -1) {
+            locationId = db.insertOrThrow(WeatherContract.LocationEntry.TABLE_NAME, null,
+                    locationValues);
+        } else {
+            db.update(WeatherContract.LocationEntry.TABLE_NAME, locationValues,
+                    sLocationSettingSelection, new String[]{locationSetting});
+        }
+        changes.add(WeatherContract.LocationEntry.CONTENT_URI);
+        return locationId;
+    }
+
+    /**
+     * Applies a {@link ForecastPatch} to a location in one transaction, provided the location
+     * still holds the version the patch was computed against, and records the new version.
+     * The hours and location values sent along are stored in the same transaction.
+     *
+     * @param locationValues values to update the location with, or null
+     */
+    private Bundle applyPatch(String locationSetting, String patchJson, ContentValues[] hours,
+                              ContentValues locationValues) {
+        Bundle result = new Bundle();
+        ForecastPatch patch;
+        try {
+            patch = ForecastPatch.fromJson(patchJson);
+        } catch (JSONException e) {
+            Log.e(LOG_TAG, "Malformed patch for " + locationSetting, e);
+            result.putBoolean(WeatherContract.RESULT_APPLIED, false);
+            return result;
+        }
+
+        final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
+        final WeatherChanges changes = startChanges(db);
+        boolean applied = false;
+        db.beginTransaction();
+        try {
+            Cursor location = db.query(WeatherContract.LocationEntry.TABLE_NAME,
+                    new String[]{WeatherContract.LocationEntry._ID,
+                            WeatherContract.LocationEntry.COLUMN_FORECAST_VERSION},
+                    sLocationSettingSelection,
+                    new String[]{locationSetting},
+                    null, null, null);
+            long locationId = -1;
+            long storedVersion = 0;
+            if (location.moveToFirst()) {
+                locationId = location.getLong(0);
+                storedVersion = location.getLong(1);
+            }
+            location.close();
+
+            if (locationId != -1 && storedVersion == patch.baseVersion) {
+                // The patch drops the days before its window; keep them in the archive
+                archiveBefore(db, locationId, locationSetting, patch.startDate, changes);
+                patch.applyTo(db, locationId, changes);
+                updateSummary(db, locationId, patch.startDate);
+                insertHourly(db, hours, locationId, changes);
+                if (patch.version != storedVersion || locationValues != null) {
+                    ContentValues values = locationValues == null
+                            ? new ContentValues() : new ContentValues(locationValues);
+                    values.put(WeatherContract.LocationEntry.COLUMN_FORECAST_VERSION, patch.version);
+                    db.update(WeatherContract.LocationEntry.TABLE_NAME, values,
+                            WeatherContract.LocationEntry._ID + " = ?",
+                            new String[]{Long.toString(locationId)});
+                }
+                db.setTransactionSuccessful();
+                applied = true;
+            } else {
+                Log.d(LOG_TAG, "Patch for version " + patch.baseVersion + " of " + locationSetting
+                        + " doesn't apply");
+            }
+        } catch (SQLException e) {
+            Log.e(LOG_TAG, "Error applying patch for " + locationSetting, e);
+        } finally {
+            db.endTransaction();
+        }
+        if (applied) {
+            notifyChanges(changes);
+        }
+        result.putBoolean(WeatherContract.RESULT_APPLIED, applied);
+        return result;
+    }
+
+    private Cursor getWeatherHistory(Uri uri, String[] projection) {
+        String locationSetting = WeatherContract.WeatherEntry.getLocationSettingFromUri(uri);
+        long startDate = Long.parseLong(
+                uri.getQueryParameter(WeatherContract.WeatherEntry.PARAM_START_DATE));
+        long endDate = Long.parseLong(
+                uri.getQueryParameter(WeatherContract.WeatherEntry.PARAM_END_DATE));
+        try {
+            return mArchive.query(locationSetting, projection, startDate, endDate);
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Error reading the archive of " + locationSetting, e);
+            return new MatrixCursor(projection == null ? WeatherArchive.COLUMNS : projection, 0);
+        }
+    }
+
+    private Cursor getRollingMeans(Uri uri, String[] projection) {
+        String locationSetting = WeatherContract.WeatherEntry.getLocationSettingFromUri(uri);
+        long startDate = Long.parseLong(
+                uri.getQueryParameter(WeatherContract.WeatherEntry.PARAM_START_DATE));
+        long endDate = Long.parseLong(
+                uri.getQueryParameter(WeatherContract.WeatherEntry.PARAM_END_DATE));
+        int windowDays = Integer.parseInt(
+                uri.getQueryParameter(WeatherContract.SummaryEntry.PARAM_WINDOW));
+
+        SQLiteDatabase db = mOpenHelper.getReadableDatabase();
+        // An unknown location has no rows, which the join returns as an empty cursor
+        return WeatherSummary.queryRollingMeans(db, projection,
+                getLocationId(db, locationSetting), startDate, endDate, windowDays);
+    }
+
+    // Returns the id of a location, or -1 if it isn't stored
+    private long getLocationId(SQLiteDatabase db, String locationSetting) {
+        Cursor location = db.query(WeatherContract.LocationEntry.TABLE_NAME,
+                new String[]{WeatherContract.LocationEntry._ID},
+                sLocationSettingSelection, new String[]{locationSetting}, null, null, null);
+        long locationId = location.moveToFirst() ? location.getLong(0) : -1;
+        location.close();
+        return locationId;
+    }
+
+    /**
+     * Moves a location's days before a date to its archive, deleting them from the weather
+     * table. Must run inside the caller's transaction. The days are only written to the archive
+     * once the transaction commits, when the changes are notified.
+     *
+     * @return the number of days deleted
+     */
+    private int archiveBefore(SQLiteDatabase db, long locationId, String locationSetting,
+                              long date, WeatherChanges changes) {
+        String[] selectionArgs = new String[]{Long.toString(locationId), Long.toString(date)};
+        final String selection = WeatherContract.WeatherEntry.COLUMN_LOC_KEY + " = ? AND "
+                + WeatherContract.WeatherEntry.COLUMN_DATE + " < ?";
+
+        // Hours aren't archived, only the days they add up to
+        final String hourlySelection = WeatherContract.HourlyEntry.COLUMN_LOC_KEY + " = ? AND "
+                + WeatherContract.HourlyEntry.COLUMN_DATE + " < ?";
+        changes.addHourlyRows(hourlySelection, selectionArgs);
+        db.delete(WeatherContract.HourlyEntry.TABLE_NAME, hourlySelection, selectionArgs);
+
+        Cursor expired = db.query(WeatherContract.WeatherEntry.TABLE_NAME, ForecastPatch.COLUMNS,
+                selection, selectionArgs, null, null, null);
+        ContentValues[] rows = ForecastPatch.readRows(expired);
+        expired.close();
+        if (rows.length == 0) {
+            return 0;
+        }
+        for (ContentValues row : rows) {
+            changes.addWeather(locationSetting,
+                    row.getAsLong(WeatherContract.WeatherEntry.COLUMN_DATE));
+        }
+        changes.addArchived(locationSetting, rows);
+        return db.delete(WeatherContract.WeatherEntry.TABLE_NAME, selection, selectionArgs);
+    }
+
+    // What the operations of a batch leave for it to do once they have all run
+    private static final class Batch {
+        final WeatherChanges changes;
+        // First date written for each location, to bring its summary up to date from
+        final Map<Long, Long> firstDates = new HashMap<>();
+
+        Batch(WeatherChanges changes) {
+            this.changes = changes;
+        }
+    }
+
     // You do not need to call this method. This is a method specifically to assist the testing
     // framework in running smoothly. You can read more at:
     // http://developer.android.com/reference/android/content/ContentProvider.html#shutdown()
@@ -0,0 +1,254 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.text.TextUtils;
+
+import com.example.android.sunshine.app.data.WeatherContract.SummaryEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+/**
+ * Keeps the summary table in step with the weather table, and reads rolling means, extremes and
+ * condition counts from it.
+ *
+ * Every summary row holds the running totals of its location's days up to it, so the sums, and
+ * so the means and condition counts, of any range of days come from two rows however long the
+ * range is. Extremes can't be taken back out of a total, so they are read from the range's own
+ * rows through the (location, day) index. Forecasts only ever change their last couple of weeks,
+ * which bounds how many totals a write has to carry forward.
+ */
+final class WeatherSummary {
+
+    // The day's values, read from the weather table
+    private static final String[] WEATHER_COLUMNS = {
+            WeatherEntry.COLUMN_DATE,
+            WeatherEntry.COLUMN_MIN_TEMP,
+            WeatherEntry.COLUMN_MAX_TEMP,
+            WeatherEntry.COLUMN_HUMIDITY,
+            WeatherEntry.COLUMN_PRESSURE,
+            WeatherEntry.COLUMN_WIND_SPEED,
+            WeatherEntry.COLUMN_WEATHER_ID
+    };
+    // these indices must match the projection
+    private static final int COL_WEATHER_DATE = 0;
+    private static final int COL_WEATHER_WEATHER_ID = 6;
+
+    // The day's values that are summed, in the order of WEATHER_COLUMNS from index 1
+    private static final String[] VALUE_COLUMNS = {
+            SummaryEntry.COLUMN_MIN_TEMP,
+            SummaryEntry.COLUMN_MAX_TEMP,
+            SummaryEntry.COLUMN_HUMIDITY,
+            SummaryEntry.COLUMN_PRESSURE,
+            SummaryEntry.COLUMN_WIND_SPEED
+    };
+    // Their running totals, in the same order
+    private static final String[] TOTAL_VALUE_COLUMNS = {
+            SummaryEntry.COLUMN_TOTAL_MIN_TEMP,
+            SummaryEntry.COLUMN_TOTAL_MAX_TEMP,
+            SummaryEntry.COLUMN_TOTAL_HUMIDITY,
+            SummaryEntry.COLUMN_TOTAL_PRESSURE,
+            SummaryEntry.COLUMN_TOTAL_WIND_SPEED
+    };
+    // Every running total: days, then values, then condition groups
+    private static final String[] TOTAL_COLUMNS;
+    private static final int INDEX_TOTAL_DAYS = 0;
+    private static final int INDEX_FIRST_TOTAL_VALUE = 1;
+    private static final int INDEX_FIRST_TOTAL_CONDITION =
+            INDEX_FIRST_TOTAL_VALUE + TOTAL_VALUE_COLUMNS.length;
+
+    static {
+        TOTAL_COLUMNS = new String[INDEX_FIRST_TOTAL_CONDITION + SummaryEntry.CONDITION_GROUPS];
+        TOTAL_COLUMNS[INDEX_TOTAL_DAYS] = SummaryEntry.COLUMN_TOTAL_DAYS;
+        System.arraycopy(TOTAL_VALUE_COLUMNS, 0, TOTAL_COLUMNS, INDEX_FIRST_TOTAL_VALUE,
+                TOTAL_VALUE_COLUMNS.length);
+        for (int group = 0; group < SummaryEntry.CONDITION_GROUPS; group++) {
+            TOTAL_COLUMNS[INDEX_FIRST_TOTAL_CONDITION + group] =
+                    SummaryEntry.getTotalConditionColumn(group);
+        }
+    }
+
+    //location_id = ? AND day < ?
+    private static final String sDaysBeforeSelection =
+            SummaryEntry.COLUMN_LOC_KEY + " = ? AND " + SummaryEntry.COLUMN_DAY + " < ? ";
+
+    private WeatherSummary() {
+    }
+
+    /**
+     * Copies a location's days from a date on from the weather table, and carries the running
+     * totals forward from there. Must run inside the caller's transaction, after the weather
+     * rows were written.
+     */
+    static void update(SQLiteDatabase db, long locationId, long fromDate) {
+        String locationArg = Long.toString(locationId);
+        fromDate = WeatherContract.normalizeDate(fromDate);
+
+        Cursor days = db.query(WeatherEntry.TABLE_NAME, WEATHER_COLUMNS,
+                WeatherEntry.COLUMN_LOC_KEY + " = ? AND " + WeatherEntry.COLUMN_DATE + " >= ?",
+                new String[]{locationArg, Long.toString(fromDate)},
+                null, null, null);
+        ContentValues values = new ContentValues();
+        while (days.moveToNext()) {
+            long date = days.getLong(COL_WEATHER_DATE);
+            values.clear();
+            values.put(SummaryEntry.COLUMN_LOC_KEY, locationId);
+            values.put(SummaryEntry.COLUMN_DATE, date);
+            values.put(SummaryEntry.COLUMN_DAY, WeatherContract.getJulianDay(date));
+            for (int i = 0; i < VALUE_COLUMNS.length; i++) {
+                values.put(VALUE_COLUMNS[i], days.getDouble(i + 1));
+            }
+            values.put(SummaryEntry.COLUMN_CONDITION,
+                    SummaryEntry.getConditionGroup(days.getInt(COL_WEATHER_WEATHER_ID)));
+            db.insertOrThrow(SummaryEntry.TABLE_NAME, null, values);
+        }
+        days.close();
+
+        // Start from the totals of the last day before the ones just written
+        int fromDay = WeatherContract.getJulianDay(fromDate);
+        double[] totals = new double[TOTAL_COLUMNS.length];
+        Cursor previous = db.query(SummaryEntry.TABLE_NAME, TOTAL_COLUMNS,
+                sDaysBeforeSelection, new String[]{locationArg, Integer.toString(fromDay)},
+                null, null, SummaryEntry.COLUMN_DAY + " DESC", "1");
+        if (previous.moveToFirst()) {
+            for (int i = 0; i < totals.length; i++) {
+                totals[i] = previous.getDouble(i);
+            }
+        }
+        previous.close();
+
+        String[] dayColumns = new String[VALUE_COLUMNS.length + 2];
+        dayColumns[0] = SummaryEntry._ID;
+        System.arraycopy(VALUE_COLUMNS, 0, dayColumns, 1, VALUE_COLUMNS.length);
+        dayColumns[dayColumns.length - 1] = SummaryEntry.COLUMN_CONDITION;
+        Cursor following = db.query(SummaryEntry.TABLE_NAME, dayColumns,
+                SummaryEntry.COLUMN_LOC_KEY + " = ? AND " + SummaryEntry.COLUMN_DAY + " >= ?",
+                new String[]{locationArg, Integer.toString(fromDay)},
+                null, null, SummaryEntry.COLUMN_DAY + " ASC");
+        String[] idArg = new String[1];
+        while (following.moveToNext()) {
+            totals[INDEX_TOTAL_DAYS]++;
+            for (int i = 0; i < VALUE_COLUMNS.length; i++) {
+                totals[INDEX_FIRST_TOTAL_VALUE + i] += following.getDouble(i + 1);
+            }
+            totals[INDEX_FIRST_TOTAL_CONDITION + following.getInt(dayColumns.length - 1)]++;
+
+            values.clear();
+            values.put(TOTAL_COLUMNS[INDEX_TOTAL_DAYS], (long) totals[INDEX_TOTAL_DAYS]);
+            for (int i = INDEX_FIRST_TOTAL_VALUE; i < INDEX_FIRST_TOTAL_CONDITION; i++) {
+                values.put(TOTAL_COLUMNS[i], totals[i]);
+            }
+            for (int i = INDEX_FIRST_TOTAL_CONDITION; i < TOTAL_COLUMNS.length; i++) {
+                values.put(TOTAL_COLUMNS[i], (long) totals[i]);
+            }
+            idArg[0] = Long.toString(following.getLong(0));
+            db.update(SummaryEntry.TABLE_NAME, values, SummaryEntry._ID + " = ?", idArg);
+        }
+        following.close();
+    }
+
+    /**
+     * Drops the summaries of locations that were deleted.
+     */
+    static void deleteOrphans(SQLiteDatabase db) {
+        db.delete(SummaryEntry.TABLE_NAME, SummaryEntry.COLUMN_LOC_KEY + " NOT IN (SELECT "
+                + WeatherContract.LocationEntry._ID + " FROM "
+                + WeatherContract.LocationEntry.TABLE_NAME + ")", null);
+    }
+
+    /**
+     * Drops the summaries of the weather rows a selection matches, before they move to another
+     * location or day. Must run inside the caller's transaction.
+     */
+    static void deleteWeatherRows(SQLiteDatabase db, String selection, String[] selectionArgs) {
+        db.delete(SummaryEntry.TABLE_NAME, "EXISTS (SELECT 1 FROM " + WeatherEntry.TABLE_NAME
+                + " WHERE " + WeatherEntry.TABLE_NAME + "." + WeatherEntry.COLUMN_LOC_KEY + " = "
+                + SummaryEntry.TABLE_NAME + "." + SummaryEntry.COLUMN_LOC_KEY + " AND "
+                + WeatherEntry.TABLE_NAME + "." + WeatherEntry.COLUMN_DATE + " = "
+                + SummaryEntry.TABLE_NAME + "." + SummaryEntry.COLUMN_DATE + " AND ("
+                + selection + "))", selectionArgs);
+    }
+
+    /**
+     * Reads, for each of a location's days between two dates, the means, extremes and condition
+     * counts over the window of days ending with it. Means and counts are the difference of the
+     * day's running totals and those of the last day before the window, found through the
+     * (location, day) index.
+     *
+     * @param projection the columns to return, or null for all of them
+     */
+    static Cursor queryRollingMeans(SQLiteDatabase db, String[] projection, long locationId,
+                                    long startDate, long endDate, int windowDays) {
+        final String days = "(s." + SummaryEntry.COLUMN_TOTAL_DAYS
+                + " - IFNULL(p." + SummaryEntry.COLUMN_TOTAL_DAYS + ", 0))";
+        StringBuilder sql = new StringBuilder("SELECT s.")
+                .append(SummaryEntry.COLUMN_DATE).append(", ")
+                .append(days).append(" AS ").append(SummaryEntry.COLUMN_MEAN_DAYS);
+        for (int i = 0; i < VALUE_COLUMNS.length; i++) {
+            sql.append(", (s.").append(TOTAL_VALUE_COLUMNS[i])
+                    .append(" - IFNULL(p.").append(TOTAL_VALUE_COLUMNS[i]).append(", 0)) / ")
+                    .append(days).append(" AS ").append(VALUE_COLUMNS[i]);
+        }
+        for (int group = 0; group < SummaryEntry.CONDITION_GROUPS; group++) {
+            String total = SummaryEntry.getTotalConditionColumn(group);
+            sql.append(", s.").append(total).append(" - IFNULL(p.").append(total)
+                    .append(", 0) AS ").append(SummaryEntry.getConditionDaysColumn(group));
+        }
+        appendWindowExtreme(sql, "MIN", SummaryEntry.COLUMN_MIN_TEMP,
+                SummaryEntry.COLUMN_LOWEST_TEMP);
+        appendWindowExtreme(sql, "MAX", SummaryEntry.COLUMN_MAX_TEMP,
+                SummaryEntry.COLUMN_HIGHEST_TEMP);
+        sql.append(" FROM ").append(SummaryEntry.TABLE_NAME).append(" s LEFT JOIN ")
+                .append(SummaryEntry.TABLE_NAME).append(" p ON p.").append(SummaryEntry._ID)
+                .append(" = (SELECT ").append(SummaryEntry._ID)
+                .append(" FROM ").append(SummaryEntry.TABLE_NAME)
+                .append(" WHERE ").append(SummaryEntry.COLUMN_LOC_KEY).append(" = s.")
+                .append(SummaryEntry.COLUMN_LOC_KEY)
+                .append(" AND ").append(SummaryEntry.COLUMN_DAY).append(" <= s.")
+                .append(SummaryEntry.COLUMN_DAY).append(" - ?")
+                .append(" ORDER BY ").append(SummaryEntry.COLUMN_DAY).append(" DESC LIMIT 1)")
+                .append(" WHERE s.").append(SummaryEntry.COLUMN_LOC_KEY).append(" = ?")
+                .append(" AND s.").append(SummaryEntry.COLUMN_DAY).append(" BETWEEN ? AND ?")
+                .append(" ORDER BY s.").append(SummaryEntry.COLUMN_DAY).append(" ASC");
+        if (projection != null) {
+            sql.insert(0, "SELECT " + TextUtils.join(", ", projection) + " FROM (").append(")");
+        }
+
+        String windowArg = Integer.toString(windowDays);
+        return db.rawQuery(sql.toString(), new String[]{
+                windowArg,
+                windowArg,
+                windowArg,
+                Long.toString(locationId),
+                Integer.toString(WeatherContract.getJulianDay(startDate)),
+                Integer.toString(WeatherContract.getJulianDay(endDate))});
+    }
+
+    // Appends the extreme of a column over the days of s's window, whose length is the next arg
+    private static void appendWindowExtreme(StringBuilder sql, String function, String column,
+                                            String alias) {
+        sql.append(", (SELECT ").append(function).append("(w.").append(column)
+                .append(") FROM ").append(SummaryEntry.TABLE_NAME).append(" w")
+                .append(" WHERE w.").append(SummaryEntry.COLUMN_LOC_KEY).append(" = s.")
+                .append(SummaryEntry.COLUMN_LOC_KEY)
+                .append(" AND w.").append(SummaryEntry.COLUMN_DAY).append(" > s.")
+                .append(SummaryEntry.COLUMN_DAY).append(" - ?")
+                .append(" AND w.").append(SummaryEntry.COLUMN_DAY).append(" <= s.")
+                .append(SummaryEntry.COLUMN_DAY).append(") AS ").append(alias);
+    }
+}
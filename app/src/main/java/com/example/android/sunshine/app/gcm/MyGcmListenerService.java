@@ -20,6 +20,7 @@ import android.app.NotificationManager;
 import android.app.PendingIntent;
 import android.content.Context;
 import android.content.Intent;
+import android.database.Cursor;
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
 import android.os.Bundle;
@@ -29,6 +30,10 @@ import android.widget.Toast;
 
 import com.example.android.sunshine.app.MainActivity;
 import com.example.android.sunshine.app.R;
+import com.example.android.sunshine.app.Utility;
+import com.example.android.sunshine.app.data.ForecastPatch;
+import com.example.android.sunshine.app.data.WeatherContract;
+import com.example.android.sunshine.app.sync.SunshineSyncAdapter;
 import com.google.android.gms.gcm.GcmListenerService;
 
 import org.json.JSONException;
@@ -41,6 +46,14 @@ public class MyGcmListenerService extends GcmListenerService {
     private static final String EXTRA_DATA = "data";
     private static final String EXTRA_WEATHER = "weather";
     private static final String EXTRA_LOCATION = "location";
+    private static final String EXTRA_VERSION = "version";
+    private static final String EXTRA_PATCH = "patch";
+
+    private static final String[] LOCATION_COLUMNS = {
+            WeatherContract.LocationEntry.COLUMN_FORECAST_VERSION
+    };
+    // these indices must match the projection
+    private static final int INDEX_FORECAST_VERSION = 0;
 
     public static final int NOTIFICATION_ID = 1;
 
@@ -62,14 +75,21 @@ public class MyGcmListenerService extends GcmListenerService {
             }
             // Not a bad idea to check that the message is coming from your server.
             if ((senderId).equals(from)) {
-                // Process message and then post a notification of the received message.
+                // Process message: bring the stored forecast up to date if it announces a new
+                // version, and post a notification if it carries an alert.
                 try {
                     JSONObject jsonObject = new JSONObject(data.getString(EXTRA_DATA));
-                    String weather = jsonObject.getString(EXTRA_WEATHER);
                     String location = jsonObject.getString(EXTRA_LOCATION);
-                    String alert =
-                            String.format(getString(R.string.gcm_weather_alert), weather, location);
-                    sendNotification(alert);
+                    if (jsonObject.has(EXTRA_VERSION)) {
+                        handleForecastUpdate(location, jsonObject.getLong(EXTRA_VERSION),
+                                jsonObject.optJSONObject(EXTRA_PATCH));
+                    }
+                    if (jsonObject.has(EXTRA_WEATHER)) {
+                        String weather = jsonObject.getString(EXTRA_WEATHER);
+                        String alert = String.format(getString(R.string.gcm_weather_alert),
+                                weather, location);
+                        sendNotification(alert);
+                    }
                 } catch (JSONException e) {
                     // JSON parsing failed, so we just let this message go, since GCM is not one
                     // of our critical features.
@@ -79,6 +99,61 @@ public class MyGcmListenerService extends GcmListenerService {
         }
     }
 
+    /**
+     * Applies a pushed forecast update. Messages for versions we already have are dropped. An
+     * update carrying a {@link ForecastPatch} to the announced version is applied straight to the
+     * provider, and everything a sync refreshes is refreshed; anything else, or a patch that no
+     * longer applies, requests an expedited sync.
+     *
+     * @param locationSetting The location the update is for
+     * @param version         The forecast version the update brings the location to
+     * @param patchJson       The patch, or null if the message only announces a version
+     */
+    private void handleForecastUpdate(String locationSetting, long version, JSONObject patchJson) {
+        // Only the preferred location is displayed, and the sync only fetches that one. Other
+        // locations get a fresh forecast when the user switches to them anyway.
+        if (!locationSetting.equals(Utility.getPreferredLocation(this))) {
+            Log.d(TAG, "Ignoring update for " + locationSetting);
+            return;
+        }
+
+        Cursor cursor = getContentResolver().query(WeatherContract.LocationEntry.CONTENT_URI,
+                LOCATION_COLUMNS,
+                WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING + " = ?",
+                new String[]{locationSetting},
+                null);
+        if (cursor == null) {
+            return;
+        }
+        long storedVersion = cursor.moveToFirst() ? cursor.getLong(INDEX_FORECAST_VERSION) : 0;
+        cursor.close();
+
+        if (version <= storedVersion) {
+            Log.d(TAG, "Dropping forecast version " + version + ", already have " + storedVersion);
+            return;
+        }
+
+        ForecastPatch patch = null;
+        if (patchJson != null) {
+            try {
+                patch = ForecastPatch.fromJson(patchJson);
+            } catch (JSONException e) {
+                Log.e(TAG, "Malformed forecast patch, falling back to a sync", e);
+            }
+        }
+        if (patch != null && patch.version != version) {
+            Log.e(TAG, "Patch to version " + patch.version + " announced as " + version
+                    + ", falling back to a sync");
+            patch = null;
+        }
+        if (patch == null || !patch.applyTo(this, locationSetting)) {
+            // Nothing we can apply locally, so fetch the whole forecast
+            SunshineSyncAdapter.syncImmediately(this, version);
+            return;
+        }
+        SunshineSyncAdapter.onForecastStored(this, locationSetting);
+    }
+
     /**
      *  Put the message into a notification and post it.
      *  This is just one simple example of what you might choose to do with a GCM message.
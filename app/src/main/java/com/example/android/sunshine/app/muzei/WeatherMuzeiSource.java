@@ -16,27 +16,38 @@
 package com.example.android.sunshine.app.muzei;
 
 import android.content.Intent;
-import android.database.Cursor;
 import android.net.Uri;
+import android.support.v4.content.FileProvider;
+import android.util.Log;
 
 import com.example.android.sunshine.app.MainActivity;
+import com.example.android.sunshine.app.R;
 import com.example.android.sunshine.app.Utility;
+import com.example.android.sunshine.app.data.ForecastRepository;
 import com.example.android.sunshine.app.data.WeatherContract;
 import com.example.android.sunshine.app.sync.SunshineSyncAdapter;
+import com.example.android.sunshine.core.Forecast;
 import com.google.android.apps.muzei.api.Artwork;
 import com.google.android.apps.muzei.api.MuzeiArtSource;
 
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+
 /**
  * Muzei source that changes your background based on the current weather conditions
  */
 public class WeatherMuzeiSource extends MuzeiArtSource {
-    private static final String[] FORECAST_COLUMNS = new String[]{
-            WeatherContract.WeatherEntry.COLUMN_WEATHER_ID,
-            WeatherContract.WeatherEntry.COLUMN_SHORT_DESC
-    };
-    // these indices must match the projection
-    private static final int INDEX_WEATHER_ID = 0;
-    private static final int INDEX_SHORT_DESC = 1;
+    private static final String LOG_TAG = WeatherMuzeiSource.class.getSimpleName();
+
+    // Muzei reads the published image itself, so it needs access to our FileProvider Uris
+    private static final String MUZEI_PACKAGE = "net.nurik.roman.muzei";
+    // Must match the path declared in res/xml/muzei_paths.xml
+    private static final String CACHE_DIRECTORY = "muzei";
 
     public WeatherMuzeiSource() {
         super("WeatherMuzeiSource");
@@ -55,25 +66,92 @@ public class WeatherMuzeiSource extends MuzeiArtSource {
     @Override
     protected void onUpdate(int reason) {
         String location = Utility.getPreferredLocation(this);
-        Uri weatherForLocationUri = WeatherContract.WeatherEntry.buildWeatherLocationWithStartDate(
-                location, System.currentTimeMillis());
-        Cursor cursor = getContentResolver().query(weatherForLocationUri, FORECAST_COLUMNS, null,
-                null, WeatherContract.WeatherEntry.COLUMN_DATE + " ASC");
-        if (cursor.moveToFirst()) {
-            int weatherId = cursor.getInt(INDEX_WEATHER_ID);
-            String desc = cursor.getString(INDEX_SHORT_DESC);
+        // Shared with the widgets, which read the same days after each sync
+        Forecast forecast = ForecastRepository.get(this).getForecast(location);
+        int today = forecast == null ? 0
+                : forecast.indexFrom(WeatherContract.normalizeDate(System.currentTimeMillis()));
+        if (forecast != null && today < forecast.size) {
+            int weatherId = forecast.weatherIds[today];
+            String desc = forecast.descriptions[today];
 
             String imageUrl = Utility.getImageUrlForWeatherCondition(weatherId);
             // Only publish a new wallpaper if we have a valid image
             if (imageUrl != null) {
-                publishArtwork(new Artwork.Builder()
-                        .imageUri(Uri.parse(imageUrl))
-                        .title(desc)
-                        .byline(location)
-                        .viewIntent(new Intent(this, MainActivity.class))
-                        .build());
+                // Many condition ids share an image, so the token identifies what is actually
+                // shown. If it hasn't changed there is nothing for Muzei to reload. It holds the
+                // Uri published rather than the image's url, so artwork that fell back to the
+                // remote image is published again once the image is cached.
+                Uri imageUri = getCachedImageUri(imageUrl);
+                String token = imageUri + "|" + desc + "|" + location;
+                Artwork current = getCurrentArtwork();
+                if (current != null && token.equals(current.getToken())) {
+                    Log.d(LOG_TAG, "Artwork unchanged, not republishing");
+                } else {
+                    publishArtwork(new Artwork.Builder()
+                            .imageUri(imageUri)
+                            .token(token)
+                            .title(desc)
+                            .byline(location)
+                            .viewIntent(new Intent(this, MainActivity.class))
+                            .build());
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns a local Uri for the image, downloading it into our cache the first time it is
+     * seen. Falls back to the remote Uri if the image can't be cached.
+     */
+    private Uri getCachedImageUri(String imageUrl) {
+        File directory = new File(getCacheDir(), CACHE_DIRECTORY);
+        File image = new File(directory, Integer.toHexString(imageUrl.hashCode()) + ".jpg");
+        if (!image.exists()) {
+            if (!(directory.isDirectory() || directory.mkdirs()) || !download(imageUrl, image)) {
+                return Uri.parse(imageUrl);
+            }
+        }
+        Uri uri = FileProvider.getUriForFile(this, getString(R.string.muzei_file_authority), image);
+        grantUriPermission(MUZEI_PACKAGE, uri, Intent.FLAG_GRANT_READ_URI_PERMISSION);
+        return uri;
+    }
+
+    private boolean download(String imageUrl, File destination) {
+        // Write to a temporary file first so a partial download is never served
+        File partial = new File(destination.getPath() + ".tmp");
+        HttpURLConnection urlConnection = null;
+        InputStream in = null;
+        OutputStream out = null;
+        try {
+            urlConnection = (HttpURLConnection) new URL(imageUrl).openConnection();
+            in = urlConnection.getInputStream();
+            out = new FileOutputStream(partial);
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+            out.close();
+            out = null;
+            return partial.renameTo(destination);
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Error caching artwork from " + imageUrl, e);
+            return false;
+        } finally {
+            if (urlConnection != null) {
+                urlConnection.disconnect();
+            }
+            try {
+                if (in != null) {
+                    in.close();
+                }
+                if (out != null) {
+                    out.close();
+                }
+            } catch (IOException e) {
+                Log.e(LOG_TAG, "Error closing stream", e);
             }
+            partial.delete();
         }
-        cursor.close();
     }
 }
@@ -0,0 +1,121 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.net.Uri;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Fetches the forecast for a location the user is about to pick, while they are still in
+ * settings. The parsed result is staged in memory only; nothing is written until the location
+ * is confirmed and the sync commits it, in the same transaction as any other sync.
+ *
+ * Only the most recent candidate is staged.
+ */
+public final class ForecastPrefetcher {
+    private static final String LOG_TAG = ForecastPrefetcher.class.getSimpleName();
+
+    // A staged forecast older than this is fetched again rather than committed
+    private static final long MAX_STAGED_AGE_MILLIS = 10 * 60 * 1000;
+    // How long the sync waits for a prefetch still in flight before fetching on its own
+    private static final long MAX_WAIT_SECONDS = 15;
+
+    private static final ExecutorService sExecutor = Executors.newSingleThreadExecutor();
+
+    // Guarded by ForecastPrefetcher.class
+    private static Uri sStagedUri;
+    private static long sStagedAt;
+    private static Future<ParsedForecast> sStaged;
+
+    private ForecastPrefetcher() {
+    }
+
+    /**
+     * Starts fetching the forecast for a typed location.
+     */
+    public static void prefetch(String locationSetting) {
+        prefetch(SunshineSyncAdapter.buildForecastUri(locationSetting, null, null));
+    }
+
+    /**
+     * Starts fetching the forecast for a location picked on the map.
+     */
+    public static void prefetch(String locationSetting, float latitude, float longitude) {
+        prefetch(SunshineSyncAdapter.buildForecastUri(locationSetting,
+                String.valueOf(latitude), String.valueOf(longitude)));
+    }
+
+    private static synchronized void prefetch(final Uri forecastUri) {
+        if (forecastUri.equals(sStagedUri) && !isExpired()) {
+            // Already staged or on its way
+            return;
+        }
+        if (sStaged != null) {
+            sStaged.cancel(true);
+        }
+        sStagedUri = forecastUri;
+        sStagedAt = SystemClock.elapsedRealtime();
+        sStaged = sExecutor.submit(new Callable<ParsedForecast>() {
+            @Override
+            public ParsedForecast call() throws Exception {
+                String forecastJsonStr = SunshineSyncAdapter.fetchForecastJson(forecastUri);
+                return forecastJsonStr == null ? null : ParsedForecast.fromJson(forecastJsonStr);
+            }
+        });
+    }
+
+    /**
+     * Hands the staged forecast over to the sync, waiting for it if it is still being fetched.
+     *
+     * @return the forecast for exactly this request, or null if there is none to use
+     */
+    static ParsedForecast takeStaged(Uri forecastUri) {
+        Future<ParsedForecast> staged;
+        synchronized (ForecastPrefetcher.class) {
+            if (!forecastUri.equals(sStagedUri)) {
+                return null;
+            }
+            boolean expired = isExpired();
+            staged = sStaged;
+            sStaged = null;
+            sStagedUri = null;
+            if (expired) {
+                staged.cancel(true);
+                return null;
+            }
+        }
+        try {
+            return staged.get(MAX_WAIT_SECONDS, TimeUnit.SECONDS);
+        } catch (InterruptedException | ExecutionException | TimeoutException e) {
+            Log.d(LOG_TAG, "Prefetched forecast unavailable, fetching again", e);
+            staged.cancel(true);
+            return null;
+        }
+    }
+
+    private static boolean isExpired() {
+        return SystemClock.elapsedRealtime() - sStagedAt > MAX_STAGED_AGE_MILLIS;
+    }
+}
@@ -0,0 +1,140 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.content.Context;
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.drawable.Drawable;
+import android.os.Handler;
+import android.os.Looper;
+import android.support.v4.util.LruCache;
+import android.util.Log;
+
+import com.bumptech.glide.Glide;
+import com.bumptech.glide.request.animation.GlideAnimation;
+import com.bumptech.glide.request.target.SimpleTarget;
+
+/**
+ * Process-wide cache of notification large icons, already scaled to the size they are shown at.
+ *
+ * Bundled art is decoded straight to the target size and is always available synchronously.
+ * Art pack images are fetched in the background and handed to a callback once they arrive, so
+ * the caller never waits on the network.
+ */
+final class NotificationIconCache {
+    private static final String LOG_TAG = NotificationIconCache.class.getSimpleName();
+
+    // One entry per condition group, art pack and size; a handful in practice
+    private static final int MAX_ENTRIES = 16;
+
+    private static final LruCache<String, Bitmap> sIcons = new LruCache<>(MAX_ENTRIES);
+
+    interface Callback {
+        void onIconLoaded(Bitmap icon);
+    }
+
+    private NotificationIconCache() {
+    }
+
+    /**
+     * @return the bundled art for the condition, scaled to fit width x height
+     */
+    static Bitmap getLocalIcon(Context context, int artResourceId, int width, int height) {
+        String key = "res:" + artResourceId + "@" + width + "x" + height;
+        Bitmap icon = sIcons.get(key);
+        if (icon == null) {
+            icon = decodeScaled(context.getResources(), artResourceId, width, height);
+            if (icon != null) {
+                sIcons.put(key, icon);
+            }
+        }
+        return icon;
+    }
+
+    /**
+     * @return the art pack image for the url if it has already been fetched at this size,
+     * otherwise null
+     */
+    static Bitmap getCachedRemoteIcon(String artUrl, int width, int height) {
+        return sIcons.get(remoteKey(artUrl, width, height));
+    }
+
+    /**
+     * Fetches the art pack image in the background. The callback is invoked on the main thread,
+     * and only if the image could be loaded.
+     */
+    static void loadRemoteIcon(Context context, final String artUrl, final int width,
+                               final int height, final Callback callback) {
+        final Context appContext = context.getApplicationContext();
+        // Glide requires targets to be started from the main thread
+        new Handler(Looper.getMainLooper()).post(new Runnable() {
+            @Override
+            public void run() {
+                Glide.with(appContext)
+                        .load(artUrl)
+                        .asBitmap()
+                        .fitCenter()
+                        .into(new SimpleTarget<Bitmap>(width, height) {
+                            @Override
+                            public void onResourceReady(Bitmap resource,
+                                                        GlideAnimation<? super Bitmap> glideAnimation) {
+                                sIcons.put(remoteKey(artUrl, width, height), resource);
+                                callback.onIconLoaded(resource);
+                            }
+
+                            @Override
+                            public void onLoadFailed(Exception e, Drawable errorDrawable) {
+                                Log.e(LOG_TAG, "Error retrieving large icon from " + artUrl, e);
+                            }
+                        });
+            }
+        });
+    }
+
+    private static String remoteKey(String artUrl, int width, int height) {
+        // The url already identifies both the condition group and the art pack
+        return artUrl + "@" + width + "x" + height;
+    }
+
+    private static Bitmap decodeScaled(Resources resources, int resId, int width, int height) {
+        // Read the bounds first so the full resolution art is never held in memory
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeResource(resources, resId, options);
+        int sampleSize = 1;
+        while (options.outWidth / (sampleSize * 2) >= width
+                && options.outHeight / (sampleSize * 2) >= height) {
+            sampleSize *= 2;
+        }
+        options.inJustDecodeBounds = false;
+        options.inSampleSize = sampleSize;
+        Bitmap sampled = BitmapFactory.decodeResource(resources, resId, options);
+        if (sampled == null || (sampled.getWidth() <= width && sampled.getHeight() <= height)) {
+            return sampled;
+        }
+        float scale = Math.min((float) width / sampled.getWidth(),
+                (float) height / sampled.getHeight());
+        Bitmap scaled = Bitmap.createScaledBitmap(sampled,
+                Math.max(1, Math.round(sampled.getWidth() * scale)),
+                Math.max(1, Math.round(sampled.getHeight() * scale)), true);
+        if (scaled != sampled) {
+            sampled.recycle();
+        }
+        return scaled;
+    }
+}
@@ -0,0 +1,147 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import com.example.android.sunshine.app.data.HourlyForecast;
+import com.example.android.sunshine.core.Forecast;
+import com.example.android.sunshine.core.ForecastParser;
+import com.example.android.sunshine.core.ZoneDays;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.net.HttpURLConnection;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TimeZone;
+
+/**
+ * A forecast as returned by OpenWeatherMap, parsed but not yet stored. Its days don't carry a
+ * location id, since the location may not be in the database yet.
+ */
+final class ParsedForecast {
+
+    private static final long HOUR_IN_MILLIS = 1000 * 60 * 60;
+
+    @SunshineSyncAdapter.LocationStatus
+    final int status;
+    final String cityName;
+    final double latitude;
+    final double longitude;
+    final Forecast days;
+
+    private ParsedForecast(@SunshineSyncAdapter.LocationStatus int status, Forecast days) {
+        this.status = status;
+        this.cityName = days.cityName;
+        this.latitude = days.latitude;
+        this.longitude = days.longitude;
+        this.days = days;
+    }
+
+    static ParsedForecast error(@SunshineSyncAdapter.LocationStatus int status) {
+        return new ParsedForecast(status, Forecast.error(Forecast.STATUS_SERVER_DOWN));
+    }
+
+    /**
+     * Take the String representing the complete forecast in JSON Format and pull out the
+     * days, dated from the current local day.
+     */
+    static ParsedForecast fromJson(String forecastJsonStr) throws JSONException {
+        Forecast forecast = ForecastParser.parseDaily(forecastJsonStr,
+                System.currentTimeMillis(), TimeZone.getDefault());
+        switch (forecast.status) {
+            case Forecast.STATUS_INVALID_LOCATION:
+                return error(SunshineSyncAdapter.LOCATION_STATUS_INVALID);
+            case Forecast.STATUS_SERVER_DOWN:
+                return error(SunshineSyncAdapter.LOCATION_STATUS_SERVER_DOWN);
+        }
+        return new ParsedForecast(SunshineSyncAdapter.LOCATION_STATUS_OK, forecast);
+    }
+
+    /**
+     * Takes the String of an OpenWeatherMap hourly forecast in JSON format, and groups its
+     * hours by the local day they fall on. OpenWeatherMap currently forecasts every three
+     * hours, but nothing here depends on the step.
+     *
+     * @return the days in order, or none if the response was an error
+     */
+    static HourlyForecast[] hoursFromJson(String hourlyJsonStr) throws JSONException {
+        final String OWM_LIST = "list";
+        final String OWM_DATE = "dt";
+
+        final String OWM_MAIN = "main";
+        final String OWM_TEMPERATURE = "temp";
+        final String OWM_PRESSURE = "pressure";
+        final String OWM_HUMIDITY = "humidity";
+
+        final String OWM_WIND = "wind";
+        final String OWM_WINDSPEED = "speed";
+        final String OWM_WIND_DIRECTION = "deg";
+
+        final String OWM_WEATHER = "weather";
+        final String OWM_WEATHER_ID = "id";
+
+        final String OWM_MESSAGE_CODE = "cod";
+
+        JSONObject hourlyJson = new JSONObject(hourlyJsonStr);
+        // The code comes back as a string here, unlike the daily forecast's
+        if (hourlyJson.optInt(OWM_MESSAGE_CODE, HttpURLConnection.HTTP_OK)
+                != HttpURLConnection.HTTP_OK) {
+            return new HourlyForecast[0];
+        }
+        JSONArray hourArray = hourlyJson.getJSONArray(OWM_LIST);
+
+        // Hours are grouped by local day, and dated like the daily forecast's days
+        TimeZone zone = TimeZone.getDefault();
+        ZoneDays localDays = ZoneDays.forDefaultZone();
+
+        List<HourlyForecast> days = new ArrayList<>();
+        HourlyForecast.Builder day = null;
+        int julianDay = 0;
+        for (int i = 0; i < hourArray.length(); i++) {
+            JSONObject hourForecast = hourArray.getJSONObject(i);
+            long dateTime = hourForecast.getLong(OWM_DATE) * 1000;
+            int hourJulianDay = localDays.getJulianDay(dateTime);
+            int hour = (int) (((dateTime + zone.getOffset(dateTime)) / HOUR_IN_MILLIS) % 24);
+
+            if (day == null || hourJulianDay != julianDay) {
+                if (day != null) {
+                    days.add(day.build());
+                }
+                julianDay = hourJulianDay;
+                day = new HourlyForecast.Builder(localDays.getStartOfJulianDay(julianDay));
+            }
+
+            JSONObject main = hourForecast.getJSONObject(OWM_MAIN);
+            JSONObject wind = hourForecast.getJSONObject(OWM_WIND);
+            JSONObject weatherObject =
+                    hourForecast.getJSONArray(OWM_WEATHER).getJSONObject(0);
+            day.add(hour,
+                    weatherObject.getInt(OWM_WEATHER_ID),
+                    main.getDouble(OWM_TEMPERATURE),
+                    main.getDouble(OWM_HUMIDITY),
+                    main.getDouble(OWM_PRESSURE),
+                    wind.getDouble(OWM_WINDSPEED),
+                    // Left out when there's no wind to speak of
+                    wind.optDouble(OWM_WIND_DIRECTION, 0));
+        }
+        if (day != null) {
+            days.add(day.build());
+        }
+        return days.toArray(new HourlyForecast[days.size()]);
+    }
+}
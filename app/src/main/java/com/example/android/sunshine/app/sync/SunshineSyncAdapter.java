@@ -3,12 +3,13 @@ package com.example.android.sunshine.app.sync;
 import android.accounts.Account;
 import android.accounts.AccountManager;
 import android.annotation.SuppressLint;
+import android.annotation.TargetApi;
+import android.app.Notification;
 import android.app.NotificationManager;
 import android.app.PendingIntent;
 import android.content.AbstractThreadedSyncAdapter;
 import android.content.ContentProviderClient;
 import android.content.ContentResolver;
-import android.content.ContentUris;
 import android.content.ContentValues;
 import android.content.Context;
 import android.content.Intent;
@@ -17,36 +18,39 @@ import android.content.SyncRequest;
 import android.content.SyncResult;
 import android.content.res.Resources;
 import android.database.Cursor;
+import android.database.SQLException;
 import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.net.Uri;
 import android.os.Build;
 import android.os.Bundle;
 import android.preference.PreferenceManager;
+import android.service.notification.StatusBarNotification;
 import android.support.annotation.IntDef;
+import android.support.annotation.VisibleForTesting;
 import android.support.v4.app.NotificationCompat;
 import android.support.v4.app.TaskStackBuilder;
-import android.text.format.Time;
 import android.util.Log;
 
-import com.bumptech.glide.Glide;
 import com.example.android.sunshine.app.BuildConfig;
 import com.example.android.sunshine.app.Constants;
+import com.example.android.sunshine.app.LastForecastRows;
 import com.example.android.sunshine.app.MainActivity;
 import com.example.android.sunshine.app.R;
 import com.example.android.sunshine.app.Utility;
+import com.example.android.sunshine.app.data.ForecastPatch;
+import com.example.android.sunshine.app.data.ForecastRows;
+import com.example.android.sunshine.app.data.HourlyForecast;
 import com.example.android.sunshine.app.data.WeatherContract;
+import com.example.android.sunshine.app.data.WeatherProvider;
 import com.example.android.sunshine.app.muzei.WeatherMuzeiSource;
+import com.example.android.sunshine.core.Forecast;
 import com.google.android.gms.common.api.GoogleApiClient;
-import com.google.android.gms.common.api.ResultCallback;
 import com.google.android.gms.wearable.DataApi;
 import com.google.android.gms.wearable.PutDataMapRequest;
 import com.google.android.gms.wearable.PutDataRequest;
 import com.google.android.gms.wearable.Wearable;
 
-import org.json.JSONArray;
 import org.json.JSONException;
-import org.json.JSONObject;
 
 import java.io.BufferedReader;
 import java.io.IOException;
@@ -56,20 +60,27 @@ import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
 import java.net.HttpURLConnection;
 import java.net.URL;
-import java.util.Vector;
-import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
 
 public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
-    public final String LOG_TAG = SunshineSyncAdapter.class.getSimpleName();
+    public static final String LOG_TAG = SunshineSyncAdapter.class.getSimpleName();
     public static final String ACTION_DATA_UPDATED =
             "com.example.android.sunshine.app.ACTION_DATA_UPDATED";
-    // Interval at which to sync with the weather, in seconds.
-    // 60 seconds (1 minute) * 180 = 3 hours
-    public static final int SYNC_INTERVAL = 60 * 180;
+    // Interval at which to sync with the weather, in seconds. Forecast changes are pushed over
+    // GCM, so polling is only a fallback for missed messages.
+    // 60 seconds (1 minute) * 720 = 12 hours
+    public static final int SYNC_INTERVAL = 60 * 720;
     public static final int SYNC_FLEXTIME = SYNC_INTERVAL / 3;
     private static final long DAY_IN_MILLIS = 1000 * 60 * 60 * 24;
     private static final int WEATHER_NOTIFICATION_ID = 3004;
+    // How long a push waits to reach the watch before leaving it for the next sync
+    private static final long WEARABLE_CONNECT_TIMEOUT_SECONDS = 30;
 
+    // Sync extra holding the forecast version announced by the push that requested the sync
+    public static final String EXTRA_FORECAST_VERSION = "forecast_version";
+
+    private static final String OPEN_WEATHER_MAP_URL = "http://api.openweathermap.org/data/2.5/";
+    private static volatile String sServerUrl = OPEN_WEATHER_MAP_URL;
 
     private static final String[] NOTIFY_WEATHER_PROJECTION = new String[]{
             WeatherContract.WeatherEntry.COLUMN_WEATHER_ID,
@@ -114,57 +125,163 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
         // longitude, in case we are syncing based on a new Place Picker API result.
         Context context = getContext();
         String locationQuery = Utility.getPreferredLocation(context);
-        String locationLatitude = String.valueOf(Utility.getLocationLatitude(context));
-        String locationLongitude = String.valueOf(Utility.getLocationLongitude(context));
+        long forecastVersion = extras.getLong(EXTRA_FORECAST_VERSION, 0);
+
+        // Instead of always building the query based off of the location string, we want to
+        // potentially build a query using a lat/lon value. This will be the case when we are
+        // syncing based off of a new location from the Place Picker API. So we need to check
+        // if we have a lat/lon to work with, and use those when we do. Otherwise, the weather
+        // service may not understand the location address provided by the Place Picker API
+        // and the user could end up with no weather! The horror!
+        Uri forecastUri;
+        Uri hourlyForecastUri;
+        if (Utility.isLocationLatLonAvailable(context)) {
+            String latitude = String.valueOf(Utility.getLocationLatitude(context));
+            String longitude = String.valueOf(Utility.getLocationLongitude(context));
+            forecastUri = buildForecastUri(locationQuery, latitude, longitude);
+            hourlyForecastUri = buildHourlyForecastUri(locationQuery, latitude, longitude);
+        } else {
+            forecastUri = buildForecastUri(locationQuery, null, null);
+            hourlyForecastUri = buildHourlyForecastUri(locationQuery, null, null);
+        }
 
-        // These two need to be declared outside the try/catch
-        // so that they can be closed in the finally block.
-        HttpURLConnection urlConnection = null;
-        BufferedReader reader = null;
+        try {
+            // If settings already fetched this exact request while the user was picking the
+            // location, commit that instead of going back to the network
+            ParsedForecast forecast = ForecastPrefetcher.takeStaged(forecastUri);
+            if (forecast == null) {
+                String forecastJsonStr = fetchForecastJson(forecastUri);
+                if (forecastJsonStr == null) {
+                    // Stream was empty.  No point in parsing.
+                    setLocationStatus(getContext(), LOCATION_STATUS_SERVER_DOWN);
+                    return;
+                }
+                forecast = ParsedForecast.fromJson(forecastJsonStr);
+            } else {
+                Log.d(LOG_TAG, "Committing prefetched forecast");
+            }
+            storeForecast(forecast, fetchHours(hourlyForecastUri), locationQuery,
+                    forecastVersion);
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Error ", e);
+            // If the code didn't successfully get the weather data, there's no point in attempting
+            // to parse it.
+            setLocationStatus(getContext(), LOCATION_STATUS_SERVER_DOWN);
+        } catch (JSONException e) {
+            Log.e(LOG_TAG, e.getMessage(), e);
+            e.printStackTrace();
+            setLocationStatus(getContext(), LOCATION_STATUS_SERVER_INVALID);
+        }
+    }
 
-        // Will contain the raw JSON response as a string.
-        String forecastJsonStr = null;
+    /**
+     * Points syncs at another server speaking OpenWeatherMap's API, such as a local stand-in
+     * for benchmarks.
+     *
+     * @param serverUrl the API's base, ending with a slash, or null for OpenWeatherMap's
+     */
+    @VisibleForTesting
+    public static void setServerUrl(String serverUrl) {
+        sServerUrl = serverUrl != null ? serverUrl : OPEN_WEATHER_MAP_URL;
+    }
+
+    /**
+     * Builds the OpenWeatherMap forecast request for a location.
+     *
+     * @param locationQuery The location setting
+     * @param latitude      The latitude to query instead of the location setting, or null
+     * @param longitude     The longitude to query instead of the location setting, or null
+     */
+    static Uri buildForecastUri(String locationQuery, String latitude, String longitude) {
+        final String FORECAST_BASE_URL = sServerUrl + "forecast/daily?";
+        int numDays = 14;
+        return buildForecastUri(FORECAST_BASE_URL, locationQuery, latitude, longitude)
+                .appendQueryParameter("cnt", Integer.toString(numDays))
+                .build();
+    }
 
+    /**
+     * Builds the OpenWeatherMap hourly forecast request for a location, covering the next
+     * five days.
+     *
+     * @see #buildForecastUri(String, String, String)
+     */
+    static Uri buildHourlyForecastUri(String locationQuery, String latitude, String longitude) {
+        final String HOURLY_FORECAST_BASE_URL = sServerUrl + "forecast?";
+        return buildForecastUri(HOURLY_FORECAST_BASE_URL, locationQuery, latitude, longitude)
+                .build();
+    }
+
+    /**
+     * Builds the request for a location's current weather alone, from the same server as the
+     * forecast. It answers much faster, so settings use it to check a location exists.
+     *
+     * @see #buildForecastUri(String, String, String)
+     */
+    public static Uri buildCurrentWeatherUri(String locationQuery) {
+        final String WEATHER_BASE_URL = sServerUrl + "weather?";
+        return buildForecastUri(WEATHER_BASE_URL, locationQuery, null, null).build();
+    }
+
+    private static Uri.Builder buildForecastUri(String baseUrl, String locationQuery,
+                                                String latitude, String longitude) {
         String format = "json";
         String units = "metric";
-        int numDays = 14;
 
+        // Construct the URL for the OpenWeatherMap query
+        // Possible parameters are avaiable at OWM's forecast API page, at
+        // http://openweathermap.org/API#forecast
+        final String QUERY_PARAM = "q";
+        final String LAT_PARAM = "lat";
+        final String LON_PARAM = "lon";
+        final String FORMAT_PARAM = "mode";
+        final String UNITS_PARAM = "units";
+        final String APPID_PARAM = "APPID";
+
+        Uri.Builder uriBuilder = Uri.parse(baseUrl).buildUpon();
+        if (latitude != null && longitude != null) {
+            uriBuilder.appendQueryParameter(LAT_PARAM, latitude)
+                    .appendQueryParameter(LON_PARAM, longitude);
+        } else {
+            uriBuilder.appendQueryParameter(QUERY_PARAM, locationQuery);
+        }
+
+        return uriBuilder.appendQueryParameter(FORMAT_PARAM, format)
+                .appendQueryParameter(UNITS_PARAM, units)
+                .appendQueryParameter(APPID_PARAM, BuildConfig.OPEN_WEATHER_MAP_API_KEY);
+    }
+
+    /**
+     * Fetches and parses the hourly forecast. The hours only add detail to the days, so a
+     * sync without them still stores the days.
+     *
+     * @return the hours grouped by day, or none if they couldn't be fetched
+     */
+    private HourlyForecast[] fetchHours(Uri hourlyForecastUri) {
         try {
-            // Construct the URL for the OpenWeatherMap query
-            // Possible parameters are avaiable at OWM's forecast API page, at
-            // http://openweathermap.org/API#forecast
-            final String FORECAST_BASE_URL =
-                    "http://api.openweathermap.org/data/2.5/forecast/daily?";
-            final String QUERY_PARAM = "q";
-            final String LAT_PARAM = "lat";
-            final String LON_PARAM = "lon";
-            final String FORMAT_PARAM = "mode";
-            final String UNITS_PARAM = "units";
-            final String DAYS_PARAM = "cnt";
-            final String APPID_PARAM = "APPID";
-
-            Uri.Builder uriBuilder = Uri.parse(FORECAST_BASE_URL).buildUpon();
-
-            // Instead of always building the query based off of the location string, we want to
-            // potentially build a query using a lat/lon value. This will be the case when we are
-            // syncing based off of a new location from the Place Picker API. So we need to check
-            // if we have a lat/lon to work with, and use those when we do. Otherwise, the weather
-            // service may not understand the location address provided by the Place Picker API
-            // and the user could end up with no weather! The horror!
-            if (Utility.isLocationLatLonAvailable(context)) {
-                uriBuilder.appendQueryParameter(LAT_PARAM, locationLatitude)
-                        .appendQueryParameter(LON_PARAM, locationLongitude);
-            } else {
-                uriBuilder.appendQueryParameter(QUERY_PARAM, locationQuery);
+            String hourlyJsonStr = fetchForecastJson(hourlyForecastUri);
+            if (hourlyJsonStr != null) {
+                return ParsedForecast.hoursFromJson(hourlyJsonStr);
             }
+        } catch (IOException | JSONException e) {
+            Log.e(LOG_TAG, "Error fetching the hourly forecast", e);
+        }
+        return new HourlyForecast[0];
+    }
 
-            Uri builtUri = uriBuilder.appendQueryParameter(FORMAT_PARAM, format)
-                    .appendQueryParameter(UNITS_PARAM, units)
-                    .appendQueryParameter(DAYS_PARAM, Integer.toString(numDays))
-                    .appendQueryParameter(APPID_PARAM, BuildConfig.OPEN_WEATHER_MAP_API_KEY)
-                    .build();
+    /**
+     * Requests the forecast from OpenWeatherMap.
+     *
+     * @return the raw JSON response, or null if it was empty
+     */
+    static String fetchForecastJson(Uri forecastUri) throws IOException {
+        // These two need to be declared outside the try/catch
+        // so that they can be closed in the finally block.
+        HttpURLConnection urlConnection = null;
+        BufferedReader reader = null;
 
-            URL url = new URL(builtUri.toString());
+        try {
+            URL url = new URL(forecastUri.toString());
 
             // Create the request to OpenWeatherMap, and open the connection
             urlConnection = (HttpURLConnection) url.openConnection();
@@ -176,7 +293,7 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
             StringBuffer buffer = new StringBuffer();
             if (inputStream == null) {
                 // Nothing to do.
-                return;
+                return null;
             }
             reader = new BufferedReader(new InputStreamReader(inputStream));
 
@@ -189,21 +306,9 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
             }
 
             if (buffer.length() == 0) {
-                // Stream was empty.  No point in parsing.
-                setLocationStatus(getContext(), LOCATION_STATUS_SERVER_DOWN);
-                return;
+                return null;
             }
-            forecastJsonStr = buffer.toString();
-            getWeatherDataFromJson(forecastJsonStr, locationQuery);
-        } catch (IOException e) {
-            Log.e(LOG_TAG, "Error ", e);
-            // If the code didn't successfully get the weather data, there's no point in attempting
-            // to parse it.
-            setLocationStatus(getContext(), LOCATION_STATUS_SERVER_DOWN);
-        } catch (JSONException e) {
-            Log.e(LOG_TAG, e.getMessage(), e);
-            e.printStackTrace();
-            setLocationStatus(getContext(), LOCATION_STATUS_SERVER_INVALID);
+            return buffer.toString();
         } finally {
             if (urlConnection != null) {
                 urlConnection.disconnect();
@@ -212,258 +317,175 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
                 try {
                     reader.close();
                 } catch (final IOException e) {
-                    Log.e(LOG_TAG, "Error closing stream", e);
+                    Log.e(SunshineSyncAdapter.class.getSimpleName(), "Error closing stream", e);
                 }
             }
         }
-        return;
     }
 
     /**
-     * Take the String representing the complete forecast in JSON Format and
-     * pull out the data we need to construct the Strings needed for the wireframes.
-     * <p>
-     * Fortunately parsing is easy:  constructor takes the JSON string and converts it
-     * into an Object hierarchy for us.
+     * Stores a parsed forecast for the location and tells everything that displays it.
+     *
+     * @param hours           the forecast's hours, stored in the same transaction as its days
+     * @param forecastVersion version announced by the push that requested this sync, or 0
      */
-    private void getWeatherDataFromJson(String forecastJsonStr,
-                                        String locationSetting)
-            throws JSONException {
-
-        // Now we have a String representing the complete forecast in JSON Format.
-        // Fortunately parsing is easy:  constructor takes the JSON string and converts it
-        // into an Object hierarchy for us.
-
-        // These are the names of the JSON objects that need to be extracted.
-
-        // Location information
-        final String OWM_CITY = "city";
-        final String OWM_CITY_NAME = "name";
-        final String OWM_COORD = "coord";
-
-        // Location coordinate
-        final String OWM_LATITUDE = "lat";
-        final String OWM_LONGITUDE = "lon";
-
-        // Weather information.  Each day's forecast info is an element of the "list" array.
-        final String OWM_LIST = "list";
-
-        final String OWM_PRESSURE = "pressure";
-        final String OWM_HUMIDITY = "humidity";
-        final String OWM_WINDSPEED = "speed";
-        final String OWM_WIND_DIRECTION = "deg";
-
-        // All temperatures are children of the "temp" object.
-        final String OWM_TEMPERATURE = "temp";
-        final String OWM_MAX = "max";
-        final String OWM_MIN = "min";
-
-        final String OWM_WEATHER = "weather";
-        final String OWM_DESCRIPTION = "main";
-        final String OWM_WEATHER_ID = "id";
+    private void storeForecast(ParsedForecast forecast, HourlyForecast[] hours,
+                               String locationSetting, long forecastVersion) {
+        Context context = getContext();
+        if (forecast.status != LOCATION_STATUS_OK) {
+            setLocationStatus(context, forecast.status);
+            return;
+        }
 
-        final String OWM_MESSAGE_CODE = "cod";
+        ContentValues locationValues = new ContentValues();
+        locationValues.put(WeatherContract.LocationEntry.COLUMN_CITY_NAME, forecast.cityName);
+        locationValues.put(WeatherContract.LocationEntry.COLUMN_COORD_LAT, forecast.latitude);
+        locationValues.put(WeatherContract.LocationEntry.COLUMN_COORD_LONG, forecast.longitude);
+        ContentValues[] hourlyValues = new ContentValues[hours.length];
+        for (int i = 0; i < hours.length; i++) {
+            hourlyValues[i] = hours[i].toContentValues();
+        }
 
-        try {
-            JSONObject forecastJson = new JSONObject(forecastJsonStr);
-            Context context = getContext();
-
-            // do we have an error?
-            if (forecastJson.has(OWM_MESSAGE_CODE)) {
-                int errorCode = forecastJson.getInt(OWM_MESSAGE_CODE);
-
-                switch (errorCode) {
-                    case HttpURLConnection.HTTP_OK:
-                        break;
-                    case HttpURLConnection.HTTP_NOT_FOUND:
-                        setLocationStatus(getContext(), LOCATION_STATUS_INVALID);
-                        return;
-                    default:
-                        setLocationStatus(getContext(), LOCATION_STATUS_SERVER_DOWN);
-                        return;
-                }
+        // add to database
+        Forecast days = forecast.days;
+        // Usually only a day or two actually changed since the last sync, so only those are
+        // written, unless there's nothing stored to patch
+        if (days.size == 0 || !applyForecastPatch(locationSetting, locationValues, days,
+                hourlyValues, forecastVersion)) {
+            if (!writeForecast(locationSetting, locationValues, days, hourlyValues,
+                    forecastVersion)) {
+                return;
             }
+        }
 
-            JSONArray weatherArray = forecastJson.getJSONArray(OWM_LIST);
-
-            JSONObject cityJson = forecastJson.getJSONObject(OWM_CITY);
-            String cityName = cityJson.getString(OWM_CITY_NAME);
-
-            JSONObject cityCoord = cityJson.getJSONObject(OWM_COORD);
-            double cityLatitude = cityCoord.getDouble(OWM_LATITUDE);
-            double cityLongitude = cityCoord.getDouble(OWM_LONGITUDE);
-
-            long locationId = addLocation(locationSetting, cityName, cityLatitude, cityLongitude);
-
-            // Insert the new weather information into the database
-            Vector<ContentValues> cVVector = new Vector<ContentValues>(weatherArray.length());
-
-            // OWM returns daily forecasts based upon the local time of the city that is being
-            // asked for, which means that we need to know the GMT offset to translate this data
-            // properly.
-
-            // Since this data is also sent in-order and the first day is always the
-            // current day, we're going to take advantage of that to get a nice
-            // normalized UTC date for all of our weather.
-
-            Time dayTime = new Time();
-            dayTime.setToNow();
-
-            // we start at the day returned by local time. Otherwise this is a mess.
-            int julianStartDay = Time.getJulianDay(System.currentTimeMillis(), dayTime.gmtoff);
-
-            // now we work exclusively in UTC
-            dayTime = new Time();
-
-            for (int i = 0; i < weatherArray.length(); i++) {
-                // These are the values that will be collected.
-                long dateTime;
-                double pressure;
-                int humidity;
-                double windSpeed;
-                double windDirection;
-
-                double high;
-                double low;
-
-                String description;
-                int weatherId;
-
-                // Get the JSON object representing the day
-                JSONObject dayForecast = weatherArray.getJSONObject(i);
-
-                // Cheating to convert this to UTC time, which is what we want anyhow
-                dateTime = dayTime.setJulianDay(julianStartDay + i);
-
-                pressure = dayForecast.getDouble(OWM_PRESSURE);
-                humidity = dayForecast.getInt(OWM_HUMIDITY);
-                windSpeed = dayForecast.getDouble(OWM_WINDSPEED);
-                windDirection = dayForecast.getDouble(OWM_WIND_DIRECTION);
-
-                // Description is in a child array called "weather", which is 1 element long.
-                // That element also contains a weather code.
-                JSONObject weatherObject =
-                        dayForecast.getJSONArray(OWM_WEATHER).getJSONObject(0);
-                description = weatherObject.getString(OWM_DESCRIPTION);
-                weatherId = weatherObject.getInt(OWM_WEATHER_ID);
-
-                // Temperatures are in a child object called "temp".  Try not to name variables
-                // "temp" when working with temperature.  It confuses everybody.
-                JSONObject temperatureObject = dayForecast.getJSONObject(OWM_TEMPERATURE);
-                high = temperatureObject.getDouble(OWM_MAX);
-                low = temperatureObject.getDouble(OWM_MIN);
-
-                ContentValues weatherValues = new ContentValues();
-
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_LOC_KEY, locationId);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_DATE, dateTime);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_HUMIDITY, humidity);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_PRESSURE, pressure);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_WIND_SPEED, windSpeed);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_DEGREES, windDirection);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_MAX_TEMP, high);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_MIN_TEMP, low);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_SHORT_DESC, description);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_WEATHER_ID, weatherId);
-
-                cVVector.add(weatherValues);
-            }
+        if (days.size > 0) {
+            onForecastStored(context, locationSetting, days, mGoogleApiClient);
+        }
+        Log.d(LOG_TAG, "Sync Complete. " + days.size + " Inserted");
+        setLocationStatus(getContext(), LOCATION_STATUS_OK);
+    }
 
-            int inserted = 0;
-            // add to database
-            if (cVVector.size() > 0) {
-                ContentValues[] cvArray = new ContentValues[cVVector.size()];
-                cVVector.toArray(cvArray);
-                getContext().getContentResolver().bulkInsert(WeatherContract.WeatherEntry.CONTENT_URI, cvArray);
-
-                // delete old data so we don't build up an endless history
-                getContext().getContentResolver().delete(WeatherContract.WeatherEntry.CONTENT_URI,
-                        WeatherContract.WeatherEntry.COLUMN_DATE + " <= ?",
-                        new String[]{Long.toString(dayTime.setJulianDay(julianStartDay - 1))});
-
-                updateWidgets();
-                updateMuzei();
-                notifyWeather();
-                updateWearable();
-            }
-            Log.d(LOG_TAG, "Sync Complete. " + cVVector.size() + " Inserted");
-            setLocationStatus(getContext(), LOCATION_STATUS_OK);
+    /**
+     * Refreshes everything that displays a location's forecast once it has been written some
+     * other way than a sync, such as a pushed patch: reads the stored days from today on and
+     * passes them to {@link #onForecastStored(Context, String, Forecast, GoogleApiClient)}.
+     * Blocks while the watch is reached, so call off the main thread.
+     */
+    public static void onForecastStored(Context context, String locationSetting) {
+        Cursor cursor = context.getContentResolver().query(
+                WeatherContract.WeatherEntry.buildWeatherLocationWithStartDate(locationSetting,
+                        System.currentTimeMillis()),
+                ForecastPatch.COLUMNS, null, null,
+                WeatherContract.WeatherEntry.COLUMN_DATE + " ASC");
+        if (cursor == null) {
+            return;
+        }
+        Forecast days = ForecastPatch.readForecast(cursor);
+        cursor.close();
+        if (days.size == 0) {
+            return;
+        }
 
-        } catch (JSONException e) {
-            Log.e(LOG_TAG, e.getMessage(), e);
-            e.printStackTrace();
-            setLocationStatus(getContext(), LOCATION_STATUS_SERVER_INVALID);
+        GoogleApiClient googleApiClient = new GoogleApiClient.Builder(context)
+                .addApi(Wearable.API)
+                .build();
+        googleApiClient.blockingConnect(WEARABLE_CONNECT_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        try {
+            onForecastStored(context, locationSetting, days, googleApiClient);
+        } finally {
+            googleApiClient.disconnect();
         }
     }
 
-    private void updateWearable() {
+    /**
+     * Refreshes everything that displays a location's forecast with the days just stored: the
+     * forecast list's saved rows, the widgets, Muzei, the notification and the watch.
+     *
+     * @param days the location's days, from today on
+     */
+    private static void onForecastStored(Context context, String locationSetting, Forecast days,
+                                         GoogleApiClient googleApiClient) {
+        LastForecastRows.write(context, locationSetting, days);
+        updateWidgets(context);
+        updateMuzei(context);
+        notifyWeather(context);
+        updateWearable(googleApiClient, days);
+    }
 
-        if (!mGoogleApiClient.isConnected()) {
+    /**
+     * Sends the days just stored to the watch, straight from the parsed arrays. They start
+     * today, so the watch can keep serving the right day's forecast from its local history
+     * when the phone is out of reach. Waits for the result, so the client may be disconnected
+     * afterwards.
+     */
+    private static void updateWearable(GoogleApiClient googleApiClient, Forecast days) {
+
+        if (!googleApiClient.isConnected()) {
             Log.e(LOG_TAG, "Wearable won't be updated as Google API client not connected");
             return;
         }
 
-        Context context = getContext();
-        String locationQuery = Utility.getPreferredLocation(context);
+        // The watch reads ids as longs and temperatures as floats. A DataMap has no int or
+        // double arrays, so these are converted once here; the dates go in as they are.
+        long[] weatherIds = new long[days.size];
+        float[] highs = new float[days.size];
+        float[] lows = new float[days.size];
+        for (int i = 0; i < days.size; i++) {
+            weatherIds[i] = days.weatherIds[i];
+            highs[i] = (float) days.maxTemps[i];
+            lows[i] = (float) days.minTemps[i];
+        }
 
-        Uri weatherUri = WeatherContract.WeatherEntry.buildWeatherLocationWithDate(locationQuery, System.currentTimeMillis());
-
-        // we'll query our contentProvider, as always
-        Cursor cursor = context.getContentResolver().query(weatherUri, NOTIFY_WEATHER_PROJECTION, null, null, null);
-
-        if (cursor.moveToFirst()) {
-            int weatherId = cursor.getInt(INDEX_WEATHER_ID);
-            double high = cursor.getDouble(INDEX_MAX_TEMP);
-            double low = cursor.getDouble(INDEX_MIN_TEMP);
-
-            PutDataMapRequest dataMap = PutDataMapRequest.create(Constants.Data.PATH);
-            dataMap.getDataMap().putDouble(Constants.Data.WEATHER_TEMP_HIGH, high);
-            dataMap.getDataMap().putDouble(Constants.Data.WEATHER_TEMP_LOW, low);
-            dataMap.getDataMap().putLong(Constants.Data.WEATHER_ID, weatherId);
-            PutDataRequest request = dataMap.asPutDataRequest();
-
-            Wearable.DataApi.putDataItem(mGoogleApiClient, request)
-                    .setResultCallback(new ResultCallback<DataApi.DataItemResult>() {
-                        @Override
-                        public void onResult(DataApi.DataItemResult result) {
-                            if (!result.getStatus().isSuccess()) {
-                                Log.d(
-                                        LOG_TAG,
-                                        "Error sending weather information. Error code: "
-                                                + result.getStatus().getStatusCode()
-                                );
-                            } else {
-                                Log.d(
-                                        LOG_TAG,
-                                        "Weather information sent successfully "
-                                                + result.getDataItem().getUri()
-                                );
-                            }
-                        }
-                    });
+        PutDataMapRequest dataMap = PutDataMapRequest.create(Constants.Data.PATH);
+        dataMap.getDataMap().putDouble(Constants.Data.WEATHER_TEMP_HIGH, days.maxTemps[0]);
+        dataMap.getDataMap().putDouble(Constants.Data.WEATHER_TEMP_LOW, days.minTemps[0]);
+        dataMap.getDataMap().putLong(Constants.Data.WEATHER_ID, days.weatherIds[0]);
+        dataMap.getDataMap().putLongArray(Constants.Data.WEATHER_DATES, days.dates);
+        dataMap.getDataMap().putLongArray(Constants.Data.WEATHER_IDS, weatherIds);
+        dataMap.getDataMap().putFloatArray(Constants.Data.WEATHER_TEMP_HIGHS, highs);
+        dataMap.getDataMap().putFloatArray(Constants.Data.WEATHER_TEMP_LOWS, lows);
+        PutDataRequest request = dataMap.asPutDataRequest();
+
+        DataApi.DataItemResult result =
+                Wearable.DataApi.putDataItem(googleApiClient, request).await();
+        if (!result.getStatus().isSuccess()) {
+            Log.d(
+                    LOG_TAG,
+                    "Error sending weather information. Error code: "
+                            + result.getStatus().getStatusCode()
+            );
+        } else {
+            Log.d(
+                    LOG_TAG,
+                    "Weather information sent successfully "
+                            + result.getDataItem().getUri()
+            );
         }
     }
 
-    private void updateWidgets() {
-        Context context = getContext();
+    /**
+     * Tells the widgets that new weather data is available.
+     */
+    private static void updateWidgets(Context context) {
         // Setting the package ensures that only components in our app will receive the broadcast
         Intent dataUpdatedIntent = new Intent(ACTION_DATA_UPDATED)
                 .setPackage(context.getPackageName());
         context.sendBroadcast(dataUpdatedIntent);
     }
 
-    private void updateMuzei() {
+    /**
+     * Tells the Muzei source that new weather data is available.
+     */
+    private static void updateMuzei(Context context) {
         // Muzei is only compatible with Jelly Bean MR1+ devices, so there's no need to update the
         // Muzei background on lower API level devices
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR1) {
-            Context context = getContext();
             context.startService(new Intent(ACTION_DATA_UPDATED)
                     .setClass(context, WeatherMuzeiSource.class));
         }
     }
 
-    private void notifyWeather() {
-        Context context = getContext();
+    private static void notifyWeather(Context context) {
         //checking the last update and notify if it' the first of the day
         SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(context);
         String displayNotificationsKey = context.getString(R.string.pref_enable_notifications_key);
@@ -506,18 +528,15 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
                             ? resources.getDimensionPixelSize(android.R.dimen.notification_large_icon_height)
                             : resources.getDimensionPixelSize(R.dimen.notification_large_icon_default);
 
-                    // Retrieve the large icon
-                    Bitmap largeIcon;
-                    try {
-                        largeIcon = Glide.with(context)
-                                .load(artUrl)
-                                .asBitmap()
-                                .error(artResourceId)
-                                .fitCenter()
-                                .into(largeIconWidth, largeIconHeight).get();
-                    } catch (InterruptedException | ExecutionException e) {
-                        Log.e(LOG_TAG, "Error retrieving large icon from " + artUrl, e);
-                        largeIcon = BitmapFactory.decodeResource(resources, artResourceId);
+                    // Post right away with whatever icon is at hand: the art pack image if we
+                    // already have it at this size, otherwise the bundled art. The sync never
+                    // waits for the network to fetch artwork.
+                    Bitmap largeIcon = NotificationIconCache.getCachedRemoteIcon(
+                            artUrl, largeIconWidth, largeIconHeight);
+                    boolean upgradeIcon = largeIcon == null;
+                    if (upgradeIcon) {
+                        largeIcon = NotificationIconCache.getLocalIcon(
+                                context, artResourceId, largeIconWidth, largeIconHeight);
                     }
                     String title = context.getString(R.string.app_name);
 
@@ -530,12 +549,13 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
                     // NotificationCompatBuilder is a very convenient way to build backward-compatible
                     // notifications.  Just throw in some data.
                     NotificationCompat.Builder mBuilder =
-                            new NotificationCompat.Builder(getContext())
+                            new NotificationCompat.Builder(context)
                                     .setColor(resources.getColor(R.color.primary_light))
                                     .setSmallIcon(iconId)
                                     .setLargeIcon(largeIcon)
                                     .setContentTitle(title)
-                                    .setContentText(contentText);
+                                    .setContentText(contentText)
+                                    .setOnlyAlertOnce(true);
 
                     // Make something interesting happen when the user clicks on the notification.
                     // In this case, opening the app is sufficient.
@@ -554,15 +574,36 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
                             );
                     mBuilder.setContentIntent(resultPendingIntent);
 
-                    NotificationManager mNotificationManager =
-                            (NotificationManager) getContext().getSystemService(Context.NOTIFICATION_SERVICE);
+                    final NotificationManager mNotificationManager =
+                            (NotificationManager) context.getSystemService(Context.NOTIFICATION_SERVICE);
                     // WEATHER_NOTIFICATION_ID allows you to update the notification later on.
-                    mNotificationManager.notify(WEATHER_NOTIFICATION_ID, mBuilder.build());
+                    final Notification notification = mBuilder.build();
+                    mNotificationManager.notify(WEATHER_NOTIFICATION_ID, notification);
+
+                    if (upgradeIcon) {
+                        // Swap in the art pack image once it arrives, but only into this very
+                        // notification: re-posting one the user dismissed, or one a later sync
+                        // replaced, would bring it back. Otherwise the image is only cached for
+                        // the next notification. setOnlyAlertOnce keeps the update from sounding
+                        // or vibrating a second time.
+                        final NotificationCompat.Builder builder = mBuilder;
+                        NotificationIconCache.loadRemoteIcon(context, artUrl, largeIconWidth,
+                                largeIconHeight, new NotificationIconCache.Callback() {
+                                    @Override
+                                    public void onIconLoaded(Bitmap icon) {
+                                        if (isShowing(mNotificationManager, notification)) {
+                                            builder.setLargeIcon(icon);
+                                            mNotificationManager.notify(
+                                                    WEATHER_NOTIFICATION_ID, builder.build());
+                                        }
+                                    }
+                                });
+                    }
 
                     //refreshing last sync
                     SharedPreferences.Editor editor = prefs.edit();
                     editor.putLong(lastNotificationKey, System.currentTimeMillis());
-                    editor.commit();
+                    editor.apply();
                 }
                 cursor.close();
             }
@@ -570,53 +611,129 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
     }
 
     /**
-     * Helper method to handle insertion of a new location in the weather database.
-     *
-     * @param locationSetting The location string used to request updates from the server.
-     * @param cityName        A human-readable city name, e.g "Mountain View"
-     * @param lat             the latitude of the city
-     * @param lon             the longitude of the city
-     * @return the row ID of the added location.
+     * Whether the weather notification posted is still showing. The notifications showing can
+     * only be read from Marshmallow on; before that it is taken as dismissed.
      */
-    long addLocation(String locationSetting, String cityName, double lat, double lon) {
-        long locationId;
+    @TargetApi(Build.VERSION_CODES.M)
+    private static boolean isShowing(NotificationManager notificationManager,
+                                     Notification notification) {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.M) {
+            return false;
+        }
+        for (StatusBarNotification active : notificationManager.getActiveNotifications()) {
+            if (active.getId() == WEATHER_NOTIFICATION_ID
+                    && active.getNotification().when == notification.when) {
+                return true;
+            }
+        }
+        return false;
+    }
 
-        // First, check if the location with this city name exists in the db
-        Cursor locationCursor = getContext().getContentResolver().query(
+    /**
+     * Writes the fetched forecast as a {@link ForecastPatch} against what is stored for the
+     * location, so that only the days that changed are rewritten.
+     *
+     * @param locationValues refreshed name and coordinates, written with the patch
+     * @return false if the patch couldn't be applied and the forecast must be written in full
+     */
+    private boolean applyForecastPatch(String locationSetting, ContentValues locationValues,
+                                       Forecast forecast, ContentValues[] hourlyValues,
+                                       long forecastVersion) {
+        Context context = getContext();
+        Cursor location = context.getContentResolver().query(
                 WeatherContract.LocationEntry.CONTENT_URI,
-                new String[]{WeatherContract.LocationEntry._ID},
+                new String[]{WeatherContract.LocationEntry.COLUMN_FORECAST_VERSION},
                 WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING + " = ?",
                 new String[]{locationSetting},
                 null);
+        if (location == null) {
+            return false;
+        }
+        // A location that isn't stored yet has nothing to patch. The provider checks the version
+        // again when it applies the patch, so a write in between only makes the patch fail.
+        boolean stored = location.moveToFirst();
+        long storedVersion = stored ? location.getLong(0) : 0;
+        location.close();
+        if (!stored) {
+            return false;
+        }
 
-        if (locationCursor.moveToFirst()) {
-            int locationIdIndex = locationCursor.getColumnIndex(WeatherContract.LocationEntry._ID);
-            locationId = locationCursor.getLong(locationIdIndex);
-        } else {
-            // Now that the content provider is set up, inserting rows of data is pretty simple.
-            // First create a ContentValues object to hold the data you want to insert.
-            ContentValues locationValues = new ContentValues();
-
-            // Then add the data, along with the corresponding name of the data type,
-            // so the content provider knows what kind of value is being inserted.
-            locationValues.put(WeatherContract.LocationEntry.COLUMN_CITY_NAME, cityName);
-            locationValues.put(WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING, locationSetting);
-            locationValues.put(WeatherContract.LocationEntry.COLUMN_COORD_LAT, lat);
-            locationValues.put(WeatherContract.LocationEntry.COLUMN_COORD_LONG, lon);
-
-            // Finally, insert location data into the database.
-            Uri insertedUri = getContext().getContentResolver().insert(
-                    WeatherContract.LocationEntry.CONTENT_URI,
-                    locationValues
-            );
+        Cursor storedCursor = context.getContentResolver().query(
+                WeatherContract.WeatherEntry.buildWeatherLocation(locationSetting),
+                ForecastPatch.COLUMNS, null, null, null);
+        if (storedCursor == null) {
+            return false;
+        }
+        Forecast storedDays = ForecastPatch.readForecast(storedCursor);
+        storedCursor.close();
+
+        ForecastPatch patch = ForecastPatch.diff(storedVersion,
+                Math.max(storedVersion, forecastVersion), storedDays, forecast);
+        Log.d(LOG_TAG, "Patch touches " + patch.size() + " of " + forecast.size + " days");
+        return patch.applyTo(context, locationSetting, hourlyValues, locationValues);
+    }
 
-            // The resulting URI contains the ID for the row.  Extract the locationId from the Uri.
-            locationId = ContentUris.parseId(insertedUri);
+    /**
+     * Writes the location, the forecast's days and hours, the move of the days before it to the
+     * archive and the forecast version with one provider call, which commits them in a single
+     * transaction. The provider inserts the location or refreshes it inside that transaction,
+     * so two syncs can't both insert it. Readers see either the old forecast or the new one,
+     * never a mix.
+     *
+     * @return false if nothing could be written
+     */
+    @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+    private boolean writeForecast(String locationSetting, ContentValues locationValues,
+                                  Forecast days, ContentValues[] hourlyValues,
+                                  long forecastVersion) {
+        Bundle extras = new Bundle();
+        extras.putParcelable(WeatherContract.EXTRA_VALUES, locationValues);
+        ForecastRows.putForecast(extras, days);
+        extras.putParcelableArray(WeatherContract.EXTRA_HOURLY, hourlyValues);
+        extras.putLong(WeatherContract.EXTRA_FORECAST_VERSION, forecastVersion);
+
+        ContentResolver resolver = getContext().getContentResolver();
+        Bundle result;
+        try {
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
+                result = resolver.call(WeatherContract.BASE_CONTENT_URI,
+                        WeatherContract.METHOD_STORE_FORECAST, locationSetting, extras);
+            } else {
+                // ContentResolver.call was only added in Honeycomb. The provider isn't exported
+                // and runs in this process, so it can be called directly.
+                ContentProviderClient client =
+                        resolver.acquireContentProviderClient(WeatherContract.CONTENT_AUTHORITY);
+                if (client == null) {
+                    return false;
+                }
+                try {
+                    result = ((WeatherProvider) client.getLocalContentProvider()).call(
+                            WeatherContract.METHOD_STORE_FORECAST, locationSetting, extras);
+                } finally {
+                    client.release();
+                }
+            }
+        } catch (SQLException e) {
+            Log.e(LOG_TAG, "Error writing the forecast for " + locationSetting, e);
+            return false;
         }
+        return result != null;
+    }
 
-        locationCursor.close();
-        // Wait, that worked?  Yes!
-        return locationId;
+    /**
+     * Records the forecast version now stored for a location. Versions only move forward, so a
+     * push that was overtaken by a newer one can't roll the recorded version back.
+     *
+     * @return true if the version was recorded
+     */
+    public static boolean updateForecastVersion(Context context, long locationId, long version) {
+        ContentValues values = new ContentValues();
+        values.put(WeatherContract.LocationEntry.COLUMN_FORECAST_VERSION, version);
+        return context.getContentResolver().update(WeatherContract.LocationEntry.CONTENT_URI,
+                values,
+                WeatherContract.LocationEntry._ID + " = ? AND "
+                        + WeatherContract.LocationEntry.COLUMN_FORECAST_VERSION + " < ?",
+                new String[]{Long.toString(locationId), Long.toString(version)}) > 0;
     }
 
     /**
@@ -644,7 +761,21 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
      * @param context The context used to access the account service
      */
     public static void syncImmediately(Context context) {
+        syncImmediately(context, 0);
+    }
+
+    /**
+     * Helper method to have the sync adapter sync immediately, on behalf of a push announcing the
+     * given forecast version
+     *
+     * @param context         The context used to access the account service
+     * @param forecastVersion The version to record once the sync succeeds, or 0
+     */
+    public static void syncImmediately(Context context, long forecastVersion) {
         Bundle bundle = new Bundle();
+        if (forecastVersion > 0) {
+            bundle.putLong(EXTRA_FORECAST_VERSION, forecastVersion);
+        }
         bundle.putBoolean(ContentResolver.SYNC_EXTRAS_EXPEDITED, true);
         bundle.putBoolean(ContentResolver.SYNC_EXTRAS_MANUAL, true);
         ContentResolver.requestSync(getSyncAccount(context),
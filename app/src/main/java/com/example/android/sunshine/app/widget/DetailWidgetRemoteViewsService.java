@@ -2,7 +2,6 @@ package com.example.android.sunshine.app.widget;
 
 import android.annotation.TargetApi;
 import android.content.Intent;
-import android.database.Cursor;
 import android.graphics.Bitmap;
 import android.net.Uri;
 import android.os.Binder;
@@ -13,11 +12,12 @@ import android.widget.RemoteViews;
 import android.widget.RemoteViewsService;
 
 import com.bumptech.glide.Glide;
-import com.bumptech.glide.request.target.Target;
 import com.example.android.sunshine.app.R;
 import com.example.android.sunshine.app.Utility;
 import com.example.android.sunshine.app.data.WeatherContract;
 
+import java.util.HashMap;
+import java.util.Map;
 import java.util.concurrent.ExecutionException;
 
 /**
@@ -26,26 +26,42 @@ import java.util.concurrent.ExecutionException;
 @TargetApi(Build.VERSION_CODES.HONEYCOMB)
 public class DetailWidgetRemoteViewsService extends RemoteViewsService {
     public final String LOG_TAG = DetailWidgetRemoteViewsService.class.getSimpleName();
-    private static final String[] FORECAST_COLUMNS = {
-            WeatherContract.WeatherEntry.TABLE_NAME + "." + WeatherContract.WeatherEntry._ID,
-            WeatherContract.WeatherEntry.COLUMN_DATE,
-            WeatherContract.WeatherEntry.COLUMN_WEATHER_ID,
-            WeatherContract.WeatherEntry.COLUMN_SHORT_DESC,
-            WeatherContract.WeatherEntry.COLUMN_MAX_TEMP,
-            WeatherContract.WeatherEntry.COLUMN_MIN_TEMP
-    };
-    // these indices must match the projection
-    static final int INDEX_WEATHER_ID = 0;
-    static final int INDEX_WEATHER_DATE = 1;
-    static final int INDEX_WEATHER_CONDITION_ID = 2;
-    static final int INDEX_WEATHER_DESC = 3;
-    static final int INDEX_WEATHER_MAX_TEMP = 4;
-    static final int INDEX_WEATHER_MIN_TEMP = 5;
+
+    /**
+     * A list row with everything already formatted and scaled, so that binding it is only a
+     * matter of copying fields into RemoteViews.
+     */
+    private static final class Row {
+        final long id;
+        final String formattedDate;
+        final String description;
+        final String formattedMaxTemperature;
+        final String formattedMinTemperature;
+        final int weatherArtResourceId;
+        final Bitmap weatherArtImage;
+        final Uri weatherUri;
+
+        Row(long id, String formattedDate, String description, String formattedMaxTemperature,
+            String formattedMinTemperature, int weatherArtResourceId, Bitmap weatherArtImage,
+            Uri weatherUri) {
+            this.id = id;
+            this.formattedDate = formattedDate;
+            this.description = description;
+            this.formattedMaxTemperature = formattedMaxTemperature;
+            this.formattedMinTemperature = formattedMinTemperature;
+            this.weatherArtResourceId = weatherArtResourceId;
+            this.weatherArtImage = weatherArtImage;
+            this.weatherUri = weatherUri;
+        }
+    }
+
+    private static final Row[] NO_ROWS = new Row[0];
 
     @Override
     public RemoteViewsFactory onGetViewFactory(Intent intent) {
         return new RemoteViewsFactory() {
-            private Cursor data = null;
+            // Replaced wholesale in onDataSetChanged, never modified in place
+            private volatile Row[] rows = NO_ROWS;
 
             @Override
             public void onCreate() {
@@ -54,92 +70,113 @@ public class DetailWidgetRemoteViewsService extends RemoteViewsService {
 
             @Override
             public void onDataSetChanged() {
-                if (data != null) {
-                    data.close();
-                }
-                // This method is called by the app hosting the widget (e.g., the launcher)
-                // However, our ContentProvider is not exported so it doesn't have access to the
-                // data. Therefore we need to clear (and finally restore) the calling identity so
-                // that calls use our process and permission
-                final long identityToken = Binder.clearCallingIdentity();
+                // Reuse the forecast the update service just read for all widgets, if it is
+                // still for the preferred location and was read today, so it starts today
                 String location = Utility.getPreferredLocation(DetailWidgetRemoteViewsService.this);
-                Uri weatherForLocationUri = WeatherContract.WeatherEntry
-                        .buildWeatherLocationWithStartDate(location, System.currentTimeMillis());
-                data = getContentResolver().query(weatherForLocationUri,
-                        FORECAST_COLUMNS,
-                        null,
-                        null,
-                        WeatherContract.WeatherEntry.COLUMN_DATE + " ASC");
-                Binder.restoreCallingIdentity(identityToken);
+                long today = WeatherContract.normalizeDate(System.currentTimeMillis());
+                WidgetForecast data = WidgetUpdateService.getLatestForecast();
+                if (data == null || !data.location.equals(location) || data.today != today) {
+                    // This method is called by the app hosting the widget (e.g., the launcher)
+                    // However, our ContentProvider is not exported so it doesn't have access to
+                    // the data. Therefore we need to clear (and finally restore) the calling
+                    // identity so that calls use our process and permission
+                    final long identityToken = Binder.clearCallingIdentity();
+                    data = WidgetForecast.query(DetailWidgetRemoteViewsService.this);
+                    Binder.restoreCallingIdentity(identityToken);
+                }
+                rows = data == null ? NO_ROWS : buildRows(data);
+            }
+
+            /**
+             * Formats every row and fetches its artwork up front. This runs on the binder thread
+             * the launcher waits on once per data change, instead of once per row per scroll.
+             */
+            private Row[] buildRows(WidgetForecast data) {
+                boolean usingLocalGraphics =
+                        Utility.usingLocalGraphics(DetailWidgetRemoteViewsService.this);
+                int iconSize = getResources().getDimensionPixelSize(R.dimen.list_icon);
+                // Many days share a condition, so only fetch each distinct artwork once
+                Map<String, Bitmap> artByUrl = new HashMap<>();
+
+                Row[] result = new Row[data.size()];
+                for (int i = 0; i < result.length; i++) {
+                    int weatherId = data.weatherIds[i];
+                    int weatherArtResourceId = Utility.getIconResourceForWeatherCondition(weatherId);
+                    Bitmap weatherArtImage = null;
+                    if (!usingLocalGraphics) {
+                        String weatherArtResourceUrl = Utility.getArtUrlForWeatherCondition(
+                                DetailWidgetRemoteViewsService.this, weatherId);
+                        if (artByUrl.containsKey(weatherArtResourceUrl)) {
+                            weatherArtImage = artByUrl.get(weatherArtResourceUrl);
+                        } else {
+                            try {
+                                // Scale to the size the list item displays, rather than
+                                // shipping the original across to the launcher
+                                weatherArtImage = Glide.with(DetailWidgetRemoteViewsService.this)
+                                        .load(weatherArtResourceUrl)
+                                        .asBitmap()
+                                        .error(weatherArtResourceId)
+                                        .fitCenter()
+                                        .into(iconSize, iconSize).get();
+                            } catch (InterruptedException | ExecutionException e) {
+                                Log.e(LOG_TAG, "Error retrieving large icon from " + weatherArtResourceUrl, e);
+                            }
+                            artByUrl.put(weatherArtResourceUrl, weatherArtImage);
+                        }
+                    }
+                    long dateInMillis = data.dates[i];
+                    result[i] = new Row(
+                            // Each day is stored once per location
+                            dateInMillis,
+                            Utility.getFriendlyDayString(
+                                    DetailWidgetRemoteViewsService.this, dateInMillis, false),
+                            data.descriptions[i],
+                            Utility.formatTemperature(
+                                    DetailWidgetRemoteViewsService.this, data.maxTemps[i]),
+                            Utility.formatTemperature(
+                                    DetailWidgetRemoteViewsService.this, data.minTemps[i]),
+                            weatherArtResourceId,
+                            weatherArtImage,
+                            WeatherContract.WeatherEntry.buildWeatherLocationWithDate(
+                                    data.location, dateInMillis));
+                }
+                return result;
             }
 
             @Override
             public void onDestroy() {
-                if (data != null) {
-                    data.close();
-                    data = null;
-                }
+                rows = NO_ROWS;
             }
 
             @Override
             public int getCount() {
-                return data == null ? 0 : data.getCount();
+                return rows.length;
             }
 
             @Override
             public RemoteViews getViewAt(int position) {
-                if (position == AdapterView.INVALID_POSITION ||
-                        data == null || !data.moveToPosition(position)) {
+                Row[] snapshot = rows;
+                if (position == AdapterView.INVALID_POSITION || position >= snapshot.length) {
                     return null;
                 }
+                Row row = snapshot[position];
                 RemoteViews views = new RemoteViews(getPackageName(),
                         R.layout.widget_detail_list_item);
-                int weatherId = data.getInt(INDEX_WEATHER_CONDITION_ID);
-                int weatherArtResourceId = Utility.getIconResourceForWeatherCondition(weatherId);
-                Bitmap weatherArtImage = null;
-                if ( !Utility.usingLocalGraphics(DetailWidgetRemoteViewsService.this) ) {
-                    String weatherArtResourceUrl = Utility.getArtUrlForWeatherCondition(
-                            DetailWidgetRemoteViewsService.this, weatherId);
-                    try {
-                        weatherArtImage = Glide.with(DetailWidgetRemoteViewsService.this)
-                                .load(weatherArtResourceUrl)
-                                .asBitmap()
-                                .error(weatherArtResourceId)
-                                .into(Target.SIZE_ORIGINAL, Target.SIZE_ORIGINAL).get();
-                    } catch (InterruptedException | ExecutionException e) {
-                        Log.e(LOG_TAG, "Error retrieving large icon from " + weatherArtResourceUrl, e);
-                    }
-                }
-                String description = data.getString(INDEX_WEATHER_DESC);
-                long dateInMillis = data.getLong(INDEX_WEATHER_DATE);
-                String formattedDate = Utility.getFriendlyDayString(
-                        DetailWidgetRemoteViewsService.this, dateInMillis, false);
-                double maxTemp = data.getDouble(INDEX_WEATHER_MAX_TEMP);
-                double minTemp = data.getDouble(INDEX_WEATHER_MIN_TEMP);
-                String formattedMaxTemperature =
-                        Utility.formatTemperature(DetailWidgetRemoteViewsService.this, maxTemp);
-                String formattedMinTemperature =
-                        Utility.formatTemperature(DetailWidgetRemoteViewsService.this, minTemp);
-                if (weatherArtImage != null) {
-                    views.setImageViewBitmap(R.id.widget_icon, weatherArtImage);
+                if (row.weatherArtImage != null) {
+                    views.setImageViewBitmap(R.id.widget_icon, row.weatherArtImage);
                 } else {
-                    views.setImageViewResource(R.id.widget_icon, weatherArtResourceId);
+                    views.setImageViewResource(R.id.widget_icon, row.weatherArtResourceId);
                 }
                 if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.ICE_CREAM_SANDWICH_MR1) {
-                    setRemoteContentDescription(views, description);
+                    setRemoteContentDescription(views, row.description);
                 }
-                views.setTextViewText(R.id.widget_date, formattedDate);
-                views.setTextViewText(R.id.widget_description, description);
-                views.setTextViewText(R.id.widget_high_temperature, formattedMaxTemperature);
-                views.setTextViewText(R.id.widget_low_temperature, formattedMinTemperature);
+                views.setTextViewText(R.id.widget_date, row.formattedDate);
+                views.setTextViewText(R.id.widget_description, row.description);
+                views.setTextViewText(R.id.widget_high_temperature, row.formattedMaxTemperature);
+                views.setTextViewText(R.id.widget_low_temperature, row.formattedMinTemperature);
 
                 final Intent fillInIntent = new Intent();
-                String locationSetting =
-                        Utility.getPreferredLocation(DetailWidgetRemoteViewsService.this);
-                Uri weatherUri = WeatherContract.WeatherEntry.buildWeatherLocationWithDate(
-                        locationSetting,
-                        dateInMillis);
-                fillInIntent.setData(weatherUri);
+                fillInIntent.setData(row.weatherUri);
                 views.setOnClickFillInIntent(R.id.widget_list_item, fillInIntent);
                 return views;
             }
@@ -161,8 +198,9 @@ public class DetailWidgetRemoteViewsService extends RemoteViewsService {
 
             @Override
             public long getItemId(int position) {
-                if (data.moveToPosition(position))
-                    return data.getLong(INDEX_WEATHER_ID);
+                Row[] snapshot = rows;
+                if (position < snapshot.length)
+                    return snapshot[position].id;
                 return position;
             }
 
@@ -27,27 +27,27 @@ import com.example.android.sunshine.app.sync.SunshineSyncAdapter;
 /**
  * Provider for a horizontally expandable widget showing today's weather.
  *
- * Delegates widget updating to {@link TodayWidgetIntentService} to ensure that
- * data retrieval is done on a background thread
+ * Delegates widget updating to {@link WidgetUpdateService} to ensure that
+ * data retrieval is done on a background thread, and shared with the Detail widget
  */
 public class TodayWidgetProvider extends AppWidgetProvider {
 
     @Override
     public void onUpdate(Context context, AppWidgetManager appWidgetManager, int[] appWidgetIds) {
-        context.startService(new Intent(context, TodayWidgetIntentService.class));
+        WidgetUpdateService.requestUpdate(context, appWidgetIds);
     }
 
     @Override
     public void onAppWidgetOptionsChanged(Context context, AppWidgetManager appWidgetManager,
                                           int appWidgetId, Bundle newOptions) {
-        context.startService(new Intent(context, TodayWidgetIntentService.class));
+        WidgetUpdateService.requestUpdate(context, new int[]{appWidgetId});
     }
 
     @Override
     public void onReceive(@NonNull Context context, @NonNull Intent intent) {
         super.onReceive(context, intent);
         if (SunshineSyncAdapter.ACTION_DATA_UPDATED.equals(intent.getAction())) {
-            context.startService(new Intent(context, TodayWidgetIntentService.class));
+            WidgetUpdateService.requestUpdate(context);
         }
     }
 }
@@ -0,0 +1,96 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.widget;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.preference.PreferenceManager;
+
+import com.example.android.sunshine.app.R;
+import com.example.android.sunshine.app.Utility;
+import com.example.android.sunshine.app.data.ForecastRepository;
+import com.example.android.sunshine.app.data.WeatherContract;
+import com.example.android.sunshine.core.Forecast;
+
+import java.util.Arrays;
+
+/**
+ * Immutable copy of the forecast shown by the widgets, read once per update and shared by the
+ * Today and Detail widgets.
+ */
+final class WidgetForecast {
+    final String location;
+    // The day the forecast was read on, which the widgets call "Today"
+    final long today;
+    final long[] dates;
+    final int[] weatherIds;
+    final String[] descriptions;
+    final double[] maxTemps;
+    final double[] minTemps;
+
+    private WidgetForecast(String location, long today, Forecast forecast) {
+        this.location = location;
+        this.today = today;
+        int from = forecast.indexFrom(today);
+        int to = forecast.size;
+        dates = Arrays.copyOfRange(forecast.dates, from, to);
+        weatherIds = Arrays.copyOfRange(forecast.weatherIds, from, to);
+        descriptions = Arrays.copyOfRange(forecast.descriptions, from, to);
+        maxTemps = Arrays.copyOfRange(forecast.maxTemps, from, to);
+        minTemps = Arrays.copyOfRange(forecast.minTemps, from, to);
+    }
+
+    int size() {
+        return dates.length;
+    }
+
+    /**
+     * Today's and all following days' forecast for the preferred location, from the days the
+     * repository keeps in memory. The provider is only read if they changed since.
+     *
+     * @return the forecast, or null if the provider could not be queried
+     */
+    static WidgetForecast query(Context context) {
+        String location = Utility.getPreferredLocation(context);
+        Forecast forecast = ForecastRepository.get(context).getForecast(location);
+        if (forecast == null) {
+            return null;
+        }
+        return new WidgetForecast(location,
+                WeatherContract.normalizeDate(System.currentTimeMillis()), forecast);
+    }
+
+    /**
+     * @return a string that differs whenever anything the widgets display differs, including
+     * the settings the days are formatted with and the day they are named relative to
+     */
+    String contentSignature(Context context) {
+        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(context);
+        StringBuilder sb = new StringBuilder(location)
+                .append('|').append(today)
+                .append('|').append(Utility.isMetric(context))
+                .append('|').append(prefs.getString(context.getString(R.string.pref_art_pack_key),
+                        context.getString(R.string.pref_art_pack_sunshine)));
+        for (int i = 0; i < size(); i++) {
+            sb.append('|').append(dates[i])
+                    .append(',').append(weatherIds[i])
+                    .append(',').append(descriptions[i])
+                    .append(',').append(maxTemps[i])
+                    .append(',').append(minTemps[i]);
+        }
+        return sb.toString();
+    }
+}
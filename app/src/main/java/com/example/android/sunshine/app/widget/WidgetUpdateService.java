@@ -0,0 +1,261 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.widget;
+
+import android.annotation.TargetApi;
+import android.app.IntentService;
+import android.app.PendingIntent;
+import android.appwidget.AppWidgetManager;
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.Intent;
+import android.os.Build;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.support.annotation.VisibleForTesting;
+import android.util.DisplayMetrics;
+import android.util.Log;
+import android.util.SparseArray;
+import android.util.TypedValue;
+import android.widget.RemoteViews;
+
+import com.example.android.sunshine.app.MainActivity;
+import com.example.android.sunshine.app.R;
+import com.example.android.sunshine.app.Utility;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * IntentService which coordinates updates of both the Today and the Detail widgets.
+ *
+ * Update requests arriving in a burst (back-to-back syncs, location changes) are coalesced into
+ * a single pass: the forecast is read once, pushed to every Today widget whose content changed,
+ * and shared with {@link DetailWidgetRemoteViewsService} so the list doesn't query again. A
+ * request starts a short window on the main thread that the following ones join, so a pass
+ * never waits longer than the window however often requests keep arriving, and the worker
+ * never sleeps. Requests still queued behind a pass are dropped by all but the last.
+ */
+public class WidgetUpdateService extends IntentService {
+    private static final String LOG_TAG = WidgetUpdateService.class.getSimpleName();
+
+    // Requests within this long of the first one are folded into a single update
+    private static final long COALESCE_WINDOW_MILLIS = 250;
+
+    private static final Handler sHandler = new Handler(Looper.getMainLooper());
+    // Set while a window is open, until its update is started
+    private static final AtomicBoolean sUpdateScheduled = new AtomicBoolean();
+    // Updates started and not handled yet
+    private static final AtomicInteger sPendingRequests = new AtomicInteger();
+    private static volatile WidgetForecast sLatestForecast;
+
+    // What was last pushed to each widget, so instances whose content is unchanged are skipped.
+    // Guarded by itself.
+    private static final SparseArray<String> sRenderedContent = new SparseArray<>();
+    private static String sRenderedDetailContent;
+
+    public WidgetUpdateService() {
+        super("WidgetUpdateService");
+    }
+
+    /**
+     * Schedules an update of all widgets. Calls made within the coalescing window of the first
+     * one result in a single update, started when the window closes.
+     */
+    public static void requestUpdate(Context context) {
+        final Context appContext = context.getApplicationContext();
+        if (sUpdateScheduled.compareAndSet(false, true)) {
+            sHandler.postDelayed(new Runnable() {
+                @Override
+                public void run() {
+                    sUpdateScheduled.set(false);
+                    startUpdate(appContext);
+                }
+            }, COALESCE_WINDOW_MILLIS);
+        }
+    }
+
+    /**
+     * Same as {@link #requestUpdate(Context)}, but always re-renders the given widgets, e.g.
+     * because they were just added or resized, and starts right away so they don't wait for
+     * the window.
+     */
+    public static void requestUpdate(Context context, int[] appWidgetIds) {
+        synchronized (sRenderedContent) {
+            for (int appWidgetId : appWidgetIds) {
+                sRenderedContent.remove(appWidgetId);
+            }
+        }
+        startUpdate(context);
+    }
+
+    private static void startUpdate(Context context) {
+        sPendingRequests.incrementAndGet();
+        context.startService(new Intent(context, WidgetUpdateService.class));
+    }
+
+    /**
+     * @return the forecast read by the last update, or null if none ran in this process yet
+     */
+    static WidgetForecast getLatestForecast() {
+        return sLatestForecast;
+    }
+
+    /**
+     * @return the high the last update read for the given day, or NaN if it read none
+     */
+    @VisibleForTesting
+    public static double getLatestMaxTemp(long date) {
+        WidgetForecast forecast = sLatestForecast;
+        if (forecast != null) {
+            for (int i = 0; i < forecast.size(); i++) {
+                if (forecast.dates[i] == date) {
+                    return forecast.maxTemps[i];
+                }
+            }
+        }
+        return Double.NaN;
+    }
+
+    @Override
+    protected void onHandleIntent(Intent intent) {
+        if (sPendingRequests.decrementAndGet() > 0) {
+            // A later request is already queued behind us and will do the work
+            return;
+        }
+
+        WidgetForecast forecast = WidgetForecast.query(this);
+        if (forecast == null) {
+            return;
+        }
+        sLatestForecast = forecast;
+
+        AppWidgetManager appWidgetManager = AppWidgetManager.getInstance(this);
+        updateTodayWidgets(appWidgetManager, forecast);
+        updateDetailWidgets(appWidgetManager, forecast);
+    }
+
+    private void updateTodayWidgets(AppWidgetManager appWidgetManager, WidgetForecast forecast) {
+        // Retrieve all of the Today widget ids: these are the widgets we need to update
+        int[] appWidgetIds = appWidgetManager.getAppWidgetIds(new ComponentName(this,
+                TodayWidgetProvider.class));
+        if (appWidgetIds.length == 0 || forecast.size() == 0) {
+            return;
+        }
+
+        // Extract today's weather, shared by all the Today widgets
+        int weatherId = forecast.weatherIds[0];
+        int weatherArtResourceId = Utility.getArtResourceForWeatherCondition(weatherId);
+        String description = forecast.descriptions[0];
+        String formattedMaxTemperature = Utility.formatTemperature(this, forecast.maxTemps[0]);
+        String formattedMinTemperature = Utility.formatTemperature(this, forecast.minTemps[0]);
+
+        int defaultWidth = getResources().getDimensionPixelSize(R.dimen.widget_today_default_width);
+        int largeWidth = getResources().getDimensionPixelSize(R.dimen.widget_today_large_width);
+
+        // Perform this loop procedure for each Today widget
+        for (int appWidgetId : appWidgetIds) {
+            // Find the correct layout based on the widget's width
+            int widgetWidth = getWidgetWidth(appWidgetManager, appWidgetId);
+            int layoutId;
+            if (widgetWidth >= largeWidth) {
+                layoutId = R.layout.widget_today_large;
+            } else if (widgetWidth >= defaultWidth) {
+                layoutId = R.layout.widget_today;
+            } else {
+                layoutId = R.layout.widget_today_small;
+            }
+
+            String content = layoutId + "|" + weatherArtResourceId + "|" + description
+                    + "|" + formattedMaxTemperature + "|" + formattedMinTemperature;
+            synchronized (sRenderedContent) {
+                if (content.equals(sRenderedContent.get(appWidgetId))) {
+                    continue;
+                }
+                sRenderedContent.put(appWidgetId, content);
+            }
+
+            RemoteViews views = new RemoteViews(getPackageName(), layoutId);
+
+            // Add the data to the RemoteViews
+            views.setImageViewResource(R.id.widget_icon, weatherArtResourceId);
+            // Content Descriptions for RemoteViews were only added in ICS MR1
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.ICE_CREAM_SANDWICH_MR1) {
+                setRemoteContentDescription(views, description);
+            }
+            views.setTextViewText(R.id.widget_description, description);
+            views.setTextViewText(R.id.widget_high_temperature, formattedMaxTemperature);
+            views.setTextViewText(R.id.widget_low_temperature, formattedMinTemperature);
+
+            // Create an Intent to launch MainActivity
+            Intent launchIntent = new Intent(this, MainActivity.class);
+            PendingIntent pendingIntent = PendingIntent.getActivity(this, 0, launchIntent, 0);
+            views.setOnClickPendingIntent(R.id.widget, pendingIntent);
+
+            // Tell the AppWidgetManager to perform an update on the current app widget
+            appWidgetManager.updateAppWidget(appWidgetId, views);
+        }
+    }
+
+    @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+    private void updateDetailWidgets(AppWidgetManager appWidgetManager, WidgetForecast forecast) {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.HONEYCOMB) {
+            return;
+        }
+        int[] appWidgetIds = appWidgetManager.getAppWidgetIds(new ComponentName(this,
+                DetailWidgetProvider.class));
+        if (appWidgetIds.length == 0) {
+            return;
+        }
+        // All Detail widgets show the same list, so one comparison covers every instance
+        String content = forecast.contentSignature(this);
+        if (content.equals(sRenderedDetailContent)) {
+            Log.d(LOG_TAG, "Detail widget content unchanged, skipping update");
+            return;
+        }
+        sRenderedDetailContent = content;
+        appWidgetManager.notifyAppWidgetViewDataChanged(appWidgetIds, R.id.widget_list);
+    }
+
+    private int getWidgetWidth(AppWidgetManager appWidgetManager, int appWidgetId) {
+        // Prior to Jelly Bean, widgets were always their default size
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN) {
+            return getResources().getDimensionPixelSize(R.dimen.widget_today_default_width);
+        }
+        // For Jelly Bean and higher devices, widgets can be resized - the current size can be
+        // retrieved from the newly added App Widget Options
+        return getWidgetWidthFromOptions(appWidgetManager, appWidgetId);
+    }
+
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+    private int getWidgetWidthFromOptions(AppWidgetManager appWidgetManager, int appWidgetId) {
+        Bundle options = appWidgetManager.getAppWidgetOptions(appWidgetId);
+        if (options.containsKey(AppWidgetManager.OPTION_APPWIDGET_MIN_WIDTH)) {
+            int minWidthDp = options.getInt(AppWidgetManager.OPTION_APPWIDGET_MIN_WIDTH);
+            // The width returned is in dp, but we'll convert it to pixels to match the other widths
+            DisplayMetrics displayMetrics = getResources().getDisplayMetrics();
+            return (int) TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_DIP, minWidthDp,
+                    displayMetrics);
+        }
+        return  getResources().getDimensionPixelSize(R.dimen.widget_today_default_width);
+    }
+
+    @TargetApi(Build.VERSION_CODES.ICE_CREAM_SANDWICH_MR1)
+    private void setRemoteContentDescription(RemoteViews views, String description) {
+        views.setContentDescription(R.id.widget_icon, description);
+    }
+}
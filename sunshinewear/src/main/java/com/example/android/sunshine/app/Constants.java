@@ -6,15 +6,6 @@ package com.example.android.sunshine.app;
 
 public class Constants {
 
-    public static final class SP {
-        private static final String CLASS_NAME = SP.class.getSimpleName();
-        public static final String
-                WEATHER_HIGH_I = CLASS_NAME+".WEATHER_HIGH_I",
-                WEATHER_LOW_I = CLASS_NAME + ".WEATHER_LOW_I",
-                WEATHER_ID_L = CLASS_NAME + ".WEATHER_ID_L";
-
-    }
-
     public static final class Data{
         private static final String CLASS_NAME = Data.class.getSimpleName();
 
@@ -22,7 +13,11 @@ public class Constants {
                 PATH = "/path",
                 WEATHER_ID = "weather_id",
                 WEATHER_TEMP_HIGH = "weather_temp_high",
-                WEATHER_TEMP_LOW = "weather_temp_low";
+                WEATHER_TEMP_LOW = "weather_temp_low",
+                WEATHER_DATES = "weather_dates",
+                WEATHER_IDS = "weather_ids",
+                WEATHER_TEMP_HIGHS = "weather_temp_highs",
+                WEATHER_TEMP_LOWS = "weather_temp_lows";
 
     }
 
@@ -0,0 +1,175 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.util.Log;
+
+import com.example.android.sunshine.core.DayMath;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.TimeZone;
+
+/**
+ * Fixed-size ring buffer holding the last forecasts received from the handheld. The buffer lives
+ * in a memory-mapped file, so the watch face can keep showing the right day's weather across
+ * midnight and while the phone is out of reach, without touching the Bluetooth link.
+ */
+public class ForecastHistoryStore {
+
+    private static final String TAG = ForecastHistoryStore.class.getSimpleName();
+
+    private static final String FILE_NAME = "forecast_history.bin";
+
+    /**
+     * Enough slots for a few full pushes of the handheld's 14 day window.
+     */
+    public static final int DEFAULT_CAPACITY = 64;
+
+    private static final int MAGIC = 0x53554e31;
+
+    // Header: magic, capacity, next slot to write, number of valid records
+    private static final int OFFSET_MAGIC = 0;
+    private static final int OFFSET_CAPACITY = 4;
+    private static final int OFFSET_NEXT = 8;
+    private static final int OFFSET_COUNT = 12;
+    private static final int HEADER_SIZE = 16;
+
+    // Record: received at (long), julian day, weather id, high, low (ints)
+    private static final int RECORD_SIZE = 8 + 4 + 4 + 4 + 4;
+
+    private final RandomAccessFile mFile;
+    private final MappedByteBuffer mBuffer;
+    private final int mCapacity;
+
+    /**
+     * A single day's forecast as it was received from the handheld.
+     */
+    public static final class Entry {
+        public final long receivedAt;
+        public final int julianDay;
+        public final int weatherId;
+        public final int high;
+        public final int low;
+
+        Entry(long receivedAt, int julianDay, int weatherId, int high, int low) {
+            this.receivedAt = receivedAt;
+            this.julianDay = julianDay;
+            this.weatherId = weatherId;
+            this.high = high;
+            this.low = low;
+        }
+    }
+
+    public static ForecastHistoryStore open(Context context) throws IOException {
+        return new ForecastHistoryStore(new File(context.getFilesDir(), FILE_NAME), DEFAULT_CAPACITY);
+    }
+
+    ForecastHistoryStore(File file, int capacity) throws IOException {
+        mCapacity = capacity;
+        long size = HEADER_SIZE + (long) capacity * RECORD_SIZE;
+        mFile = new RandomAccessFile(file, "rw");
+        boolean fresh = mFile.length() != size;
+        if (fresh) {
+            mFile.setLength(size);
+        }
+        mBuffer = mFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+
+        // A file of the wrong size or from another layout is simply started over, it only
+        // holds a copy of what the handheld will send again on its next sync.
+        if (fresh || mBuffer.getInt(OFFSET_MAGIC) != MAGIC
+                || mBuffer.getInt(OFFSET_CAPACITY) != capacity) {
+            Log.d(TAG, "Initializing forecast history at " + file);
+            mBuffer.putInt(OFFSET_MAGIC, MAGIC);
+            mBuffer.putInt(OFFSET_CAPACITY, capacity);
+            mBuffer.putInt(OFFSET_NEXT, 0);
+            mBuffer.putInt(OFFSET_COUNT, 0);
+            mBuffer.force();
+        }
+    }
+
+    /**
+     * Appends a day's forecast, overwriting the oldest record once the buffer is full. Call
+     * {@link #flush()} after appending a batch.
+     *
+     * @param receivedAt time the forecast arrived from the handheld
+     * @param dateMillis the day the forecast is for, as stored by the handheld
+     */
+    public synchronized void append(long receivedAt, long dateMillis, int weatherId,
+                                    int high, int low) {
+        int next = mBuffer.getInt(OFFSET_NEXT);
+        int count = mBuffer.getInt(OFFSET_COUNT);
+
+        int offset = recordOffset(next);
+        mBuffer.putLong(offset, receivedAt);
+        mBuffer.putInt(offset + 8, DayMath.getJulianDay(dateMillis, TimeZone.getDefault()));
+        mBuffer.putInt(offset + 12, weatherId);
+        mBuffer.putInt(offset + 16, high);
+        mBuffer.putInt(offset + 20, low);
+
+        mBuffer.putInt(OFFSET_NEXT, (next + 1) % mCapacity);
+        if (count < mCapacity) {
+            mBuffer.putInt(OFFSET_COUNT, count + 1);
+        }
+    }
+
+    /**
+     * Writes pending records through to storage so they survive the watch face being killed.
+     */
+    public synchronized void flush() {
+        mBuffer.force();
+    }
+
+    /**
+     * @return the most recently received forecast for the given Julian day, or null if none of
+     * the stored forecasts cover it.
+     */
+    public synchronized Entry findForDay(int julianDay) {
+        int next = mBuffer.getInt(OFFSET_NEXT);
+        int count = mBuffer.getInt(OFFSET_COUNT);
+        // Walk from newest to oldest so a newer push always wins over an older one
+        for (int i = 1; i <= count; i++) {
+            int offset = recordOffset((next - i + mCapacity) % mCapacity);
+            if (mBuffer.getInt(offset + 8) == julianDay) {
+                return new Entry(
+                        mBuffer.getLong(offset),
+                        julianDay,
+                        mBuffer.getInt(offset + 12),
+                        mBuffer.getInt(offset + 16),
+                        mBuffer.getInt(offset + 20));
+            }
+        }
+        return null;
+    }
+
+    public synchronized void close() {
+        mBuffer.force();
+        try {
+            mFile.close();
+        } catch (IOException e) {
+            Log.e(TAG, "Error closing forecast history", e);
+        }
+    }
+
+    private int recordOffset(int slot) {
+        return HEADER_SIZE + slot * RECORD_SIZE;
+    }
+}
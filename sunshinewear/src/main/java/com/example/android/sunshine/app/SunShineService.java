@@ -20,7 +20,6 @@ import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
 import android.content.IntentFilter;
-import android.content.SharedPreferences;
 import android.content.res.Resources;
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
@@ -32,7 +31,6 @@ import android.graphics.Typeface;
 import android.os.Bundle;
 import android.os.Handler;
 import android.os.Message;
-import android.preference.PreferenceManager;
 import android.support.annotation.Nullable;
 import android.support.v4.content.ContextCompat;
 import android.support.wearable.watchface.CanvasWatchFaceService;
@@ -43,6 +41,8 @@ import android.view.WindowInsets;
 import android.widget.Toast;
 
 import com.example.android.R;
+import com.example.android.sunshine.core.DayMath;
+import com.example.android.sunshine.core.WeatherConditions;
 import com.google.android.gms.common.api.GoogleApiClient;
 import com.google.android.gms.wearable.DataApi;
 import com.google.android.gms.wearable.DataEvent;
@@ -52,6 +52,7 @@ import com.google.android.gms.wearable.DataMap;
 import com.google.android.gms.wearable.DataMapItem;
 import com.google.android.gms.wearable.Wearable;
 
+import java.io.IOException;
 import java.lang.ref.WeakReference;
 import java.text.SimpleDateFormat;
 import java.util.Calendar;
@@ -136,21 +137,28 @@ public class SunShineService extends CanvasWatchFaceService {
         boolean mLowBitAmbient;
 
 
-        /**
-         * Shared preference to store the weather information locally
-         */
         private SimpleDateFormat mDateFormat;
-        private SharedPreferences mSharedPreferences;
         private GoogleApiClient mGoogleApiClient;
+
+        /**
+         * Local history of the forecasts received from the handheld
+         */
+        private ForecastHistoryStore mHistoryStore;
+        private int mLoadedJulianDay;
+        private boolean mHasWeather;
         private int mTempHigh, mTempLow;
-        private long mWeatherId;
+        private int mWeatherId;
         private Bitmap mWeatherConditionBitmap;
 
         @Override
         public void onCreate(SurfaceHolder holder) {
             super.onCreate(holder);
 
-            mSharedPreferences = PreferenceManager.getDefaultSharedPreferences(SunShineService.this);
+            try {
+                mHistoryStore = ForecastHistoryStore.open(SunShineService.this);
+            } catch (IOException e) {
+                Log.e(TAG, "Error opening forecast history", e);
+            }
             mGoogleApiClient = new GoogleApiClient.Builder(SunShineService.this)
                     .addApi(Wearable.API)
                     .addConnectionCallbacks(this)
@@ -212,6 +220,9 @@ public class SunShineService extends CanvasWatchFaceService {
         @Override
         public void onDestroy() {
             mUpdateTimeHandler.removeMessages(MSG_UPDATE_TIME);
+            if (mHistoryStore != null) {
+                mHistoryStore.close();
+            }
             super.onDestroy();
         }
 
@@ -234,6 +245,7 @@ public class SunShineService extends CanvasWatchFaceService {
 
                 // Update time zone in case it changed while we weren't visible.
                 mCalendar.setTimeZone(TimeZone.getDefault());
+                loadDataIfDayChanged();
                 invalidate();
             } else {
                 unregisterReceiver();
@@ -287,6 +299,7 @@ public class SunShineService extends CanvasWatchFaceService {
         @Override
         public void onTimeTick() {
             super.onTimeTick();
+            loadDataIfDayChanged();
             invalidate();
         }
 
@@ -375,7 +388,7 @@ public class SunShineService extends CanvasWatchFaceService {
 
                 canvas.drawLine((float) 0.75 * halfWidth, hrY, (float) 1.25 * halfWidth, hrY, mLightTextPaint);
 
-                if (mTempHigh != 0 && mTempLow != 0 && mWeatherConditionBitmap != null) {
+                if (mHasWeather && mWeatherConditionBitmap != null) {
 
 
                     canvas.drawBitmap(
@@ -478,41 +491,67 @@ public class SunShineService extends CanvasWatchFaceService {
                 Log.d(TAG, "Data changed item: "+item.getUri());
                 if (Constants.Data.PATH.compareTo(item.getUri().getPath()) == 0) {
                     DataMap map = DataMapItem.fromDataItem(item).getDataMap();
-                    double tempHigh = map.getDouble(Constants.Data.WEATHER_TEMP_HIGH);
-                    double tempLow = map.getDouble(Constants.Data.WEATHER_TEMP_LOW);
-                    long id = map.getLong(Constants.Data.WEATHER_ID);
-
-                    Log.d(TAG, "High, low, id: "+tempHigh+","+tempLow+","+id);
-
-                    saveData((int) tempHigh, (int) tempLow, id);
+                    saveData(map);
                     loadData();
                     invalidate();
                 }
             }
         }
 
+        /**
+         * Reloads the forecast shown once the local day rolls over, e.g. at midnight.
+         */
+        private void loadDataIfDayChanged() {
+            int today = DayMath.getJulianDay(
+                    System.currentTimeMillis(), TimeZone.getDefault());
+            if (today != mLoadedJulianDay) {
+                loadData();
+            }
+        }
+
         private void loadData() {
-            mTempHigh = mSharedPreferences.getInt(Constants.SP.WEATHER_HIGH_I, 0);
-            mTempLow = mSharedPreferences.getInt(Constants.SP.WEATHER_LOW_I, 0);
-            mWeatherId = mSharedPreferences.getLong(Constants.SP.WEATHER_ID_L, 0);
+            mLoadedJulianDay = DayMath.getJulianDay(
+                    System.currentTimeMillis(), TimeZone.getDefault());
+
+            ForecastHistoryStore.Entry entry = mHistoryStore != null
+                    ? mHistoryStore.findForDay(mLoadedJulianDay)
+                    : null;
+            if (entry == null) {
+                mHasWeather = false;
+                return;
+            }
+            mHasWeather = true;
+            mTempHigh = entry.high;
+            mTempLow = entry.low;
+            mWeatherId = entry.weatherId;
 
             int drawableResId = 0;
 
-            int choice = (int) (mWeatherId / 100);
-            if (choice == 2) {
-                drawableResId = R.drawable.ic_storm;
-            } else if (choice == 3) {
-                drawableResId = R.drawable.ic_light_rain;
-            } else if (choice == 5) {
-                drawableResId = R.drawable.ic_rain;
-            } else if (choice == 6) {
-                drawableResId = R.drawable.ic_snow;
-            } else if (mWeatherId == 800) {
-                drawableResId = R.drawable.ic_clear;
-            } else if (mWeatherId == 801) {
-                drawableResId = R.drawable.ic_light_clouds;
-            } else if (choice == 8) {
-                drawableResId = R.drawable.ic_cloudy;
+            switch (WeatherConditions.getCondition(mWeatherId)) {
+                case WeatherConditions.STORM:
+                    drawableResId = R.drawable.ic_storm;
+                    break;
+                case WeatherConditions.LIGHT_RAIN:
+                    drawableResId = R.drawable.ic_light_rain;
+                    break;
+                case WeatherConditions.RAIN:
+                    drawableResId = R.drawable.ic_rain;
+                    break;
+                case WeatherConditions.SNOW:
+                    drawableResId = R.drawable.ic_snow;
+                    break;
+                case WeatherConditions.FOG:
+                    drawableResId = R.drawable.ic_fog;
+                    break;
+                case WeatherConditions.CLEAR:
+                    drawableResId = R.drawable.ic_clear;
+                    break;
+                case WeatherConditions.LIGHT_CLOUDS:
+                    drawableResId = R.drawable.ic_light_clouds;
+                    break;
+                case WeatherConditions.CLOUDS:
+                    drawableResId = R.drawable.ic_cloudy;
+                    break;
             }
 
             if (drawableResId != 0) {
@@ -522,12 +561,31 @@ public class SunShineService extends CanvasWatchFaceService {
 
         }
 
-        private void saveData(int tempHigh, int tempLow, long id) {
-            SharedPreferences.Editor editor = mSharedPreferences.edit();
-            editor.putInt(Constants.SP.WEATHER_HIGH_I, tempHigh);
-            editor.putInt(Constants.SP.WEATHER_LOW_I, tempLow);
-            editor.putLong(Constants.SP.WEATHER_ID_L, id);
-            editor.apply();
+        private void saveData(DataMap map) {
+            if (mHistoryStore == null) {
+                return;
+            }
+            long receivedAt = System.currentTimeMillis();
+            long[] dates = map.getLongArray(Constants.Data.WEATHER_DATES);
+            if (dates != null) {
+                long[] ids = map.getLongArray(Constants.Data.WEATHER_IDS);
+                float[] highs = map.getFloatArray(Constants.Data.WEATHER_TEMP_HIGHS);
+                float[] lows = map.getFloatArray(Constants.Data.WEATHER_TEMP_LOWS);
+                Log.d(TAG, "Received " + dates.length + " days of weather");
+                for (int i = 0; i < dates.length; i++) {
+                    mHistoryStore.append(receivedAt, dates[i], (int) ids[i],
+                            (int) highs[i], (int) lows[i]);
+                }
+            } else {
+                // Handheld without the multi-day payload, only today's weather is known
+                double tempHigh = map.getDouble(Constants.Data.WEATHER_TEMP_HIGH);
+                double tempLow = map.getDouble(Constants.Data.WEATHER_TEMP_LOW);
+                long id = map.getLong(Constants.Data.WEATHER_ID);
+                Log.d(TAG, "High, low, id: "+tempHigh+","+tempLow+","+id);
+                mHistoryStore.append(receivedAt, receivedAt, (int) id,
+                        (int) tempHigh, (int) tempLow);
+            }
+            mHistoryStore.flush();
         }
     }
 }
@@ -0,0 +1,107 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.core;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Calendar;
+import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-call cost of normalizing the dates of a forecast, as the provider's insert loop does. The
+ * Calendar version stands in for android.text.format.Time, which set a new object up for every
+ * call the same way.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class DayMathBenchmark {
+
+    private static final int DAYS = 14;
+
+    @Param({"America/New_York", "Australia/Lord_Howe"})
+    public String zoneId;
+
+    private TimeZone mZone;
+    private ZoneDays mZoneDays;
+    private final long[] mDates = new long[DAYS];
+
+    @Setup
+    public void setUp() {
+        mZone = TimeZone.getTimeZone(zoneId);
+        mZoneDays = ZoneDays.forZone(mZone);
+        // Two weeks spanning the spring DST change, at whatever time of day the parser ran
+        long start = DayMath.normalizeDate(1457222400000L, mZone) + 13 * 60 * 60 * 1000;
+        for (int i = 0; i < DAYS; i++) {
+            mDates[i] = start + i * DayMath.DAY_IN_MILLIS;
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(DAYS)
+    public long calendar() {
+        long sum = 0;
+        for (long date : mDates) {
+            Calendar calendar = Calendar.getInstance(mZone);
+            calendar.setTimeInMillis(date);
+            calendar.set(Calendar.HOUR_OF_DAY, 0);
+            calendar.set(Calendar.MINUTE, 0);
+            calendar.set(Calendar.SECOND, 0);
+            calendar.set(Calendar.MILLISECOND, 0);
+            sum += calendar.getTimeInMillis();
+        }
+        return sum;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(DAYS)
+    public long dayMath() {
+        long sum = 0;
+        for (long date : mDates) {
+            sum += DayMath.normalizeDate(date, mZone);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(DAYS)
+    public long zoneDays() {
+        long sum = 0;
+        for (long date : mDates) {
+            sum += mZoneDays.normalizeDate(date);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(DAYS)
+    public long defaultZoneDays() {
+        long sum = 0;
+        for (long date : mDates) {
+            sum += ZoneDays.forDefaultZone().normalizeDate(date);
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.core;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parsing a sync's worth of forecast, and mapping its weather ids to conditions.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ForecastParserBenchmark {
+
+    @Param({"14"})
+    public int days;
+
+    private String mJson;
+    private TimeZone mZone;
+    private long mNow;
+    private int[] mWeatherIds;
+
+    @Setup
+    public void setUp() {
+        mJson = ForecastParserTest.createForecastJson(days);
+        mZone = TimeZone.getTimeZone("Europe/London");
+        mNow = System.currentTimeMillis();
+        mWeatherIds = new int[]{211, 321, 502, 511, 615, 741, 781, 800, 801, 804};
+    }
+
+    @Benchmark
+    public Forecast parseDaily() throws Exception {
+        return ForecastParser.parseDaily(mJson, mNow, mZone);
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public int getConditions() {
+        int sum = 0;
+        for (int weatherId : mWeatherIds) {
+            sum += WeatherConditions.getCondition(weatherId);
+        }
+        return sum;
+    }
+}
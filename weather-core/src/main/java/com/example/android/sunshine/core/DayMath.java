@@ -0,0 +1,78 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.core;
+
+import java.util.TimeZone;
+
+/**
+ * Day arithmetic on millisecond instants, with the same results as android.text.format.Time's
+ * Julian days. Forecast dates are stored as the first instant of their local day, which is
+ * what {@link #normalizeDate} returns.
+ */
+public final class DayMath {
+
+    public static final long DAY_IN_MILLIS = 1000 * 60 * 60 * 24;
+    // Julian day of the epoch, matching android.text.format.Time.EPOCH_JULIAN_DAY
+    public static final int EPOCH_JULIAN_DAY = 2440588;
+
+    private DayMath() {
+    }
+
+    /**
+     * @param gmtoffSeconds the zone's offset from UTC at that instant, as in Time.gmtoff
+     */
+    public static int getJulianDay(long millis, long gmtoffSeconds) {
+        long local = millis + gmtoffSeconds * 1000;
+        long day = local / DAY_IN_MILLIS;
+        if (local < 0 && local % DAY_IN_MILLIS != 0) {
+            day--;
+        }
+        return (int) day + EPOCH_JULIAN_DAY;
+    }
+
+    public static int getJulianDay(long millis, TimeZone zone) {
+        return getJulianDay(millis, zone.getOffset(millis) / 1000);
+    }
+
+    /**
+     * @return the first instant of the Julian day in the zone: local midnight, or the end of
+     * the DST change if the clocks skipped midnight that day
+     */
+    public static long getStartOfJulianDay(int julianDay, TimeZone zone) {
+        long utcMidnight = (julianDay - EPOCH_JULIAN_DAY) * DAY_IN_MILLIS;
+        // The offset at local midnight can differ from the one at UTC midnight, so it takes
+        // a second pass to settle
+        long start = utcMidnight - zone.getOffset(utcMidnight);
+        start = utcMidnight - zone.getOffset(start);
+        if (getJulianDay(start, zone) != julianDay) {
+            // The offset after a change that skipped midnight lands on the previous day
+            start = utcMidnight - zone.getOffset(start);
+        }
+        return start;
+    }
+
+    public static long normalizeDate(long millis, TimeZone zone) {
+        return getStartOfJulianDay(getJulianDay(millis, zone), zone);
+    }
+
+    /**
+     * Moves a normalized date by whole days, staying on the start of the day across DST
+     * changes.
+     */
+    public static long addDays(long normalizedDate, int days, TimeZone zone) {
+        return getStartOfJulianDay(getJulianDay(normalizedDate, zone) + days, zone);
+    }
+}
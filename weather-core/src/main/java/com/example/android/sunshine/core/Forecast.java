@@ -0,0 +1,140 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.core;
+
+import java.util.Arrays;
+
+/**
+ * A location's daily forecast, each value held in a primitive array indexed by day, oldest
+ * first. The arrays are shared, not copied, and must not be modified.
+ *
+ * Values are doubles, not floats: the weather table stores them as REAL, and every other path
+ * reads and writes them as doubles (Cursor.getDouble, ContentValues, the patch JSON). Keeping
+ * one precision throughout means a day compares equal to itself whichever path wrote it, which
+ * ForecastPatch.diff relies on to rewrite only the days that changed. Floats would save a few
+ * hundred bytes per forecast, and only the watch wants them.
+ */
+public final class Forecast {
+
+    public static final int STATUS_OK = 0;
+    // The server couldn't be reached, or answered with an error
+    public static final int STATUS_SERVER_DOWN = 1;
+    // The server doesn't know the location
+    public static final int STATUS_INVALID_LOCATION = 2;
+
+    public final int status;
+    public final String cityName;
+    public final double latitude;
+    public final double longitude;
+
+    public final int size;
+    // Start of each day, as returned by DayMath.normalizeDate
+    public final long[] dates;
+    public final int[] weatherIds;
+    // Interned, so repeated descriptions share one String
+    public final String[] descriptions;
+    public final double[] minTemps;
+    public final double[] maxTemps;
+    public final double[] humidities;
+    public final double[] pressures;
+    public final double[] windSpeeds;
+    public final double[] degrees;
+
+    public Forecast(String cityName, double latitude, double longitude, long[] dates,
+                    int[] weatherIds, String[] descriptions, double[] minTemps,
+                    double[] maxTemps, double[] humidities, double[] pressures,
+                    double[] windSpeeds, double[] degrees) {
+        this(STATUS_OK, cityName, latitude, longitude, dates, weatherIds, descriptions,
+                minTemps, maxTemps, humidities, pressures, windSpeeds, degrees);
+    }
+
+    private Forecast(int status, String cityName, double latitude, double longitude,
+                     long[] dates, int[] weatherIds, String[] descriptions, double[] minTemps,
+                     double[] maxTemps, double[] humidities, double[] pressures,
+                     double[] windSpeeds, double[] degrees) {
+        this.status = status;
+        this.cityName = cityName;
+        this.latitude = latitude;
+        this.longitude = longitude;
+        this.size = dates.length;
+        this.dates = dates;
+        this.weatherIds = weatherIds;
+        this.descriptions = descriptions;
+        this.minTemps = minTemps;
+        this.maxTemps = maxTemps;
+        this.humidities = humidities;
+        this.pressures = pressures;
+        this.windSpeeds = windSpeeds;
+        this.degrees = degrees;
+    }
+
+    /**
+     * A forecast without days, for a request that failed.
+     */
+    public static Forecast error(int status) {
+        return new Forecast(status, null, 0, 0, new long[0], new int[0], new String[0],
+                new double[0], new double[0], new double[0], new double[0], new double[0],
+                new double[0]);
+    }
+
+    /**
+     * Finds a day, as {@link Arrays#binarySearch(long[], long)} does.
+     *
+     * @return the day's index if there is one, otherwise (-(insertion point) - 1), where the
+     * insertion point is the index of the first day after the date
+     */
+    public int indexOf(long date) {
+        return Arrays.binarySearch(dates, date);
+    }
+
+    /**
+     * @return the index of the first day on or after the date, or {@link #size} if there is none
+     */
+    public int indexFrom(long date) {
+        int index = indexOf(date);
+        return index >= 0 ? index : -index - 1;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof Forecast)) {
+            return false;
+        }
+        Forecast other = (Forecast) o;
+        return status == other.status
+                && (cityName == null ? other.cityName == null : cityName.equals(other.cityName))
+                && Double.compare(latitude, other.latitude) == 0
+                && Double.compare(longitude, other.longitude) == 0
+                && Arrays.equals(dates, other.dates)
+                && Arrays.equals(weatherIds, other.weatherIds)
+                && Arrays.equals(descriptions, other.descriptions)
+                && Arrays.equals(minTemps, other.minTemps)
+                && Arrays.equals(maxTemps, other.maxTemps)
+                && Arrays.equals(humidities, other.humidities)
+                && Arrays.equals(pressures, other.pressures)
+                && Arrays.equals(windSpeeds, other.windSpeeds)
+                && Arrays.equals(degrees, other.degrees);
+    }
+
+    @Override
+    public int hashCode() {
+        // The dates and conditions tell most forecasts apart
+        return 31 * Arrays.hashCode(dates) + Arrays.hashCode(weatherIds);
+    }
+}
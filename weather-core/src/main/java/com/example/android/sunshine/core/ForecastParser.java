@@ -0,0 +1,151 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.core;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.TimeZone;
+
+/**
+ * Parses OpenWeatherMap's daily forecast.
+ */
+public final class ForecastParser {
+
+    private static final int HTTP_OK = 200;
+    private static final int HTTP_NOT_FOUND = 404;
+
+    // These are the names of the JSON objects that need to be extracted.
+
+    // Location information
+    private static final String OWM_CITY = "city";
+    private static final String OWM_CITY_NAME = "name";
+    private static final String OWM_COORD = "coord";
+
+    // Location coordinate
+    private static final String OWM_LATITUDE = "lat";
+    private static final String OWM_LONGITUDE = "lon";
+
+    // Weather information.  Each day's forecast info is an element of the "list" array.
+    private static final String OWM_LIST = "list";
+
+    private static final String OWM_PRESSURE = "pressure";
+    private static final String OWM_HUMIDITY = "humidity";
+    private static final String OWM_WINDSPEED = "speed";
+    private static final String OWM_WIND_DIRECTION = "deg";
+
+    // All temperatures are children of the "temp" object.
+    private static final String OWM_TEMPERATURE = "temp";
+    private static final String OWM_MAX = "max";
+    private static final String OWM_MIN = "min";
+
+    private static final String OWM_WEATHER = "weather";
+    private static final String OWM_DESCRIPTION = "main";
+    private static final String OWM_WEATHER_ID = "id";
+
+    private static final String OWM_MESSAGE_CODE = "cod";
+
+    private ForecastParser() {
+    }
+
+    /**
+     * Takes the String representing the complete forecast in JSON Format and pulls out the
+     * days. OpenWeatherMap sends them in order, starting with the current local day, so they
+     * are dated from the day it is now in the zone.
+     *
+     * @param nowMillis the current time
+     * @param zone      the zone the days are dated in
+     */
+    public static Forecast parseDaily(String forecastJsonStr, long nowMillis, TimeZone zone)
+            throws JSONException {
+        JSONObject forecastJson = new JSONObject(forecastJsonStr);
+
+        // do we have an error?
+        if (forecastJson.has(OWM_MESSAGE_CODE)) {
+            int errorCode = forecastJson.getInt(OWM_MESSAGE_CODE);
+
+            switch (errorCode) {
+                case HTTP_OK:
+                    break;
+                case HTTP_NOT_FOUND:
+                    return Forecast.error(Forecast.STATUS_INVALID_LOCATION);
+                default:
+                    return Forecast.error(Forecast.STATUS_SERVER_DOWN);
+            }
+        }
+
+        JSONArray weatherArray = forecastJson.getJSONArray(OWM_LIST);
+
+        JSONObject cityJson = forecastJson.getJSONObject(OWM_CITY);
+        String cityName = cityJson.getString(OWM_CITY_NAME);
+
+        JSONObject cityCoord = cityJson.getJSONObject(OWM_COORD);
+        double cityLatitude = cityCoord.getDouble(OWM_LATITUDE);
+        double cityLongitude = cityCoord.getDouble(OWM_LONGITUDE);
+
+        int size = weatherArray.length();
+        long[] dates = new long[size];
+        int[] weatherIds = new int[size];
+        String[] descriptions = new String[size];
+        double[] minTemps = new double[size];
+        double[] maxTemps = new double[size];
+        double[] humidities = new double[size];
+        double[] pressures = new double[size];
+        double[] windSpeeds = new double[size];
+        double[] degrees = new double[size];
+
+        // A forecast only uses a handful of descriptions, so a linear search interns them
+        String[] distinctDescriptions = new String[size];
+        int distinctCount = 0;
+
+        int julianStartDay = DayMath.getJulianDay(nowMillis, zone);
+        for (int i = 0; i < size; i++) {
+            // Get the JSON object representing the day
+            JSONObject dayForecast = weatherArray.getJSONObject(i);
+
+            dates[i] = DayMath.getStartOfJulianDay(julianStartDay + i, zone);
+            pressures[i] = dayForecast.getDouble(OWM_PRESSURE);
+            humidities[i] = dayForecast.getInt(OWM_HUMIDITY);
+            windSpeeds[i] = dayForecast.getDouble(OWM_WINDSPEED);
+            degrees[i] = dayForecast.getDouble(OWM_WIND_DIRECTION);
+
+            // Description is in a child array called "weather", which is 1 element long.
+            // That element also contains a weather code.
+            JSONObject weatherObject =
+                    dayForecast.getJSONArray(OWM_WEATHER).getJSONObject(0);
+            weatherIds[i] = weatherObject.getInt(OWM_WEATHER_ID);
+            String description = weatherObject.getString(OWM_DESCRIPTION);
+            int distinct = 0;
+            while (distinct < distinctCount && !distinctDescriptions[distinct].equals(description)) {
+                distinct++;
+            }
+            if (distinct == distinctCount) {
+                distinctDescriptions[distinctCount++] = description;
+            }
+            descriptions[i] = distinctDescriptions[distinct];
+
+            // Temperatures are in a child object called "temp".  Try not to name variables
+            // "temp" when working with temperature.  It confuses everybody.
+            JSONObject temperatureObject = dayForecast.getJSONObject(OWM_TEMPERATURE);
+            maxTemps[i] = temperatureObject.getDouble(OWM_MAX);
+            minTemps[i] = temperatureObject.getDouble(OWM_MIN);
+        }
+
+        return new Forecast(cityName, cityLatitude, cityLongitude, dates, weatherIds,
+                descriptions, minTemps, maxTemps, humidities, pressures, windSpeeds, degrees);
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.core;
+
+/**
+ * The conditions OpenWeatherMap weather ids are drawn as. Each app maps a condition to its own
+ * icons and art, so both show the same condition for the same id.
+ */
+public final class WeatherConditions {
+
+    public static final int UNKNOWN = -1;
+    public static final int STORM = 0;
+    public static final int LIGHT_RAIN = 1;
+    public static final int RAIN = 2;
+    public static final int SNOW = 3;
+    public static final int FOG = 4;
+    public static final int CLEAR = 5;
+    public static final int LIGHT_CLOUDS = 6;
+    public static final int CLOUDS = 7;
+
+    // Names of the conditions in art pack URLs, indexed by condition
+    private static final String[] ART_NAMES = {
+            "storm", "light_rain", "rain", "snow", "fog", "clear", "light_clouds", "clouds"
+    };
+
+    // Weather ids are three digits, so every condition is looked up rather than worked out
+    private static final int MAX_WEATHER_ID = 999;
+    private static final byte[] sConditions = new byte[MAX_WEATHER_ID + 1];
+
+    static {
+        for (int weatherId = 0; weatherId <= MAX_WEATHER_ID; weatherId++) {
+            sConditions[weatherId] = (byte) classify(weatherId);
+        }
+    }
+
+    private WeatherConditions() {
+    }
+
+    /**
+     * @return one of the conditions above, or {@link #UNKNOWN} if the id isn't drawn
+     */
+    public static int getCondition(int weatherId) {
+        if (weatherId < 0 || weatherId > MAX_WEATHER_ID) {
+            return UNKNOWN;
+        }
+        return sConditions[weatherId];
+    }
+
+    /**
+     * @return the condition's name in art pack URLs, or null for {@link #UNKNOWN}
+     */
+    public static String getArtName(int condition) {
+        return condition == UNKNOWN ? null : ART_NAMES[condition];
+    }
+
+    private static int classify(int weatherId) {
+        // Based on weather code data found at:
+        // http://bugs.openweathermap.org/projects/api/wiki/Weather_Condition_Codes
+        if (weatherId >= 200 && weatherId <= 232) {
+            return STORM;
+        } else if (weatherId >= 300 && weatherId <= 321) {
+            return LIGHT_RAIN;
+        } else if (weatherId >= 500 && weatherId <= 504) {
+            return RAIN;
+        } else if (weatherId == 511) {
+            return SNOW;
+        } else if (weatherId >= 520 && weatherId <= 531) {
+            return RAIN;
+        } else if (weatherId >= 600 && weatherId <= 622) {
+            return SNOW;
+        } else if (weatherId >= 701 && weatherId <= 761) {
+            return FOG;
+        } else if (weatherId == 781) {
+            return STORM;
+        } else if (weatherId == 800) {
+            return CLEAR;
+        } else if (weatherId == 801) {
+            return LIGHT_CLOUDS;
+        } else if (weatherId >= 802 && weatherId <= 804) {
+            return CLOUDS;
+        }
+        return UNKNOWN;
+    }
+}
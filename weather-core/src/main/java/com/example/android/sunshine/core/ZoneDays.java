@@ -0,0 +1,149 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.core;
+
+import java.util.TimeZone;
+
+/**
+ * {@link DayMath} for one zone, with the bounds of recently used days cached. Asking for the day
+ * of an instant in a cached day costs a couple of comparisons instead of zone offset lookups, so
+ * normalizing the dates of a forecast, which fall on a handful of days, is nearly free.
+ *
+ * Safe for use from several threads: cached days are immutable, and a lost cache update only
+ * costs a recomputation.
+ */
+public final class ZoneDays {
+
+    // Direct-mapped by Julian day, so a cache covers about two months of consecutive days
+    private static final int CACHE_SIZE = 64;
+    private static final int CACHE_MASK = CACHE_SIZE - 1;
+
+    private static volatile ZoneDays sDefault;
+
+    private final TimeZone mZone;
+    private final long mRawOffsetSeconds;
+    private final Day[] mDays = new Day[CACHE_SIZE];
+
+    private ZoneDays(TimeZone zone) {
+        mZone = zone;
+        mRawOffsetSeconds = zone.getRawOffset() / 1000;
+    }
+
+    public static ZoneDays forZone(TimeZone zone) {
+        return new ZoneDays((TimeZone) zone.clone());
+    }
+
+    /**
+     * @return the days of the device's current zone, cached until the zone changes
+     */
+    public static ZoneDays forDefaultZone() {
+        TimeZone zone = TimeZone.getDefault();
+        ZoneDays days = sDefault;
+        if (days == null || !days.mZone.getID().equals(zone.getID())) {
+            days = new ZoneDays(zone);
+            sDefault = days;
+        }
+        return days;
+    }
+
+    /**
+     * Same as {@link DayMath#getJulianDay(long, TimeZone)}.
+     */
+    public int getJulianDay(long millis) {
+        return getDayOf(millis).julianDay;
+    }
+
+    /**
+     * Same as {@link DayMath#normalizeDate}.
+     */
+    public long normalizeDate(long millis) {
+        return getDayOf(millis).start;
+    }
+
+    /**
+     * Same as {@link DayMath#getStartOfJulianDay}.
+     */
+    public long getStartOfJulianDay(int julianDay) {
+        return getDay(julianDay).start;
+    }
+
+    /**
+     * Same as {@link DayMath#addDays}.
+     */
+    public long addDays(long normalizedDate, int days) {
+        return getDay(getJulianDay(normalizedDate) + days).start;
+    }
+
+    private Day getDayOf(long millis) {
+        Day day = findDay(millis);
+        return day != null ? day : getDay(DayMath.getJulianDay(millis, mZone));
+    }
+
+    // The cached day holding the instant, or null if it isn't cached
+    private Day findDay(long millis) {
+        // The raw offset is off by the DST saving at most, so the instant's day is the guess or
+        // one of its neighbours
+        int guess = DayMath.getJulianDay(millis, mRawOffsetSeconds);
+        Day day = mDays[guess & CACHE_MASK];
+        if (day != null && day.contains(guess, millis)) {
+            return day;
+        }
+        day = mDays[(guess - 1) & CACHE_MASK];
+        if (day != null && day.contains(guess - 1, millis)) {
+            return day;
+        }
+        day = mDays[(guess + 1) & CACHE_MASK];
+        if (day != null && day.contains(guess + 1, millis)) {
+            return day;
+        }
+        return null;
+    }
+
+    private Day getDay(int julianDay) {
+        Day day = mDays[julianDay & CACHE_MASK];
+        return day != null && day.julianDay == julianDay ? day : cacheDay(julianDay);
+    }
+
+    private Day cacheDay(int julianDay) {
+        long start = DayMath.getStartOfJulianDay(julianDay, mZone);
+        long end = DayMath.getStartOfJulianDay(julianDay + 1, mZone);
+        // Only a day without an offset change maps every instant in it to its Julian day. When
+        // the clocks go back across midnight, the repeated hour belongs to the day before.
+        boolean uniform = mZone.getOffset(start) == mZone.getOffset(end - 1);
+        Day day = new Day(julianDay, start, end, uniform);
+        mDays[julianDay & CACHE_MASK] = day;
+        return day;
+    }
+
+    private static final class Day {
+        final int julianDay;
+        // First instant of the day, and of the next one
+        final long start;
+        final long end;
+        final boolean uniform;
+
+        Day(int julianDay, long start, long end, boolean uniform) {
+            this.julianDay = julianDay;
+            this.start = start;
+            this.end = end;
+            this.uniform = uniform;
+        }
+
+        boolean contains(int julianDay, long millis) {
+            return this.julianDay == julianDay && uniform && millis >= start && millis < end;
+        }
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.core;
+
+import org.junit.Test;
+
+import java.util.Calendar;
+import java.util.TimeZone;
+
+import static org.junit.Assert.assertEquals;
+
+public class DayMathTest {
+
+    private static final TimeZone UTC = TimeZone.getTimeZone("UTC");
+    private static final TimeZone NEW_YORK = TimeZone.getTimeZone("America/New_York");
+    // Brazil moved its clocks forward at midnight, so some days had no midnight
+    private static final TimeZone SAO_PAULO = TimeZone.getTimeZone("America/Sao_Paulo");
+
+    @Test
+    public void julianDayOfEpoch() {
+        assertEquals(DayMath.EPOCH_JULIAN_DAY, DayMath.getJulianDay(0, UTC));
+        assertEquals(DayMath.EPOCH_JULIAN_DAY - 1, DayMath.getJulianDay(-1, UTC));
+        assertEquals(DayMath.EPOCH_JULIAN_DAY - 1, DayMath.getJulianDay(0, NEW_YORK));
+    }
+
+    @Test
+    public void normalizeDateIsLocalMidnight() {
+        // Every hour of a year, across both DST changes
+        Calendar calendar = Calendar.getInstance(NEW_YORK);
+        calendar.clear();
+        calendar.set(2016, Calendar.JANUARY, 1, 0, 30);
+        for (int hour = 0; hour < 366 * 24; hour++) {
+            long millis = calendar.getTimeInMillis();
+            Calendar midnight = (Calendar) calendar.clone();
+            midnight.set(Calendar.HOUR_OF_DAY, 0);
+            midnight.set(Calendar.MINUTE, 0);
+            assertEquals("Wrong start of day for " + calendar.getTime(),
+                    midnight.getTimeInMillis(), DayMath.normalizeDate(millis, NEW_YORK));
+            calendar.add(Calendar.HOUR_OF_DAY, 1);
+        }
+    }
+
+    @Test
+    public void addDaysStaysOnMidnightAcrossDst() {
+        Calendar calendar = Calendar.getInstance(NEW_YORK);
+        calendar.clear();
+        calendar.set(2016, Calendar.MARCH, 10);
+        long date = calendar.getTimeInMillis();
+        for (int day = 1; day <= 240; day++) {
+            calendar.add(Calendar.DAY_OF_MONTH, 1);
+            assertEquals(calendar.getTimeInMillis(), DayMath.addDays(date, day, NEW_YORK));
+        }
+    }
+
+    @Test
+    public void dayWithoutMidnightStartsAfterTheChange() {
+        // October 16th 2016 went from 23:59:59 on the 15th straight to 01:00
+        Calendar calendar = Calendar.getInstance(SAO_PAULO);
+        calendar.clear();
+        calendar.set(2016, Calendar.OCTOBER, 16, 12, 0);
+        long start = DayMath.normalizeDate(calendar.getTimeInMillis(), SAO_PAULO);
+
+        calendar.setTimeInMillis(start);
+        assertEquals(16, calendar.get(Calendar.DAY_OF_MONTH));
+        assertEquals(1, calendar.get(Calendar.HOUR_OF_DAY));
+        assertEquals(DayMath.getJulianDay(start - 1, SAO_PAULO) + 1,
+                DayMath.getJulianDay(start, SAO_PAULO));
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.core;
+
+import org.junit.Test;
+
+import java.util.TimeZone;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+public class ForecastParserTest {
+
+    private static final TimeZone LONDON = TimeZone.getTimeZone("Europe/London");
+    // Saturday, October 29th 2016, 22:00 in London, the night before the clocks go back
+    private static final long NOW = 1477774800000L;
+
+    static String createForecastJson(int days) {
+        StringBuilder json = new StringBuilder()
+                .append("{\"city\":{\"id\":2643743,\"name\":\"London\",")
+                .append("\"coord\":{\"lon\":-0.1258,\"lat\":51.5085},\"country\":\"GB\"},")
+                .append("\"cod\":\"200\",\"cnt\":").append(days).append(",\"list\":[");
+        for (int i = 0; i < days; i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append("{\"dt\":").append(1477742400L + i * 86400L)
+                    .append(",\"temp\":{\"day\":14.2,\"min\":").append(8 + i % 3)
+                    .append(".5,\"max\":").append(15 + i % 4)
+                    .append(".25,\"night\":9.1,\"eve\":12.7,\"morn\":10.3},")
+                    .append("\"pressure\":1021.6,\"humidity\":").append(70 + i)
+                    .append(",\"weather\":[{\"id\":").append(i % 2 == 0 ? 800 : 500)
+                    .append(",\"main\":\"").append(i % 2 == 0 ? "Clear" : "Rain")
+                    .append("\",\"description\":\"sky is clear\",\"icon\":\"01d\"}],")
+                    .append("\"speed\":3.6,\"deg\":").append(i * 20).append(",\"clouds\":0}");
+        }
+        return json.append("]}").toString();
+    }
+
+    @Test
+    public void parseDaily() throws Exception {
+        Forecast forecast = ForecastParser.parseDaily(createForecastJson(3), NOW, LONDON);
+
+        assertEquals(Forecast.STATUS_OK, forecast.status);
+        assertEquals("London", forecast.cityName);
+        assertEquals(51.5085, forecast.latitude, 1e-9);
+        assertEquals(-0.1258, forecast.longitude, 1e-9);
+
+        assertEquals(3, forecast.size);
+        assertEquals(DayMath.normalizeDate(NOW, LONDON), forecast.dates[0]);
+        // The clocks go back overnight, so Sunday is 25 hours long
+        assertEquals(forecast.dates[0] + DayMath.DAY_IN_MILLIS, forecast.dates[1]);
+        assertEquals(forecast.dates[1] + DayMath.DAY_IN_MILLIS + 60 * 60 * 1000,
+                forecast.dates[2]);
+
+        assertEquals(500, forecast.weatherIds[1]);
+        assertEquals("Rain", forecast.descriptions[1]);
+        assertEquals(9.5, forecast.minTemps[1], 0);
+        assertEquals(16.25, forecast.maxTemps[1], 0);
+        assertEquals(71, forecast.humidities[1], 0);
+        assertEquals(1021.6, forecast.pressures[1], 0);
+        assertEquals(3.6, forecast.windSpeeds[1], 0);
+        assertEquals(20, forecast.degrees[1], 0);
+    }
+
+    @Test
+    public void descriptionsAreShared() throws Exception {
+        Forecast forecast = ForecastParser.parseDaily(createForecastJson(14), NOW, LONDON);
+        for (int i = 2; i < forecast.size; i++) {
+            assertSame(forecast.descriptions[i - 2], forecast.descriptions[i]);
+        }
+    }
+
+    @Test
+    public void errors() throws Exception {
+        assertEquals(Forecast.STATUS_INVALID_LOCATION, ForecastParser.parseDaily(
+                "{\"cod\":\"404\",\"message\":\"city not found\"}", NOW, LONDON).status);
+        assertEquals(Forecast.STATUS_SERVER_DOWN, ForecastParser.parseDaily(
+                "{\"cod\":\"500\"}", NOW, LONDON).status);
+    }
+}
@@ -0,0 +1,64 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.core;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+
+public class ForecastTest {
+
+    private static final long DAY_IN_MILLIS = 24 * 60 * 60 * 1000;
+    private static final long FIRST_DAY = 1419120000000L;
+
+    private static Forecast createForecast(String cityName, double maxTemp) {
+        return new Forecast(cityName, 64.7488, -147.353,
+                new long[]{FIRST_DAY, FIRST_DAY + DAY_IN_MILLIS, FIRST_DAY + 3 * DAY_IN_MILLIS},
+                new int[]{321, 800, 500},
+                new String[]{"Drizzle", "Clear", "Rain"},
+                new double[]{65, 63, 60},
+                new double[]{maxTemp, 72, 70},
+                new double[]{1.2, 1.3, 1.1},
+                new double[]{1.3, 1.2, 1.4},
+                new double[]{5.5, 4.1, 3.0},
+                new double[]{1.1, 90, 180});
+    }
+
+    @Test
+    public void equalsComparesValues() {
+        Forecast forecast = createForecast("North Pole", 75);
+        assertEquals(forecast, createForecast("North Pole", 75));
+        assertEquals(forecast.hashCode(), createForecast("North Pole", 75).hashCode());
+        assertNotEquals(forecast, createForecast("North Pole", 76));
+        assertNotEquals(forecast, createForecast(null, 75));
+        assertNotEquals(forecast, Forecast.error(Forecast.STATUS_OK));
+        assertFalse(Forecast.error(Forecast.STATUS_OK)
+                .equals(Forecast.error(Forecast.STATUS_SERVER_DOWN)));
+    }
+
+    @Test
+    public void indexFrom() {
+        Forecast forecast = createForecast("North Pole", 75);
+        assertEquals(0, forecast.indexFrom(FIRST_DAY - DAY_IN_MILLIS));
+        assertEquals(1, forecast.indexOf(FIRST_DAY + DAY_IN_MILLIS));
+        // The third day is missing, so its search lands on the fourth
+        assertEquals(-3, forecast.indexOf(FIRST_DAY + 2 * DAY_IN_MILLIS));
+        assertEquals(2, forecast.indexFrom(FIRST_DAY + 2 * DAY_IN_MILLIS));
+        assertEquals(forecast.size, forecast.indexFrom(FIRST_DAY + 4 * DAY_IN_MILLIS));
+    }
+}
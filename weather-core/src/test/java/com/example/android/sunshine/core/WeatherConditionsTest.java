@@ -0,0 +1,61 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.core;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class WeatherConditionsTest {
+
+    @Test
+    public void conditions() {
+        assertEquals(WeatherConditions.STORM, WeatherConditions.getCondition(211));
+        assertEquals(WeatherConditions.LIGHT_RAIN, WeatherConditions.getCondition(321));
+        assertEquals(WeatherConditions.RAIN, WeatherConditions.getCondition(502));
+        assertEquals(WeatherConditions.SNOW, WeatherConditions.getCondition(511));
+        assertEquals(WeatherConditions.RAIN, WeatherConditions.getCondition(531));
+        assertEquals(WeatherConditions.SNOW, WeatherConditions.getCondition(615));
+        assertEquals(WeatherConditions.FOG, WeatherConditions.getCondition(741));
+        assertEquals(WeatherConditions.CLEAR, WeatherConditions.getCondition(800));
+        assertEquals(WeatherConditions.LIGHT_CLOUDS, WeatherConditions.getCondition(801));
+        assertEquals(WeatherConditions.CLOUDS, WeatherConditions.getCondition(804));
+    }
+
+    @Test
+    public void overlappingRanges() {
+        // 761 (dust) falls in the fog range, and 781 (tornado) is a storm
+        assertEquals(WeatherConditions.FOG, WeatherConditions.getCondition(761));
+        assertEquals(WeatherConditions.STORM, WeatherConditions.getCondition(781));
+    }
+
+    @Test
+    public void unknownIds() {
+        assertEquals(WeatherConditions.UNKNOWN, WeatherConditions.getCondition(0));
+        assertEquals(WeatherConditions.UNKNOWN, WeatherConditions.getCondition(505));
+        assertEquals(WeatherConditions.UNKNOWN, WeatherConditions.getCondition(900));
+        assertEquals(WeatherConditions.UNKNOWN, WeatherConditions.getCondition(-1));
+        assertEquals(WeatherConditions.UNKNOWN, WeatherConditions.getCondition(1000));
+    }
+
+    @Test
+    public void artNames() {
+        assertEquals("light_rain", WeatherConditions.getArtName(WeatherConditions.LIGHT_RAIN));
+        assertEquals("clouds", WeatherConditions.getArtName(WeatherConditions.CLOUDS));
+        assertNull(WeatherConditions.getArtName(WeatherConditions.UNKNOWN));
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.core;
+
+import org.junit.Test;
+
+import java.util.TimeZone;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+public class ZoneDaysTest {
+
+    // Zones with DST changes at different hours and by different amounts, including changes
+    // across midnight, and a half hour one
+    private static final String[] ZONES = {
+            "UTC", "America/New_York", "Europe/London", "Australia/Sydney",
+            "Australia/Lord_Howe", "America/Sao_Paulo", "Asia/Tehran", "America/St_Johns"
+    };
+
+    private static final long MINUTE_IN_MILLIS = 60 * 1000;
+    // January 1st 2015 to January 1st 2018, in UTC
+    private static final long FROM = 1420070400000L;
+    private static final long TO = 1514764800000L;
+
+    @Test
+    public void matchesDayMath() {
+        for (String id : ZONES) {
+            TimeZone zone = TimeZone.getTimeZone(id);
+            ZoneDays days = ZoneDays.forZone(zone);
+            // Every quarter of an hour, so every DST change is crossed at the minute
+            for (long millis = FROM; millis < TO; millis += 15 * MINUTE_IN_MILLIS) {
+                assertEquals(id + " day of " + millis,
+                        DayMath.getJulianDay(millis, zone), days.getJulianDay(millis));
+                assertEquals(id + " start of " + millis,
+                        DayMath.normalizeDate(millis, zone), days.normalizeDate(millis));
+            }
+        }
+    }
+
+    @Test
+    public void matchesDayMathAroundChanges() {
+        for (String id : ZONES) {
+            TimeZone zone = TimeZone.getTimeZone(id);
+            ZoneDays days = ZoneDays.forZone(zone);
+            // Every millisecond a minute either side of each change
+            for (long millis = FROM; millis < TO; millis += MINUTE_IN_MILLIS) {
+                if (zone.getOffset(millis) == zone.getOffset(millis + MINUTE_IN_MILLIS)) {
+                    continue;
+                }
+                for (long probe = millis; probe < millis + 2 * MINUTE_IN_MILLIS; probe++) {
+                    assertEquals(id + " day of " + probe,
+                            DayMath.getJulianDay(probe, zone), days.getJulianDay(probe));
+                    assertEquals(id + " start of " + probe,
+                            DayMath.normalizeDate(probe, zone), days.normalizeDate(probe));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void addDays() {
+        for (String id : ZONES) {
+            TimeZone zone = TimeZone.getTimeZone(id);
+            ZoneDays days = ZoneDays.forZone(zone);
+            long date = DayMath.normalizeDate(FROM, zone);
+            for (int day = -400; day <= 1200; day += 7) {
+                assertEquals(id + " " + day + " days on",
+                        DayMath.addDays(date, day, zone), days.addDays(date, day));
+            }
+        }
+    }
+
+    @Test
+    public void defaultZone() {
+        TimeZone original = TimeZone.getDefault();
+        try {
+            TimeZone.setDefault(TimeZone.getTimeZone("Europe/London"));
+            ZoneDays london = ZoneDays.forDefaultZone();
+            assertSame(london, ZoneDays.forDefaultZone());
+
+            TimeZone.setDefault(TimeZone.getTimeZone("Asia/Tokyo"));
+            ZoneDays tokyo = ZoneDays.forDefaultZone();
+            long millis = 1477774800000L;
+            assertEquals(DayMath.normalizeDate(millis, TimeZone.getTimeZone("Asia/Tokyo")),
+                    tokyo.normalizeDate(millis));
+        } finally {
+            TimeZone.setDefault(original);
+        }
+    }
+}